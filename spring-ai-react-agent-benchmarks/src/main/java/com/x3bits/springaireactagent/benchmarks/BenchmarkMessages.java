@@ -0,0 +1,95 @@
+package com.x3bits.springaireactagent.benchmarks;
+
+import com.x3bits.springaireactagent.core.message.BranchMessageItem;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基准测试使用的消息
+ */
+final class BenchmarkMessages {
+
+    private BenchmarkMessages() {
+    }
+
+    /**
+     * 消息的形状
+     */
+    enum Shape {
+        USER,
+        SYSTEM,
+        ASSISTANT_TEXT,
+        ASSISTANT_TOOL_CALLS,
+        TOOL_RESPONSE
+    }
+
+    /**
+     * 创建指定形状的消息，消息的文本或工具参数、结果的总长度约为size个字符
+     */
+    static Message create(Shape shape, int size) {
+        String text = text(size);
+        return switch (shape) {
+            case USER -> new UserMessage(text);
+            case SYSTEM -> new SystemMessage(text);
+            case ASSISTANT_TEXT -> new AssistantMessage(text);
+            case ASSISTANT_TOOL_CALLS -> new AssistantMessage("", Map.of(), List.of(
+                    new AssistantMessage.ToolCall("call-1", "function", "search",
+                            "{\"query\":\"" + text(size / 2) + "\"}"),
+                    new AssistantMessage.ToolCall("call-2", "function", "fetch",
+                            "{\"url\":\"" + text(size / 2) + "\"}")));
+            case TOOL_RESPONSE -> new ToolResponseMessage(List.of(
+                    new ToolResponseMessage.ToolResponse("call-1", "search", "\"" + text(size / 2) + "\""),
+                    new ToolResponseMessage.ToolResponse("call-2", "fetch", "\"" + text(size / 2) + "\"")));
+        };
+    }
+
+    /**
+     * 对话中依次出现的消息形状，用于构造消息链
+     */
+    static Message conversationMessage(int index, int size) {
+        Shape[] shapes = {Shape.USER, Shape.ASSISTANT_TOOL_CALLS, Shape.TOOL_RESPONSE, Shape.ASSISTANT_TEXT};
+        return create(shapes[index % shapes.length], size);
+    }
+
+    /**
+     * 构造一个有分支的消息树，按保存顺序返回。每一层有branchFactor条以上一层最后一条消息为前一个消息的消息，
+     * 最后一条消息是深度为depth的主链的末尾，id为{@link #leafId(int, int)}
+     */
+    static List<BranchMessageItem> branchedThread(int depth, int branchFactor, int messageSize) {
+        List<BranchMessageItem> items = new ArrayList<>(depth * branchFactor);
+        String previousId = null;
+        for (int level = 0; level < depth; level++) {
+            String id = null;
+            for (int branch = 0; branch < branchFactor; branch++) {
+                id = messageId(level, branch);
+                items.add(new BranchMessageItem(conversationMessage(level, messageSize), id, previousId, Map.of()));
+            }
+            previousId = id;
+        }
+        return items;
+    }
+
+    static String leafId(int depth, int branchFactor) {
+        return messageId(depth - 1, branchFactor - 1);
+    }
+
+    private static String messageId(int level, int branch) {
+        return "m-" + level + "-" + branch;
+    }
+
+    private static String text(int size) {
+        StringBuilder builder = new StringBuilder(size);
+        String words = "The quick brown fox jumps over the lazy dog. 敏捷的棕色狐狸跳过了懒狗。";
+        while (builder.length() < size) {
+            builder.append(words, 0, Math.min(words.length(), size - builder.length()));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,59 @@
+package com.x3bits.springaireactagent.benchmarks;
+
+import com.x3bits.springaireactagent.serializer.binary.CompactBinaryMessageSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CompactBinaryMessageSerializer}对不同形状和大小的消息的序列化、反序列化耗时，与JsonMessageSerializerBenchmark对照
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompactBinaryMessageSerializerBenchmark {
+
+    @Param({"USER", "ASSISTANT_TEXT", "ASSISTANT_TOOL_CALLS", "TOOL_RESPONSE"})
+    public String shape;
+
+    // 消息文本的字符数
+    @Param({"64", "4096", "65536"})
+    public int size;
+
+    private CompactBinaryMessageSerializer serializer;
+
+    private Message message;
+
+    private byte[] serialized;
+
+    @Setup
+    public void setUp() {
+        serializer = new CompactBinaryMessageSerializer();
+        message = BenchmarkMessages.create(BenchmarkMessages.Shape.valueOf(shape), size);
+        serialized = serializer.serializeToBytes(message);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return serializer.serializeToBytes(message);
+    }
+
+    @Benchmark
+    public Message deserialize() {
+        return serializer.deserialize(message.getMessageType(), serialized);
+    }
+}
@@ -0,0 +1,95 @@
+package com.x3bits.springaireactagent.benchmarks;
+
+import com.x3bits.springaireactagent.core.message.BranchMessageItem;
+import com.x3bits.springaireactagent.saver.jdbc.JdbcTemplateBranchMessageSaver;
+import com.x3bits.springaireactagent.serializer.json.JsonMessageSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link JdbcTemplateBranchMessageSaver}使用嵌入式H2数据库时保存消息和读取最近消息的耗时，
+ * 包含JSON序列化和SQL执行，不包含网络开销
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JdbcTemplateBranchMessageSaverBenchmark {
+
+    private static final String THREAD_ID = "benchmark-thread";
+
+    @Param({"10", "100", "1000"})
+    public int depth;
+
+    @Param({"1", "4"})
+    public int branchFactor;
+
+    @Param({"20"})
+    public int count;
+
+    private EmbeddedDatabase database;
+
+    private JdbcTemplateBranchMessageSaver saver;
+
+    private String leafId;
+
+    private Message newMessage;
+
+    private long sequence;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("classpath:schema.sql")
+                .build();
+        saver = new JdbcTemplateBranchMessageSaver(new JdbcTemplate(database), new JsonMessageSerializer());
+        saver.saveAll(THREAD_ID, BenchmarkMessages.branchedThread(depth, branchFactor, 256));
+        leafId = BenchmarkMessages.leafId(depth, branchFactor);
+        newMessage = new UserMessage("new message");
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Benchmark
+    public List<Message> getLatestMessages() {
+        return saver.getLatestMessages(THREAD_ID, count, leafId);
+    }
+
+    @Benchmark
+    public List<BranchMessageItem> getAllMessages() {
+        return saver.getAllMessages(THREAD_ID);
+    }
+
+    @Benchmark
+    public void save() {
+        saver.save(THREAD_ID, new BranchMessageItem(newMessage, "new-" + sequence++, leafId, Map.of()));
+    }
+}
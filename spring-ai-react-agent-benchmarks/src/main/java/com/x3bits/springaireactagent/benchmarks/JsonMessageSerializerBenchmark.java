@@ -0,0 +1,67 @@
+package com.x3bits.springaireactagent.benchmarks;
+
+import com.x3bits.springaireactagent.serializer.MessageSerializer;
+import com.x3bits.springaireactagent.serializer.json.JsonMessageSerializer;
+import com.x3bits.springaireactagent.serializer.json.StreamingJsonMessageSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link JsonMessageSerializer}和{@link StreamingJsonMessageSerializer}对不同形状和大小的消息的序列化、反序列化耗时
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonMessageSerializerBenchmark {
+
+    // meta：JsonMessageSerializer，streaming：StreamingJsonMessageSerializer
+    @Param({"meta", "streaming"})
+    public String implementation;
+
+    @Param({"USER", "ASSISTANT_TEXT", "ASSISTANT_TOOL_CALLS", "TOOL_RESPONSE"})
+    public String shape;
+
+    // 消息文本的字符数
+    @Param({"64", "4096", "65536"})
+    public int size;
+
+    private MessageSerializer serializer;
+
+    private Message message;
+
+    private String serialized;
+
+    @Setup
+    public void setUp() {
+        serializer = "streaming".equals(implementation)
+                ? new StreamingJsonMessageSerializer()
+                : new JsonMessageSerializer();
+        message = BenchmarkMessages.create(BenchmarkMessages.Shape.valueOf(shape), size);
+        serialized = serializer.serialize(message);
+    }
+
+    @Benchmark
+    public String serialize() {
+        return serializer.serialize(message);
+    }
+
+    @Benchmark
+    public Message deserialize() {
+        return serializer.deserialize(message.getMessageType(), serialized);
+    }
+}
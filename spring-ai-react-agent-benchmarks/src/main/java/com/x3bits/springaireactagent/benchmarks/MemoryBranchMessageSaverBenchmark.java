@@ -0,0 +1,74 @@
+package com.x3bits.springaireactagent.benchmarks;
+
+import com.x3bits.springaireactagent.core.memory.MemoryBranchMessageSaver;
+import com.x3bits.springaireactagent.core.message.BranchMessageItem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MemoryBranchMessageSaver}在不同的消息链深度和分支数量下保存消息和读取最近消息的耗时
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MemoryBranchMessageSaverBenchmark {
+
+    private static final String THREAD_ID = "benchmark-thread";
+
+    @Param({"10", "100", "1000"})
+    public int depth;
+
+    // 每个消息的后续消息数量，1表示没有分支
+    @Param({"1", "4"})
+    public int branchFactor;
+
+    // 每次读取的最近消息数量
+    @Param({"20"})
+    public int count;
+
+    private MemoryBranchMessageSaver saver;
+
+    private String leafId;
+
+    private Message newMessage;
+
+    private long sequence;
+
+    // 每轮测量前重建，避免save不断累积的消息影响后面的测量
+    @Setup(Level.Iteration)
+    public void setUp() {
+        saver = new MemoryBranchMessageSaver();
+        saver.saveAll(THREAD_ID, BenchmarkMessages.branchedThread(depth, branchFactor, 256));
+        leafId = BenchmarkMessages.leafId(depth, branchFactor);
+        newMessage = new UserMessage("new message");
+    }
+
+    @Benchmark
+    public List<Message> getLatestMessages() {
+        return saver.getLatestMessages(THREAD_ID, count, leafId);
+    }
+
+    @Benchmark
+    public void save() {
+        saver.save(THREAD_ID, new BranchMessageItem(newMessage, "new-" + sequence++, leafId, Map.of()));
+    }
+}
@@ -0,0 +1,74 @@
+package com.x3bits.springaireactagent.benchmarks;
+
+import com.x3bits.springaireactagent.core.ReActAgent;
+import com.x3bits.springaireactagent.core.RunAgentOptions;
+import com.x3bits.springaireactagent.core.event.ReActAgentEvent;
+import com.x3bits.springaireactagent.core.memory.MemoryBranchMessageSaver;
+import com.x3bits.springaireactagent.testsupport.ScriptedChatModel;
+import com.x3bits.springaireactagent.testsupport.ScriptedResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.client.ChatClient;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 使用立即返回的ChatModel执行一次只有一轮迭代的完整运行，测量Agent自身的开销：
+ * 读取历史消息、组装Prompt、调度、保存消息和发送事件
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReActAgentRunBenchmark {
+
+    @Param({"false", "true"})
+    public boolean stream;
+
+    // 流式响应中的文本片段数量
+    @Param({"32"})
+    public int chunks;
+
+    private ReActAgent agent;
+
+    private long sequence;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        // 立即返回固定回答，流式返回时分成chunks个文本片段
+        ScriptedChatModel chatModel = ScriptedChatModel.builder()
+                .then(ScriptedResponse.builder()
+                        .text("片段".repeat(chunks))
+                        .chunkSize(2)
+                        .usage(20, chunks)
+                        .build())
+                .build();
+        ChatClient chatClient = ChatClient.builder(chatModel).build();
+        agent = ReActAgent.builder(chatClient)
+                .messageSaver(new MemoryBranchMessageSaver())
+                .systemPrompt("你是一个智能助手")
+                .build();
+    }
+
+    @Benchmark
+    public ReActAgentEvent run() {
+        RunAgentOptions options = RunAgentOptions.builder()
+                .threadId("benchmark-thread-" + sequence++)
+                .newUserMessage("你好")
+                .enableStream(stream)
+                .build();
+        return agent.run(options).blockLast();
+    }
+}
@@ -0,0 +1,54 @@
+package com.x3bits.springaireactagent.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import reactor.core.publisher.SignalType;
+
+/**
+ * 一次Agent运行的JFR事件
+ * <p>
+ * 本模块的JFR事件默认关闭，关闭时只有创建事件对象的开销。需要时在录制中打开，例如
+ * {@code jcmd <pid> JFR.start +com.x3bits.springaireactagent.AgentRun#enabled=true}，
+ * 迭代、大模型调用和工具调用的事件分别是Iteration、ModelCall和ToolCall。
+ * </p>
+ */
+@Name("com.x3bits.springaireactagent.AgentRun")
+@Label("Agent Run")
+@Description("一次ReActAgent运行")
+@Category({"Spring AI ReAct Agent", "Agent"})
+@Enabled(false)
+@StackTrace(false)
+final class AgentRunJfrEvent extends Event {
+
+    @Label("Thread Id")
+    String threadId;
+
+    @Label("Stream")
+    boolean stream;
+
+    @Label("Iterations")
+    int iterations;
+
+    @Label("Outcome")
+    String outcome;
+
+    void commit(RunAgentOptions options, int iterations, SignalType signalType) {
+        if (!shouldCommit()) {
+            return;
+        }
+        this.threadId = options.getThreadId();
+        this.stream = options.isEnableStream();
+        this.iterations = iterations;
+        this.outcome = switch (signalType) {
+            case ON_ERROR -> "error";
+            case CANCEL -> "cancelled";
+            default -> "success";
+        };
+        commit();
+    }
+}
@@ -1,19 +1,39 @@
 package com.x3bits.springaireactagent.core;
 
 import com.x3bits.springaireactagent.core.event.AssistantTextPartEvent;
+import com.x3bits.springaireactagent.core.event.IterationEndEvent;
+import com.x3bits.springaireactagent.core.event.IterationStartEvent;
 import com.x3bits.springaireactagent.core.event.LlmMessageEvent;
 import com.x3bits.springaireactagent.core.event.ReActAgentEvent;
+import com.x3bits.springaireactagent.core.event.RunSummaryEvent;
+import com.x3bits.springaireactagent.core.event.ToolCallEndEvent;
+import com.x3bits.springaireactagent.core.event.ToolCallStartEvent;
+import com.x3bits.springaireactagent.core.event.UsageEvent;
 import com.x3bits.springaireactagent.core.exception.MaxIterationReachedException;
 import com.x3bits.springaireactagent.core.memory.BranchMessageSaver;
 import com.x3bits.springaireactagent.core.message.BranchMessageItem;
+import com.x3bits.springaireactagent.core.message.BranchMessageNode;
 import com.x3bits.springaireactagent.core.prompt.FixedSystemPromptProvider;
 import com.x3bits.springaireactagent.core.prompt.SystemPromptProvider;
+import com.x3bits.springaireactagent.core.token.MessageTokenCounter;
+import com.x3bits.springaireactagent.core.token.SimpleTokenEstimator;
+import com.x3bits.springaireactagent.core.token.TokenEstimator;
+import com.x3bits.springaireactagent.core.tool.InterceptingToolCallingManager;
+import com.x3bits.springaireactagent.core.tool.ParallelToolCallingManager;
+import com.x3bits.springaireactagent.core.tool.SpeculativeToolExecution;
+import com.x3bits.springaireactagent.core.tool.StreamingToolCallAssembler;
+import com.x3bits.springaireactagent.core.tool.ToolCallInterceptor;
 import com.x3bits.springaireactagent.core.utils.ChatOptionUtils;
 import com.x3bits.springaireactagent.core.utils.IdGenerator;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.EmptyUsage;
+import org.springframework.ai.chat.metadata.Usage;
 import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.chat.model.Generation;
 import org.springframework.ai.chat.prompt.ChatOptions;
@@ -22,131 +42,386 @@ import org.springframework.ai.model.tool.ToolCallingChatOptions;
 import org.springframework.ai.model.tool.ToolCallingManager;
 import org.springframework.ai.model.tool.ToolExecutionResult;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 class DefaultReActAgent implements ReActAgent {
 
+    /**
+     * 保存器读写、工具调用以及非流式的大模型调用都是阻塞操作，统一放到该调度器上执行，避免阻塞调用方或网络IO线程。
+     */
+    private static final Scheduler BLOCKING_SCHEDULER = Schedulers.boundedElastic();
+
+    // 按token预算截取历史消息时，第一次读取的消息数量，之后每次翻倍
+    private static final int INITIAL_HISTORY_PAGE_SIZE = 16;
+
+    private static final int MAX_HISTORY_PAGE_SIZE = 256;
+
     private final ChatClient chatClient;
 
     private final BranchMessageSaver branchMessageSaver;
 
     private final SystemPromptProvider systemPromptProvider;
 
-    private final ToolCallingManager toolCallingManager = ToolCallingManager.builder().build();
+    // Spring AI默认的ToolCallingManager，按需用拦截器和并行执行装饰
+    private final ToolCallingManager baseToolCallingManager;
+
+    // 并行执行工具调用使用的Executor，为null时不并行执行
+    private final Executor parallelToolExecutor;
+
+    private final Set<String> serialToolNames;
+
+    private final ToolCallingManager toolCallingManager;
+
+    private final MessageTokenCounter messageTokenCounter;
+
+    // 为null时不合并文本片段
+    private final TextPartCoalescer textPartCoalescer;
+
+    // 推测执行工具调用使用的Executor，为null时不推测执行
+    private final Executor speculativeToolExecutor;
+
+    // 不能推测执行的工具名称：有副作用的工具和需要按顺序执行的工具
+    private final Set<String> nonSpeculativeToolNames;
+
+    private final ObservationRegistry observationRegistry;
+
+    // 为null时没有通过Builder注册监听器
+    private final ReActAgentListener listener;
 
-    private DefaultReActAgent(ChatClient chatClient, BranchMessageSaver branchMessageSaver,
-            SystemPromptProvider systemPromptProvider) {
-        this.chatClient = chatClient;
-        this.branchMessageSaver = branchMessageSaver;
-        this.systemPromptProvider = systemPromptProvider;
+    private DefaultReActAgent(Builder builder) {
+        this.chatClient = builder.chatClient;
+        this.branchMessageSaver = builder.branchMessageSaver;
+        this.systemPromptProvider = builder.systemPromptProvider;
+        this.observationRegistry = builder.observationRegistry == null ? ObservationRegistry.NOOP
+                : builder.observationRegistry;
+        this.listener = builder.listener;
+        // Spring AI的工具调用Observation也使用同一个registry，成为工具调用Observation的子节点
+        this.baseToolCallingManager = ToolCallingManager.builder().observationRegistry(observationRegistry).build();
+        if (builder.parallelToolCalls) {
+            this.parallelToolExecutor = builder.toolExecutor != null ? builder.toolExecutor
+                    : Executors.newVirtualThreadPerTaskExecutor();
+        } else {
+            this.parallelToolExecutor = null;
+        }
+        this.serialToolNames = builder.serialToolNames == null ? Set.of() : Set.copyOf(builder.serialToolNames);
+        this.toolCallingManager = buildToolCallingManager(null);
+        this.messageTokenCounter = new MessageTokenCounter(builder.tokenEstimator);
+        this.textPartCoalescer = builder.textPartCoalescingDelay == null ? null
+                : new TextPartCoalescer(builder.textPartCoalescingBytes, builder.textPartCoalescingDelay,
+                        Schedulers.parallel());
+        if (builder.speculativeToolExecution) {
+            this.speculativeToolExecutor = builder.toolExecutor != null ? builder.toolExecutor
+                    : BLOCKING_SCHEDULER::schedule;
+        } else {
+            this.speculativeToolExecutor = null;
+        }
+        Set<String> nonSpeculativeToolNames = new HashSet<>(serialToolNames);
+        if (builder.sideEffectToolNames != null) {
+            nonSpeculativeToolNames.addAll(builder.sideEffectToolNames);
+        }
+        this.nonSpeculativeToolNames = Set.copyOf(nonSpeculativeToolNames);
+    }
+
+    /**
+     * 组装ToolCallingManager：interceptor不为null时包裹每个工具调用，开启并行执行时再用ParallelToolCallingManager装饰
+     */
+    private ToolCallingManager buildToolCallingManager(ToolCallInterceptor interceptor) {
+        ToolCallingManager manager = interceptor == null ? baseToolCallingManager
+                : new InterceptingToolCallingManager(baseToolCallingManager, interceptor);
+        if (parallelToolExecutor == null) {
+            return manager;
+        }
+        return new ParallelToolCallingManager(manager, parallelToolExecutor, serialToolNames);
     }
 
     @Override
     public Flux<ReActAgentEvent> run(RunAgentOptions options) {
-        // 如果历史对话在Assistant返回ToolCall处中断，应该先调用对应的方法。
-        //填充chatOptions中的toolCallbacks字段, 不会实际调用大模型
-        return Flux.create(sink -> {
-            String previousMessageId = options.getPreviousMessageId();
-            ToolCallingChatOptions chatOptions = buildChatOptions(options);
-            List<Message> messageHistory = fetchMessageHistory(options);
-            Message systemMessage = buildSystemMessage(options);
-            List<Message> allMessages = contactMessages(systemMessage, messageHistory, options.getNewMessages());
-            Message lastMessage = allMessages.getLast();
-            boolean stream = options.isEnableStream();
-            if (lastMessage instanceof AssistantMessage assistantMessage) {
-                if (assistantMessage.getToolCalls().isEmpty()) {
-                    sink.complete();
-                    return;
-                }
-                // 如果历史对话在Assistant返回ToolCall处中断，应该先调用对应的方法。
-                int toolCallCount = assistantMessage.getToolCalls().size();
-                Prompt prompt = new Prompt(allMessages.subList(0, allMessages.size() - 1), chatOptions);
-
-                //填充chatOptions中的toolCallbacks字段, 不会实际调用大模型
-                ChatClient.ChatClientRequestSpec chatClientRequestSpec = prepareChatClient(options, prompt);
-                if (stream) {
-                    chatClientRequestSpec.stream();
-                } else {
-                    chatClientRequestSpec.call();
-                }
+        return Flux.deferContextual(contextView -> {
+            RunContext context = new RunContext(options, buildChatOptions(options), observationRegistry,
+                    runListener(contextView.getOrDefault(ReActAgentListener.CONTEXT_KEY, null)));
+            context.runObservation = ReActAgentObservations.run(observationRegistry, contextView, options);
+            AgentRunJfrEvent runJfrEvent = new AgentRunJfrEvent();
+            runJfrEvent.begin();
+            if (options.isEnableTelemetryEvents() || context.listener != null || !observationRegistry.isNoop()
+                    || ToolCallJfrEvent.isTypeEnabled()) {
+                context.toolCallingManager = buildToolCallingManager(context::interceptToolCall);
+            }
+            Flux<ReActAgentEvent> events = Mono.fromRunnable(() -> prepareConversation(context))
+                    .subscribeOn(BLOCKING_SCHEDULER)
+                    .thenMany(Flux.defer(() -> startRun(context)));
+            if (branchMessageSaver != null) {
+                // 运行结束时等待所有消息持久化，异步写入的保存器在这里暴露写入异常
+                events = events
+                        .onErrorResume(e -> flushMessages(context)
+                                .onErrorResume(flushError -> {
+                                    e.addSuppressed(flushError);
+                                    return Mono.empty();
+                                })
+                                .then(Mono.error(e)))
+                        .concatWith(flushMessages(context));
+            }
+            events = events.concatWith(telemetryEvent(context, () -> new RunSummaryEvent(context.completedIterations,
+                    context.promptTokens, context.completionTokens,
+                    Duration.ofNanos(System.nanoTime() - context.startNanos), Duration.ofNanos(context.modelNanos),
+                    Duration.ofNanos(context.toolNanos))));
+            events = events.doFinally(signalType -> runJfrEvent.commit(options, context.completedIterations,
+                    signalType));
+            return ReActAgentObservations.observe(context.runObservation, events);
+        });
+    }
 
-                ToolExecutionResult toolExecutionResult = toolCallingManager.executeToolCalls(prompt,
-                        ChatResponse.builder().generations(List.of(new Generation(assistantMessage))).build());
-                List<Message> conversationHistory = toolExecutionResult.conversationHistory();
-                List<Message> toolCallResults = conversationHistory
-                        .subList(conversationHistory.size() - toolCallCount, conversationHistory.size());
-                for (Message toolCallResult : toolCallResults) {
-                    allMessages.add(toolCallResult);
-                    previousMessageId = saveAndSinkMessage(options.getThreadId(), toolCallResult, previousMessageId,
-                            sink);
-                }
+    /**
+     * 合并Builder中注册的监听器和Reactor Context中本次运行的监听器，都没有时返回null
+     */
+    private ReActAgentListener runListener(ReActAgentListener contextListener) {
+        if (listener == null || contextListener == null) {
+            return listener != null ? listener : contextListener;
+        }
+        return new ReActAgentListener() {
+            @Override
+            public void onIterationStart(RunAgentOptions options, int iteration) {
+                listener.onIterationStart(options, iteration);
+                contextListener.onIterationStart(options, iteration);
             }
-            Prompt prompt = new Prompt(allMessages, chatOptions);
-            ChatClient.ChatClientRequestSpec chatClientRequestSpec = prepareChatClient(options, prompt);
-            if (previousMessageId == null && branchMessageSaver != null) {
-                previousMessageId = branchMessageSaver.getLatestMessageId(options.getThreadId());
+
+            @Override
+            public void onModelCallEnd(RunAgentOptions options, int iteration, String model, Integer promptTokens,
+                    Integer completionTokens, long timeToFirstTokenNanos, long latencyNanos) {
+                listener.onModelCallEnd(options, iteration, model, promptTokens, completionTokens,
+                        timeToFirstTokenNanos, latencyNanos);
+                contextListener.onModelCallEnd(options, iteration, model, promptTokens, completionTokens,
+                        timeToFirstTokenNanos, latencyNanos);
             }
-            if (options.getNewMessages() != null) {
-                for (Message message : options.getNewMessages()) {
-                    previousMessageId = saveAndSinkMessage(options.getThreadId(), message, previousMessageId, sink);
-                }
+
+            @Override
+            public void onToolCallEnd(RunAgentOptions options, int iteration, String toolName, long latencyNanos) {
+                listener.onToolCallEnd(options, iteration, toolName, latencyNanos);
+                contextListener.onToolCallEnd(options, iteration, toolName, latencyNanos);
             }
-            int iterationLeft = options.getMaxIterations();
-            AssistantMessage firstMessage;
-            if (stream) {
-                ChatClient.StreamResponseSpec streamResponseSpec = chatClientRequestSpec.stream();
-                Flux<ChatResponse> chatResponseFlux = streamResponseSpec.chatResponse();
-                firstMessage = iterateResponseParts(sink, chatResponseFlux);
+        };
+    }
+
+    /**
+     * 开启统计事件时发送一个事件，事件在订阅时才创建
+     */
+    private static Flux<ReActAgentEvent> telemetryEvent(RunContext context, Supplier<ReActAgentEvent> event) {
+        return Flux.defer(() -> context.options.isEnableTelemetryEvents() ? Flux.just(event.get()) : Flux.empty());
+    }
+
+    private Mono<ReActAgentEvent> flushMessages(RunContext context) {
+        return Mono.<ReActAgentEvent>fromRunnable(() -> observeSaver(context, "flush",
+                        () -> branchMessageSaver.flush(context.options.getThreadId())))
+                .subscribeOn(BLOCKING_SCHEDULER);
+    }
+
+    /**
+     * 读取历史消息并组装本次对话的完整消息列表。保存器的读写都是阻塞IO，所以在{@link #BLOCKING_SCHEDULER}上执行。
+     */
+    private void prepareConversation(RunContext context) {
+        RunAgentOptions options = context.options;
+        List<Message> messageHistory = fetchMessageHistory(context);
+        Message systemMessage = buildSystemMessage(options);
+        context.conversation = contactMessages(systemMessage, messageHistory, options.getNewMessages());
+        if (context.previousMessageId == null && branchMessageSaver != null) {
+            context.previousMessageId = observeSaver(context, "getLatestMessageId",
+                    () -> branchMessageSaver.getLatestMessageId(options.getThreadId()));
+        }
+    }
+
+    private Flux<ReActAgentEvent> startRun(RunContext context) {
+        List<Message> conversation = context.conversation;
+        if (!conversation.isEmpty() && conversation.getLast() instanceof AssistantMessage assistantMessage) {
+            if (!assistantMessage.hasToolCalls()) {
+                return Flux.empty();
+            }
+            // 如果历史对话在Assistant返回ToolCall处中断，应该先调用对应的方法。
+            Prompt prompt = new Prompt(conversation.subList(0, conversation.size() - 1), context.chatOptions);
+            //填充chatOptions中的toolCallbacks字段, 不会实际调用大模型
+            ChatClient.ChatClientRequestSpec chatClientRequestSpec = prepareChatClient(context.options, prompt);
+            if (context.options.isEnableStream()) {
+                chatClientRequestSpec.stream();
             } else {
-                ChatClient.CallResponseSpec callResponseSpec = chatClientRequestSpec.call();
-                ChatResponse chatResponse = callResponseSpec.chatResponse();
-                if (chatResponse == null) {
-                    sink.error(new IllegalStateException("chatResponse is null"));
-                    return;
-                }
-                firstMessage = chatResponse.getResult().getOutput();
+                chatClientRequestSpec.call();
             }
-            iterationLeft--;
-            previousMessageId = saveAndSinkMessage(options.getThreadId(), firstMessage, previousMessageId, sink);
-            ChatResponse chatResponse = buildResponseFromAssistantMessage(firstMessage);
-            while (chatResponse.hasToolCalls()) {
-                int toolCallCount = chatResponse.getResult().getOutput().getToolCalls().size();
-                ToolExecutionResult toolExecutionResult = toolCallingManager.executeToolCalls(prompt, chatResponse);
-                List<Message> conversationHistory = toolExecutionResult.conversationHistory();
-                List<Message> toolCallResults = conversationHistory
-                        .subList(conversationHistory.size() - toolCallCount, conversationHistory.size());
-                for (Message toolCallResult : toolCallResults) {
-                    previousMessageId = saveAndSinkMessage(options.getThreadId(), toolCallResult, previousMessageId,
-                            sink);
-                }
-                prompt = new Prompt(conversationHistory, chatOptions);
-                if (iterationLeft <= 0) {
-                    sink.error(new MaxIterationReachedException(
-                            "Max iterations " + options.getMaxIterations() + " reached"));
-                    return;
-                }
-                if (stream) {
-                    Flux<ChatResponse> chatResponseFlux = prepareChatClient(options, prompt).stream().chatResponse();
-                    AssistantMessage aiMessage = iterateResponseParts(sink, chatResponseFlux);
-                    chatResponse = buildResponseFromAssistantMessage(aiMessage);
-                } else {
-                    chatResponse = prepareChatClient(options, prompt).call().chatResponse();
-                }
-                iterationLeft--;
-                if (chatResponse == null) {
-                    sink.error(new IllegalStateException("chatResponse is null"));
-                    return;
-                }
-                Message responseMessage = chatResponse.getResult().getOutput();
-                previousMessageId = saveAndSinkMessage(options.getThreadId(), responseMessage, previousMessageId,
-                        sink);
+            return executeToolCalls(context, prompt, assistantMessage, null, 0)
+                    .concatWith(reActLoop(context));
+        }
+        return saveNewMessages(context).concatWith(reActLoop(context));
+    }
+
+    private Flux<ReActAgentEvent> saveNewMessages(RunContext context) {
+        List<Message> newMessages = context.options.getNewMessages();
+        if (newMessages == null) {
+            return Flux.empty();
+        }
+        return saveAndEmitMessages(context, newMessages);
+    }
+
+    /**
+     * ReAct主循环：每一轮调用一次大模型，若返回了ToolCall则执行工具，然后进入下一轮。
+     * 各步骤通过concatMap/repeat串联，等待大模型响应期间不占用线程。
+     */
+    private Flux<ReActAgentEvent> reActLoop(RunContext context) {
+        return Flux.defer(() -> {
+            int maxIterations = context.options.getMaxIterations();
+            if (context.completedIterations > 0 && context.completedIterations >= maxIterations) {
+                return Flux.error(new MaxIterationReachedException("Max iterations " + maxIterations + " reached"));
             }
-            sink.complete();
+            int iteration = context.completedIterations + 1;
+            long iterationStartNanos = System.nanoTime();
+            Prompt prompt = new Prompt(context.conversation, context.chatOptions);
+            Observation iterationObservation = ReActAgentObservations.iteration(observationRegistry,
+                    context.runObservation, context.options, iteration);
+            context.iteration = iteration;
+            context.iterationObservation = iterationObservation;
+            if (context.listener != null) {
+                context.listener.onIterationStart(context.options, iteration);
+            }
+            IterationJfrEvent iterationJfrEvent = new IterationJfrEvent();
+            iterationJfrEvent.begin();
+            Flux<ReActAgentEvent> events = telemetryEvent(context, () -> new IterationStartEvent(iteration))
+                    .concatWith(callModel(context, prompt, iteration))
+                    .concatWith(Flux.defer(() -> {
+                        context.completedIterations++;
+                        AssistantMessage assistantMessage = context.lastAssistantMessage;
+                        if (!assistantMessage.hasToolCalls()) {
+                            return Flux.empty();
+                        }
+                        return executeToolCalls(context, prompt, assistantMessage, context.speculation, iteration);
+                    }))
+                    .concatWith(telemetryEvent(context, () -> new IterationEndEvent(iteration,
+                            Duration.ofNanos(System.nanoTime() - iterationStartNanos))))
+                    .doOnTerminate(() -> {
+                        context.iterationObservation = null;
+                        iterationJfrEvent.commit(context.options, iteration);
+                    })
+                    .doOnCancel(() -> iterationJfrEvent.commit(context.options, iteration));
+            return ReActAgentObservations.observe(iterationObservation, events);
+        }).repeat(() -> context.lastAssistantMessage.hasToolCalls());
+    }
+
+    private Flux<ReActAgentEvent> callModel(RunContext context, Prompt prompt, int iteration) {
+        ChatClient.ChatClientRequestSpec chatClientRequestSpec = prepareChatClient(context.options, prompt);
+        AssistantMessageAccumulator accumulator = context.accumulator;
+        Observation modelObservation = ReActAgentObservations.modelCall(observationRegistry,
+                context.iterationObservation, context.options, iteration);
+        if (context.options.isEnableStream()) {
+            SpeculativeToolExecution speculation = speculativeToolExecutor == null ? null
+                    : new SpeculativeToolExecution(context.toolCallingManager(toolCallingManager),
+                            speculativeToolExecutor, nonSpeculativeToolNames, prompt);
+            context.speculation = speculation;
+            accumulator.reset(speculation == null ? toolCall -> {
+            } : speculation::start);
+            Flux<ChatResponse> chatResponses = ReActAgentObservations.observe(modelObservation,
+                    chatClientRequestSpec.stream().chatResponse());
+            Flux<ReActAgentEvent> textParts = iterateResponseParts(chatResponses, accumulator);
+            if (textPartCoalescer != null) {
+                textParts = textPartCoalescer.coalesce(textParts);
+            }
+            Flux<ReActAgentEvent> events = textParts
+                    .concatWith(Flux.defer(() -> {
+                        AssistantMessage assistantMessage = accumulator.toAssistantMessage();
+                        return saveAssistantMessage(context, assistantMessage)
+                                .concatWith(usageEvent(context, accumulator, iteration));
+                    }));
+            return speculation == null ? events
+                    : events.doOnCancel(speculation::cancel).doOnError(e -> speculation.cancel());
+        }
+        context.speculation = null;
+        accumulator.reset(toolCall -> {
         });
+        return blocking(() -> modelObservation.observe(() -> chatClientRequestSpec.call().chatResponse()))
+                .switchIfEmpty(Mono.error(() -> new IllegalStateException("chatResponse is null")))
+                .flatMapMany(chatResponse -> {
+                    accumulator.recordMetadata(chatResponse);
+                    return saveAssistantMessage(context, chatResponse.getResult().getOutput())
+                            .concatWith(usageEvent(context, accumulator, iteration));
+                });
+    }
+
+    /**
+     * 累计本次大模型调用的token用量和耗时并通知监听器，开启统计事件时发送UsageEvent
+     */
+    private static Flux<ReActAgentEvent> usageEvent(RunContext context, AssistantMessageAccumulator accumulator,
+            int iteration) {
+        return Flux.defer(() -> {
+            long latencyNanos = accumulator.endNanos - accumulator.startNanos;
+            context.modelNanos += latencyNanos;
+            context.promptTokens += accumulator.promptTokens == null ? 0 : accumulator.promptTokens;
+            context.completionTokens += accumulator.completionTokens == null ? 0 : accumulator.completionTokens;
+            accumulator.jfrEvent.commit(context.options, iteration, accumulator.model,
+                    accumulator.firstTokenNanos == 0 ? 0 : accumulator.firstTokenNanos - accumulator.startNanos,
+                    accumulator.promptTokens, accumulator.completionTokens, context.lastAssistantMessage);
+            if (context.listener != null) {
+                context.listener.onModelCallEnd(context.options, iteration, accumulator.model,
+                        accumulator.promptTokens, accumulator.completionTokens,
+                        accumulator.firstTokenNanos == 0 ? -1 : accumulator.firstTokenNanos - accumulator.startNanos,
+                        latencyNanos);
+            }
+            if (!context.options.isEnableTelemetryEvents()) {
+                return Flux.empty();
+            }
+            Duration timeToFirstToken = accumulator.firstTokenNanos == 0 ? null
+                    : Duration.ofNanos(accumulator.firstTokenNanos - accumulator.startNanos);
+            return Flux.just(new UsageEvent(iteration, accumulator.model, accumulator.promptTokens,
+                    accumulator.completionTokens, accumulator.finishReason, timeToFirstToken,
+                    Duration.ofNanos(latencyNanos)));
+        });
+    }
+
+    private Flux<ReActAgentEvent> saveAssistantMessage(RunContext context, AssistantMessage assistantMessage) {
+        context.lastAssistantMessage = assistantMessage;
+        return saveAndEmitMessages(context, List.of(assistantMessage));
+    }
+
+    /**
+     * 执行AssistantMessage中的ToolCall。speculation不为null时，使用流式响应期间已经开始的推测执行结果
+     */
+    private Flux<ReActAgentEvent> executeToolCalls(RunContext context, Prompt prompt,
+            AssistantMessage assistantMessage, SpeculativeToolExecution speculation, int iteration) {
+        ToolCallingManager manager = context.toolCallingManager(toolCallingManager);
+        Mono<ToolExecutionResult> toolExecution = speculation == null
+                ? blocking(() -> manager.executeToolCalls(prompt,
+                        buildResponseFromAssistantMessage(assistantMessage)))
+                : blocking(() -> speculation.executeToolCalls(assistantMessage)).doOnCancel(speculation::cancel);
+        List<AssistantMessage.ToolCall> toolCalls = assistantMessage.getToolCalls();
+        return telemetryEvents(context, () -> toolCalls.stream()
+                .map(toolCall -> (ReActAgentEvent) new ToolCallStartEvent(iteration, toolCall.id(), toolCall.name()))
+                .toList())
+                .concatWith(toolExecution.flatMapMany(toolExecutionResult -> {
+                    List<Message> conversationHistory = toolExecutionResult.conversationHistory();
+                    // conversationHistory = prompt中的消息 + assistantMessage + 工具调用结果
+                    List<Message> toolCallResults = conversationHistory
+                            .subList(prompt.getInstructions().size() + 1, conversationHistory.size());
+                    context.conversation = conversationHistory;
+                    return telemetryEvents(context, () -> toolCalls.stream()
+                            .map(toolCall -> (ReActAgentEvent) new ToolCallEndEvent(iteration, toolCall.id(),
+                                    toolCall.name(), context.toolCallLatency(toolCall)))
+                            .toList())
+                            .concatWith(saveAndEmitMessages(context, toolCallResults));
+                }));
+    }
+
+    private static Flux<ReActAgentEvent> telemetryEvents(RunContext context,
+            Supplier<List<ReActAgentEvent>> events) {
+        return Flux.defer(() -> context.options.isEnableTelemetryEvents() ? Flux.fromIterable(events.get())
+                : Flux.empty());
     }
 
     private static ChatResponse buildResponseFromAssistantMessage(AssistantMessage firstMessage) {
@@ -154,23 +429,45 @@ class DefaultReActAgent implements ReActAgent {
                 .generations(List.of(new Generation(firstMessage))).build();
     }
 
-    private static AssistantMessage iterateResponseParts(FluxSink<ReActAgentEvent> sink,
-            Flux<ChatResponse> chatResponseFlux) {
-        StringBuilder accumulatedText = new StringBuilder();
-        List<AssistantMessage.ToolCall> toolCalls = new ArrayList<>();
-        chatResponseFlux.doOnNext(partResponse -> {
+    private static Flux<ReActAgentEvent> iterateResponseParts(Flux<ChatResponse> chatResponseFlux,
+            AssistantMessageAccumulator accumulator) {
+        return chatResponseFlux.<ReActAgentEvent>handle((partResponse, sink) -> {
+            // 用量通常在最后一个片段中返回，该片段可能没有result
+            accumulator.recordMetadata(partResponse);
+            if (partResponse.getResult() == null) {
+                return;
+            }
             AssistantMessage output = partResponse.getResult().getOutput();
             String text = output.getText();
-            if (text != null && !text.isEmpty()) {
-                accumulatedText.append(text);
+            boolean hasText = text != null && !text.isEmpty();
+            if (accumulator.firstTokenNanos == 0 && (hasText || partResponse.hasToolCalls())) {
+                accumulator.firstTokenNanos = System.nanoTime();
+            }
+            if (hasText) {
+                accumulator.text.append(text);
                 sink.next(new AssistantTextPartEvent(text));
             }
             if (partResponse.hasToolCalls()) {
-                toolCalls.addAll(output.getToolCalls());
+                for (AssistantMessage.ToolCall toolCall : output.getToolCalls()) {
+                    accumulator.toolCalls.append(toolCall);
+                }
             }
-        }).blockLast();
-        String text = accumulatedText.toString();
-        return new AssistantMessage(text, Map.of(), toolCalls);
+        }).doOnComplete(accumulator::markEnd);
+    }
+
+    /**
+     * 在{@link #BLOCKING_SCHEDULER}上执行阻塞调用。取消订阅时会中断正在执行的线程，用于大模型调用和工具调用。
+     */
+    private static <T> Mono<T> blocking(Callable<T> callable) {
+        return Mono.fromCallable(callable).subscribeOn(BLOCKING_SCHEDULER);
+    }
+
+    /**
+     * 在{@link #BLOCKING_SCHEDULER}上执行保存器的写入。取消订阅时不会中断已经开始的写入，
+     * 保证消息要么完整保存、要么没有保存。
+     */
+    private static <T> Mono<T> uninterruptible(Supplier<T> supplier) {
+        return Mono.fromFuture(() -> CompletableFuture.supplyAsync(supplier, BLOCKING_SCHEDULER::schedule), true);
     }
 
     private ChatClient.ChatClientRequestSpec prepareChatClient(RunAgentOptions options, Prompt prompt) {
@@ -178,14 +475,33 @@ class DefaultReActAgent implements ReActAgent {
                 .toolContext(options.getContext());
     }
 
-    private String saveAndSinkMessage(String threadId, Message message, String previousMessageId,
-            FluxSink<ReActAgentEvent> sink) {
-        String id = IdGenerator.generateId();
-        if (branchMessageSaver != null) {
-            branchMessageSaver.save(threadId, new BranchMessageItem(message, id, previousMessageId, Map.of()));
-        }
-        sink.next(new LlmMessageEvent(message, id));
-        return id;
+    /**
+     * 保存多条连续的消息，然后依次发送对应的事件。多条消息使用一次saveAll保存。
+     */
+    private Flux<ReActAgentEvent> saveAndEmitMessages(RunContext context, List<Message> messages) {
+        return Flux.defer(() -> {
+            List<BranchMessageItem> branchMessageItems = new ArrayList<>(messages.size());
+            List<ReActAgentEvent> events = new ArrayList<>(messages.size());
+            for (Message message : messages) {
+                String id = IdGenerator.generateId();
+                branchMessageItems.add(new BranchMessageItem(message, id, context.previousMessageId, Map.of()));
+                context.previousMessageId = id;
+                events.add(new LlmMessageEvent(message, id));
+            }
+            if (branchMessageSaver == null || branchMessageItems.isEmpty()) {
+                return Flux.fromIterable(events);
+            }
+            String threadId = context.options.getThreadId();
+            return uninterruptible(() -> {
+                if (branchMessageItems.size() == 1) {
+                    observeSaver(context, "save",
+                            () -> branchMessageSaver.save(threadId, branchMessageItems.getFirst()));
+                } else {
+                    observeSaver(context, "saveAll", () -> branchMessageSaver.saveAll(threadId, branchMessageItems));
+                }
+                return events;
+            }).flatMapMany(Flux::fromIterable);
+        });
     }
 
     private static List<Message> contactMessages(Message systemMessage, List<Message> messageHistory,
@@ -211,15 +527,68 @@ class DefaultReActAgent implements ReActAgent {
         return SystemMessage.builder().text(systemPrompt).build();
     }
 
-    private List<Message> fetchMessageHistory(RunAgentOptions options) {
+    private <T> T observeSaver(RunContext context, String method, Supplier<T> call) {
+        return ReActAgentObservations.saverCall(observationRegistry, context.currentObservation(), branchMessageSaver,
+                method, context.options.getThreadId()).observe(call);
+    }
+
+    private void observeSaver(RunContext context, String method, Runnable call) {
+        ReActAgentObservations.saverCall(observationRegistry, context.currentObservation(), branchMessageSaver,
+                method, context.options.getThreadId()).observe(call);
+    }
+
+    private List<Message> fetchMessageHistory(RunContext context) {
+        RunAgentOptions options = context.options;
         if (branchMessageSaver == null) {
             return List.of();
         }
         if (options.getThreadId() == null) {
             throw new IllegalArgumentException("Thread id is required when message saver is provided");
         }
-        return branchMessageSaver.getLatestMessages(options.getThreadId(), options.getMessageHistoryWindowSize(),
-                options.getPreviousMessageId());
+        if (options.getMessageHistoryTokenBudget() != null) {
+            return fetchMessageHistoryWithinTokenBudget(context);
+        }
+        return observeSaver(context, "getLatestMessages", () -> branchMessageSaver.getLatestMessages(
+                options.getThreadId(), options.getMessageHistoryWindowSize(), options.getPreviousMessageId()));
+    }
+
+    /**
+     * 从最近的消息开始沿消息链向前分批读取，直到下一条消息会超出token预算或者达到消息数量上限。
+     * 每批读取的数量逐次翻倍，较长的历史也只需要少量几次读取。
+     */
+    private List<Message> fetchMessageHistoryWithinTokenBudget(RunContext context) {
+        RunAgentOptions options = context.options;
+        int tokenBudget = options.getMessageHistoryTokenBudget();
+        Integer windowSize = options.getMessageHistoryWindowSize();
+        int maxCount = windowSize == null ? Integer.MAX_VALUE : windowSize;
+        List<Message> reversedHistory = new ArrayList<>();
+        int usedTokens = 0;
+        String lastMessageId = options.getPreviousMessageId();
+        int pageSize = INITIAL_HISTORY_PAGE_SIZE;
+        while (reversedHistory.size() < maxCount) {
+            int requested = Math.min(pageSize, maxCount - reversedHistory.size());
+            String pageLastMessageId = lastMessageId;
+            List<BranchMessageItem> page = observeSaver(context, "getLatestMessageItems",
+                    () -> branchMessageSaver.getLatestMessageItems(options.getThreadId(), requested,
+                            pageLastMessageId));
+            for (BranchMessageItem item : page.reversed()) {
+                int tokens = messageTokenCounter.count(item);
+                if (usedTokens + tokens > tokenBudget) {
+                    return reversedHistory.reversed();
+                }
+                usedTokens += tokens;
+                reversedHistory.add(item.message());
+            }
+            if (page.size() < requested) {
+                break;
+            }
+            lastMessageId = page.getFirst().previousId();
+            if (lastMessageId == null || lastMessageId.isEmpty()) {
+                break;
+            }
+            pageSize = Math.min(pageSize * 2, MAX_HISTORY_PAGE_SIZE);
+        }
+        return reversedHistory.reversed();
     }
 
     private static ToolCallingChatOptions buildChatOptions(RunAgentOptions runAgentOptions) {
@@ -232,10 +601,190 @@ class DefaultReActAgent implements ReActAgent {
         return ret;
     }
 
+    /**
+     * 单次运行的可变状态。ReAct循环中的各步骤是串行执行的，因此无需额外同步。
+     */
+    private static final class RunContext {
+        private final RunAgentOptions options;
+        private final ToolCallingChatOptions chatOptions;
+        private List<Message> conversation;
+        private String previousMessageId;
+        private AssistantMessage lastAssistantMessage;
+        private int completedIterations;
+        // 每次流式调用大模型前重置，复用其中的缓冲区
+        private final AssistantMessageAccumulator accumulator = new AssistantMessageAccumulator();
+        private SpeculativeToolExecution speculation;
+        // 需要包裹工具调用时（统计事件、监听器、Observation或JFR）使用的带拦截器的ToolCallingManager，否则为null
+        private ToolCallingManager toolCallingManager;
+        // 工具调用的耗时: toolCallId -> 纳秒。工具可能在其它线程上并行执行
+        private final Map<String, Long> toolCallNanos = new ConcurrentHashMap<>();
+        private final long startNanos = System.nanoTime();
+        private long promptTokens;
+        private long completionTokens;
+        private long modelNanos;
+        private long toolNanos;
+        private final ObservationRegistry observationRegistry;
+        // Builder和Reactor Context中的监听器，都没有时为null
+        private final ReActAgentListener listener;
+        private Observation runObservation;
+        // 工具调用和推测执行可能在其它线程上读取当前的迭代
+        private volatile int iteration;
+        private volatile Observation iterationObservation;
+
+        private RunContext(RunAgentOptions options, ToolCallingChatOptions chatOptions,
+                ObservationRegistry observationRegistry, ReActAgentListener listener) {
+            this.options = options;
+            this.chatOptions = chatOptions;
+            this.previousMessageId = options.getPreviousMessageId();
+            this.observationRegistry = observationRegistry;
+            this.listener = listener;
+        }
+
+        /**
+         * 正在进行的迭代的Observation，不在迭代中时为整个运行的Observation
+         */
+        private Observation currentObservation() {
+            Observation observation = iterationObservation;
+            return observation != null ? observation : runObservation;
+        }
+
+        /**
+         * 包裹每个工具调用：在执行工具的线程上打开工具调用的Observation并记录JFR事件，开启统计事件或者有监听器时记录耗时
+         */
+        private ToolExecutionResult interceptToolCall(AssistantMessage.ToolCall toolCall,
+                Supplier<ToolExecutionResult> call) {
+            int currentIteration = iteration;
+            Observation observation = ReActAgentObservations.toolCall(observationRegistry, currentObservation(),
+                    options, currentIteration, toolCall);
+            Supplier<ToolExecutionResult> observedCall = () -> {
+                ToolCallJfrEvent jfrEvent = new ToolCallJfrEvent();
+                jfrEvent.begin();
+                ToolExecutionResult result = null;
+                try {
+                    result = observation.observe(call);
+                    return result;
+                } finally {
+                    jfrEvent.commit(options, currentIteration, toolCall, result);
+                }
+            };
+            return options.isEnableTelemetryEvents() || listener != null
+                    ? timeToolCall(toolCall, currentIteration, observedCall) : observedCall.get();
+        }
+
+        private ToolCallingManager toolCallingManager(ToolCallingManager defaultManager) {
+            return toolCallingManager != null ? toolCallingManager : defaultManager;
+        }
+
+        private ToolExecutionResult timeToolCall(AssistantMessage.ToolCall toolCall, int currentIteration,
+                Supplier<ToolExecutionResult> call) {
+            long start = System.nanoTime();
+            try {
+                return call.get();
+            } finally {
+                long nanos = System.nanoTime() - start;
+                // 只有开启统计事件时才会由ToolCallEndEvent取走
+                if (options.isEnableTelemetryEvents()) {
+                    toolCallNanos.put(String.valueOf(toolCall.id()), nanos);
+                }
+                if (listener != null) {
+                    listener.onToolCallEnd(options, currentIteration, toolCall.name(), nanos);
+                }
+            }
+        }
+
+        private Duration toolCallLatency(AssistantMessage.ToolCall toolCall) {
+            Long nanos = toolCallNanos.remove(String.valueOf(toolCall.id()));
+            if (nanos == null) {
+                return Duration.ZERO;
+            }
+            toolNanos += nanos;
+            return Duration.ofNanos(nanos);
+        }
+    }
+
+    /**
+     * 累积流式响应中的文本和ToolCall，ToolCall的参数片段由{@link StreamingToolCallAssembler}组装
+     */
+    private static final class AssistantMessageAccumulator {
+        private final StringBuilder text = new StringBuilder();
+        private final StreamingToolCallAssembler toolCalls = new StreamingToolCallAssembler(
+                toolCall -> this.toolCallListener.accept(toolCall));
+        // ToolCall组装完成时调用，用于推测执行
+        private Consumer<AssistantMessage.ToolCall> toolCallListener;
+        // 本次大模型调用的元数据和耗时
+        private String model;
+        private String finishReason;
+        private Integer promptTokens;
+        private Integer completionTokens;
+        private long startNanos;
+        private long firstTokenNanos;
+        private long endNanos;
+        private ModelCallJfrEvent jfrEvent;
+
+        private AssistantMessage toAssistantMessage() {
+            return new AssistantMessage(text.toString(), Map.of(), toolCalls.finish());
+        }
+
+        private void reset(Consumer<AssistantMessage.ToolCall> toolCallListener) {
+            text.setLength(0);
+            toolCalls.reset();
+            this.toolCallListener = toolCallListener;
+            model = null;
+            finishReason = null;
+            promptTokens = null;
+            completionTokens = null;
+            startNanos = System.nanoTime();
+            firstTokenNanos = 0;
+            endNanos = startNanos;
+            jfrEvent = new ModelCallJfrEvent();
+            jfrEvent.begin();
+        }
+
+        private void markEnd() {
+            endNanos = System.nanoTime();
+            jfrEvent.end();
+        }
+
+        /**
+         * 记录响应中的模型名称、结束原因和token用量，流式响应中后面的片段覆盖前面的片段
+         */
+        private void recordMetadata(ChatResponse chatResponse) {
+            markEnd();
+            ChatResponseMetadata metadata = chatResponse.getMetadata();
+            if (metadata != null) {
+                if (metadata.getModel() != null && !metadata.getModel().isEmpty()) {
+                    model = metadata.getModel();
+                }
+                Usage usage = metadata.getUsage();
+                if (usage != null && !(usage instanceof EmptyUsage)) {
+                    promptTokens = usage.getPromptTokens();
+                    completionTokens = usage.getCompletionTokens();
+                }
+            }
+            Generation result = chatResponse.getResult();
+            if (result != null && result.getMetadata() != null) {
+                String reason = result.getMetadata().getFinishReason();
+                if (reason != null && !reason.isEmpty()) {
+                    finishReason = reason;
+                }
+            }
+        }
+    }
+
     public static class Builder implements ReActAgent.Builder {
         private final ChatClient chatClient;
         private BranchMessageSaver branchMessageSaver;
         private SystemPromptProvider systemPromptProvider;
+        private boolean parallelToolCalls = false;
+        private Executor toolExecutor;
+        private Set<String> serialToolNames = Set.of();
+        private TokenEstimator tokenEstimator = new SimpleTokenEstimator();
+        private int textPartCoalescingBytes;
+        private Duration textPartCoalescingDelay;
+        private boolean speculativeToolExecution = false;
+        private Set<String> sideEffectToolNames = Set.of();
+        private ObservationRegistry observationRegistry = ObservationRegistry.NOOP;
+        private ReActAgentListener listener;
 
         public Builder(ChatClient chatClient) {
             this.chatClient = chatClient;
@@ -258,9 +807,64 @@ class DefaultReActAgent implements ReActAgent {
             return this.systemPromptProvider(new FixedSystemPromptProvider(systemPrompt));
         }
 
+        @Override
+        public Builder parallelToolCalls(boolean parallelToolCalls) {
+            this.parallelToolCalls = parallelToolCalls;
+            return this;
+        }
+
+        @Override
+        public Builder toolExecutor(Executor toolExecutor) {
+            this.toolExecutor = toolExecutor;
+            return this;
+        }
+
+        @Override
+        public Builder serialToolNames(Set<String> serialToolNames) {
+            this.serialToolNames = serialToolNames;
+            return this;
+        }
+
+        @Override
+        public Builder tokenEstimator(TokenEstimator tokenEstimator) {
+            this.tokenEstimator = tokenEstimator;
+            return this;
+        }
+
+        @Override
+        public Builder coalesceTextParts(int maxBytes, Duration maxDelay) {
+            this.textPartCoalescingBytes = maxBytes;
+            this.textPartCoalescingDelay = maxDelay;
+            return this;
+        }
+
+        @Override
+        public Builder speculativeToolExecution(boolean speculativeToolExecution) {
+            this.speculativeToolExecution = speculativeToolExecution;
+            return this;
+        }
+
+        @Override
+        public Builder sideEffectToolNames(Set<String> sideEffectToolNames) {
+            this.sideEffectToolNames = sideEffectToolNames;
+            return this;
+        }
+
+        @Override
+        public Builder observationRegistry(ObservationRegistry observationRegistry) {
+            this.observationRegistry = observationRegistry;
+            return this;
+        }
+
+        @Override
+        public Builder listener(ReActAgentListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
         @Override
         public ReActAgent build() {
-            return new DefaultReActAgent(chatClient, branchMessageSaver, systemPromptProvider);
+            return new DefaultReActAgent(this);
         }
 
     }
@@ -272,4 +876,32 @@ class DefaultReActAgent implements ReActAgent {
         }
         return branchMessageSaver.getAllMessages(threadId);
     }
+
+    @Override
+    public List<BranchMessageNode> getBranchMessageNodes(String threadId) {
+        if (branchMessageSaver == null) {
+            throw new UnsupportedOperationException("Branch message saver is not set. So messages were not saved.");
+        }
+        return branchMessageSaver.getMessageNodes(threadId);
+    }
+
+    @Override
+    public List<BranchMessageItem> getBranchMessagesAfter(String threadId, String afterMessageId, int limit) {
+        if (branchMessageSaver == null) {
+            throw new UnsupportedOperationException("Branch message saver is not set. So messages were not saved.");
+        }
+        return branchMessageSaver.getMessagesAfter(threadId, afterMessageId, limit);
+    }
+
+    /**
+     * 保存器返回的流在阻塞线程池中读取，Flux结束或被取消时关闭
+     */
+    @Override
+    public Flux<BranchMessageItem> streamBranchMessages(String threadId) {
+        if (branchMessageSaver == null) {
+            throw new UnsupportedOperationException("Branch message saver is not set. So messages were not saved.");
+        }
+        return Flux.fromStream(() -> branchMessageSaver.streamAllMessages(threadId))
+                .subscribeOn(BLOCKING_SCHEDULER);
+    }
 }
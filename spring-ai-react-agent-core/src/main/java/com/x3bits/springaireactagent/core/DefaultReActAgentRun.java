@@ -0,0 +1,49 @@
+package com.x3bits.springaireactagent.core;
+
+import com.x3bits.springaireactagent.core.event.ReActAgentEvent;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+class DefaultReActAgentRun implements ReActAgentRun {
+
+    private final String runId;
+
+    private final Flux<ReActAgentEvent> events;
+
+    private final Sinks.One<Boolean> cancelSignal = Sinks.one();
+
+    private volatile boolean done;
+
+    DefaultReActAgentRun(String runId, Flux<ReActAgentEvent> source, int replaySize) {
+        if (replaySize < 0) {
+            throw new IllegalArgumentException("replaySize cannot be negative");
+        }
+        this.runId = runId;
+        // autoConnect(0)立即订阅上游，保证运行只执行一次且不依赖于是否有订阅者
+        this.events = source
+                .takeUntilOther(cancelSignal.asMono())
+                .doFinally(signalType -> done = true)
+                .replay(replaySize)
+                .autoConnect(0);
+    }
+
+    @Override
+    public String getRunId() {
+        return runId;
+    }
+
+    @Override
+    public Flux<ReActAgentEvent> events() {
+        return events;
+    }
+
+    @Override
+    public void cancel() {
+        cancelSignal.tryEmitValue(Boolean.TRUE);
+    }
+
+    @Override
+    public boolean isDone() {
+        return done;
+    }
+}
@@ -16,7 +16,9 @@ class DefaultRunAgentOptions implements RunAgentOptions {
     private final ChatOptions chatOptions;
     private final Map<String, Object> context;
     private final Integer messageHistoryWindowSize;
+    private final Integer messageHistoryTokenBudget;
     private final String threadId;
+    private final boolean enableTelemetryEvents;
 
     private DefaultRunAgentOptions(Builder builder) {
         this.messages = builder.messages;
@@ -26,7 +28,9 @@ class DefaultRunAgentOptions implements RunAgentOptions {
         this.chatOptions = builder.chatOptions;
         this.context = builder.context;
         this.messageHistoryWindowSize = builder.messageHistoryWindowSize;
+        this.messageHistoryTokenBudget = builder.messageHistoryTokenBudget;
         this.threadId = builder.threadId;
+        this.enableTelemetryEvents = builder.enableTelemetryEvents;
     }
 
     @Override
@@ -64,11 +68,21 @@ class DefaultRunAgentOptions implements RunAgentOptions {
         return this.messageHistoryWindowSize;
     }
 
+    @Override
+    public Integer getMessageHistoryTokenBudget() {
+        return this.messageHistoryTokenBudget;
+    }
+
     @Override
     public String getThreadId() {
         return this.threadId;
     }
 
+    @Override
+    public boolean isEnableTelemetryEvents() {
+        return this.enableTelemetryEvents;
+    }
+
     public static class Builder implements RunAgentOptions.Builder {
         private List<Message> messages;
         private String previousMessageId;
@@ -77,7 +91,28 @@ class DefaultRunAgentOptions implements RunAgentOptions {
         private ChatOptions chatOptions;
         private Map<String, Object> context = Map.of();
         private Integer messageHistoryWindowSize = Integer.MAX_VALUE;
+        private Integer messageHistoryTokenBudget;
         private String threadId;
+        private boolean enableTelemetryEvents = false;
+
+        public Builder() {
+        }
+
+        Builder(RunAgentOptions options) {
+            if (options == null) {
+                throw new IllegalArgumentException("options cannot be null");
+            }
+            this.messages = options.getNewMessages();
+            this.previousMessageId = options.getPreviousMessageId();
+            this.enableStream = options.isEnableStream();
+            this.maxIterations = options.getMaxIterations();
+            this.chatOptions = options.getChatOptions();
+            this.context = options.getContext();
+            this.messageHistoryWindowSize = options.getMessageHistoryWindowSize();
+            this.messageHistoryTokenBudget = options.getMessageHistoryTokenBudget();
+            this.threadId = options.getThreadId();
+            this.enableTelemetryEvents = options.isEnableTelemetryEvents();
+        }
 
         @Override
         public RunAgentOptions.Builder newMessages(List<Message> messages) {
@@ -126,12 +161,24 @@ class DefaultRunAgentOptions implements RunAgentOptions {
             return this;
         }
 
+        @Override
+        public RunAgentOptions.Builder messageHistoryTokenBudget(Integer tokenBudget) {
+            this.messageHistoryTokenBudget = tokenBudget;
+            return this;
+        }
+
         @Override
         public RunAgentOptions.Builder threadId(String threadId) {
             this.threadId = threadId;
             return this;
         }
 
+        @Override
+        public RunAgentOptions.Builder enableTelemetryEvents(boolean enableTelemetryEvents) {
+            this.enableTelemetryEvents = enableTelemetryEvents;
+            return this;
+        }
+
         @Override
         public RunAgentOptions build() {
             return new DefaultRunAgentOptions(this);
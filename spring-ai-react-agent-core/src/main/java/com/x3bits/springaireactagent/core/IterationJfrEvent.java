@@ -0,0 +1,36 @@
+package com.x3bits.springaireactagent.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * ReAct循环中一轮迭代的JFR事件，包含大模型调用、工具调用以及消息的保存
+ */
+@Name("com.x3bits.springaireactagent.Iteration")
+@Label("Agent Iteration")
+@Description("ReAct循环中的一轮迭代")
+@Category({"Spring AI ReAct Agent", "Agent"})
+@Enabled(false)
+@StackTrace(false)
+final class IterationJfrEvent extends Event {
+
+    @Label("Thread Id")
+    String threadId;
+
+    @Label("Iteration")
+    int iteration;
+
+    void commit(RunAgentOptions options, int iteration) {
+        if (!shouldCommit()) {
+            return;
+        }
+        this.threadId = options.getThreadId();
+        this.iteration = iteration;
+        commit();
+    }
+}
@@ -0,0 +1,70 @@
+package com.x3bits.springaireactagent.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import org.springframework.ai.chat.messages.AssistantMessage;
+
+/**
+ * 一次大模型调用的JFR事件，从发起请求到收到完整的响应
+ */
+@Name("com.x3bits.springaireactagent.ModelCall")
+@Label("Model Call")
+@Description("一次大模型调用")
+@Category({"Spring AI ReAct Agent", "Agent"})
+@Enabled(false)
+@StackTrace(false)
+final class ModelCallJfrEvent extends Event {
+
+    @Label("Thread Id")
+    String threadId;
+
+    @Label("Iteration")
+    int iteration;
+
+    @Label("Stream")
+    boolean stream;
+
+    @Label("Model")
+    String model;
+
+    @Label("Time To First Token")
+    @Description("流式调用收到第一个文本或ToolCall片段的耗时，非流式调用为0")
+    @Timespan(Timespan.NANOSECONDS)
+    long timeToFirstToken;
+
+    @Label("Prompt Tokens")
+    int promptTokens;
+
+    @Label("Completion Tokens")
+    int completionTokens;
+
+    @Label("Response Length")
+    @Description("响应文本和ToolCall参数的字符数")
+    int responseLength;
+
+    void commit(RunAgentOptions options, int iteration, String model, long timeToFirstTokenNanos,
+            Integer promptTokens, Integer completionTokens, AssistantMessage response) {
+        if (!shouldCommit()) {
+            return;
+        }
+        this.threadId = options.getThreadId();
+        this.iteration = iteration;
+        this.stream = options.isEnableStream();
+        this.model = model;
+        this.timeToFirstToken = timeToFirstTokenNanos;
+        this.promptTokens = promptTokens == null ? 0 : promptTokens;
+        this.completionTokens = completionTokens == null ? 0 : completionTokens;
+        int length = response.getText() == null ? 0 : response.getText().length();
+        for (AssistantMessage.ToolCall toolCall : response.getToolCalls()) {
+            length += toolCall.arguments() == null ? 0 : toolCall.arguments().length();
+        }
+        this.responseLength = length;
+        commit();
+    }
+}
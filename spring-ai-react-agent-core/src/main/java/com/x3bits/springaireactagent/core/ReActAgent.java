@@ -3,18 +3,90 @@ package com.x3bits.springaireactagent.core;
 import com.x3bits.springaireactagent.core.event.ReActAgentEvent;
 import com.x3bits.springaireactagent.core.memory.BranchMessageSaver;
 import com.x3bits.springaireactagent.core.message.BranchMessageItem;
+import com.x3bits.springaireactagent.core.message.BranchMessageNode;
 import com.x3bits.springaireactagent.core.prompt.SystemPromptProvider;
+import com.x3bits.springaireactagent.core.token.SimpleTokenEstimator;
+import com.x3bits.springaireactagent.core.token.TokenEstimator;
+import com.x3bits.springaireactagent.core.utils.IdGenerator;
+import io.micrometer.observation.ObservationRegistry;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.stream.IntStream;
 
 import org.springframework.ai.chat.client.ChatClient;
 import reactor.core.publisher.Flux;
 
 public interface ReActAgent {
+    /**
+     * 运行Agent，返回的Flux被订阅时才开始执行，每次订阅都会重新执行一次。需要多个订阅者共享同一次执行时使用
+     * {@link #start(RunAgentOptions)}
+     * <p>
+     * 取消订阅会停止本次运行：正在进行的流式大模型调用被取消，阻塞的大模型调用和工具调用所在的线程被中断，
+     * 不再开始新的迭代。已经开始的消息写入会继续完成，未完成的流式响应和工具调用结果不会保存。
+     * 因此保存的消息链总是以完整的消息结尾；如果以带ToolCall的AssistantMessage结尾，
+     * 下一次从该消息继续运行时会先执行这些ToolCall。
+     * </p>
+     */
     Flux<ReActAgentEvent> run(RunAgentOptions options);
 
+    /**
+     * 立即开始运行Agent，返回可以被多个订阅者共享的运行句柄，使用默认大小的回放缓冲区
+     */
+    default ReActAgentRun start(RunAgentOptions options) {
+        return start(options, ReActAgentRun.DEFAULT_REPLAY_SIZE);
+    }
+
+    /**
+     * 立即开始运行Agent，返回可以被多个订阅者共享的运行句柄
+     *
+     * @param replaySize 回放给晚到订阅者的最近事件数量
+     */
+    default ReActAgentRun start(RunAgentOptions options, int replaySize) {
+        return new DefaultReActAgentRun(IdGenerator.generateId(), run(options), replaySize);
+    }
+
     List<BranchMessageItem> getBranchMessages(String threadId);
 
+    /**
+     * 获取线程中所有消息的结构，不读取消息内容，用于展示消息树
+     */
+    default List<BranchMessageNode> getBranchMessageNodes(String threadId) {
+        return getBranchMessages(threadId).stream().map(BranchMessageNode::of).toList();
+    }
+
+    /**
+     * 分页获取线程中的消息，顺序与{@link #getBranchMessages(String)}相同
+     *
+     * @param afterMessageId 上一页最后一条消息的标识符，为null时从第一条消息开始
+     * @param limit          最多返回的消息数量
+     * @see BranchMessageSaver#getMessagesAfter(String, String, int)
+     */
+    default List<BranchMessageItem> getBranchMessagesAfter(String threadId, String afterMessageId, int limit) {
+        if (limit <= 0) {
+            return List.of();
+        }
+        List<BranchMessageItem> items = getBranchMessages(threadId);
+        // 找不到游标时from等于列表长度，返回空列表
+        int from = afterMessageId == null ? 0 : IntStream.range(0, items.size())
+                .filter(i -> afterMessageId.equals(items.get(i).id()))
+                .findFirst()
+                .orElse(items.size() - 1) + 1;
+        return List.copyOf(items.subList(from, Math.min(items.size(), from + limit)));
+    }
+
+    /**
+     * 以Flux的形式获取线程中的所有消息，顺序与{@link #getBranchMessages(String)}相同。
+     * 订阅时才开始读取，取消订阅时释放读取消息占用的资源
+     *
+     * @see BranchMessageSaver#streamAllMessages(String)
+     */
+    default Flux<BranchMessageItem> streamBranchMessages(String threadId) {
+        return Flux.defer(() -> Flux.fromIterable(getBranchMessages(threadId)));
+    }
+
     static Builder builder(ChatClient chatClient) {
         return new DefaultReActAgent.Builder(chatClient);
     }
@@ -26,6 +98,54 @@ public interface ReActAgent {
 
         DefaultReActAgent.Builder systemPrompt(String systemPrompt);
 
+        /**
+         * 是否并行执行同一条AssistantMessage中的多个ToolCall，默认不开启
+         */
+        DefaultReActAgent.Builder parallelToolCalls(boolean parallelToolCalls);
+
+        /**
+         * 并行执行工具调用所使用的Executor，默认每个工具调用使用一个虚拟线程
+         */
+        DefaultReActAgent.Builder toolExecutor(Executor toolExecutor);
+
+        /**
+         * 开启并行执行后，仍需按顺序依次执行的工具名称。这些工具也不会推测执行
+         */
+        DefaultReActAgent.Builder serialToolNames(Set<String> serialToolNames);
+
+        /**
+         * 按token预算截取历史消息时使用的token估算器，默认使用{@link SimpleTokenEstimator}
+         */
+        DefaultReActAgent.Builder tokenEstimator(TokenEstimator tokenEstimator);
+
+        /**
+         * 流式输出时合并连续的文本片段：第一个片段立即发送，之后的片段累积到maxBytes字节或者等待maxDelay后
+         * 合并成一个AssistantTextPartEvent发送，以减少事件和网络帧的数量。默认不合并
+         */
+        DefaultReActAgent.Builder coalesceTextParts(int maxBytes, Duration maxDelay);
+
+        /**
+         * 是否在流式输出时推测执行工具调用：ToolCall的参数组装完整后立即开始执行，与大模型继续生成的内容同时进行，
+         * 执行结果在大模型响应结束后才保存和发送。只对开启流式输出的运行生效，默认不开启
+         */
+        DefaultReActAgent.Builder speculativeToolExecution(boolean speculativeToolExecution);
+
+        /**
+         * 有副作用、不能推测执行的工具名称。大模型最终可能不会返回推测执行过的ToolCall，这些工具只在响应结束后执行
+         */
+        DefaultReActAgent.Builder sideEffectToolNames(Set<String> sideEffectToolNames);
+
+        /**
+         * 记录运行、迭代、大模型调用、工具调用和保存器调用的Observation，名称和标签见{@link ReActAgentObservations}。
+         * 默认不记录
+         */
+        DefaultReActAgent.Builder observationRegistry(ObservationRegistry observationRegistry);
+
+        /**
+         * 监听每次运行的迭代、大模型调用和工具调用，不需要打开统计事件。默认没有监听器
+         */
+        DefaultReActAgent.Builder listener(ReActAgentListener listener);
+
         ReActAgent build();
     }
 }
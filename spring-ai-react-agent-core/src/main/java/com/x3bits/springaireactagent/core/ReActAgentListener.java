@@ -0,0 +1,44 @@
+package com.x3bits.springaireactagent.core;
+
+/**
+ * 监听Agent运行过程的回调，可用于记录指标等。不需要打开统计事件，也不会改变run返回的事件
+ * <p>
+ * 通过{@link ReActAgent.Builder#listener(ReActAgentListener)}注册时对所有运行生效；
+ * 放在run返回的Flux的Reactor Context中（key为{@link #CONTEXT_KEY}）时只对该次运行生效，用于包装已经创建好的Agent。
+ * 两者同时存在时都会被调用。
+ * </p>
+ * <p>
+ * 并行执行的工具调用在各自的线程上回调{@link #onToolCallEnd}，实现需要线程安全。回调中不应执行耗时的操作。
+ * </p>
+ */
+public interface ReActAgentListener {
+
+    /**
+     * Reactor Context中单次运行的监听器的key
+     */
+    Object CONTEXT_KEY = ReActAgentListener.class;
+
+    /**
+     * 一轮迭代开始，iteration从1开始
+     */
+    default void onIterationStart(RunAgentOptions options, int iteration) {
+    }
+
+    /**
+     * 一次大模型调用结束
+     *
+     * @param promptTokens          输入的token数量，大模型没有返回用量时为null
+     * @param completionTokens      输出的token数量，大模型没有返回用量时为null
+     * @param timeToFirstTokenNanos 流式调用首个token的耗时，非流式调用或者没有返回内容时为-1
+     * @param latencyNanos          大模型调用的耗时
+     */
+    default void onModelCallEnd(RunAgentOptions options, int iteration, String model, Integer promptTokens,
+            Integer completionTokens, long timeToFirstTokenNanos, long latencyNanos) {
+    }
+
+    /**
+     * 一个工具调用结束，在执行工具的线程上调用
+     */
+    default void onToolCallEnd(RunAgentOptions options, int iteration, String toolName, long latencyNanos) {
+    }
+}
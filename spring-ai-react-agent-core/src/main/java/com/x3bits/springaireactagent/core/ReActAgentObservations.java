@@ -0,0 +1,131 @@
+package com.x3bits.springaireactagent.core;
+
+import com.x3bits.springaireactagent.core.memory.BranchMessageSaver;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.contextpropagation.ObservationThreadLocalAccessor;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import reactor.core.publisher.Flux;
+import reactor.util.context.ContextView;
+
+/**
+ * ReActAgent产生的Micrometer Observation的名称和标签
+ * <p>
+ * 每次运行产生一个{@link #RUN}，其下依次是每轮迭代的{@link #ITERATION}，迭代中包含大模型调用{@link #MODEL_CALL}、
+ * 工具调用{@link #TOOL_CALL}和保存器调用{@link #SAVER_CALL}。读取历史消息、从中断处继续执行的工具调用以及
+ * 运行结束时的flush不属于任何迭代，直接挂在{@link #RUN}下。
+ * 迭代序号、工具名称等取值有限的标签是低基数标签，线程id和ToolCall id是高基数标签，只出现在链路中，不会成为指标的维度。
+ * </p>
+ * <p>
+ * 工具调用和保存器调用在执行它们的线程上打开Observation的scope，工具内部发起的HTTP、数据库等调用因此能关联到本次运行的链路。
+ * </p>
+ */
+public final class ReActAgentObservations {
+
+    public static final String RUN = "react.agent.observation.run";
+
+    public static final String ITERATION = "react.agent.observation.iteration";
+
+    public static final String MODEL_CALL = "react.agent.observation.model";
+
+    public static final String TOOL_CALL = "react.agent.observation.tool";
+
+    public static final String SAVER_CALL = "react.agent.observation.saver";
+
+    public static final String THREAD_ID = "react.agent.thread.id";
+
+    public static final String ITERATION_NUMBER = "react.agent.iteration";
+
+    public static final String STREAM = "react.agent.stream";
+
+    public static final String TOOL_NAME = "react.agent.tool.name";
+
+    public static final String TOOL_CALL_ID = "react.agent.tool.call.id";
+
+    public static final String SAVER_IMPLEMENTATION = "react.agent.saver.implementation";
+
+    public static final String SAVER_METHOD = "react.agent.saver.method";
+
+    private ReActAgentObservations() {
+    }
+
+    /**
+     * 创建一次运行的Observation。父Observation优先取订阅方Reactor Context中的Observation，其次是当前线程上的Observation
+     */
+    static Observation run(ObservationRegistry registry, ContextView contextView, RunAgentOptions options) {
+        if (registry.isNoop()) {
+            return Observation.NOOP;
+        }
+        Observation parent = contextView.getOrDefault(ObservationThreadLocalAccessor.KEY, null);
+        return Observation.createNotStarted(RUN, registry)
+                .parentObservation(parent != null ? parent : registry.getCurrentObservation())
+                .lowCardinalityKeyValue(STREAM, String.valueOf(options.isEnableStream()))
+                .highCardinalityKeyValue(THREAD_ID, String.valueOf(options.getThreadId()));
+    }
+
+    static Observation iteration(ObservationRegistry registry, Observation parent, RunAgentOptions options,
+            int iteration) {
+        if (registry.isNoop()) {
+            return Observation.NOOP;
+        }
+        return Observation.createNotStarted(ITERATION, registry)
+                .parentObservation(parent)
+                .lowCardinalityKeyValue(ITERATION_NUMBER, String.valueOf(iteration))
+                .highCardinalityKeyValue(THREAD_ID, String.valueOf(options.getThreadId()));
+    }
+
+    static Observation modelCall(ObservationRegistry registry, Observation parent, RunAgentOptions options,
+            int iteration) {
+        if (registry.isNoop()) {
+            return Observation.NOOP;
+        }
+        return Observation.createNotStarted(MODEL_CALL, registry)
+                .parentObservation(parent)
+                .lowCardinalityKeyValue(ITERATION_NUMBER, String.valueOf(iteration))
+                .lowCardinalityKeyValue(STREAM, String.valueOf(options.isEnableStream()))
+                .highCardinalityKeyValue(THREAD_ID, String.valueOf(options.getThreadId()));
+    }
+
+    static Observation toolCall(ObservationRegistry registry, Observation parent, RunAgentOptions options,
+            int iteration, AssistantMessage.ToolCall toolCall) {
+        if (registry.isNoop()) {
+            return Observation.NOOP;
+        }
+        return Observation.createNotStarted(TOOL_CALL, registry)
+                .parentObservation(parent)
+                .lowCardinalityKeyValue(ITERATION_NUMBER, String.valueOf(iteration))
+                .lowCardinalityKeyValue(TOOL_NAME, String.valueOf(toolCall.name()))
+                .highCardinalityKeyValue(TOOL_CALL_ID, String.valueOf(toolCall.id()))
+                .highCardinalityKeyValue(THREAD_ID, String.valueOf(options.getThreadId()));
+    }
+
+    static Observation saverCall(ObservationRegistry registry, Observation parent, BranchMessageSaver saver,
+            String method, String threadId) {
+        if (registry.isNoop()) {
+            return Observation.NOOP;
+        }
+        return Observation.createNotStarted(SAVER_CALL, registry)
+                .parentObservation(parent)
+                .lowCardinalityKeyValue(SAVER_IMPLEMENTATION, saver.getClass().getSimpleName())
+                .lowCardinalityKeyValue(SAVER_METHOD, method)
+                .highCardinalityKeyValue(THREAD_ID, String.valueOf(threadId));
+    }
+
+    /**
+     * 在Observation中执行flux：订阅时开始，结束、出错或取消时停止。上游可以从Reactor Context中取得该Observation。
+     * 在向下游发送结束信号之前停止，避免与之后重新订阅产生的Observation交叠
+     */
+    static <T> Flux<T> observe(Observation observation, Flux<T> flux) {
+        if (observation.isNoop()) {
+            return flux;
+        }
+        return Flux.defer(() -> {
+            observation.start();
+            return flux
+                    .doOnError(observation::error)
+                    .doOnTerminate(observation::stop)
+                    .doOnCancel(observation::stop)
+                    .contextWrite(context -> context.put(ObservationThreadLocalAccessor.KEY, observation));
+        });
+    }
+}
@@ -0,0 +1,37 @@
+package com.x3bits.springaireactagent.core;
+
+import com.x3bits.springaireactagent.core.event.ReActAgentEvent;
+import reactor.core.publisher.Flux;
+
+/**
+ * 一次已经开始执行的Agent运行
+ * <p>
+ * 与{@link ReActAgent#run(RunAgentOptions)}返回的Flux不同，运行在创建时立即开始并且只执行一次，
+ * 任意数量的订阅者都共享同一次执行的事件。最近的若干个事件保存在有界的回放缓冲区中，
+ * 晚到的订阅者会先收到缓冲区中的事件，再收到后续的实时事件。
+ * </p>
+ */
+public interface ReActAgentRun {
+
+    int DEFAULT_REPLAY_SIZE = 256;
+
+    /**
+     * 获取本次运行的唯一标识
+     */
+    String getRunId();
+
+    /**
+     * 获取本次运行的事件流，订阅和取消订阅都不会影响运行本身
+     */
+    Flux<ReActAgentEvent> events();
+
+    /**
+     * 取消本次运行，正在进行的大模型调用和工具调用会被中断，所有订阅者的事件流正常结束
+     */
+    void cancel();
+
+    /**
+     * 本次运行是否已经结束（完成、失败或被取消）
+     */
+    boolean isDone();
+}
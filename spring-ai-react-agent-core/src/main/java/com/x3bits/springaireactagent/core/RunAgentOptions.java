@@ -21,12 +21,35 @@ public interface RunAgentOptions {
 
     Integer getMessageHistoryWindowSize();
 
+    /**
+     * 历史消息的token预算。不为null时从最近的消息开始向前截取，直到估算的token数量达到预算，
+     * 同时截取的消息数量仍不超过{@link #getMessageHistoryWindowSize()}。默认为null，只按消息数量截取
+     */
+    default Integer getMessageHistoryTokenBudget() {
+        return null;
+    }
+
     String getThreadId();
 
+    /**
+     * 是否发送统计事件：每轮的开始和结束、工具调用的开始和结束、大模型的token用量和耗时，以及运行结束时的汇总。
+     * 默认不发送
+     */
+    default boolean isEnableTelemetryEvents() {
+        return false;
+    }
+
     static Builder builder() {
         return new DefaultRunAgentOptions.Builder();
     }
 
+    /**
+     * 以已有选项的值为初始值的Builder，用于在已有选项的基础上修改个别选项
+     */
+    static Builder builder(RunAgentOptions options) {
+        return new DefaultRunAgentOptions.Builder(options);
+    }
+
     interface Builder {
         Builder newMessages(List<Message> messages);
 
@@ -44,8 +67,12 @@ public interface RunAgentOptions {
 
         Builder messageHistoryWindowSize(Integer size);
 
+        Builder messageHistoryTokenBudget(Integer tokenBudget);
+
         Builder threadId(String threadId);
 
+        Builder enableTelemetryEvents(boolean enableTelemetryEvents);
+
         RunAgentOptions build();
     }
 }
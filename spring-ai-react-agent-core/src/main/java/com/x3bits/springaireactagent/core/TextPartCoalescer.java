@@ -0,0 +1,167 @@
+package com.x3bits.springaireactagent.core;
+
+import com.x3bits.springaireactagent.core.event.AssistantTextPartEvent;
+import com.x3bits.springaireactagent.core.event.ReActAgentEvent;
+import org.reactivestreams.Subscription;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 合并连续的{@link AssistantTextPartEvent}
+ * <p>
+ * 第一个文本片段立即发送，保证首个token的延迟不变。之后的片段先缓存起来，
+ * 当缓存的文本达到maxBytes字节（UTF-8编码），或者距离缓存第一个片段已经过去maxDelay时，合并成一个事件发送。
+ * 其它类型的事件以及上游结束时，会先发送缓存中的文本，保证事件顺序不变。
+ * </p>
+ * <p>
+ * 订阅上游时传递下游的Context，并按下游的请求数量向上游请求事件：被缓存起来、没有发送给下游的片段会再向上游补请求一个。
+ * 下游没有请求时定时器到期不发送，缓存的文本在下游请求、收到下一个事件或者上游结束时发送。
+ * </p>
+ */
+class TextPartCoalescer {
+
+    private final int maxBytes;
+
+    private final Duration maxDelay;
+
+    private final Scheduler timer;
+
+    TextPartCoalescer(int maxBytes, Duration maxDelay, Scheduler timer) {
+        if (maxBytes <= 0 || maxDelay == null || maxDelay.isNegative() || maxDelay.isZero()) {
+            throw new IllegalArgumentException("maxBytes and maxDelay must be positive");
+        }
+        this.maxBytes = maxBytes;
+        this.maxDelay = maxDelay;
+        this.timer = timer;
+    }
+
+    Flux<ReActAgentEvent> coalesce(Flux<ReActAgentEvent> events) {
+        return Flux.create(sink -> {
+            Coalescing coalescing = new Coalescing(sink);
+            events.contextWrite(sink.contextView()).subscribe(coalescing);
+            sink.onRequest(coalescing::onRequest);
+            sink.onDispose(() -> {
+                coalescing.dispose();
+                coalescing.cancelTimer();
+            });
+        });
+    }
+
+    /**
+     * 一次订阅的合并状态。上游事件、下游请求和定时器在不同线程上触发，所有方法都需要同步。
+     */
+    private final class Coalescing extends BaseSubscriber<ReActAgentEvent> {
+        private final FluxSink<ReActAgentEvent> sink;
+        private final StringBuilder pendingText = new StringBuilder();
+        private int pendingBytes;
+        private boolean firstTextEmitted;
+        private Disposable flushTask;
+        // 定时器已经到期，但下游当时没有请求
+        private boolean flushDue;
+
+        private Coalescing(FluxSink<ReActAgentEvent> sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            // 由下游的请求驱动，见onRequest
+        }
+
+        private synchronized void onRequest(long n) {
+            if (flushDue) {
+                flush();
+            }
+            request(n);
+        }
+
+        @Override
+        protected synchronized void hookOnNext(ReActAgentEvent event) {
+            if (!(event instanceof AssistantTextPartEvent textPartEvent)) {
+                flush();
+                sink.next(event);
+                return;
+            }
+            if (!firstTextEmitted) {
+                firstTextEmitted = true;
+                sink.next(event);
+                return;
+            }
+            pendingText.append(textPartEvent.text());
+            pendingBytes += utf8Length(textPartEvent.text());
+            if (pendingBytes >= maxBytes) {
+                flush();
+                return;
+            }
+            if (flushTask == null && !flushDue) {
+                flushTask = timer.schedule(this::onDelayElapsed, maxDelay.toNanos(), TimeUnit.NANOSECONDS);
+            }
+            // 这个片段没有发送给下游，下游的请求还没有满足
+            request(1);
+        }
+
+        @Override
+        protected synchronized void hookOnError(Throwable e) {
+            flush();
+            sink.error(e);
+        }
+
+        @Override
+        protected synchronized void hookOnComplete() {
+            flush();
+            sink.complete();
+        }
+
+        private synchronized void onDelayElapsed() {
+            flushTask = null;
+            if (sink.requestedFromDownstream() > 0) {
+                flush();
+            } else {
+                flushDue = true;
+            }
+        }
+
+        private synchronized void flush() {
+            cancelTimer();
+            flushDue = false;
+            if (pendingText.isEmpty()) {
+                return;
+            }
+            sink.next(new AssistantTextPartEvent(pendingText.toString()));
+            pendingText.setLength(0);
+            pendingBytes = 0;
+        }
+
+        private synchronized void cancelTimer() {
+            if (flushTask != null) {
+                flushTask.dispose();
+                flushTask = null;
+            }
+        }
+    }
+
+    private static int utf8Length(String text) {
+        int bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                // 代理对编码为4个字节
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
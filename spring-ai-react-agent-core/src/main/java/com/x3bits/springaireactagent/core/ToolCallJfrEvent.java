@@ -0,0 +1,76 @@
+package com.x3bits.springaireactagent.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+
+import java.util.List;
+
+/**
+ * 一次工具调用的JFR事件，在执行工具的线程上记录
+ */
+@Name("com.x3bits.springaireactagent.ToolCall")
+@Label("Tool Call")
+@Description("一次工具调用")
+@Category({"Spring AI ReAct Agent", "Agent"})
+@Enabled(false)
+@StackTrace(false)
+final class ToolCallJfrEvent extends Event {
+
+    @Label("Thread Id")
+    String threadId;
+
+    @Label("Iteration")
+    int iteration;
+
+    @Label("Tool Name")
+    String toolName;
+
+    @Label("Tool Call Id")
+    String toolCallId;
+
+    @Label("Arguments Length")
+    @Description("工具参数的字符数")
+    int argumentsLength;
+
+    @Label("Result Length")
+    @Description("工具返回结果的字符数")
+    int resultLength;
+
+    /**
+     * 当前的录制是否打开了该事件。工具调用需要额外包裹一层才能记录，只在打开时包裹
+     */
+    static boolean isTypeEnabled() {
+        return EventType.getEventType(ToolCallJfrEvent.class).isEnabled();
+    }
+
+    void commit(RunAgentOptions options, int iteration, AssistantMessage.ToolCall toolCall,
+            ToolExecutionResult result) {
+        if (!shouldCommit()) {
+            return;
+        }
+        this.threadId = options.getThreadId();
+        this.iteration = iteration;
+        this.toolName = toolCall.name();
+        this.toolCallId = toolCall.id();
+        this.argumentsLength = toolCall.arguments() == null ? 0 : toolCall.arguments().length();
+        int length = 0;
+        List<Message> history = result == null ? List.of() : result.conversationHistory();
+        if (!history.isEmpty() && history.getLast() instanceof ToolResponseMessage toolResponseMessage) {
+            for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                length += response.responseData() == null ? 0 : response.responseData().length();
+            }
+        }
+        this.resultLength = length;
+        commit();
+    }
+}
@@ -0,0 +1,9 @@
+package com.x3bits.springaireactagent.core.event;
+
+import java.time.Duration;
+
+/**
+ * ReAct循环的一轮结束，duration包含大模型调用、工具调用和消息保存的时间
+ */
+public record IterationEndEvent (int iteration, Duration duration) implements TelemetryEvent {
+}
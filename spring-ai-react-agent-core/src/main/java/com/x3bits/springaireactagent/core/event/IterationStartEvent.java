@@ -0,0 +1,7 @@
+package com.x3bits.springaireactagent.core.event;
+
+/**
+ * ReAct循环的一轮开始，iteration从1开始计数
+ */
+public record IterationStartEvent (int iteration) implements TelemetryEvent {
+}
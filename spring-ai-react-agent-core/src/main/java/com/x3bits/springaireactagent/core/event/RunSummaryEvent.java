@@ -0,0 +1,17 @@
+package com.x3bits.springaireactagent.core.event;
+
+import java.time.Duration;
+
+/**
+ * 一次运行正常结束时的汇总，是运行的最后一个事件
+ *
+ * @param iterations       执行的轮数
+ * @param promptTokens     所有大模型调用的输入token数量之和
+ * @param completionTokens 所有大模型调用的输出token数量之和
+ * @param duration         整个运行的耗时
+ * @param modelLatency     所有大模型调用的耗时之和
+ * @param toolLatency      所有工具调用的耗时之和，并行执行时会大于实际等待的时间
+ */
+public record RunSummaryEvent (int iterations, long promptTokens, long completionTokens, Duration duration,
+        Duration modelLatency, Duration toolLatency) implements TelemetryEvent {
+}
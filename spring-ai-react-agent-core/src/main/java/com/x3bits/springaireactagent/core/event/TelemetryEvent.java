@@ -0,0 +1,7 @@
+package com.x3bits.springaireactagent.core.event;
+
+/**
+ * 统计事件，只在{@link com.x3bits.springaireactagent.core.RunAgentOptions#isEnableTelemetryEvents()}开启时发送
+ */
+public interface TelemetryEvent extends ReActAgentEvent {
+}
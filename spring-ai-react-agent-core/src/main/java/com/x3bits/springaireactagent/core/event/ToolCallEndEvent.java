@@ -0,0 +1,10 @@
+package com.x3bits.springaireactagent.core.event;
+
+import java.time.Duration;
+
+/**
+ * 一个工具调用执行完成，latency是该工具本身的执行时间
+ */
+public record ToolCallEndEvent (int iteration, String toolCallId, String toolName, Duration latency)
+        implements TelemetryEvent {
+}
@@ -0,0 +1,7 @@
+package com.x3bits.springaireactagent.core.event;
+
+/**
+ * 开始执行一轮中的工具调用，每个ToolCall发送一个事件。iteration为0表示续跑历史对话中未执行的ToolCall
+ */
+public record ToolCallStartEvent (int iteration, String toolCallId, String toolName) implements TelemetryEvent {
+}
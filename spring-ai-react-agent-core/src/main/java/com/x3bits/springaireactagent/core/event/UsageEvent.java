@@ -0,0 +1,18 @@
+package com.x3bits.springaireactagent.core.event;
+
+import java.time.Duration;
+
+/**
+ * 一次大模型调用的token用量和耗时
+ *
+ * @param iteration        所在的轮次
+ * @param model            大模型返回的模型名称，可能为null
+ * @param promptTokens     输入token数量，大模型没有返回用量时为null
+ * @param completionTokens 输出token数量，大模型没有返回用量时为null
+ * @param finishReason     结束原因，可能为null
+ * @param timeToFirstToken 从发起请求到收到第一个文本或ToolCall片段的时间，非流式调用时为null
+ * @param latency          从发起请求到响应结束的时间
+ */
+public record UsageEvent (int iteration, String model, Integer promptTokens, Integer completionTokens,
+        String finishReason, Duration timeToFirstToken, Duration latency) implements TelemetryEvent {
+}
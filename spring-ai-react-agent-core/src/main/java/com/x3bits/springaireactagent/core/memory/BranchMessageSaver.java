@@ -1,9 +1,15 @@
 package com.x3bits.springaireactagent.core.memory;
 
 import com.x3bits.springaireactagent.core.message.BranchMessageItem;
+import com.x3bits.springaireactagent.core.message.BranchMessageNode;
 import org.springframework.ai.chat.messages.Message;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * 分支消息保存器接口
@@ -22,6 +28,19 @@ public interface BranchMessageSaver {
      */
     void save(String threadId, BranchMessageItem branchMessageItem);
 
+    /**
+     * 按顺序批量保存消息到指定的线程中，列表中后面的消息可以以前面的消息作为前一个消息。
+     * 默认实现逐条调用{@link #save(String, BranchMessageItem)}，支持批量写入的实现应当重写该方法。
+     *
+     * @param threadId           线程标识符
+     * @param branchMessageItems 要保存的消息项列表
+     */
+    default void saveAll(String threadId, List<BranchMessageItem> branchMessageItems) {
+        for (BranchMessageItem branchMessageItem : branchMessageItems) {
+            save(threadId, branchMessageItem);
+        }
+    }
+
     /**
      * 获取指定线程中的最新消息的标识符
      * 
@@ -38,6 +57,60 @@ public interface BranchMessageSaver {
      */
     List<BranchMessageItem> getAllMessages(String threadId);
 
+    /**
+     * 按{@link #getAllMessages(String)}的顺序分页读取消息，以上一页最后一条消息的标识符作为游标（keyset分页），
+     * 每一页的开销与线程中已有的消息数量无关。
+     * 默认实现读取所有消息后截取，实现应当重写该方法以避免读取整个线程。
+     *
+     * @param threadId       线程标识符
+     * @param afterMessageId 上一页最后一条消息的标识符，为null时从第一条消息开始；不属于该线程时返回空列表
+     * @param limit          最多返回的消息数量
+     * @return 游标之后的消息，少于limit条时说明已经读到最后
+     */
+    default List<BranchMessageItem> getMessagesAfter(String threadId, String afterMessageId, int limit) {
+        if (threadId == null || limit <= 0) {
+            return List.of();
+        }
+        List<BranchMessageItem> items = getAllMessages(threadId);
+        int from = 0;
+        if (afterMessageId != null) {
+            from = -1;
+            for (int i = 0; i < items.size(); i++) {
+                if (afterMessageId.equals(items.get(i).id())) {
+                    from = i + 1;
+                    break;
+                }
+            }
+            if (from < 0) {
+                return List.of();
+            }
+        }
+        return List.copyOf(items.subList(from, Math.min(items.size(), from + limit)));
+    }
+
+    /**
+     * 以流的形式按{@link #getAllMessages(String)}的顺序读取所有消息，不需要把整个线程放在一个列表中。
+     * 返回的流可能持有数据库连接等资源，调用方必须关闭，例如使用try-with-resources。
+     * 默认实现返回{@link #getAllMessages(String)}的流。
+     *
+     * @param threadId 线程标识符
+     * @return 所有消息的流
+     */
+    default Stream<BranchMessageItem> streamAllMessages(String threadId) {
+        return getAllMessages(threadId).stream();
+    }
+
+    /**
+     * 获取指定线程中所有消息的结构（标识符、前一个消息的标识符和消息类型），顺序与{@link #getAllMessages(String)}相同。
+     * 默认实现读取所有消息后只保留结构，从数据库读取的实现应当重写该方法，避免读取和反序列化消息内容。
+     *
+     * @param threadId 线程标识符
+     * @return 所有消息的结构
+     */
+    default List<BranchMessageNode> getMessageNodes(String threadId) {
+        return getAllMessages(threadId).stream().map(BranchMessageNode::of).toList();
+    }
+
     /**
      * 获取指定数量的最新消息
      * 
@@ -47,4 +120,45 @@ public interface BranchMessageSaver {
      * @return 最新的消息列表
      */
     List<Message> getLatestMessages(String id, int count, String lastMessageId);
+
+    /**
+     * 获取指定数量的最新消息项，与{@link #getLatestMessages(String, int, String)}返回相同的消息，
+     * 但额外包含消息的标识符和前一个消息的标识符，按从旧到新的顺序排列。
+     * 默认实现读取线程中的所有消息后回溯消息链，实现应当重写该方法以避免读取整个线程。
+     *
+     * @param threadId      线程标识符
+     * @param count         要获取的消息数量
+     * @param lastMessageId 最后一个消息的标识符，为null时从线程中的最新消息开始
+     * @return 最新的消息项列表
+     */
+    default List<BranchMessageItem> getLatestMessageItems(String threadId, int count, String lastMessageId) {
+        if (threadId == null || count <= 0) {
+            return List.of();
+        }
+        Map<String, BranchMessageItem> items = new HashMap<>();
+        for (BranchMessageItem item : getAllMessages(threadId)) {
+            items.put(item.id(), item);
+        }
+        List<BranchMessageItem> result = new ArrayList<>();
+        String currentMessageId = lastMessageId != null ? lastMessageId : getLatestMessageId(threadId);
+        while (currentMessageId != null && result.size() < count) {
+            BranchMessageItem item = items.get(currentMessageId);
+            if (item == null) {
+                break;
+            }
+            result.add(item);
+            currentMessageId = item.previousId();
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * 等待指定线程中已提交的消息全部持久化。ReActAgent在每次运行结束时调用该方法。
+     * 同步写入的实现无需重写该方法。
+     *
+     * @param threadId 线程标识符
+     */
+    default void flush(String threadId) {
+    }
 }
@@ -0,0 +1,373 @@
+package com.x3bits.springaireactagent.core.memory;
+
+import com.x3bits.springaireactagent.core.message.BranchMessageItem;
+import com.x3bits.springaireactagent.core.message.BranchMessageNode;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+
+/**
+ * 带读缓存的分支消息保存器装饰器
+ * <p>
+ * 按线程缓存已经反序列化的消息链，save写入后同步更新缓存，
+ * 所以正在对话的线程读取最新消息ID和最近的消息时不需要访问被装饰的保存器。
+ * 缓存未命中时从被装饰的保存器读取所需的消息并放入缓存。
+ * </p>
+ * <p>
+ * 缓存按估算的字节数限制总大小，超出时淘汰最久未访问的线程；每个线程的缓存从创建起经过timeToLive后失效。
+ * 多个节点写入同一个线程时，其它节点的缓存可能读到旧的最新消息ID，可以通过threadUpdateListener
+ * 把写入的threadId广播给其它节点，由它们调用{@link #invalidate(String)}使缓存失效。
+ * </p>
+ */
+public class CachingBranchMessageSaver implements BranchMessageSaver {
+
+    public static final long DEFAULT_MAXIMUM_BYTES = 64L * 1024 * 1024;
+
+    public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofMinutes(10);
+
+    // 每条消息除文本之外的固定开销估算值
+    private static final long ITEM_OVERHEAD_BYTES = 256;
+
+    private final BranchMessageSaver delegate;
+
+    private final long maximumBytes;
+
+    private final long timeToLiveNanos;
+
+    private final Consumer<String> threadUpdateListener;
+
+    private final LongSupplier ticker;
+
+    // 按访问顺序排列的线程缓存: threadId -> ThreadEntry，所有访问都需要持有this锁
+    private final LinkedHashMap<String, ThreadEntry> threads = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long totalBytes;
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder evictionCount = new LongAdder();
+
+    public CachingBranchMessageSaver(BranchMessageSaver delegate) {
+        this(delegate, DEFAULT_MAXIMUM_BYTES, DEFAULT_TIME_TO_LIVE);
+    }
+
+    public CachingBranchMessageSaver(BranchMessageSaver delegate, long maximumBytes, Duration timeToLive) {
+        this(delegate, maximumBytes, timeToLive, threadId -> {
+        });
+    }
+
+    /**
+     * @param maximumBytes         缓存消息的估算总字节数上限
+     * @param timeToLive           线程缓存从创建起的有效期
+     * @param threadUpdateListener 每次写入后以threadId调用，可用于通知其它节点使该线程的缓存失效
+     */
+    public CachingBranchMessageSaver(BranchMessageSaver delegate, long maximumBytes, Duration timeToLive,
+            Consumer<String> threadUpdateListener) {
+        this(delegate, maximumBytes, timeToLive, threadUpdateListener, System::nanoTime);
+    }
+
+    CachingBranchMessageSaver(BranchMessageSaver delegate, long maximumBytes, Duration timeToLive,
+            Consumer<String> threadUpdateListener, LongSupplier ticker) {
+        if (delegate == null || timeToLive == null || threadUpdateListener == null) {
+            throw new IllegalArgumentException("delegate, timeToLive and threadUpdateListener cannot be null");
+        }
+        if (maximumBytes <= 0 || timeToLive.isNegative() || timeToLive.isZero()) {
+            throw new IllegalArgumentException("maximumBytes and timeToLive must be positive");
+        }
+        this.delegate = delegate;
+        this.maximumBytes = maximumBytes;
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.threadUpdateListener = threadUpdateListener;
+        this.ticker = ticker;
+    }
+
+    @Override
+    public void save(String threadId, BranchMessageItem branchMessageItem) {
+        if (threadId == null || branchMessageItem == null) {
+            throw new IllegalArgumentException("threadId and branchMessageItem cannot be null");
+        }
+        delegate.save(threadId, branchMessageItem);
+        cacheSavedItems(threadId, List.of(branchMessageItem));
+        threadUpdateListener.accept(threadId);
+    }
+
+    @Override
+    public void saveAll(String threadId, List<BranchMessageItem> branchMessageItems) {
+        if (threadId == null || branchMessageItems == null) {
+            throw new IllegalArgumentException("threadId and branchMessageItems cannot be null");
+        }
+        if (branchMessageItems.isEmpty()) {
+            return;
+        }
+        delegate.saveAll(threadId, branchMessageItems);
+        cacheSavedItems(threadId, branchMessageItems);
+        threadUpdateListener.accept(threadId);
+    }
+
+    private synchronized void cacheSavedItems(String threadId, List<BranchMessageItem> branchMessageItems) {
+        ThreadEntry entry = liveEntry(threadId, true);
+        for (BranchMessageItem branchMessageItem : branchMessageItems) {
+            addItem(entry, branchMessageItem);
+        }
+        // 刚写入的消息就是线程中的最新消息
+        entry.latestMessageId = branchMessageItems.getLast().id();
+        evictIfNeeded();
+    }
+
+    @Override
+    public String getLatestMessageId(String threadId) {
+        if (threadId == null) {
+            return null;
+        }
+        synchronized (this) {
+            ThreadEntry entry = liveEntry(threadId, false);
+            if (entry != null && entry.latestMessageId != null) {
+                hitCount.increment();
+                return entry.latestMessageId;
+            }
+        }
+        missCount.increment();
+        String latestMessageId = delegate.getLatestMessageId(threadId);
+        if (latestMessageId != null) {
+            cacheLatestMessageId(threadId, latestMessageId);
+        }
+        return latestMessageId;
+    }
+
+    @Override
+    public List<BranchMessageItem> getAllMessages(String threadId) {
+        return delegate.getAllMessages(threadId);
+    }
+
+    @Override
+    public List<BranchMessageItem> getMessagesAfter(String threadId, String afterMessageId, int limit) {
+        return delegate.getMessagesAfter(threadId, afterMessageId, limit);
+    }
+
+    @Override
+    public Stream<BranchMessageItem> streamAllMessages(String threadId) {
+        return delegate.streamAllMessages(threadId);
+    }
+
+    @Override
+    public List<BranchMessageNode> getMessageNodes(String threadId) {
+        return delegate.getMessageNodes(threadId);
+    }
+
+    @Override
+    public List<Message> getLatestMessages(String threadId, int count, String lastMessageId) {
+        return getLatestMessageItems(threadId, count, lastMessageId).stream()
+                .map(BranchMessageItem::message)
+                .toList();
+    }
+
+    @Override
+    public List<BranchMessageItem> getLatestMessageItems(String threadId, int count, String lastMessageId) {
+        if (threadId == null || count <= 0) {
+            return List.of();
+        }
+        List<BranchMessageItem> cached = findCachedItems(threadId, count, lastMessageId);
+        if (cached != null) {
+            hitCount.increment();
+            return cached;
+        }
+        missCount.increment();
+        List<BranchMessageItem> items = delegate.getLatestMessageItems(threadId, count, lastMessageId);
+        if (!items.isEmpty()) {
+            cacheLoadedItems(threadId, items, lastMessageId == null);
+        }
+        return items;
+    }
+
+    /**
+     * 在缓存中回溯消息链，只有需要的消息全部在缓存中时才返回结果，否则返回null
+     */
+    private synchronized List<BranchMessageItem> findCachedItems(String threadId, int count, String lastMessageId) {
+        ThreadEntry entry = liveEntry(threadId, false);
+        if (entry == null) {
+            return null;
+        }
+        String currentMessageId = lastMessageId != null ? lastMessageId : entry.latestMessageId;
+        if (currentMessageId == null) {
+            return null;
+        }
+        List<BranchMessageItem> result = new ArrayList<>();
+        while (result.size() < count) {
+            BranchMessageItem item = entry.items.get(currentMessageId);
+            if (item == null) {
+                return null;
+            }
+            result.add(item);
+            currentMessageId = item.previousId();
+            if (currentMessageId == null || currentMessageId.isEmpty()) {
+                // 已经到达消息链的起点
+                break;
+            }
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    private synchronized void cacheLoadedItems(String threadId, List<BranchMessageItem> items, boolean endsAtLatest) {
+        ThreadEntry entry = liveEntry(threadId, true);
+        for (BranchMessageItem item : items) {
+            addItem(entry, item);
+        }
+        // 读取期间可能有新的写入，只在还不知道最新消息时记录
+        if (endsAtLatest && entry.latestMessageId == null) {
+            entry.latestMessageId = items.getLast().id();
+        }
+        evictIfNeeded();
+    }
+
+    private synchronized void cacheLatestMessageId(String threadId, String latestMessageId) {
+        ThreadEntry entry = liveEntry(threadId, true);
+        if (entry.latestMessageId == null) {
+            entry.latestMessageId = latestMessageId;
+        }
+    }
+
+    @Override
+    public void flush(String threadId) {
+        delegate.flush(threadId);
+    }
+
+    /**
+     * 使指定线程的缓存失效，通常在其它节点写入了该线程后调用
+     *
+     * @param threadId 线程标识符
+     */
+    public synchronized void invalidate(String threadId) {
+        if (threadId == null) {
+            return;
+        }
+        ThreadEntry entry = threads.remove(threadId);
+        if (entry != null) {
+            totalBytes -= entry.bytes;
+        }
+    }
+
+    /**
+     * 使所有线程的缓存失效
+     */
+    public synchronized void invalidateAll() {
+        threads.clear();
+        totalBytes = 0;
+    }
+
+    /**
+     * 获取缓存命中的次数
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * 获取缓存未命中的次数
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * 获取因为超出大小限制或过期而被淘汰的线程缓存数量
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * 获取当前缓存消息的估算总字节数
+     */
+    public synchronized long getEstimatedBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * 获取线程的缓存，过期的缓存会被移除
+     */
+    private ThreadEntry liveEntry(String threadId, boolean create) {
+        ThreadEntry entry = threads.get(threadId);
+        long now = ticker.getAsLong();
+        if (entry != null && now - entry.createdAt >= timeToLiveNanos) {
+            threads.remove(threadId);
+            totalBytes -= entry.bytes;
+            evictionCount.increment();
+            entry = null;
+        }
+        if (entry == null && create) {
+            entry = new ThreadEntry(now);
+            threads.put(threadId, entry);
+        }
+        return entry;
+    }
+
+    private void addItem(ThreadEntry entry, BranchMessageItem item) {
+        if (entry.items.putIfAbsent(item.id(), item) == null) {
+            long bytes = estimateBytes(item);
+            entry.bytes += bytes;
+            totalBytes += bytes;
+        }
+    }
+
+    private void evictIfNeeded() {
+        Iterator<ThreadEntry> iterator = threads.values().iterator();
+        while (totalBytes > maximumBytes && iterator.hasNext()) {
+            ThreadEntry eldest = iterator.next();
+            iterator.remove();
+            totalBytes -= eldest.bytes;
+            evictionCount.increment();
+        }
+    }
+
+    /**
+     * 估算消息在内存中占用的字节数
+     */
+    static long estimateBytes(BranchMessageItem item) {
+        Message message = item.message();
+        long chars = length(item.id()) + length(item.previousId()) + length(message.getText());
+        if (message instanceof AssistantMessage assistantMessage) {
+            for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                chars += length(toolCall.id()) + length(toolCall.name()) + length(toolCall.arguments());
+            }
+        } else if (message instanceof ToolResponseMessage toolResponseMessage) {
+            for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                chars += length(response.id()) + length(response.name()) + length(response.responseData());
+            }
+        }
+        return ITEM_OVERHEAD_BYTES + chars * 2;
+    }
+
+    private static long length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    /**
+     * 一个线程的缓存：消息项和最新消息ID
+     */
+    private static final class ThreadEntry {
+        private final Map<String, BranchMessageItem> items = new HashMap<>();
+        private final long createdAt;
+        private String latestMessageId;
+        private long bytes;
+
+        private ThreadEntry(long createdAt) {
+            this.createdAt = createdAt;
+        }
+    }
+}
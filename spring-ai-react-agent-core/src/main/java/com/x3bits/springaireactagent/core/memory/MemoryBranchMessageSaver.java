@@ -27,6 +27,9 @@ public class MemoryBranchMessageSaver implements BranchMessageSaver {
     // 存储每个线程的消息列表: threadId -> List<messageId>
     private final Map<String, List<String>> threadMessages = new ConcurrentHashMap<>();
 
+    // 存储消息在线程消息列表中的位置，用于分页读取: messageId -> index
+    private final Map<String, Integer> messagePositions = new ConcurrentHashMap<>();
+
     @Override
     public void save(String threadId, BranchMessageItem branchMessageItem) {
         if (threadId == null || branchMessageItem == null) {
@@ -45,7 +48,9 @@ public class MemoryBranchMessageSaver implements BranchMessageSaver {
         }
 
         // 更新线程的消息列表
-        threadMessages.computeIfAbsent(threadId, k -> new ArrayList<>()).add(messageId);
+        List<String> messageIds = threadMessages.computeIfAbsent(threadId, k -> new ArrayList<>());
+        messagePositions.put(messageId, messageIds.size());
+        messageIds.add(messageId);
 
         // 更新线程的最新消息ID
         threadLatestMessage.put(threadId, messageId);
@@ -81,8 +86,47 @@ public class MemoryBranchMessageSaver implements BranchMessageSaver {
         return result;
     }
 
+    @Override
+    public List<BranchMessageItem> getMessagesAfter(String threadId, String afterMessageId, int limit) {
+        if (threadId == null || limit <= 0) {
+            return List.of();
+        }
+
+        List<String> messageIds = threadMessages.get(threadId);
+        if (messageIds == null || messageIds.isEmpty()) {
+            return List.of();
+        }
+
+        // 根据游标的位置直接定位，不需要从头扫描
+        int from = 0;
+        if (afterMessageId != null) {
+            Integer position = messagePositions.get(afterMessageId);
+            if (position == null || position >= messageIds.size()
+                    || !afterMessageId.equals(messageIds.get(position))) {
+                return List.of();
+            }
+            from = position + 1;
+        }
+
+        List<BranchMessageItem> result = new ArrayList<>();
+        for (int i = from; i < messageIds.size() && result.size() < limit; i++) {
+            BranchMessageItem branchMessageItem = messageStore.get(messageIds.get(i));
+            if (branchMessageItem != null) {
+                result.add(branchMessageItem);
+            }
+        }
+        return result;
+    }
+
     @Override
     public List<Message> getLatestMessages(String threadId, int count, String lastMessageId) {
+        return getLatestMessageItems(threadId, count, lastMessageId).stream()
+                .map(BranchMessageItem::message)
+                .toList();
+    }
+
+    @Override
+    public List<BranchMessageItem> getLatestMessageItems(String threadId, int count, String lastMessageId) {
         if (threadId == null || count <= 0) {
             return List.of();
         }
@@ -92,7 +136,7 @@ public class MemoryBranchMessageSaver implements BranchMessageSaver {
             return List.of();
         }
 
-        List<Message> result = new ArrayList<>();
+        List<BranchMessageItem> result = new ArrayList<>();
 
         // 如果指定了 lastMessageId，从该消息开始回溯
         String currentMessageId = lastMessageId;
@@ -105,7 +149,7 @@ public class MemoryBranchMessageSaver implements BranchMessageSaver {
         while (currentMessageId != null && result.size() < count) {
             BranchMessageItem branchMessageItem = messageStore.get(currentMessageId);
             if (branchMessageItem != null) {
-                result.add(branchMessageItem.message());
+                result.add(branchMessageItem);
                 currentMessageId = messageChain.get(currentMessageId);
             } else {
                 break;
@@ -147,6 +191,7 @@ public class MemoryBranchMessageSaver implements BranchMessageSaver {
             for (String messageId : messageIds) {
                 messageStore.remove(messageId);
                 messageChain.remove(messageId);
+                messagePositions.remove(messageId);
             }
             threadMessages.remove(threadId);
             threadLatestMessage.remove(threadId);
@@ -159,6 +204,7 @@ public class MemoryBranchMessageSaver implements BranchMessageSaver {
     public void clearAll() {
         messageStore.clear();
         messageChain.clear();
+        messagePositions.clear();
         threadLatestMessage.clear();
         threadMessages.clear();
     }
@@ -0,0 +1,276 @@
+package com.x3bits.springaireactagent.core.memory;
+
+import com.x3bits.springaireactagent.core.message.BranchMessageItem;
+import com.x3bits.springaireactagent.core.message.BranchMessageNode;
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+/**
+ * 异步写入（write-behind）的分支消息保存器装饰器
+ * <p>
+ * save方法把写入任务放入有界队列后立即返回，由后台Executor调用被装饰的保存器完成实际写入，
+ * 从而把数据库延迟从流式输出的关键路径上移除。同一线程（threadId）内的写入严格按照提交顺序执行，
+ * 不同线程之间的写入互不影响。队列满时save会阻塞，直到有写入完成。
+ * 后台写入时会把同一线程中已排队的多条消息合并成一次{@link BranchMessageSaver#saveAll}调用。
+ * </p>
+ * <p>
+ * 读取方法会先等待该线程中尚未完成的写入，保证总能读到自己写入的消息。
+ * 某个线程的写入失败后，该线程中之后排队的消息不再写入，因为它们的前一个消息可能没有保存；
+ * 异常在下一次{@link #flush(String)}时抛出并清除，之后该线程的写入恢复正常。
+ * 读取方法只等待写入完成，不报告也不清除写入失败，避免读取消耗掉ReActAgent在运行结束时flush应当报告的异常。
+ * </p>
+ * <p>
+ * 使用内部创建的Executor时，{@link #close()}等待所有写入完成后关闭该Executor；外部传入的Executor由调用方关闭。
+ * </p>
+ */
+public class WriteBehindBranchMessageSaver implements BranchMessageSaver, AutoCloseable {
+
+    /**
+     * 消息事件与持久化之间的先后关系
+     */
+    public enum Durability {
+        /**
+         * save方法等待消息真正写入后才返回，即先持久化再发送事件
+         */
+        EMIT_AFTER_PERSIST,
+        /**
+         * save方法在写入任务入队后立即返回，即先发送事件再异步持久化
+         */
+        EMIT_THEN_PERSIST
+    }
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private final BranchMessageSaver delegate;
+
+    private final Durability durability;
+
+    private final Executor executor;
+
+    // 内部创建的Executor，close时关闭；外部传入时为null
+    private final ExecutorService ownedExecutor;
+
+    private volatile boolean closed;
+
+    private final Semaphore queuePermits;
+
+    // 每个线程排队等待写入的消息: threadId -> 消息列表
+    private final Map<String, List<BranchMessageItem>> pendingItems = new ConcurrentHashMap<>();
+
+    // 每个线程最后一个写入任务: threadId -> 写入任务
+    private final Map<String, CompletableFuture<Void>> threadTails = new ConcurrentHashMap<>();
+
+    // 每个线程第一个失败的写入: threadId -> 异常
+    private final Map<String, RuntimeException> threadFailures = new ConcurrentHashMap<>();
+
+    public WriteBehindBranchMessageSaver(BranchMessageSaver delegate) {
+        this(delegate, DEFAULT_QUEUE_CAPACITY, Durability.EMIT_THEN_PERSIST);
+    }
+
+    public WriteBehindBranchMessageSaver(BranchMessageSaver delegate, int queueCapacity, Durability durability) {
+        this(delegate, queueCapacity, durability, Executors.newVirtualThreadPerTaskExecutor(), true);
+    }
+
+    /**
+     * @param executor 执行后台写入的Executor，由调用方负责关闭
+     */
+    public WriteBehindBranchMessageSaver(BranchMessageSaver delegate, int queueCapacity, Durability durability,
+            Executor executor) {
+        this(delegate, queueCapacity, durability, executor, false);
+    }
+
+    private WriteBehindBranchMessageSaver(BranchMessageSaver delegate, int queueCapacity, Durability durability,
+            Executor executor, boolean ownsExecutor) {
+        if (delegate == null || durability == null || executor == null) {
+            throw new IllegalArgumentException("delegate, durability and executor cannot be null");
+        }
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("queueCapacity must be positive");
+        }
+        this.delegate = delegate;
+        this.durability = durability;
+        this.executor = executor;
+        this.ownedExecutor = ownsExecutor ? (ExecutorService) executor : null;
+        this.queuePermits = new Semaphore(queueCapacity);
+    }
+
+    @Override
+    public void save(String threadId, BranchMessageItem branchMessageItem) {
+        if (threadId == null || branchMessageItem == null) {
+            throw new IllegalArgumentException("threadId and branchMessageItem cannot be null");
+        }
+        enqueue(threadId, List.of(branchMessageItem));
+    }
+
+    @Override
+    public void saveAll(String threadId, List<BranchMessageItem> branchMessageItems) {
+        if (threadId == null || branchMessageItems == null) {
+            throw new IllegalArgumentException("threadId and branchMessageItems cannot be null");
+        }
+        if (!branchMessageItems.isEmpty()) {
+            enqueue(threadId, branchMessageItems);
+        }
+    }
+
+    private void enqueue(String threadId, List<BranchMessageItem> branchMessageItems) {
+        if (closed) {
+            throw new IllegalStateException("WriteBehindBranchMessageSaver is closed");
+        }
+        queuePermits.acquireUninterruptibly();
+        pendingItems.compute(threadId, (key, pending) -> {
+            List<BranchMessageItem> result = pending == null ? new ArrayList<>() : pending;
+            result.addAll(branchMessageItems);
+            return result;
+        });
+        CompletableFuture<Void> write = threadTails.compute(threadId, (key, tail) -> {
+            CompletableFuture<Void> previous = tail == null ? CompletableFuture.completedFuture(null) : tail;
+            return previous.thenRunAsync(() -> writePending(threadId), executor);
+        });
+        write.whenComplete((result, e) -> threadTails.remove(threadId, write));
+        if (durability == Durability.EMIT_AFTER_PERSIST) {
+            write.join();
+            // 只报告不清除，运行结束时的flush仍然能看到该失败
+            RuntimeException failure = threadFailures.get(threadId);
+            if (failure != null) {
+                throw failedException(threadId, failure);
+            }
+        }
+    }
+
+    /**
+     * 把该线程中所有排队的消息合并成一次saveAll写入。如果前面的写入任务已经把它们写完，则什么也不做。
+     * 该线程之前的写入失败且尚未被flush报告时丢弃排队的消息
+     */
+    private void writePending(String threadId) {
+        try {
+            List<BranchMessageItem> items = pendingItems.remove(threadId);
+            if (items != null && !items.isEmpty() && !threadFailures.containsKey(threadId)) {
+                delegate.saveAll(threadId, items);
+            }
+        } catch (RuntimeException e) {
+            threadFailures.putIfAbsent(threadId, e);
+        } finally {
+            queuePermits.release();
+        }
+    }
+
+    /**
+     * 等待指定线程中所有已提交的写入完成，报告并清除该线程的写入失败
+     *
+     * @param threadId 线程标识符
+     * @throws IllegalStateException 如果该线程中有写入失败
+     */
+    @Override
+    public void flush(String threadId) {
+        if (threadId == null) {
+            return;
+        }
+        awaitWrites(threadId);
+        throwIfFailed(threadId);
+    }
+
+    /**
+     * 等待所有线程中已提交的写入完成，通常在应用关闭前调用
+     */
+    public void flushAll() {
+        for (String threadId : List.copyOf(threadTails.keySet())) {
+            flush(threadId);
+        }
+        for (String threadId : List.copyOf(threadFailures.keySet())) {
+            throwIfFailed(threadId);
+        }
+    }
+
+    /**
+     * 等待所有写入完成后关闭内部创建的Executor，之后不能再保存消息
+     *
+     * @throws IllegalStateException 如果有写入失败
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            flushAll();
+        } finally {
+            if (ownedExecutor != null) {
+                ownedExecutor.close();
+            }
+        }
+    }
+
+    /**
+     * 等待指定线程中已提交的写入完成，不报告写入失败。读取方法使用
+     */
+    private void awaitWrites(String threadId) {
+        if (threadId == null) {
+            return;
+        }
+        CompletableFuture<Void> tail = threadTails.get(threadId);
+        if (tail != null) {
+            tail.join();
+        }
+    }
+
+    private void throwIfFailed(String threadId) {
+        RuntimeException failure = threadFailures.remove(threadId);
+        if (failure != null) {
+            throw failedException(threadId, failure);
+        }
+    }
+
+    private static IllegalStateException failedException(String threadId, RuntimeException failure) {
+        return new IllegalStateException("Failed to save message of thread " + threadId, failure);
+    }
+
+    @Override
+    public String getLatestMessageId(String threadId) {
+        awaitWrites(threadId);
+        return delegate.getLatestMessageId(threadId);
+    }
+
+    @Override
+    public List<BranchMessageItem> getAllMessages(String threadId) {
+        awaitWrites(threadId);
+        return delegate.getAllMessages(threadId);
+    }
+
+    @Override
+    public List<BranchMessageItem> getMessagesAfter(String threadId, String afterMessageId, int limit) {
+        awaitWrites(threadId);
+        return delegate.getMessagesAfter(threadId, afterMessageId, limit);
+    }
+
+    @Override
+    public Stream<BranchMessageItem> streamAllMessages(String threadId) {
+        awaitWrites(threadId);
+        return delegate.streamAllMessages(threadId);
+    }
+
+    @Override
+    public List<BranchMessageNode> getMessageNodes(String threadId) {
+        awaitWrites(threadId);
+        return delegate.getMessageNodes(threadId);
+    }
+
+    @Override
+    public List<Message> getLatestMessages(String threadId, int count, String lastMessageId) {
+        awaitWrites(threadId);
+        return delegate.getLatestMessages(threadId, count, lastMessageId);
+    }
+
+    @Override
+    public List<BranchMessageItem> getLatestMessageItems(String threadId, int count, String lastMessageId) {
+        awaitWrites(threadId);
+        return delegate.getLatestMessageItems(threadId, count, lastMessageId);
+    }
+}
@@ -1,8 +1,129 @@
 package com.x3bits.springaireactagent.core.message;
 
 import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
 
 import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
 
-public record BranchMessageItem(Message message, String id, String previousId, Map<String, Object> metadata) {
-}
\ No newline at end of file
+/**
+ * 消息链中的一条消息，包含消息内容、唯一标识符和前一个消息的标识符
+ * <p>
+ * 用{@link #lazy(MessageType, Supplier, String, String, Map)}创建的消息项在第一次调用{@link #message()}时才加载消息内容，
+ * 保存器批量读取消息时可以推迟反序列化，只用到标识符和消息类型的调用方不需要付出反序列化的开销。
+ * 加载只执行一次，之后返回同一个消息对象。该类是线程安全的。
+ * </p>
+ * <p>
+ * equals和hashCode只比较标识符、前一个消息的标识符、元数据和消息类型，不比较消息内容，因此不会触发加载。
+ * 同一个线程中消息的标识符是唯一的，标识符相同的消息项就是同一条消息。
+ * </p>
+ */
+public final class BranchMessageItem {
+
+    private final MessageType messageType;
+    private final String id;
+    private final String previousId;
+    private final Map<String, Object> metadata;
+
+    private volatile Message message;
+    // 未加载时不为null，加载之后置为null以释放序列化内容
+    private Supplier<Message> loader;
+
+    public BranchMessageItem(Message message, String id, String previousId, Map<String, Object> metadata) {
+        this.message = message;
+        this.messageType = message == null ? null : message.getMessageType();
+        this.id = id;
+        this.previousId = previousId;
+        this.metadata = metadata;
+    }
+
+    private BranchMessageItem(MessageType messageType, Supplier<Message> loader, String id, String previousId,
+            Map<String, Object> metadata) {
+        this.messageType = messageType;
+        this.loader = loader;
+        this.id = id;
+        this.previousId = previousId;
+        this.metadata = metadata;
+    }
+
+    /**
+     * 创建延迟加载消息内容的消息项
+     *
+     * @param messageType 消息类型，不需要加载消息就能取得
+     * @param loader      第一次调用{@link #message()}时调用一次，返回消息内容
+     */
+    public static BranchMessageItem lazy(MessageType messageType, Supplier<Message> loader, String id,
+            String previousId, Map<String, Object> metadata) {
+        if (loader == null) {
+            throw new IllegalArgumentException("loader cannot be null");
+        }
+        return new BranchMessageItem(messageType, loader, id, previousId, metadata);
+    }
+
+    public Message message() {
+        Message result = message;
+        if (result == null) {
+            synchronized (this) {
+                result = message;
+                if (result == null && loader != null) {
+                    result = loader.get();
+                    message = result;
+                    loader = null;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 消息类型，延迟加载的消息项不会因此加载消息内容
+     */
+    public MessageType messageType() {
+        return messageType;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public String previousId() {
+        return previousId;
+    }
+
+    public Map<String, Object> metadata() {
+        return metadata;
+    }
+
+    /**
+     * 消息内容是否已经加载
+     */
+    public boolean isMessageLoaded() {
+        return message != null || loader == null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof BranchMessageItem other)) {
+            return false;
+        }
+        return Objects.equals(id, other.id)
+                && Objects.equals(previousId, other.previousId)
+                && Objects.equals(metadata, other.metadata)
+                && messageType == other.messageType;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, previousId, metadata, messageType);
+    }
+
+    @Override
+    public String toString() {
+        return "BranchMessageItem[message=" + (isMessageLoaded() ? message() : "<not loaded " + messageType + ">")
+                + ", id=" + id + ", previousId=" + previousId + ", metadata=" + metadata + "]";
+    }
+}
@@ -0,0 +1,13 @@
+package com.x3bits.springaireactagent.core.message;
+
+import org.springframework.ai.chat.messages.MessageType;
+
+/**
+ * 消息树的结构：消息的标识符、前一个消息的标识符和消息类型，不包含消息内容
+ */
+public record BranchMessageNode(String id, String previousId, MessageType messageType) {
+
+    public static BranchMessageNode of(BranchMessageItem item) {
+        return new BranchMessageNode(item.id(), item.previousId(), item.messageType());
+    }
+}
@@ -0,0 +1,63 @@
+package com.x3bits.springaireactagent.core.token;
+
+import com.x3bits.springaireactagent.core.message.BranchMessageItem;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按消息ID缓存token数量的计数器
+ * <p>
+ * 保存后的消息不会再修改，所以每条消息只需要估算一次，再次截取历史消息时直接使用缓存的结果。
+ * </p>
+ */
+public class MessageTokenCounter {
+
+    public static final int DEFAULT_CACHE_SIZE = 100_000;
+
+    private final TokenEstimator tokenEstimator;
+
+    // 最近估算过的消息: messageId -> token数量
+    private final Map<String, Integer> tokenCounts;
+
+    public MessageTokenCounter(TokenEstimator tokenEstimator) {
+        this(tokenEstimator, DEFAULT_CACHE_SIZE);
+    }
+
+    public MessageTokenCounter(TokenEstimator tokenEstimator, int cacheSize) {
+        if (tokenEstimator == null) {
+            throw new IllegalArgumentException("tokenEstimator cannot be null");
+        }
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("cacheSize cannot be negative");
+        }
+        this.tokenEstimator = tokenEstimator;
+        this.tokenCounts = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    /**
+     * 获取消息的token数量，优先使用缓存
+     *
+     * @param branchMessageItem 已保存的消息项
+     * @return token数量
+     */
+    public int count(BranchMessageItem branchMessageItem) {
+        String messageId = branchMessageItem.id();
+        if (messageId == null) {
+            return tokenEstimator.estimate(branchMessageItem.message());
+        }
+        Integer cached = tokenCounts.get(messageId);
+        if (cached != null) {
+            return cached;
+        }
+        int tokens = tokenEstimator.estimate(branchMessageItem.message());
+        tokenCounts.put(messageId, tokens);
+        return tokens;
+    }
+}
@@ -0,0 +1,53 @@
+package com.x3bits.springaireactagent.core.token;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+
+/**
+ * 不依赖具体分词器的token估算器
+ * <p>
+ * 拉丁字母、数字和标点按每4个字符1个token估算，中日韩等字符按每个字符1个token估算，
+ * 每条消息额外计算固定的格式开销。ToolCall的名称和参数、工具响应的内容也计入消息的token数量。
+ * </p>
+ */
+public class SimpleTokenEstimator implements TokenEstimator {
+
+    // 每条消息的角色、分隔符等格式开销
+    private static final int MESSAGE_OVERHEAD_TOKENS = 4;
+
+    private static final int CHARS_PER_TOKEN = 4;
+
+    @Override
+    public int estimate(Message message) {
+        int tokens = MESSAGE_OVERHEAD_TOKENS + estimate(message.getText());
+        if (message instanceof AssistantMessage assistantMessage) {
+            for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                tokens += estimate(toolCall.name()) + estimate(toolCall.arguments());
+            }
+        } else if (message instanceof ToolResponseMessage toolResponseMessage) {
+            for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                tokens += estimate(response.name()) + estimate(response.responseData());
+            }
+        }
+        return tokens;
+    }
+
+    private static int estimate(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int wideChars = 0;
+        int narrowChars = 0;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            if (codePoint < 0x2E80) {
+                narrowChars++;
+            } else {
+                wideChars++;
+            }
+            i += Character.charCount(codePoint);
+        }
+        return wideChars + (narrowChars + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+}
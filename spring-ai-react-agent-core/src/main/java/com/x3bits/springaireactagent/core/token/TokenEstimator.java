@@ -0,0 +1,17 @@
+package com.x3bits.springaireactagent.core.token;
+
+import org.springframework.ai.chat.messages.Message;
+
+/**
+ * 在本地估算消息占用的token数量，用于按token预算截取历史消息
+ */
+public interface TokenEstimator {
+
+    /**
+     * 估算消息占用的token数量
+     *
+     * @param message 消息
+     * @return 估算的token数量
+     */
+    int estimate(Message message);
+}
@@ -0,0 +1,75 @@
+package com.x3bits.springaireactagent.core.tool;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 对每个ToolCall分别调用{@link ToolCallInterceptor}的ToolCallingManager
+ * <p>
+ * 一条AssistantMessage中包含多个ToolCall时，按原始顺序依次把每个ToolCall单独交给被装饰的ToolCallingManager执行，
+ * 最后合并成一条ToolResponseMessage。需要并行执行时，用{@link ParallelToolCallingManager}装饰本类。
+ * </p>
+ */
+public class InterceptingToolCallingManager implements ToolCallingManager {
+
+    private final ToolCallingManager delegate;
+
+    private final ToolCallInterceptor interceptor;
+
+    public InterceptingToolCallingManager(ToolCallingManager delegate, ToolCallInterceptor interceptor) {
+        if (delegate == null || interceptor == null) {
+            throw new IllegalArgumentException("delegate and interceptor cannot be null");
+        }
+        this.delegate = delegate;
+        this.interceptor = interceptor;
+    }
+
+    @Override
+    public List<ToolDefinition> resolveToolDefinitions(ToolCallingChatOptions chatOptions) {
+        return delegate.resolveToolDefinitions(chatOptions);
+    }
+
+    @Override
+    public ToolExecutionResult executeToolCalls(Prompt prompt, ChatResponse chatResponse) {
+        AssistantMessage assistantMessage = chatResponse.getResult().getOutput();
+        List<AssistantMessage.ToolCall> toolCalls = assistantMessage.getToolCalls();
+        if (toolCalls.size() == 1) {
+            return interceptor.intercept(toolCalls.getFirst(), () -> delegate.executeToolCalls(prompt, chatResponse));
+        }
+
+        List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>();
+        boolean returnDirect = true;
+        for (AssistantMessage.ToolCall toolCall : toolCalls) {
+            AssistantMessage singleToolCallMessage = new AssistantMessage(assistantMessage.getText(),
+                    assistantMessage.getMetadata(), List.of(toolCall));
+            ChatResponse singleToolCallResponse = ChatResponse.builder()
+                    .generations(List.of(new Generation(singleToolCallMessage)))
+                    .build();
+            ToolExecutionResult result = interceptor.intercept(toolCall,
+                    () -> delegate.executeToolCalls(prompt, singleToolCallResponse));
+            if (result.conversationHistory().getLast() instanceof ToolResponseMessage toolResponseMessage) {
+                responses.addAll(toolResponseMessage.getResponses());
+            }
+            returnDirect = returnDirect && result.returnDirect();
+        }
+
+        List<Message> conversationHistory = new ArrayList<>(prompt.getInstructions());
+        conversationHistory.add(assistantMessage);
+        conversationHistory.add(new ToolResponseMessage(responses));
+        return ToolExecutionResult.builder()
+                .conversationHistory(conversationHistory)
+                .returnDirect(returnDirect)
+                .build();
+    }
+}
@@ -0,0 +1,150 @@
+package com.x3bits.springaireactagent.core.tool;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * 并行执行工具调用的ToolCallingManager
+ * <p>
+ * 当一条AssistantMessage中包含多个ToolCall时，把每个ToolCall拆成单独的调用交给被装饰的ToolCallingManager，
+ * 并在指定的Executor上并发执行，最后按照原始ToolCall的顺序合并成一条ToolResponseMessage。
+ * 名称在serialToolNames中的工具不会并发执行，它们按照原始顺序在同一个任务中依次执行。
+ * </p>
+ * <p>
+ * 调用线程在等待期间被中断、任一工具调用失败或者Executor拒绝任务时，会取消并中断所有尚未完成的工具调用。
+ * </p>
+ */
+public class ParallelToolCallingManager implements ToolCallingManager {
+
+    private final ToolCallingManager delegate;
+
+    private final Executor executor;
+
+    private final Set<String> serialToolNames;
+
+    public ParallelToolCallingManager(ToolCallingManager delegate, Executor executor, Set<String> serialToolNames) {
+        if (delegate == null || executor == null) {
+            throw new IllegalArgumentException("delegate and executor cannot be null");
+        }
+        this.delegate = delegate;
+        this.executor = executor;
+        this.serialToolNames = serialToolNames == null ? Set.of() : Set.copyOf(serialToolNames);
+    }
+
+    @Override
+    public List<ToolDefinition> resolveToolDefinitions(ToolCallingChatOptions chatOptions) {
+        return delegate.resolveToolDefinitions(chatOptions);
+    }
+
+    @Override
+    public ToolExecutionResult executeToolCalls(Prompt prompt, ChatResponse chatResponse) {
+        AssistantMessage assistantMessage = chatResponse.getResult().getOutput();
+        List<AssistantMessage.ToolCall> toolCalls = assistantMessage.getToolCalls();
+        if (toolCalls.size() <= 1) {
+            return delegate.executeToolCalls(prompt, chatResponse);
+        }
+
+        // 每个ToolCall的执行结果按原始下标存放
+        ToolExecutionResult[] results = new ToolExecutionResult[toolCalls.size()];
+        List<FutureTask<Void>> tasks = new ArrayList<>();
+        List<Integer> serialIndexes = new ArrayList<>();
+        for (int i = 0; i < toolCalls.size(); i++) {
+            if (serialToolNames.contains(toolCalls.get(i).name())) {
+                serialIndexes.add(i);
+                continue;
+            }
+            int index = i;
+            tasks.add(new FutureTask<>(
+                    () -> results[index] = executeSingleToolCall(prompt, assistantMessage, toolCalls.get(index)),
+                    null));
+        }
+        if (!serialIndexes.isEmpty()) {
+            tasks.add(new FutureTask<>(() -> {
+                for (int index : serialIndexes) {
+                    // 没有结果的ToolCall不能合并，中断时以异常结束，由awaitAll取消其它调用
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new IllegalStateException("Interrupted before executing serial tool calls");
+                    }
+                    results[index] = executeSingleToolCall(prompt, assistantMessage, toolCalls.get(index));
+                }
+            }, null));
+        }
+        try {
+            for (FutureTask<Void> task : tasks) {
+                executor.execute(task);
+            }
+        } catch (RuntimeException e) {
+            // 例如Executor拒绝任务（RejectedExecutionException），已经开始的调用不再需要
+            cancelAll(tasks);
+            throw e;
+        }
+        awaitAll(tasks);
+
+        List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>();
+        boolean returnDirect = true;
+        for (ToolExecutionResult result : results) {
+            List<Message> history = result.conversationHistory();
+            if (history.getLast() instanceof ToolResponseMessage toolResponseMessage) {
+                responses.addAll(toolResponseMessage.getResponses());
+            }
+            returnDirect = returnDirect && result.returnDirect();
+        }
+
+        List<Message> conversationHistory = new ArrayList<>(prompt.getInstructions());
+        conversationHistory.add(assistantMessage);
+        conversationHistory.add(new ToolResponseMessage(responses));
+        return ToolExecutionResult.builder()
+                .conversationHistory(conversationHistory)
+                .returnDirect(returnDirect)
+                .build();
+    }
+
+    private ToolExecutionResult executeSingleToolCall(Prompt prompt, AssistantMessage assistantMessage,
+            AssistantMessage.ToolCall toolCall) {
+        AssistantMessage singleToolCallMessage = new AssistantMessage(assistantMessage.getText(),
+                assistantMessage.getMetadata(), List.of(toolCall));
+        ChatResponse singleToolCallResponse = ChatResponse.builder()
+                .generations(List.of(new Generation(singleToolCallMessage)))
+                .build();
+        return delegate.executeToolCalls(prompt, singleToolCallResponse);
+    }
+
+    private static void awaitAll(List<FutureTask<Void>> tasks) {
+        try {
+            for (FutureTask<Void> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            cancelAll(tasks);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for tool calls", e);
+        } catch (ExecutionException e) {
+            cancelAll(tasks);
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static void cancelAll(List<FutureTask<Void>> tasks) {
+        for (FutureTask<Void> task : tasks) {
+            task.cancel(true);
+        }
+    }
+}
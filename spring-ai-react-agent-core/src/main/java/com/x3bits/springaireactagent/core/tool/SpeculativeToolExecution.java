@@ -0,0 +1,191 @@
+package com.x3bits.springaireactagent.core.tool;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * 一次流式大模型调用中的推测式工具执行
+ * <p>
+ * 流式响应中的ToolCall参数组装完整后，通过{@link #start(AssistantMessage.ToolCall)}立即在Executor上开始执行，
+ * 与大模型继续生成后面的内容同时进行。大模型的响应结束后，{@link #executeToolCalls(AssistantMessage)}等待已经开始的调用，
+ * 执行剩余的ToolCall，然后按照原始ToolCall的顺序合并成一条ToolResponseMessage，结果与不推测执行时相同。
+ * </p>
+ * <p>
+ * 名称在sideEffectToolNames中的工具有副作用，不会推测执行，仍然在大模型响应结束后执行。
+ * 最终的ToolCall与推测执行时的ToolCall不一致时，丢弃推测执行的结果并重新执行。
+ * 调用{@link #cancel()}或者等待期间线程被中断时，取消并中断所有尚未完成的推测执行。
+ * </p>
+ */
+public final class SpeculativeToolExecution {
+
+    private final ToolCallingManager delegate;
+
+    private final Executor executor;
+
+    private final Set<String> sideEffectToolNames;
+
+    private final Prompt prompt;
+
+    // 已经开始的推测执行: toolCallId -> 任务
+    private final Map<String, Speculation> speculations = new LinkedHashMap<>();
+
+    private boolean cancelled;
+
+    public SpeculativeToolExecution(ToolCallingManager delegate, Executor executor, Set<String> sideEffectToolNames,
+            Prompt prompt) {
+        if (delegate == null || executor == null || prompt == null) {
+            throw new IllegalArgumentException("delegate, executor and prompt cannot be null");
+        }
+        this.delegate = delegate;
+        this.executor = executor;
+        this.sideEffectToolNames = sideEffectToolNames == null ? Set.of() : Set.copyOf(sideEffectToolNames);
+        this.prompt = prompt;
+    }
+
+    /**
+     * 开始推测执行一个参数已经完整的ToolCall。有副作用的工具、没有id的ToolCall以及已经开始的ToolCall会被忽略
+     */
+    public synchronized void start(AssistantMessage.ToolCall toolCall) {
+        if (cancelled || toolCall.id() == null || toolCall.id().isEmpty()
+                || sideEffectToolNames.contains(toolCall.name()) || speculations.containsKey(toolCall.id())) {
+            return;
+        }
+        FutureTask<ToolExecutionResult> task = new FutureTask<>(() -> executeSingleToolCall(toolCall));
+        speculations.put(toolCall.id(), new Speculation(toolCall, task));
+        executor.execute(task);
+    }
+
+    /**
+     * 获取大模型最终返回的所有ToolCall的执行结果。会阻塞直到所有工具调用完成
+     */
+    public ToolExecutionResult executeToolCalls(AssistantMessage assistantMessage) {
+        List<AssistantMessage.ToolCall> toolCalls = assistantMessage.getToolCalls();
+        List<Speculation> matched = new ArrayList<>(toolCalls.size());
+        List<AssistantMessage.ToolCall> remainingToolCalls = new ArrayList<>();
+        synchronized (this) {
+            for (AssistantMessage.ToolCall toolCall : toolCalls) {
+                Speculation speculation = speculations.remove(toolCall.id());
+                if (speculation != null && !speculation.toolCall.equals(toolCall)) {
+                    speculation.task.cancel(true);
+                    speculation = null;
+                }
+                if (speculation == null) {
+                    remainingToolCalls.add(toolCall);
+                }
+                matched.add(speculation);
+            }
+            // 最终响应中不存在的推测执行不再需要
+            cancel();
+        }
+
+        List<ToolResponseMessage.ToolResponse> remainingResponses = List.of();
+        boolean returnDirect = true;
+        if (!remainingToolCalls.isEmpty()) {
+            AssistantMessage remainingMessage = new AssistantMessage(assistantMessage.getText(),
+                    assistantMessage.getMetadata(), remainingToolCalls);
+            ToolExecutionResult remainingResult;
+            try {
+                remainingResult = delegate.executeToolCalls(prompt, toResponse(remainingMessage));
+            } catch (RuntimeException e) {
+                cancelAll(matched);
+                throw e;
+            }
+            remainingResponses = toolResponses(remainingResult);
+            returnDirect = remainingResult.returnDirect();
+        }
+
+        List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>();
+        int remainingIndex = 0;
+        for (Speculation speculation : matched) {
+            if (speculation == null) {
+                if (remainingIndex < remainingResponses.size()) {
+                    responses.add(remainingResponses.get(remainingIndex++));
+                }
+                continue;
+            }
+            ToolExecutionResult result = await(speculation, matched);
+            responses.addAll(toolResponses(result));
+            returnDirect = returnDirect && result.returnDirect();
+        }
+
+        List<Message> conversationHistory = new ArrayList<>(prompt.getInstructions());
+        conversationHistory.add(assistantMessage);
+        conversationHistory.add(new ToolResponseMessage(responses));
+        return ToolExecutionResult.builder()
+                .conversationHistory(conversationHistory)
+                .returnDirect(returnDirect)
+                .build();
+    }
+
+    /**
+     * 取消并中断所有尚未完成的推测执行，之后不再开始新的推测执行
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+        for (Speculation speculation : speculations.values()) {
+            speculation.task.cancel(true);
+        }
+        speculations.clear();
+    }
+
+    private ToolExecutionResult executeSingleToolCall(AssistantMessage.ToolCall toolCall) {
+        AssistantMessage singleToolCallMessage = new AssistantMessage("", Map.of(), List.of(toolCall));
+        return delegate.executeToolCalls(prompt, toResponse(singleToolCallMessage));
+    }
+
+    private static ToolExecutionResult await(Speculation speculation, List<Speculation> all) {
+        try {
+            return speculation.task.get();
+        } catch (InterruptedException e) {
+            cancelAll(all);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for tool calls", e);
+        } catch (ExecutionException e) {
+            cancelAll(all);
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static void cancelAll(List<Speculation> speculations) {
+        for (Speculation speculation : speculations) {
+            if (speculation != null) {
+                speculation.task.cancel(true);
+            }
+        }
+    }
+
+    private static ChatResponse toResponse(AssistantMessage assistantMessage) {
+        return ChatResponse.builder()
+                .generations(List.of(new Generation(assistantMessage)))
+                .build();
+    }
+
+    private static List<ToolResponseMessage.ToolResponse> toolResponses(ToolExecutionResult result) {
+        List<Message> history = result.conversationHistory();
+        if (history.getLast() instanceof ToolResponseMessage toolResponseMessage) {
+            return toolResponseMessage.getResponses();
+        }
+        return List.of();
+    }
+
+    private record Speculation(AssistantMessage.ToolCall toolCall, FutureTask<ToolExecutionResult> task) {
+    }
+}
@@ -0,0 +1,260 @@
+package com.x3bits.springaireactagent.core.tool;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 把流式响应中的ToolCall片段组装成完整的ToolCall
+ * <p>
+ * 不同的模型提供方流式返回ToolCall的方式不同：有的一次返回完整的ToolCall，有的先返回带id和name的片段，
+ * 之后的片段只包含参数的一部分（id为空），也有的在后续片段中重复返回已经累积的完整参数。
+ * 组装规则如下：
+ * <ul>
+ *     <li>id不为空且已经出现过的片段属于该ToolCall；id不为空且未出现过的片段开始一个新的ToolCall</li>
+ *     <li>id为空的片段属于最近开始的ToolCall；如果该ToolCall已经完成，而片段带有name或者参数以新的“{”开始
+ *     （不是已完成参数的快照），片段开始一个新的ToolCall。有的提供方（例如Ollama、Vertex Gemini）
+ *     把每个完整的ToolCall以空id返回</li>
+ *     <li>片段的参数以已累积的参数开头时视为完整快照，替换已累积的参数，否则追加到已累积的参数后面</li>
+ * </ul>
+ * </p>
+ * <p>
+ * 参数是一个完整的JSON对象（括号匹配）、开始了下一个ToolCall或者调用{@link #finish()}时，ToolCall组装完成，
+ * 每个ToolCall只会回调一次completionListener。参数缓冲区在{@link #reset()}之后复用，同一个组装器可以依次用于多次大模型调用。
+ * 该类不是线程安全的。
+ * </p>
+ */
+public final class StreamingToolCallAssembler {
+
+    private final Consumer<AssistantMessage.ToolCall> completionListener;
+
+    // 已经开始的ToolCall，按出现顺序排列。reset之后保留对象以复用参数缓冲区
+    private final List<Slot> slots = new ArrayList<>();
+
+    private int slotCount;
+
+    private boolean finished;
+
+    public StreamingToolCallAssembler() {
+        this(toolCall -> {
+        });
+    }
+
+    /**
+     * @param completionListener 每个ToolCall组装完成时以完整的ToolCall调用一次
+     */
+    public StreamingToolCallAssembler(Consumer<AssistantMessage.ToolCall> completionListener) {
+        if (completionListener == null) {
+            throw new IllegalArgumentException("completionListener cannot be null");
+        }
+        this.completionListener = completionListener;
+    }
+
+    /**
+     * 追加一个流式响应中的ToolCall片段
+     */
+    public void append(AssistantMessage.ToolCall fragment) {
+        if (finished) {
+            throw new IllegalStateException("Assembler is already finished");
+        }
+        if (fragment == null) {
+            return;
+        }
+        String id = fragment.id();
+        Slot slot;
+        if (id != null && !id.isEmpty()) {
+            slot = findSlot(id);
+            if (slot == null) {
+                completeOpenSlots();
+                slot = newSlot(id);
+            }
+        } else if (slotCount > 0) {
+            slot = slots.get(slotCount - 1);
+            if (slot.completed && slot.isStartOfNextToolCall(fragment)) {
+                slot = newSlot(id);
+            }
+        } else {
+            slot = newSlot(id);
+        }
+        slot.append(fragment);
+        if (!slot.completed && slot.isArgumentsComplete()) {
+            complete(slot);
+        }
+    }
+
+    /**
+     * 结束组装，返回所有按出现顺序排列的ToolCall。尚未完成的ToolCall在这里完成
+     */
+    public List<AssistantMessage.ToolCall> finish() {
+        if (finished) {
+            throw new IllegalStateException("Assembler is already finished");
+        }
+        finished = true;
+        List<AssistantMessage.ToolCall> toolCalls = new ArrayList<>(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            Slot slot = slots.get(i);
+            if (!slot.completed) {
+                complete(slot);
+            }
+            toolCalls.add(slot.toolCall);
+        }
+        return toolCalls;
+    }
+
+    /**
+     * 清空已组装的ToolCall，以便用于下一次大模型调用
+     */
+    public void reset() {
+        for (int i = 0; i < slotCount; i++) {
+            slots.get(i).clear();
+        }
+        slotCount = 0;
+        finished = false;
+    }
+
+    private Slot findSlot(String id) {
+        for (int i = slotCount - 1; i >= 0; i--) {
+            Slot slot = slots.get(i);
+            if (id.equals(slot.id)) {
+                return slot;
+            }
+        }
+        return null;
+    }
+
+    private Slot newSlot(String id) {
+        Slot slot;
+        if (slotCount < slots.size()) {
+            slot = slots.get(slotCount);
+        } else {
+            slot = new Slot();
+            slots.add(slot);
+        }
+        slotCount++;
+        slot.id = id;
+        return slot;
+    }
+
+    private void completeOpenSlots() {
+        for (int i = 0; i < slotCount; i++) {
+            Slot slot = slots.get(i);
+            if (!slot.completed) {
+                complete(slot);
+            }
+        }
+    }
+
+    private void complete(Slot slot) {
+        slot.completed = true;
+        slot.toolCall = new AssistantMessage.ToolCall(slot.id, slot.type, slot.name, slot.arguments.toString());
+        completionListener.accept(slot.toolCall);
+    }
+
+    /**
+     * 一个正在组装的ToolCall。累积参数的同时跟踪JSON括号的嵌套深度，用于判断参数是否已经完整
+     */
+    private static final class Slot {
+        private final StringBuilder arguments = new StringBuilder();
+        private String id;
+        private String type;
+        private String name;
+        private int depth;
+        private boolean inString;
+        private boolean escaped;
+        private boolean opened;
+        private boolean completed;
+        private AssistantMessage.ToolCall toolCall;
+
+        private void append(AssistantMessage.ToolCall fragment) {
+            if (isEmpty(type) && !isEmpty(fragment.type())) {
+                type = fragment.type();
+            }
+            if (isEmpty(name) && !isEmpty(fragment.name())) {
+                name = fragment.name();
+            }
+            String fragmentArguments = fragment.arguments();
+            if (isEmpty(fragmentArguments)) {
+                return;
+            }
+            if (completed) {
+                // 已经完成的ToolCall再次出现时只可能是完整快照，忽略
+                return;
+            }
+            if (!arguments.isEmpty() && startsWith(fragmentArguments, arguments)) {
+                // 完整快照：只扫描新增的部分
+                fragmentArguments = fragmentArguments.substring(arguments.length());
+            }
+            arguments.append(fragmentArguments);
+            scan(fragmentArguments);
+        }
+
+        private void scan(String text) {
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (inString) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (c == '\\') {
+                        escaped = true;
+                    } else if (c == '"') {
+                        inString = false;
+                    }
+                } else if (c == '"') {
+                    inString = true;
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                    opened = true;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                }
+            }
+        }
+
+        /**
+         * 已完成的ToolCall之后的空id片段是否开始了下一个ToolCall
+         */
+        private boolean isStartOfNextToolCall(AssistantMessage.ToolCall fragment) {
+            if (!isEmpty(fragment.name())) {
+                return true;
+            }
+            String fragmentArguments = fragment.arguments();
+            return !isEmpty(fragmentArguments) && fragmentArguments.stripLeading().startsWith("{")
+                    && !startsWith(fragmentArguments, arguments);
+        }
+
+        private boolean isArgumentsComplete() {
+            return opened && depth == 0 && !inString;
+        }
+
+        private void clear() {
+            arguments.setLength(0);
+            id = null;
+            type = null;
+            name = null;
+            depth = 0;
+            inString = false;
+            escaped = false;
+            opened = false;
+            completed = false;
+            toolCall = null;
+        }
+
+        private static boolean startsWith(String text, CharSequence prefix) {
+            if (text.length() < prefix.length()) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length(); i++) {
+                if (text.charAt(i) != prefix.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean isEmpty(String value) {
+            return value == null || value.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.x3bits.springaireactagent.core.tool;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+
+import java.util.function.Supplier;
+
+/**
+ * 包裹单个工具调用的拦截器，可用于计时、监控等。在执行工具调用的线程上调用
+ */
+@FunctionalInterface
+public interface ToolCallInterceptor {
+
+    /**
+     * @param toolCall 正在执行的ToolCall
+     * @param call     执行该ToolCall，必须调用且只调用一次
+     * @return call的返回值
+     */
+    ToolExecutionResult intercept(AssistantMessage.ToolCall toolCall, Supplier<ToolExecutionResult> call);
+}
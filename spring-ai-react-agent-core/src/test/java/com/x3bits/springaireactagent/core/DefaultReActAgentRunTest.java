@@ -0,0 +1,74 @@
+package com.x3bits.springaireactagent.core;
+
+import com.x3bits.springaireactagent.core.event.AssistantTextPartEvent;
+import com.x3bits.springaireactagent.core.event.ReActAgentEvent;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DefaultReActAgentRunTest {
+
+    private static List<String> texts(List<ReActAgentEvent> events) {
+        return events.stream().map(event -> ((AssistantTextPartEvent) event).text()).toList();
+    }
+
+    @Test
+    void testRunIsExecutedOnceForAllSubscribers() {
+        AtomicInteger executions = new AtomicInteger();
+        Flux<ReActAgentEvent> source = Flux.<ReActAgentEvent>just(new AssistantTextPartEvent("a"),
+                new AssistantTextPartEvent("b")).doOnSubscribe(subscription -> executions.incrementAndGet());
+
+        ReActAgentRun run = new DefaultReActAgentRun("run1", source, ReActAgentRun.DEFAULT_REPLAY_SIZE);
+
+        // 创建时就已经开始执行，之后的订阅者从回放缓冲区中获取事件
+        assertEquals(1, executions.get());
+        assertTrue(run.isDone());
+        assertEquals(List.of("a", "b"), texts(run.events().collectList().block()));
+        assertEquals(List.of("a", "b"), texts(run.events().collectList().block()));
+        assertEquals(1, executions.get());
+        assertEquals("run1", run.getRunId());
+    }
+
+    @Test
+    void testReplayBufferIsBounded() {
+        Sinks.Many<ReActAgentEvent> source = Sinks.many().unicast().onBackpressureBuffer();
+        ReActAgentRun run = new DefaultReActAgentRun("run1", source.asFlux(), 2);
+        for (String text : List.of("a", "b", "c")) {
+            source.tryEmitNext(new AssistantTextPartEvent(text));
+        }
+        source.tryEmitComplete();
+
+        // 晚到的订阅者只能收到最近的2个事件
+        assertEquals(List.of("b", "c"), texts(run.events().collectList().block(Duration.ofSeconds(5))));
+    }
+
+    @Test
+    void testCancelStopsRunAndCompletesSubscribers() {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Flux<ReActAgentEvent> source = Flux.concat(Flux.<ReActAgentEvent>just(new AssistantTextPartEvent("a")),
+                Flux.never()).doOnCancel(() -> cancelled.set(true));
+        ReActAgentRun run = new DefaultReActAgentRun("run1", source, ReActAgentRun.DEFAULT_REPLAY_SIZE);
+        assertFalse(run.isDone());
+
+        // 订阅者取消订阅不会影响运行
+        run.events().take(1).blockLast(Duration.ofSeconds(5));
+        assertFalse(cancelled.get());
+
+        run.cancel();
+        assertTrue(cancelled.get());
+        assertTrue(run.isDone());
+        assertEquals(List.of("a"), texts(run.events().collectList().block(Duration.ofSeconds(5))));
+    }
+
+    @Test
+    void testInvalidReplaySize() {
+        assertThrows(IllegalArgumentException.class, () -> new DefaultReActAgentRun("run1", Flux.empty(), -1));
+    }
+}
@@ -1,11 +1,25 @@
 package com.x3bits.springaireactagent.core;
 
 import com.x3bits.springaireactagent.core.event.AssistantTextPartEvent;
+import com.x3bits.springaireactagent.core.event.IterationEndEvent;
+import com.x3bits.springaireactagent.core.event.IterationStartEvent;
 import com.x3bits.springaireactagent.core.event.LlmMessageEvent;
 import com.x3bits.springaireactagent.core.event.ReActAgentEvent;
+import com.x3bits.springaireactagent.core.event.RunSummaryEvent;
+import com.x3bits.springaireactagent.core.event.ToolCallEndEvent;
+import com.x3bits.springaireactagent.core.event.ToolCallStartEvent;
+import com.x3bits.springaireactagent.core.event.UsageEvent;
+import com.x3bits.springaireactagent.core.exception.MaxIterationReachedException;
 import com.x3bits.springaireactagent.core.memory.BranchMessageSaver;
 import com.x3bits.springaireactagent.core.memory.MemoryBranchMessageSaver;
+import com.x3bits.springaireactagent.core.memory.WriteBehindBranchMessageSaver;
 import com.x3bits.springaireactagent.core.message.BranchMessageItem;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import io.micrometer.observation.ObservationRegistry;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -16,16 +30,38 @@ import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
 import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.metadata.ChatGenerationMetadata;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.chat.model.Generation;
 import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.function.FunctionToolCallback;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
 import reactor.test.StepVerifier;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -303,6 +339,28 @@ class DefaultReActAgentTest {
         verify(branchMessageSaver, times(1)).getAllMessages(threadId);
     }
 
+    @Test
+    void testPageAndStreamBranchMessages() {
+        String threadId = "test-thread-page";
+        BranchMessageItem userMessageItem = new BranchMessageItem(new UserMessage("测试消息"), "msg1", null, Map.of());
+        BranchMessageItem assistantMessageItem = new BranchMessageItem(new AssistantMessage("测试回复"), "msg2",
+                "msg1", Map.of());
+        AtomicBoolean streamClosed = new AtomicBoolean();
+        when(branchMessageSaver.getMessagesAfter(threadId, "msg1", 10)).thenReturn(List.of(assistantMessageItem));
+        when(branchMessageSaver.streamAllMessages(threadId)).thenReturn(
+                Stream.of(userMessageItem, assistantMessageItem).onClose(() -> streamClosed.set(true)));
+
+        assertEquals(List.of(assistantMessageItem), reActAgent.getBranchMessagesAfter(threadId, "msg1", 10));
+
+        // 订阅之前不读取，读取完毕后关闭保存器返回的流
+        Flux<BranchMessageItem> messages = reActAgent.streamBranchMessages(threadId);
+        verify(branchMessageSaver, never()).streamAllMessages(threadId);
+        StepVerifier.create(messages)
+                .expectNext(userMessageItem, assistantMessageItem)
+                .verifyComplete();
+        assertTrue(streamClosed.get());
+    }
+
     @Test
     void testRunWithoutMessageSaver() {
         // 创建没有messageSaver的ReActAgent
@@ -406,6 +464,599 @@ class DefaultReActAgentTest {
                 .verifyComplete();
     }
 
+    record AddRequest(int a, int b) {
+    }
+
+    private static ToolCallback addToolCallback() {
+        return FunctionToolCallback.builder("add", (AddRequest request) -> request.a() + request.b())
+                .description("计算两数之和")
+                .inputType(AddRequest.class)
+                .build();
+    }
+
+    @Test
+    void testRunWithToolCalls() {
+        ChatClient chatClient = ChatClient.builder(chatModel).defaultToolCallbacks(addToolCallback()).build();
+        ReActAgent agent = ReActAgent.builder(chatClient).messageSaver(new MemoryBranchMessageSaver()).build();
+
+        // 第一轮返回ToolCall，第二轮返回最终答案
+        AssistantMessage toolCallMessage = new AssistantMessage("", Map.of(), List.of(
+                new AssistantMessage.ToolCall("call-1", "function", "add", "{\"a\":1,\"b\":2}")));
+        when(chatModel.call(any(Prompt.class))).thenReturn(
+                ChatResponse.builder().generations(List.of(new Generation(toolCallMessage))).build(),
+                ChatResponse.builder().generations(List.of(new Generation(new AssistantMessage("结果是3")))).build());
+
+        RunAgentOptions options = RunAgentOptions.builder()
+                .threadId("test-thread-8")
+                .newUserMessage("1 + 2等于多少？")
+                .build();
+
+        List<ReActAgentEvent> events = agent.run(options).collectList().block();
+
+        assertNotNull(events);
+        assertEquals(4, events.size());
+        assertInstanceOf(UserMessage.class, ((LlmMessageEvent) events.get(0)).message());
+        assertTrue(((AssistantMessage) ((LlmMessageEvent) events.get(1)).message()).hasToolCalls());
+        ToolResponseMessage toolResponseMessage = (ToolResponseMessage) ((LlmMessageEvent) events.get(2)).message();
+        assertEquals("3", toolResponseMessage.getResponses().get(0).responseData());
+        assertEquals("结果是3", ((LlmMessageEvent) events.get(3)).message().getText());
+        verify(chatModel, times(2)).call(any(Prompt.class));
+    }
+
+    @Test
+    void testRunWithToolCallsReachesMaxIterations() {
+        ChatClient chatClient = ChatClient.builder(chatModel).defaultToolCallbacks(addToolCallback()).build();
+        ReActAgent agent = ReActAgent.builder(chatClient).build();
+
+        // 大模型一直返回ToolCall
+        AssistantMessage toolCallMessage = new AssistantMessage("", Map.of(), List.of(
+                new AssistantMessage.ToolCall("call-1", "function", "add", "{\"a\":1,\"b\":2}")));
+        when(chatModel.call(any(Prompt.class)))
+                .thenReturn(ChatResponse.builder().generations(List.of(new Generation(toolCallMessage))).build());
+
+        RunAgentOptions options = RunAgentOptions.builder()
+                .newUserMessage("1 + 2等于多少？")
+                .maxIterations(2)
+                .build();
+
+        StepVerifier.create(agent.run(options))
+                .expectNextCount(5)
+                .expectError(MaxIterationReachedException.class)
+                .verify();
+        verify(chatModel, times(2)).call(any(Prompt.class));
+    }
+
+    @Test
+    void testRunDoesNotBlockSubscriberWhileWaitingForModel() throws Exception {
+        Sinks.Many<ChatResponse> responseSink = Sinks.many().unicast().onBackpressureBuffer();
+        when(chatModel.stream(any(Prompt.class))).thenReturn(responseSink.asFlux());
+
+        RunAgentOptions options = RunAgentOptions.builder()
+                .threadId("test-thread-9")
+                .newUserMessage("你好！")
+                .enableStream(true)
+                .build();
+
+        // 订阅后立即返回，不会因为等待大模型响应而阻塞当前线程
+        CompletableFuture<List<ReActAgentEvent>> future = reActAgent.run(options).collectList().toFuture();
+
+        verify(chatModel, timeout(5000)).stream(any(Prompt.class));
+        assertFalse(future.isDone());
+        responseSink.tryEmitNext(
+                ChatResponse.builder().generations(List.of(new Generation(new AssistantMessage("你好")))).build());
+        responseSink.tryEmitComplete();
+
+        List<ReActAgentEvent> events = future.get(5, TimeUnit.SECONDS);
+        assertEquals(3, events.size());
+        assertInstanceOf(AssistantTextPartEvent.class, events.get(1));
+        verify(branchMessageSaver, times(2)).save(eq("test-thread-9"), any(BranchMessageItem.class));
+    }
+
+    @Test
+    void testRunFlushesWriteBehindSaverOnCompletion() {
+        MemoryBranchMessageSaver delegate = new MemoryBranchMessageSaver();
+        ReActAgent agent = ReActAgent.builder(ChatClient.builder(chatModel).build())
+                .messageSaver(new WriteBehindBranchMessageSaver(delegate))
+                .build();
+        when(chatModel.call(any(Prompt.class))).thenReturn(
+                ChatResponse.builder().generations(List.of(new Generation(new AssistantMessage("你好")))).build());
+
+        RunAgentOptions options = RunAgentOptions.builder()
+                .threadId("test-thread-10")
+                .newUserMessage("你好！")
+                .build();
+
+        List<ReActAgentEvent> events = agent.run(options).collectList().block();
+
+        // 运行结束时所有消息都已经写入被装饰的保存器
+        assertNotNull(events);
+        assertEquals(2, delegate.getMessageCount("test-thread-10"));
+        assertEquals(((LlmMessageEvent) events.get(1)).id(), delegate.getLatestMessageId("test-thread-10"));
+    }
+
+    @Test
+    void testRunWithTokenBudgetLimitsHistory() {
+        // 每条消息估算为10个token
+        AtomicInteger estimations = new AtomicInteger();
+        MemoryBranchMessageSaver saver = new MemoryBranchMessageSaver();
+        ReActAgent agent = ReActAgent.builder(ChatClient.builder(chatModel).build())
+                .messageSaver(saver)
+                .tokenEstimator(message -> {
+                    estimations.incrementAndGet();
+                    return 10;
+                })
+                .build();
+        String threadId = "test-thread-11";
+        String previousId = null;
+        for (int i = 0; i < 40; i++) {
+            String messageId = "msg" + i;
+            saver.save(threadId, new BranchMessageItem(new UserMessage("历史消息" + i), messageId, previousId, Map.of()));
+            previousId = messageId;
+        }
+        when(chatModel.call(any(Prompt.class))).thenReturn(
+                ChatResponse.builder().generations(List.of(new Generation(new AssistantMessage("你好")))).build());
+
+        RunAgentOptions options = RunAgentOptions.builder()
+                .threadId(threadId)
+                .newUserMessage("你好！")
+                .messageHistoryTokenBudget(255)
+                .build();
+        agent.run(options).blockLast();
+
+        // 预算内可以容纳最近的25条历史消息
+        ArgumentCaptor<Prompt> promptCaptor = ArgumentCaptor.forClass(Prompt.class);
+        verify(chatModel).call(promptCaptor.capture());
+        List<Message> instructions = promptCaptor.getValue().getInstructions();
+        assertEquals(26, instructions.size());
+        assertEquals("历史消息15", instructions.getFirst().getText());
+        assertEquals("历史消息39", instructions.get(24).getText());
+
+        // 再次运行时，已经估算过的历史消息直接使用缓存的token数量
+        int estimationsAfterFirstRun = estimations.get();
+        agent.run(options).blockLast();
+        assertEquals(estimationsAfterFirstRun + 2, estimations.get());
+    }
+
+    @Test
+    void testCancelInterruptsBlockingModelCall() throws Exception {
+        CountDownLatch modelCalled = new CountDownLatch(1);
+        CountDownLatch modelInterrupted = new CountDownLatch(1);
+        when(chatModel.call(any(Prompt.class))).thenAnswer(invocation -> {
+            modelCalled.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                modelInterrupted.countDown();
+                throw e;
+            }
+            return ChatResponse.builder().generations(List.of(new Generation(new AssistantMessage("你好")))).build();
+        });
+        MemoryBranchMessageSaver saver = new MemoryBranchMessageSaver();
+        ReActAgent agent = ReActAgent.builder(ChatClient.builder(chatModel).build()).messageSaver(saver).build();
+        RunAgentOptions options = RunAgentOptions.builder()
+                .threadId("test-thread-12")
+                .newUserMessage("你好！")
+                .build();
+
+        Disposable subscription = agent.run(options).subscribe();
+        assertTrue(modelCalled.await(5, TimeUnit.SECONDS));
+        subscription.dispose();
+
+        // 取消订阅后模型调用被中断，只保存了用户消息
+        assertTrue(modelInterrupted.await(5, TimeUnit.SECONDS));
+        assertEquals(1, saver.getMessageCount("test-thread-12"));
+        assertInstanceOf(UserMessage.class, saver.getLatestMessages("test-thread-12", 1, null).getFirst());
+    }
+
+    @Test
+    void testCancelStopsStreamingModelCall() {
+        Sinks.Many<ChatResponse> responseSink = Sinks.many().multicast().onBackpressureBuffer();
+        when(chatModel.stream(any(Prompt.class))).thenReturn(responseSink.asFlux());
+        MemoryBranchMessageSaver saver = new MemoryBranchMessageSaver();
+        ReActAgent agent = ReActAgent.builder(ChatClient.builder(chatModel).build()).messageSaver(saver).build();
+        RunAgentOptions options = RunAgentOptions.builder()
+                .threadId("test-thread-13")
+                .newUserMessage("你好！")
+                .enableStream(true)
+                .build();
+
+        StepVerifier.create(agent.run(options))
+                .assertNext(event -> assertInstanceOf(LlmMessageEvent.class, event))
+                .then(() -> responseSink.tryEmitNext(ChatResponse.builder()
+                        .generations(List.of(new Generation(new AssistantMessage("你")))).build()))
+                .assertNext(event -> assertInstanceOf(AssistantTextPartEvent.class, event))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+
+        // 模型的响应流被取消，未完成的AssistantMessage不会保存
+        assertEquals(0, responseSink.currentSubscriberCount());
+        assertEquals(1, saver.getMessageCount("test-thread-13"));
+    }
+
+    private static ChatResponse toolCallChunk(String id, String name, String arguments) {
+        AssistantMessage message = new AssistantMessage("", Map.of(), List.of(
+                new AssistantMessage.ToolCall(id, "function", name, arguments)));
+        return ChatResponse.builder().generations(List.of(new Generation(message))).build();
+    }
+
+    @Test
+    void testRunWithStreamedToolCallFragments() {
+        ChatClient chatClient = ChatClient.builder(chatModel).defaultToolCallbacks(addToolCallback()).build();
+        MemoryBranchMessageSaver saver = new MemoryBranchMessageSaver();
+        ReActAgent agent = ReActAgent.builder(chatClient).messageSaver(saver).build();
+
+        // 第一轮的ToolCall参数分多个片段返回，后续片段没有id和name
+        when(chatModel.stream(any(Prompt.class))).thenReturn(
+                Flux.just(toolCallChunk("call-1", "add", "{\"a\":"), toolCallChunk("", "", "1,\"b\""),
+                        toolCallChunk("", "", ":2}")),
+                Flux.just(ChatResponse.builder().generations(List.of(new Generation(new AssistantMessage("结果是3"))))
+                        .build()));
+
+        RunAgentOptions options = RunAgentOptions.builder()
+                .threadId("test-thread-14")
+                .newUserMessage("1 + 2等于多少？")
+                .enableStream(true)
+                .build();
+        List<ReActAgentEvent> events = agent.run(options).collectList().block();
+
+        assertNotNull(events);
+        AssistantMessage toolCallMessage = (AssistantMessage) ((LlmMessageEvent) events.get(1)).message();
+        assertEquals(List.of(new AssistantMessage.ToolCall("call-1", "function", "add", "{\"a\":1,\"b\":2}")),
+                toolCallMessage.getToolCalls());
+        ToolResponseMessage toolResponseMessage = (ToolResponseMessage) ((LlmMessageEvent) events.get(2)).message();
+        assertEquals("3", toolResponseMessage.getResponses().getFirst().responseData());
+        assertEquals("结果是3", ((LlmMessageEvent) events.getLast()).message().getText());
+    }
+
+    @Test
+    void testSpeculativeToolExecutionStartsBeforeStreamCompletes() throws Exception {
+        CountDownLatch addCalled = new CountDownLatch(1);
+        AtomicInteger sideEffectCalls = new AtomicInteger();
+        ToolCallback add = FunctionToolCallback.builder("add", (AddRequest request) -> {
+                    addCalled.countDown();
+                    return request.a() + request.b();
+                })
+                .description("计算两数之和")
+                .inputType(AddRequest.class)
+                .build();
+        ToolCallback save = FunctionToolCallback.builder("save", (AddRequest request) -> sideEffectCalls.incrementAndGet())
+                .description("保存结果")
+                .inputType(AddRequest.class)
+                .build();
+        ChatClient chatClient = ChatClient.builder(chatModel).defaultToolCallbacks(add, save).build();
+        ReActAgent agent = ReActAgent.builder(chatClient)
+                .messageSaver(new MemoryBranchMessageSaver())
+                .speculativeToolExecution(true)
+                .sideEffectToolNames(Set.of("save"))
+                .build();
+        Sinks.Many<ChatResponse> responseSink = Sinks.many().unicast().onBackpressureBuffer();
+        when(chatModel.stream(any(Prompt.class))).thenReturn(responseSink.asFlux(), Flux.just(
+                ChatResponse.builder().generations(List.of(new Generation(new AssistantMessage("结果是3")))).build()));
+
+        RunAgentOptions options = RunAgentOptions.builder()
+                .threadId("test-thread-15")
+                .newUserMessage("1 + 2等于多少？")
+                .enableStream(true)
+                .build();
+        CompletableFuture<List<ReActAgentEvent>> future = agent.run(options).collectList().toFuture();
+        verify(chatModel, timeout(5000)).stream(any(Prompt.class));
+
+        // 参数完整的ToolCall在流式响应结束前就开始执行，有副作用的工具不会推测执行
+        responseSink.tryEmitNext(toolCallChunk("call-1", "add", "{\"a\":1,\"b\":2}"));
+        responseSink.tryEmitNext(toolCallChunk("call-2", "save", "{\"a\":3,\"b\":0}"));
+        assertTrue(addCalled.await(5, TimeUnit.SECONDS));
+        assertEquals(0, sideEffectCalls.get());
+        assertFalse(future.isDone());
+        responseSink.tryEmitComplete();
+
+        List<ReActAgentEvent> events = future.get(5, TimeUnit.SECONDS);
+        assertEquals(1, sideEffectCalls.get());
+        ToolResponseMessage toolResponseMessage = (ToolResponseMessage) ((LlmMessageEvent) events.get(2)).message();
+        assertEquals(List.of("call-1", "call-2"),
+                toolResponseMessage.getResponses().stream().map(ToolResponseMessage.ToolResponse::id).toList());
+        assertEquals("3", toolResponseMessage.getResponses().getFirst().responseData());
+        assertEquals("结果是3", ((LlmMessageEvent) events.getLast()).message().getText());
+    }
+
+    @Test
+    void testSerialToolsAreNotSpeculativelyExecuted() throws Exception {
+        AtomicInteger serialCalls = new AtomicInteger();
+        ToolCallback save = FunctionToolCallback.builder("save", (AddRequest request) -> serialCalls.incrementAndGet())
+                .description("保存结果")
+                .inputType(AddRequest.class)
+                .build();
+        ChatClient chatClient = ChatClient.builder(chatModel).defaultToolCallbacks(save).build();
+        ReActAgent agent = ReActAgent.builder(chatClient)
+                .messageSaver(new MemoryBranchMessageSaver())
+                .speculativeToolExecution(true)
+                .serialToolNames(Set.of("save"))
+                .build();
+        Sinks.Many<ChatResponse> responseSink = Sinks.many().unicast().onBackpressureBuffer();
+        when(chatModel.stream(any(Prompt.class))).thenReturn(responseSink.asFlux(), Flux.just(
+                ChatResponse.builder().generations(List.of(new Generation(new AssistantMessage("已保存")))).build()));
+
+        RunAgentOptions options = RunAgentOptions.builder()
+                .threadId("test-thread-15-serial")
+                .newUserMessage("保存3")
+                .enableStream(true)
+                .build();
+        CompletableFuture<List<ReActAgentEvent>> future = agent.run(options).collectList().toFuture();
+        verify(chatModel, timeout(5000)).stream(any(Prompt.class));
+
+        // 需要按顺序执行的工具和有副作用的工具一样，只在响应结束后执行
+        responseSink.tryEmitNext(toolCallChunk("call-1", "save", "{\"a\":3,\"b\":0}"));
+        Thread.sleep(200);
+        assertEquals(0, serialCalls.get());
+        responseSink.tryEmitComplete();
+
+        List<ReActAgentEvent> events = future.get(5, TimeUnit.SECONDS);
+        assertEquals(1, serialCalls.get());
+        assertEquals("已保存", ((LlmMessageEvent) events.getLast()).message().getText());
+    }
+
+    private static ChatResponse responseWithUsage(AssistantMessage message, int promptTokens, int completionTokens) {
+        return ChatResponse.builder()
+                .generations(List.of(new Generation(message,
+                        ChatGenerationMetadata.builder().finishReason("STOP").build())))
+                .metadata(ChatResponseMetadata.builder()
+                        .model("test-model")
+                        .usage(new DefaultUsage(promptTokens, completionTokens))
+                        .build())
+                .build();
+    }
+
+    @Test
+    void testRunWithTelemetryEvents() {
+        ChatClient chatClient = ChatClient.builder(chatModel).defaultToolCallbacks(addToolCallback()).build();
+        ReActAgent agent = ReActAgent.builder(chatClient).messageSaver(new MemoryBranchMessageSaver()).build();
+        AssistantMessage toolCallMessage = new AssistantMessage("", Map.of(), List.of(
+                new AssistantMessage.ToolCall("call-1", "function", "add", "{\"a\":1,\"b\":2}")));
+        when(chatModel.call(any(Prompt.class))).thenReturn(
+                responseWithUsage(toolCallMessage, 100, 20),
+                responseWithUsage(new AssistantMessage("结果是3"), 130, 5));
+
+        RunAgentOptions options = RunAgentOptions.builder()
+                .threadId("test-thread-16")
+                .newUserMessage("1 + 2等于多少？")
+                .enableTelemetryEvents(true)
+                .build();
+        List<ReActAgentEvent> events = agent.run(options).collectList().block();
+
+        assertNotNull(events);
+        assertEquals(List.of(LlmMessageEvent.class,
+                        IterationStartEvent.class, LlmMessageEvent.class, UsageEvent.class,
+                        ToolCallStartEvent.class, ToolCallEndEvent.class, LlmMessageEvent.class,
+                        IterationEndEvent.class,
+                        IterationStartEvent.class, LlmMessageEvent.class, UsageEvent.class, IterationEndEvent.class,
+                        RunSummaryEvent.class),
+                events.stream().map(Object::getClass).toList());
+        UsageEvent usage = (UsageEvent) events.get(3);
+        assertEquals(1, usage.iteration());
+        assertEquals("test-model", usage.model());
+        assertEquals(100, usage.promptTokens());
+        assertEquals(20, usage.completionTokens());
+        assertEquals("STOP", usage.finishReason());
+        assertNull(usage.timeToFirstToken());
+        ToolCallEndEvent toolCallEnd = (ToolCallEndEvent) events.get(5);
+        assertEquals("call-1", toolCallEnd.toolCallId());
+        assertEquals("add", toolCallEnd.toolName());
+        assertTrue(toolCallEnd.latency().toNanos() > 0);
+        RunSummaryEvent summary = (RunSummaryEvent) events.getLast();
+        assertEquals(2, summary.iterations());
+        assertEquals(230, summary.promptTokens());
+        assertEquals(25, summary.completionTokens());
+        assertEquals(toolCallEnd.latency(), summary.toolLatency());
+        assertTrue(summary.duration().compareTo(summary.modelLatency()) >= 0);
+    }
+
+    @Test
+    void testListenersReceiveCallbacksWithoutTelemetryEvents() {
+        List<String> builderCalls = new CopyOnWriteArrayList<>();
+        List<String> contextCalls = new CopyOnWriteArrayList<>();
+        ChatClient chatClient = ChatClient.builder(chatModel).defaultToolCallbacks(addToolCallback()).build();
+        ReActAgent agent = ReActAgent.builder(chatClient)
+                .messageSaver(new MemoryBranchMessageSaver())
+                .listener(recordingListener(builderCalls))
+                .build();
+        AssistantMessage toolCallMessage = new AssistantMessage("", Map.of(), List.of(
+                new AssistantMessage.ToolCall("call-1", "function", "add", "{\"a\":1,\"b\":2}")));
+        when(chatModel.call(any(Prompt.class))).thenReturn(
+                responseWithUsage(toolCallMessage, 100, 20),
+                responseWithUsage(new AssistantMessage("结果是3"), 130, 5));
+
+        RunAgentOptions options = RunAgentOptions.builder()
+                .threadId("test-thread-listener")
+                .newUserMessage("1 + 2等于多少？")
+                .build();
+        List<ReActAgentEvent> events = agent.run(options)
+                .contextWrite(context -> context.put(ReActAgentListener.CONTEXT_KEY, recordingListener(contextCalls)))
+                .collectList().block();
+
+        assertNotNull(events);
+        assertTrue(events.stream().allMatch(LlmMessageEvent.class::isInstance));
+        List<String> expected = List.of("iteration:1", "model:1:test-model:100:20:-1", "tool:1:add",
+                "iteration:2", "model:2:test-model:130:5:-1");
+        assertEquals(expected, builderCalls);
+        assertEquals(expected, contextCalls);
+    }
+
+    private static ReActAgentListener recordingListener(List<String> calls) {
+        return new ReActAgentListener() {
+            @Override
+            public void onIterationStart(RunAgentOptions options, int iteration) {
+                calls.add("iteration:" + iteration);
+            }
+
+            @Override
+            public void onModelCallEnd(RunAgentOptions options, int iteration, String model, Integer promptTokens,
+                    Integer completionTokens, long timeToFirstTokenNanos, long latencyNanos) {
+                assertTrue(latencyNanos >= 0);
+                calls.add("model:" + iteration + ":" + model + ":" + promptTokens + ":" + completionTokens + ":"
+                        + timeToFirstTokenNanos);
+            }
+
+            @Override
+            public void onToolCallEnd(RunAgentOptions options, int iteration, String toolName, long latencyNanos) {
+                assertTrue(latencyNanos > 0);
+                calls.add("tool:" + iteration + ":" + toolName);
+            }
+        };
+    }
+
+    @Test
+    void testStreamingUsageEventReportsTimeToFirstToken() {
+        when(chatModel.stream(any(Prompt.class))).thenReturn(Flux.just(
+                ChatResponse.builder().generations(List.of(new Generation(new AssistantMessage("你好")))).build(),
+                responseWithUsage(new AssistantMessage(""), 10, 2)));
+        RunAgentOptions options = RunAgentOptions.builder()
+                .threadId("test-thread-17")
+                .newUserMessage("你好！")
+                .enableStream(true)
+                .enableTelemetryEvents(true)
+                .build();
+
+        List<ReActAgentEvent> events = reActAgent.run(options).collectList().block();
+
+        assertNotNull(events);
+        UsageEvent usage = events.stream().filter(UsageEvent.class::isInstance).map(UsageEvent.class::cast)
+                .findFirst().orElseThrow();
+        assertEquals(10, usage.promptTokens());
+        assertEquals(2, usage.completionTokens());
+        assertNotNull(usage.timeToFirstToken());
+        assertTrue(usage.latency().compareTo(usage.timeToFirstToken()) >= 0);
+    }
+
+    @Test
+    void testRunWithObservations() {
+        List<Observation.Context> stopped = new CopyOnWriteArrayList<>();
+        ObservationRegistry registry = ObservationRegistry.create();
+        registry.observationConfig().observationHandler(new ObservationHandler<>() {
+            @Override
+            public void onStop(Observation.Context context) {
+                stopped.add(context);
+            }
+
+            @Override
+            public boolean supportsContext(Observation.Context context) {
+                return true;
+            }
+        });
+        AtomicReference<String> observationInTool = new AtomicReference<>();
+        ToolCallback addTool = FunctionToolCallback.builder("add", (AddRequest request) -> {
+                    // 当前的Observation是Spring AI的工具调用Observation，它的父节点是ReActAgent的工具调用Observation
+                    observationInTool.set(registry.getCurrentObservation().getContext().getParentObservation()
+                            .getContextView().getName());
+                    return request.a() + request.b();
+                })
+                .description("计算两数之和")
+                .inputType(AddRequest.class)
+                .build();
+        ChatClient chatClient = ChatClient.builder(chatModel).defaultToolCallbacks(addTool).build();
+        ReActAgent agent = ReActAgent.builder(chatClient)
+                .messageSaver(new MemoryBranchMessageSaver())
+                .parallelToolCalls(true)
+                .observationRegistry(registry)
+                .build();
+        AssistantMessage toolCallMessage = new AssistantMessage("", Map.of(), List.of(
+                new AssistantMessage.ToolCall("call-1", "function", "add", "{\"a\":1,\"b\":2}")));
+        when(chatModel.call(any(Prompt.class))).thenReturn(
+                ChatResponse.builder().generations(List.of(new Generation(toolCallMessage))).build(),
+                ChatResponse.builder().generations(List.of(new Generation(new AssistantMessage("结果是3")))).build());
+
+        agent.run(RunAgentOptions.builder()
+                .threadId("test-thread-18")
+                .newUserMessage("1 + 2等于多少？")
+                .build()).blockLast();
+
+        // 工具在其它线程上执行时也能取得工具调用的Observation
+        assertEquals(ReActAgentObservations.TOOL_CALL, observationInTool.get());
+        Observation.Context run = single(stopped, ReActAgentObservations.RUN);
+        assertNull(run.getParentObservation());
+        assertEquals("test-thread-18", run.getHighCardinalityKeyValue(ReActAgentObservations.THREAD_ID).getValue());
+        List<Observation.Context> iterations = stopped.stream()
+                .filter(context -> context.getName().equals(ReActAgentObservations.ITERATION)).toList();
+        assertEquals(List.of("1", "2"), iterations.stream()
+                .map(context -> context.getLowCardinalityKeyValue(ReActAgentObservations.ITERATION_NUMBER).getValue())
+                .toList());
+        iterations.forEach(iteration -> assertSame(run, iteration.getParentObservation().getContextView()));
+        assertEquals(2, stopped.stream()
+                .filter(context -> context.getName().equals(ReActAgentObservations.MODEL_CALL))
+                .filter(context -> iterations.contains(context.getParentObservation().getContextView()))
+                .count());
+        Observation.Context tool = single(stopped, ReActAgentObservations.TOOL_CALL);
+        assertSame(iterations.getFirst(), tool.getParentObservation().getContextView());
+        assertEquals("add", tool.getLowCardinalityKeyValue(ReActAgentObservations.TOOL_NAME).getValue());
+        assertEquals("1", tool.getLowCardinalityKeyValue(ReActAgentObservations.ITERATION_NUMBER).getValue());
+        // 读取历史消息和flush挂在运行下，保存消息挂在所在的迭代下
+        List<Observation.Context> saverCalls = stopped.stream()
+                .filter(context -> context.getName().equals(ReActAgentObservations.SAVER_CALL)).toList();
+        assertEquals(List.of("getLatestMessages", "getLatestMessageId", "save", "save", "save", "save", "flush"),
+                saverCalls.stream()
+                        .map(context -> context.getLowCardinalityKeyValue(ReActAgentObservations.SAVER_METHOD)
+                                .getValue())
+                        .toList());
+        assertSame(run, saverCalls.getFirst().getParentObservation().getContextView());
+        assertSame(iterations.getFirst(), saverCalls.get(3).getParentObservation().getContextView());
+        assertSame(run, saverCalls.getLast().getParentObservation().getContextView());
+    }
+
+    private static Observation.Context single(List<Observation.Context> contexts, String name) {
+        List<Observation.Context> matched = contexts.stream().filter(context -> context.getName().equals(name))
+                .toList();
+        assertEquals(1, matched.size());
+        return matched.getFirst();
+    }
+
+    @Test
+    void testRunRecordsJfrEvents() throws Exception {
+        ChatClient chatClient = ChatClient.builder(chatModel).defaultToolCallbacks(addToolCallback()).build();
+        ReActAgent agent = ReActAgent.builder(chatClient).messageSaver(new MemoryBranchMessageSaver()).build();
+        AssistantMessage toolCallMessage = new AssistantMessage("", Map.of(), List.of(
+                new AssistantMessage.ToolCall("call-1", "function", "add", "{\"a\":1,\"b\":2}")));
+        when(chatModel.call(any(Prompt.class))).thenReturn(
+                responseWithUsage(toolCallMessage, 100, 20),
+                responseWithUsage(new AssistantMessage("结果是3"), 130, 5));
+
+        List<RecordedEvent> recordedEvents;
+        try (Recording recording = new Recording()) {
+            recording.enable(AgentRunJfrEvent.class);
+            recording.enable(IterationJfrEvent.class);
+            recording.enable(ModelCallJfrEvent.class);
+            recording.enable(ToolCallJfrEvent.class);
+            recording.start();
+            agent.run(RunAgentOptions.builder()
+                    .threadId("test-thread-19")
+                    .newUserMessage("1 + 2等于多少？")
+                    .build()).blockLast();
+            recording.stop();
+            Path file = Files.createTempFile("react-agent", ".jfr");
+            try {
+                recording.dump(file);
+                recordedEvents = RecordingFile.readAllEvents(file);
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        Map<String, List<RecordedEvent>> byName = recordedEvents.stream()
+                .collect(Collectors.groupingBy(event -> event.getEventType().getName()));
+        RecordedEvent run = byName.get("com.x3bits.springaireactagent.AgentRun").getFirst();
+        assertEquals("test-thread-19", run.getString("threadId"));
+        assertEquals(2, run.getInt("iterations"));
+        assertEquals("success", run.getString("outcome"));
+        assertEquals(2, byName.get("com.x3bits.springaireactagent.Iteration").size());
+        List<RecordedEvent> modelCalls = byName.get("com.x3bits.springaireactagent.ModelCall").stream()
+                .sorted(Comparator.comparingInt(event -> event.getInt("iteration")))
+                .toList();
+        assertEquals(2, modelCalls.size());
+        assertEquals(100, modelCalls.getFirst().getInt("promptTokens"));
+        assertEquals("{\"a\":1,\"b\":2}".length(), modelCalls.getFirst().getInt("responseLength"));
+        RecordedEvent toolCall = byName.get("com.x3bits.springaireactagent.ToolCall").getFirst();
+        assertEquals("add", toolCall.getString("toolName"));
+        assertEquals(1, toolCall.getInt("iteration"));
+        assertEquals(1, toolCall.getInt("resultLength"));
+    }
+
     @Test
     void testBuilderConfiguration() {
         // 准备组件
@@ -0,0 +1,160 @@
+package com.x3bits.springaireactagent.core;
+
+import com.x3bits.springaireactagent.core.event.AssistantTextPartEvent;
+import com.x3bits.springaireactagent.core.event.ReActAgentEvent;
+import com.x3bits.springaireactagent.core.event.LlmMessageEvent;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import org.springframework.ai.chat.messages.UserMessage;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.test.scheduler.VirtualTimeScheduler;
+import reactor.util.context.Context;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TextPartCoalescerTest {
+
+    private static AssistantTextPartEvent text(String text) {
+        return new AssistantTextPartEvent(text);
+    }
+
+    private static List<String> texts(List<ReActAgentEvent> events) {
+        return events.stream()
+                .map(event -> event instanceof AssistantTextPartEvent textPartEvent ? textPartEvent.text() : "|")
+                .toList();
+    }
+
+    @Test
+    void testFirstPartIsNotDelayedAndRestIsMergedBySize() {
+        VirtualTimeScheduler timer = VirtualTimeScheduler.create();
+        TextPartCoalescer coalescer = new TextPartCoalescer(4, Duration.ofMillis(20), timer);
+        Sinks.Many<ReActAgentEvent> upstream = Sinks.many().unicast().onBackpressureBuffer();
+        List<ReActAgentEvent> received = new CopyOnWriteArrayList<>();
+        coalescer.coalesce(upstream.asFlux()).subscribe(received::add);
+
+        upstream.tryEmitNext(text("a"));
+        assertEquals(List.of("a"), texts(received));
+
+        upstream.tryEmitNext(text("bc"));
+        assertEquals(1, received.size());
+        upstream.tryEmitNext(text("de"));
+        assertEquals(List.of("a", "bcde"), texts(received));
+    }
+
+    @Test
+    void testPendingTextIsFlushedAfterDelay() {
+        VirtualTimeScheduler timer = VirtualTimeScheduler.create();
+        TextPartCoalescer coalescer = new TextPartCoalescer(1024, Duration.ofMillis(20), timer);
+        Sinks.Many<ReActAgentEvent> upstream = Sinks.many().unicast().onBackpressureBuffer();
+        List<ReActAgentEvent> received = new CopyOnWriteArrayList<>();
+        coalescer.coalesce(upstream.asFlux()).subscribe(received::add);
+
+        upstream.tryEmitNext(text("a"));
+        upstream.tryEmitNext(text("b"));
+        timer.advanceTimeBy(Duration.ofMillis(10));
+        upstream.tryEmitNext(text("c"));
+        assertEquals(List.of("a"), texts(received));
+
+        // 延迟从缓存第一个片段时开始计算
+        timer.advanceTimeBy(Duration.ofMillis(10));
+        assertEquals(List.of("a", "bc"), texts(received));
+
+        upstream.tryEmitNext(text("d"));
+        timer.advanceTimeBy(Duration.ofMillis(20));
+        assertEquals(List.of("a", "bc", "d"), texts(received));
+    }
+
+    @Test
+    void testOtherEventsAndCompletionFlushPendingText() {
+        TextPartCoalescer coalescer = new TextPartCoalescer(1024, Duration.ofSeconds(10),
+                VirtualTimeScheduler.create());
+        LlmMessageEvent saved = new LlmMessageEvent(new UserMessage("hi"), "msg1");
+
+        List<ReActAgentEvent> events = coalescer.coalesce(Flux.just(text("a"), text("b"), text("c"), saved,
+                text("d"), text("e"))).collectList().block();
+
+        assertEquals(List.of("a", "bc", "|", "de"), texts(events));
+        assertSame(saved, events.get(2));
+    }
+
+    @Test
+    void testMultiByteTextIsCountedInUtf8Bytes() {
+        TextPartCoalescer coalescer = new TextPartCoalescer(6, Duration.ofSeconds(10),
+                VirtualTimeScheduler.create());
+
+        // 每个中文字符3个字节
+        List<ReActAgentEvent> events = coalescer.coalesce(Flux.just(text("你"), text("好"), text("世"), text("界"),
+                text("!"))).collectList().block();
+
+        assertEquals(List.of("你", "好世", "界!"), texts(events));
+    }
+
+    @Test
+    void testSubscriberContextIsPropagatedToUpstream() {
+        TextPartCoalescer coalescer = new TextPartCoalescer(1024, Duration.ofSeconds(10),
+                VirtualTimeScheduler.create());
+        Flux<ReActAgentEvent> upstream = Flux.deferContextual(context -> Flux.just(text(context.get("key"))));
+
+        List<ReActAgentEvent> events = coalescer.coalesce(upstream)
+                .contextWrite(Context.of("key", "value"))
+                .collectList()
+                .block();
+
+        assertEquals(List.of("value"), texts(events));
+    }
+
+    @Test
+    void testUpstreamIsRequestedByDownstreamDemand() {
+        VirtualTimeScheduler timer = VirtualTimeScheduler.create();
+        TextPartCoalescer coalescer = new TextPartCoalescer(1024, Duration.ofMillis(20), timer);
+        Sinks.Many<ReActAgentEvent> upstream = Sinks.many().unicast().onBackpressureBuffer();
+        AtomicLong upstreamRequested = new AtomicLong();
+        List<ReActAgentEvent> received = new CopyOnWriteArrayList<>();
+        BaseSubscriber<ReActAgentEvent> subscriber = new BaseSubscriber<>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+                request(1);
+            }
+
+            @Override
+            protected void hookOnNext(ReActAgentEvent value) {
+                received.add(value);
+            }
+        };
+        coalescer.coalesce(upstream.asFlux().doOnRequest(upstreamRequested::addAndGet)).subscribe(subscriber);
+
+        upstream.tryEmitNext(text("a"));
+        upstream.tryEmitNext(text("b"));
+        // 第一个片段满足了下游的请求，不再向上游请求
+        assertEquals(List.of("a"), texts(received));
+        assertEquals(1, upstreamRequested.get());
+
+        // 缓存的片段没有满足下游的请求，继续向上游请求
+        subscriber.request(1);
+        upstream.tryEmitNext(text("c"));
+        timer.advanceTimeBy(Duration.ofMillis(20));
+        assertEquals(List.of("a", "bc"), texts(received));
+
+        // 定时器到期时下游没有请求，等到下游请求时再发送
+        upstream.tryEmitNext(text("d"));
+        timer.advanceTimeBy(Duration.ofMillis(20));
+        assertEquals(List.of("a", "bc"), texts(received));
+        subscriber.request(1);
+        assertEquals(List.of("a", "bc", "d"), texts(received));
+    }
+
+    @Test
+    void testInvalidArguments() {
+        VirtualTimeScheduler timer = VirtualTimeScheduler.create();
+        assertThrows(IllegalArgumentException.class, () -> new TextPartCoalescer(0, Duration.ofMillis(20), timer));
+        assertThrows(IllegalArgumentException.class, () -> new TextPartCoalescer(16, Duration.ZERO, timer));
+        assertThrows(IllegalArgumentException.class, () -> new TextPartCoalescer(16, null, timer));
+    }
+}
@@ -0,0 +1,178 @@
+package com.x3bits.springaireactagent.core.memory;
+
+import com.x3bits.springaireactagent.core.message.BranchMessageItem;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingBranchMessageSaverTest {
+
+    /**
+     * 统计读取次数的保存器
+     */
+    private static class CountingSaver extends MemoryBranchMessageSaver {
+        private final AtomicInteger reads = new AtomicInteger();
+
+        @Override
+        public String getLatestMessageId(String threadId) {
+            reads.incrementAndGet();
+            return super.getLatestMessageId(threadId);
+        }
+
+        @Override
+        public List<BranchMessageItem> getLatestMessageItems(String threadId, int count, String lastMessageId) {
+            reads.incrementAndGet();
+            return super.getLatestMessageItems(threadId, count, lastMessageId);
+        }
+    }
+
+    private static BranchMessageItem item(String id, String previousId) {
+        return new BranchMessageItem(new UserMessage("message " + id), id, previousId, Map.of());
+    }
+
+    private static List<String> texts(List<Message> messages) {
+        return messages.stream().map(Message::getText).toList();
+    }
+
+    @Test
+    void testHotThreadIsReadFromCache() {
+        CountingSaver delegate = new CountingSaver();
+        CachingBranchMessageSaver saver = new CachingBranchMessageSaver(delegate);
+
+        saver.save("thread1", item("msg1", null));
+        saver.saveAll("thread1", List.of(item("msg2", "msg1"), item("msg3", "msg2")));
+
+        assertEquals("msg3", saver.getLatestMessageId("thread1"));
+        assertEquals(List.of("message msg2", "message msg3"), texts(saver.getLatestMessages("thread1", 2, null)));
+        assertEquals(List.of("message msg1", "message msg2"), texts(saver.getLatestMessages("thread1", 10, "msg2")));
+        assertEquals(0, delegate.reads.get());
+        assertEquals(3, saver.getHitCount());
+        assertEquals(0, saver.getMissCount());
+    }
+
+    @Test
+    void testMissIsLoadedFromDelegateAndCached() {
+        CountingSaver delegate = new CountingSaver();
+        delegate.save("thread1", item("msg1", null));
+        delegate.save("thread1", item("msg2", "msg1"));
+        CachingBranchMessageSaver saver = new CachingBranchMessageSaver(delegate);
+
+        assertEquals(List.of("message msg1", "message msg2"), texts(saver.getLatestMessages("thread1", 10, null)));
+        assertEquals(1, delegate.reads.get());
+
+        // 新写入的消息接在已缓存的消息链后面，读取不再访问被装饰的保存器
+        saver.save("thread1", item("msg3", "msg2"));
+        assertEquals(List.of("message msg1", "message msg2", "message msg3"),
+                texts(saver.getLatestMessages("thread1", 10, null)));
+        assertEquals("msg3", saver.getLatestMessageId("thread1"));
+        assertEquals(1, delegate.reads.get());
+        assertEquals(1, saver.getMissCount());
+        assertEquals(2, saver.getHitCount());
+    }
+
+    @Test
+    void testWindowBeyondCachedMessagesIsLoaded() {
+        CountingSaver delegate = new CountingSaver();
+        delegate.save("thread1", item("msg1", null));
+        CachingBranchMessageSaver saver = new CachingBranchMessageSaver(delegate);
+
+        // 前一个消息不在缓存中
+        saver.save("thread1", item("msg2", "msg1"));
+        assertEquals(List.of("message msg2"), texts(saver.getLatestMessages("thread1", 1, null)));
+        assertEquals(0, delegate.reads.get());
+        assertEquals(List.of("message msg1", "message msg2"), texts(saver.getLatestMessages("thread1", 2, null)));
+        assertEquals(1, delegate.reads.get());
+    }
+
+    @Test
+    void testLeastRecentlyUsedThreadIsEvicted() {
+        MemoryBranchMessageSaver delegate = new MemoryBranchMessageSaver();
+        BranchMessageItem item = item("msg1", null);
+        long itemBytes = CachingBranchMessageSaver.estimateBytes(item);
+        CachingBranchMessageSaver saver = new CachingBranchMessageSaver(delegate, itemBytes * 2,
+                Duration.ofMinutes(1));
+
+        saver.save("thread1", item);
+        saver.save("thread2", item("msg2", null));
+        // 访问thread1后，thread2成为最久未访问的线程
+        saver.getLatestMessageId("thread1");
+        saver.save("thread3", item("msg3", null));
+
+        assertEquals(1, saver.getEvictionCount());
+        assertTrue(saver.getEstimatedBytes() <= itemBytes * 2);
+        long misses = saver.getMissCount();
+        saver.getLatestMessageId("thread1");
+        assertEquals(misses, saver.getMissCount());
+        assertEquals("msg2", saver.getLatestMessageId("thread2"));
+        assertEquals(misses + 1, saver.getMissCount());
+    }
+
+    @Test
+    void testEntryExpiresAfterTimeToLive() {
+        AtomicLong now = new AtomicLong();
+        CachingBranchMessageSaver saver = new CachingBranchMessageSaver(new MemoryBranchMessageSaver(),
+                CachingBranchMessageSaver.DEFAULT_MAXIMUM_BYTES, Duration.ofSeconds(10), threadId -> {
+                }, now::get);
+
+        saver.save("thread1", item("msg1", null));
+        saver.getLatestMessageId("thread1");
+        assertEquals(1, saver.getHitCount());
+
+        now.addAndGet(Duration.ofSeconds(10).toNanos());
+        assertEquals("msg1", saver.getLatestMessageId("thread1"));
+        assertEquals(1, saver.getMissCount());
+        assertEquals(1, saver.getEvictionCount());
+    }
+
+    @Test
+    void testInvalidateAcrossNodes() {
+        MemoryBranchMessageSaver database = new MemoryBranchMessageSaver();
+        List<CachingBranchMessageSaver> nodes = new ArrayList<>();
+        // 每个节点写入后通知其它节点使缓存失效
+        for (int i = 0; i < 2; i++) {
+            int current = i;
+            nodes.add(new CachingBranchMessageSaver(database, CachingBranchMessageSaver.DEFAULT_MAXIMUM_BYTES,
+                    CachingBranchMessageSaver.DEFAULT_TIME_TO_LIVE, threadId -> {
+                        for (int j = 0; j < nodes.size(); j++) {
+                            if (j != current) {
+                                nodes.get(j).invalidate(threadId);
+                            }
+                        }
+                    }));
+        }
+        CachingBranchMessageSaver node1 = nodes.get(0);
+        CachingBranchMessageSaver node2 = nodes.get(1);
+
+        node1.save("thread1", item("msg1", null));
+        assertEquals("msg1", node2.getLatestMessageId("thread1"));
+        node2.save("thread1", item("msg2", "msg1"));
+
+        assertEquals("msg2", node1.getLatestMessageId("thread1"));
+        assertEquals(List.of("message msg1", "message msg2"), texts(node1.getLatestMessages("thread1", 10, null)));
+    }
+
+    @Test
+    void testInvalidArguments() {
+        MemoryBranchMessageSaver delegate = new MemoryBranchMessageSaver();
+        assertThrows(IllegalArgumentException.class, () -> new CachingBranchMessageSaver(null));
+        assertThrows(IllegalArgumentException.class,
+                () -> new CachingBranchMessageSaver(delegate, 0, Duration.ofMinutes(1)));
+        assertThrows(IllegalArgumentException.class,
+                () -> new CachingBranchMessageSaver(delegate, 1024, Duration.ZERO));
+
+        CachingBranchMessageSaver saver = new CachingBranchMessageSaver(delegate);
+        assertThrows(IllegalArgumentException.class, () -> saver.save(null, item("msg1", null)));
+        assertThrows(IllegalArgumentException.class, () -> saver.save("thread1", null));
+        assertNull(saver.getLatestMessageId(null));
+        assertTrue(saver.getLatestMessages(null, 10, null).isEmpty());
+    }
+}
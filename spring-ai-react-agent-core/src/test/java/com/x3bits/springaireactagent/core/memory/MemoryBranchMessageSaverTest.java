@@ -1,9 +1,11 @@
 package com.x3bits.springaireactagent.core.memory;
 
 import com.x3bits.springaireactagent.core.message.BranchMessageItem;
+import com.x3bits.springaireactagent.core.message.BranchMessageNode;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
 import org.springframework.ai.chat.messages.SystemMessage;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.messages.AssistantMessage;
@@ -130,6 +132,72 @@ class MemoryBranchMessageSaverTest {
         assertEquals("msg2", item3.previousId());
     }
 
+    @Test
+    void testGetMessagesAfter() {
+        // 测试按游标分页读取消息
+        String threadId = "thread1";
+        for (int i = 1; i <= 5; i++) {
+            messageSaver.save(threadId, new BranchMessageItem(new UserMessage("Message " + i), "msg" + i,
+                    i == 1 ? null : "msg" + (i - 1), Map.of()));
+        }
+        messageSaver.save("thread2", new BranchMessageItem(new UserMessage("Other"), "other", null, Map.of()));
+
+        assertEquals(List.of("msg1", "msg2"), ids(messageSaver.getMessagesAfter(threadId, null, 2)));
+        assertEquals(List.of("msg3", "msg4"), ids(messageSaver.getMessagesAfter(threadId, "msg2", 2)));
+        assertEquals(List.of("msg5"), ids(messageSaver.getMessagesAfter(threadId, "msg4", 2)));
+        assertTrue(messageSaver.getMessagesAfter(threadId, "msg5", 2).isEmpty());
+
+        // 游标不属于该线程、线程不存在或limit无效时返回空列表
+        assertTrue(messageSaver.getMessagesAfter(threadId, "other", 2).isEmpty());
+        assertTrue(messageSaver.getMessagesAfter(threadId, "missing", 2).isEmpty());
+        assertTrue(messageSaver.getMessagesAfter("nonexistent", null, 2).isEmpty());
+        assertTrue(messageSaver.getMessagesAfter(threadId, null, 0).isEmpty());
+        assertTrue(messageSaver.getMessagesAfter(null, null, 2).isEmpty());
+
+        // 清空线程后游标失效
+        messageSaver.clearThread(threadId);
+        assertTrue(messageSaver.getMessagesAfter(threadId, "msg2", 2).isEmpty());
+    }
+
+    @Test
+    void testDefaultGetMessagesAfterAndStream() {
+        // 只实现必需方法的保存器使用接口的默认实现
+        BranchMessageSaver defaultSaver = new BranchMessageSaver() {
+            @Override
+            public void save(String threadId, BranchMessageItem branchMessageItem) {
+                messageSaver.save(threadId, branchMessageItem);
+            }
+
+            @Override
+            public String getLatestMessageId(String threadId) {
+                return messageSaver.getLatestMessageId(threadId);
+            }
+
+            @Override
+            public List<BranchMessageItem> getAllMessages(String threadId) {
+                return messageSaver.getAllMessages(threadId);
+            }
+
+            @Override
+            public List<Message> getLatestMessages(String threadId, int count, String lastMessageId) {
+                return messageSaver.getLatestMessages(threadId, count, lastMessageId);
+            }
+        };
+        for (int i = 1; i <= 3; i++) {
+            defaultSaver.save("thread1", new BranchMessageItem(new UserMessage("Message " + i), "msg" + i,
+                    i == 1 ? null : "msg" + (i - 1), Map.of()));
+        }
+
+        assertEquals(List.of("msg1", "msg2"), ids(defaultSaver.getMessagesAfter("thread1", null, 2)));
+        assertEquals(List.of("msg3"), ids(defaultSaver.getMessagesAfter("thread1", "msg2", 2)));
+        assertTrue(defaultSaver.getMessagesAfter("thread1", "missing", 2).isEmpty());
+        assertEquals(List.of("msg1", "msg2", "msg3"), ids(defaultSaver.streamAllMessages("thread1").toList()));
+    }
+
+    private static List<String> ids(List<BranchMessageItem> items) {
+        return items.stream().map(BranchMessageItem::id).toList();
+    }
+
     @Test
     void testGetAllMessagesWithNullThreadId() {
         // 测试使用null线程ID获取所有消息
@@ -358,5 +426,12 @@ class MemoryBranchMessageSaverTest {
         // 验证所有消息
         List<BranchMessageItem> allMessages = messageSaver.getAllMessages(threadId);
         assertEquals(3, allMessages.size());
+
+        // 验证消息树结构
+        assertEquals(List.of(
+                        new BranchMessageNode("root", null, MessageType.USER),
+                        new BranchMessageNode("branch1", "root", MessageType.ASSISTANT),
+                        new BranchMessageNode("branch2", "root", MessageType.ASSISTANT)),
+                messageSaver.getMessageNodes(threadId));
     }
 }
\ No newline at end of file
@@ -0,0 +1,205 @@
+package com.x3bits.springaireactagent.core.memory;
+
+import com.x3bits.springaireactagent.core.message.BranchMessageItem;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteBehindBranchMessageSaverTest {
+
+    /**
+     * 在latch打开之前阻塞所有写入的保存器
+     */
+    private static class BlockingSaver extends MemoryBranchMessageSaver {
+        private final CountDownLatch latch = new CountDownLatch(1);
+
+        @Override
+        public void save(String threadId, BranchMessageItem branchMessageItem) {
+            try {
+                latch.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.save(threadId, branchMessageItem);
+        }
+    }
+
+    private static BranchMessageItem item(String id, String previousId) {
+        return new BranchMessageItem(new UserMessage("message " + id), id, previousId, Map.of());
+    }
+
+    @Test
+    void testSaveReturnsBeforeWriteCompletes() {
+        BlockingSaver delegate = new BlockingSaver();
+        WriteBehindBranchMessageSaver saver = new WriteBehindBranchMessageSaver(delegate);
+
+        saver.save("thread1", item("msg1", null));
+        saver.save("thread1", item("msg2", "msg1"));
+
+        // 写入仍被阻塞，但save已经返回
+        assertEquals(0, delegate.getMessageCount("thread1"));
+
+        delegate.latch.countDown();
+        saver.flush("thread1");
+        assertEquals(2, delegate.getMessageCount("thread1"));
+    }
+
+    @Test
+    void testWritesOfSameThreadKeepOrder() {
+        WriteBehindBranchMessageSaver saver = new WriteBehindBranchMessageSaver(new MemoryBranchMessageSaver());
+
+        String previousId = null;
+        for (int i = 0; i < 100; i++) {
+            saver.save("thread1", item("msg" + i, previousId));
+            previousId = "msg" + i;
+        }
+
+        List<BranchMessageItem> messages = saver.getAllMessages("thread1");
+        assertEquals(100, messages.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("msg" + i, messages.get(i).id());
+        }
+        assertEquals("msg99", saver.getLatestMessageId("thread1"));
+        assertEquals(3, saver.getLatestMessages("thread1", 3, null).size());
+    }
+
+    @Test
+    void testQueuedMessagesAreWrittenInOneBatch() {
+        BlockingSaver delegate = new BlockingSaver();
+        List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        BranchMessageSaver countingSaver = new MemoryBranchMessageSaver() {
+            @Override
+            public void saveAll(String threadId, List<BranchMessageItem> branchMessageItems) {
+                batchSizes.add(branchMessageItems.size());
+                delegate.saveAll(threadId, branchMessageItems);
+            }
+        };
+        WriteBehindBranchMessageSaver saver = new WriteBehindBranchMessageSaver(countingSaver);
+
+        // 第一条消息的写入被阻塞期间，后面的消息在队列中累积
+        saver.save("thread1", item("msg1", null));
+        saver.save("thread1", item("msg2", "msg1"));
+        saver.saveAll("thread1", List.of(item("msg3", "msg2"), item("msg4", "msg3")));
+        delegate.latch.countDown();
+        saver.flush("thread1");
+
+        assertEquals(4, delegate.getMessageCount("thread1"));
+        assertEquals(4, batchSizes.stream().mapToInt(Integer::intValue).sum());
+        assertTrue(batchSizes.size() < 4);
+    }
+
+    @Test
+    void testEmitAfterPersistWaitsForWrite() {
+        MemoryBranchMessageSaver delegate = new MemoryBranchMessageSaver();
+        WriteBehindBranchMessageSaver saver = new WriteBehindBranchMessageSaver(delegate, 16,
+                WriteBehindBranchMessageSaver.Durability.EMIT_AFTER_PERSIST);
+
+        saver.save("thread1", item("msg1", null));
+
+        assertEquals("msg1", delegate.getLatestMessageId("thread1"));
+    }
+
+    @Test
+    void testWriteFailureIsReportedOnFlush() {
+        MemoryBranchMessageSaver failingSaver = new MemoryBranchMessageSaver() {
+            @Override
+            public void save(String threadId, BranchMessageItem branchMessageItem) {
+                throw new IllegalStateException("database unavailable");
+            }
+        };
+        WriteBehindBranchMessageSaver saver = new WriteBehindBranchMessageSaver(failingSaver);
+
+        saver.save("thread1", item("msg1", null));
+
+        IllegalStateException exception = assertThrows(IllegalStateException.class, () -> saver.flush("thread1"));
+        assertEquals("database unavailable", exception.getCause().getMessage());
+        // 异常只报告一次
+        assertDoesNotThrow(() -> saver.flush("thread1"));
+    }
+
+    @Test
+    void testMessagesQueuedAfterFailureAreNotWritten() throws InterruptedException {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch fail = new CountDownLatch(1);
+        MemoryBranchMessageSaver delegate = new MemoryBranchMessageSaver() {
+            @Override
+            public void save(String threadId, BranchMessageItem branchMessageItem) {
+                if ("msg1".equals(branchMessageItem.id())) {
+                    writing.countDown();
+                    try {
+                        fail.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new IllegalStateException("database unavailable");
+                }
+                super.save(threadId, branchMessageItem);
+            }
+        };
+        WriteBehindBranchMessageSaver saver = new WriteBehindBranchMessageSaver(delegate);
+
+        saver.save("thread1", item("msg1", null));
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        // msg1正在写入时排队，msg1失败后不能再写入，否则msg2的前一个消息不存在
+        saver.save("thread1", item("msg2", "msg1"));
+        fail.countDown();
+
+        assertThrows(IllegalStateException.class, () -> saver.flush("thread1"));
+        assertEquals(0, delegate.getMessageCount("thread1"));
+
+        // 失败被报告后该线程的写入恢复正常
+        saver.save("thread1", item("msg3", null));
+        saver.flush("thread1");
+        assertEquals(1, delegate.getMessageCount("thread1"));
+    }
+
+    @Test
+    void testReadDoesNotConsumeWriteFailure() {
+        MemoryBranchMessageSaver failingSaver = new MemoryBranchMessageSaver() {
+            @Override
+            public void save(String threadId, BranchMessageItem branchMessageItem) {
+                throw new IllegalStateException("database unavailable");
+            }
+        };
+        WriteBehindBranchMessageSaver saver = new WriteBehindBranchMessageSaver(failingSaver);
+
+        saver.save("thread1", item("msg1", null));
+
+        assertTrue(saver.getAllMessages("thread1").isEmpty());
+        assertNull(saver.getLatestMessageId("thread1"));
+        IllegalStateException exception = assertThrows(IllegalStateException.class, () -> saver.flush("thread1"));
+        assertEquals("database unavailable", exception.getCause().getMessage());
+    }
+
+    @Test
+    void testCloseWritesPendingMessages() {
+        BlockingSaver delegate = new BlockingSaver();
+        WriteBehindBranchMessageSaver saver = new WriteBehindBranchMessageSaver(delegate);
+
+        saver.save("thread1", item("msg1", null));
+        delegate.latch.countDown();
+        saver.close();
+
+        assertEquals(1, delegate.getMessageCount("thread1"));
+        assertThrows(IllegalStateException.class, () -> saver.save("thread1", item("msg2", "msg1")));
+    }
+
+    @Test
+    void testInvalidArguments() {
+        MemoryBranchMessageSaver delegate = new MemoryBranchMessageSaver();
+        assertThrows(IllegalArgumentException.class, () -> new WriteBehindBranchMessageSaver(null));
+        assertThrows(IllegalArgumentException.class, () -> new WriteBehindBranchMessageSaver(delegate, 0,
+                WriteBehindBranchMessageSaver.Durability.EMIT_THEN_PERSIST));
+
+        WriteBehindBranchMessageSaver saver = new WriteBehindBranchMessageSaver(delegate);
+        assertThrows(IllegalArgumentException.class, () -> saver.save(null, item("msg1", null)));
+        assertThrows(IllegalArgumentException.class, () -> saver.save("thread1", null));
+    }
+}
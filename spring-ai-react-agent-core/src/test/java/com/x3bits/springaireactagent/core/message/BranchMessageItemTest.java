@@ -0,0 +1,54 @@
+package com.x3bits.springaireactagent.core.message;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BranchMessageItemTest {
+
+    @Test
+    void testLazyItemLoadsMessageOnce() {
+        AtomicInteger loadCount = new AtomicInteger();
+        BranchMessageItem item = BranchMessageItem.lazy(MessageType.ASSISTANT, () -> {
+            loadCount.incrementAndGet();
+            return new AssistantMessage("answer");
+        }, "msg-2", "msg-1", Map.of());
+
+        assertEquals(MessageType.ASSISTANT, item.messageType());
+        assertEquals("msg-2", item.id());
+        assertEquals("msg-1", item.previousId());
+        assertFalse(item.isMessageLoaded());
+        assertTrue(item.toString().contains("not loaded"));
+        assertEquals(0, loadCount.get());
+
+        assertEquals("answer", item.message().getText());
+        assertSame(item.message(), item.message());
+        assertTrue(item.isMessageLoaded());
+        assertEquals(1, loadCount.get());
+    }
+
+    @Test
+    void testLazyItemEqualsEagerItem() {
+        BranchMessageItem eager = new BranchMessageItem(new UserMessage("hi"), "msg-1", null, Map.of());
+        BranchMessageItem lazy = BranchMessageItem.lazy(MessageType.USER, () -> new UserMessage("hi"), "msg-1",
+                null, Map.of());
+
+        assertTrue(eager.isMessageLoaded());
+        assertEquals(MessageType.USER, eager.messageType());
+        assertEquals(eager, lazy);
+        assertEquals(eager.hashCode(), lazy.hashCode());
+        // 比较不会加载消息内容
+        assertFalse(lazy.isMessageLoaded());
+        assertNotEquals(eager, new BranchMessageItem(new UserMessage("hi"), "msg-2", null, Map.of()));
+        assertNotEquals(eager, new BranchMessageItem(new AssistantMessage("hi"), "msg-1", null, Map.of()));
+        assertEquals(new BranchMessageNode("msg-1", null, MessageType.USER), BranchMessageNode.of(lazy));
+        assertThrows(IllegalArgumentException.class,
+                () -> BranchMessageItem.lazy(MessageType.USER, null, "msg-1", null, Map.of()));
+    }
+}
@@ -0,0 +1,54 @@
+package com.x3bits.springaireactagent.core.token;
+
+import com.x3bits.springaireactagent.core.message.BranchMessageItem;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageTokenCounterTest {
+
+    @Test
+    void testSimpleTokenEstimator() {
+        SimpleTokenEstimator estimator = new SimpleTokenEstimator();
+
+        // 4个字符的格式开销 + 8个拉丁字符
+        assertEquals(4 + 2, estimator.estimate(new UserMessage("abcdefgh")));
+        // 中文按每个字符1个token估算
+        assertEquals(4 + 4, estimator.estimate(new UserMessage("你好世界")));
+        assertEquals(4, estimator.estimate(new UserMessage("")));
+
+        AssistantMessage toolCallMessage = new AssistantMessage("", Map.of(),
+                List.of(new AssistantMessage.ToolCall("id", "function", "add", "{\"a\":1,\"b\":2}")));
+        assertTrue(estimator.estimate(toolCallMessage) > 4);
+        ToolResponseMessage toolResponseMessage = new ToolResponseMessage(
+                List.of(new ToolResponseMessage.ToolResponse("id", "add", "3".repeat(400))));
+        assertTrue(estimator.estimate(toolResponseMessage) >= 100);
+    }
+
+    @Test
+    void testTokenCountIsCachedByMessageId() {
+        AtomicInteger estimations = new AtomicInteger();
+        MessageTokenCounter counter = new MessageTokenCounter(message -> {
+            estimations.incrementAndGet();
+            return message.getText().length();
+        });
+        BranchMessageItem item = new BranchMessageItem(new UserMessage("hello"), "msg1", null, Map.of());
+
+        assertEquals(5, counter.count(item));
+        assertEquals(5, counter.count(item));
+        assertEquals(1, estimations.get());
+    }
+
+    @Test
+    void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new MessageTokenCounter(null));
+        assertThrows(IllegalArgumentException.class, () -> new MessageTokenCounter(new SimpleTokenEstimator(), -1));
+    }
+}
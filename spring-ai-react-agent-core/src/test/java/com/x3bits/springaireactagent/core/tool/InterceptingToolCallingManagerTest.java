@@ -0,0 +1,57 @@
+package com.x3bits.springaireactagent.core.tool;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.function.FunctionToolCallback;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InterceptingToolCallingManagerTest {
+
+    record EchoRequest(String value) {
+    }
+
+    @Test
+    void testEachToolCallIsInterceptedInOrder() {
+        ToolCallingChatOptions chatOptions = ToolCallingChatOptions.builder()
+                .toolCallbacks(FunctionToolCallback.builder("echo", EchoRequest::value)
+                        .description("echo")
+                        .inputType(EchoRequest.class)
+                        .build())
+                .internalToolExecutionEnabled(false)
+                .build();
+        Prompt prompt = new Prompt(List.of(new UserMessage("test")), chatOptions);
+        AssistantMessage assistantMessage = new AssistantMessage("", Map.of(), List.of(
+                new AssistantMessage.ToolCall("call-1", "function", "echo", "{\"value\":\"a\"}"),
+                new AssistantMessage.ToolCall("call-2", "function", "echo", "{\"value\":\"b\"}")));
+        List<String> intercepted = new ArrayList<>();
+        InterceptingToolCallingManager manager = new InterceptingToolCallingManager(
+                ToolCallingManager.builder().build(), (toolCall, call) -> {
+                    intercepted.add("before " + toolCall.id());
+                    ToolExecutionResult result = call.get();
+                    intercepted.add("after " + toolCall.id());
+                    return result;
+                });
+
+        ToolExecutionResult result = manager.executeToolCalls(prompt,
+                ChatResponse.builder().generations(List.of(new Generation(assistantMessage))).build());
+
+        assertEquals(List.of("before call-1", "after call-1", "before call-2", "after call-2"), intercepted);
+        assertEquals(3, result.conversationHistory().size());
+        ToolResponseMessage toolResponseMessage = (ToolResponseMessage) result.conversationHistory().getLast();
+        assertEquals(List.of("call-1", "call-2"),
+                toolResponseMessage.getResponses().stream().map(ToolResponseMessage.ToolResponse::id).toList());
+    }
+}
@@ -0,0 +1,218 @@
+package com.x3bits.springaireactagent.core.tool;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.function.FunctionToolCallback;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelToolCallingManagerTest {
+
+    record EchoRequest(String value) {
+    }
+
+    private static ToolCallback tool(String name, Function<EchoRequest, String> function) {
+        return FunctionToolCallback.builder(name, function)
+                .description(name)
+                .inputType(EchoRequest.class)
+                .build();
+    }
+
+    private static Prompt prompt(ToolCallback... toolCallbacks) {
+        ToolCallingChatOptions chatOptions = ToolCallingChatOptions.builder()
+                .toolCallbacks(toolCallbacks)
+                .internalToolExecutionEnabled(false)
+                .build();
+        return new Prompt(List.of(new UserMessage("test")), chatOptions);
+    }
+
+    private static ChatResponse toolCallResponse(String... toolNames) {
+        List<AssistantMessage.ToolCall> toolCalls = new ArrayList<>();
+        for (int i = 0; i < toolNames.length; i++) {
+            toolCalls.add(new AssistantMessage.ToolCall("call-" + i, "function", toolNames[i],
+                    "{\"value\":\"" + i + "\"}"));
+        }
+        AssistantMessage assistantMessage = new AssistantMessage("", Map.of(), toolCalls);
+        return ChatResponse.builder().generations(List.of(new Generation(assistantMessage))).build();
+    }
+
+    private static ParallelToolCallingManager manager(Set<String> serialToolNames) {
+        return new ParallelToolCallingManager(ToolCallingManager.builder().build(),
+                Executors.newVirtualThreadPerTaskExecutor(), serialToolNames);
+    }
+
+    @Test
+    void testToolCallsRunConcurrentlyAndKeepOrder() {
+        // 两个工具互相等待，只有并发执行时才能通过屏障
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        Function<EchoRequest, String> awaitBarrier = request -> {
+            try {
+                barrier.await(5, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return "result-" + request.value();
+        };
+        Prompt prompt = prompt(tool("first", awaitBarrier), tool("second", awaitBarrier));
+
+        ToolExecutionResult result = manager(Set.of()).executeToolCalls(prompt, toolCallResponse("first", "second"));
+
+        List<Message> history = result.conversationHistory();
+        assertEquals(3, history.size());
+        assertInstanceOf(AssistantMessage.class, history.get(1));
+        ToolResponseMessage toolResponseMessage = (ToolResponseMessage) history.get(2);
+        assertEquals(2, toolResponseMessage.getResponses().size());
+        assertEquals("call-0", toolResponseMessage.getResponses().get(0).id());
+        assertEquals("first", toolResponseMessage.getResponses().get(0).name());
+        assertEquals("call-1", toolResponseMessage.getResponses().get(1).id());
+        assertEquals("second", toolResponseMessage.getResponses().get(1).name());
+    }
+
+    @Test
+    void testSerialToolsAreNotRunConcurrently() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        Function<EchoRequest, String> slow = request -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            return request.value();
+        };
+        Prompt prompt = prompt(tool("serial", slow));
+
+        ToolExecutionResult result = manager(Set.of("serial"))
+                .executeToolCalls(prompt, toolCallResponse("serial", "serial", "serial"));
+
+        assertEquals(1, maxRunning.get());
+        ToolResponseMessage toolResponseMessage = (ToolResponseMessage) result.conversationHistory().getLast();
+        assertEquals(List.of("call-0", "call-1", "call-2"),
+                toolResponseMessage.getResponses().stream().map(ToolResponseMessage.ToolResponse::id).toList());
+    }
+
+    @Test
+    void testToolExceptionIsPropagated() {
+        Prompt prompt = prompt(tool("ok", EchoRequest::value), tool("fail", request -> {
+            throw new IllegalStateException("boom");
+        }));
+
+        ParallelToolCallingManager manager = manager(Set.of());
+        ChatResponse chatResponse = toolCallResponse("ok", "fail");
+        assertThrows(RuntimeException.class, () -> manager.executeToolCalls(prompt, chatResponse));
+    }
+
+    @Test
+    void testInterruptCancelsRunningToolCalls() throws Exception {
+        CountDownLatch toolsStarted = new CountDownLatch(2);
+        CountDownLatch toolsInterrupted = new CountDownLatch(2);
+        Function<EchoRequest, String> blocking = request -> {
+            toolsStarted.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                toolsInterrupted.countDown();
+                Thread.currentThread().interrupt();
+            }
+            return request.value();
+        };
+        Prompt prompt = prompt(tool("first", blocking), tool("second", blocking));
+        ParallelToolCallingManager manager = manager(Set.of());
+        ChatResponse chatResponse = toolCallResponse("first", "second");
+
+        Thread caller = Thread.ofVirtual().start(() -> {
+            try {
+                manager.executeToolCalls(prompt, chatResponse);
+            } catch (IllegalStateException e) {
+                // 等待期间被中断
+            }
+        });
+        assertTrue(toolsStarted.await(5, TimeUnit.SECONDS));
+        caller.interrupt();
+
+        assertTrue(toolsInterrupted.await(5, TimeUnit.SECONDS));
+        caller.join(5000);
+        assertFalse(caller.isAlive());
+    }
+
+    @Test
+    void testInterruptedSerialTaskFailsInsteadOfLeavingMissingResult() {
+        AtomicInteger calls = new AtomicInteger();
+        Prompt prompt = prompt(tool("serial", request -> {
+            calls.incrementAndGet();
+            return request.value();
+        }));
+        // 执行任务的线程在开始前已经被中断，例如Executor正在关闭
+        ParallelToolCallingManager manager = new ParallelToolCallingManager(ToolCallingManager.builder().build(),
+                task -> Thread.ofVirtual().start(() -> {
+                    Thread.currentThread().interrupt();
+                    task.run();
+                }), Set.of("serial"));
+
+        assertThrows(IllegalStateException.class,
+                () -> manager.executeToolCalls(prompt, toolCallResponse("serial", "serial")));
+        assertEquals(0, calls.get());
+    }
+
+    @Test
+    void testRejectedExecutionCancelsStartedToolCalls() throws Exception {
+        CountDownLatch toolStarted = new CountDownLatch(1);
+        CountDownLatch toolInterrupted = new CountDownLatch(1);
+        Function<EchoRequest, String> blocking = request -> {
+            toolStarted.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                toolInterrupted.countDown();
+                Thread.currentThread().interrupt();
+            }
+            return request.value();
+        };
+        Prompt prompt = prompt(tool("first", blocking), tool("second", blocking));
+        AtomicInteger submitted = new AtomicInteger();
+        // 只接受第一个任务，等第一个工具开始执行后再拒绝第二个任务
+        Executor executor = task -> {
+            if (submitted.getAndIncrement() == 0) {
+                Thread.ofVirtual().start(task);
+                return;
+            }
+            try {
+                toolStarted.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new RejectedExecutionException("queue is full");
+        };
+        ParallelToolCallingManager manager = new ParallelToolCallingManager(ToolCallingManager.builder().build(),
+                executor, Set.of());
+
+        assertThrows(RejectedExecutionException.class,
+                () -> manager.executeToolCalls(prompt, toolCallResponse("first", "second")));
+        assertTrue(toolInterrupted.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,122 @@
+package com.x3bits.springaireactagent.core.tool;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.function.FunctionToolCallback;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpeculativeToolExecutionTest {
+
+    record EchoRequest(String value) {
+    }
+
+    private static ToolCallback tool(String name, Function<EchoRequest, String> function) {
+        return FunctionToolCallback.builder(name, function)
+                .description(name)
+                .inputType(EchoRequest.class)
+                .build();
+    }
+
+    private static Prompt prompt(ToolCallback... toolCallbacks) {
+        ToolCallingChatOptions chatOptions = ToolCallingChatOptions.builder()
+                .toolCallbacks(toolCallbacks)
+                .internalToolExecutionEnabled(false)
+                .build();
+        return new Prompt(List.of(new UserMessage("test")), chatOptions);
+    }
+
+    private static AssistantMessage.ToolCall toolCall(String id, String name, String value) {
+        return new AssistantMessage.ToolCall(id, "function", name, "{\"value\":\"" + value + "\"}");
+    }
+
+    private static SpeculativeToolExecution execution(Prompt prompt, Set<String> sideEffectToolNames) {
+        return new SpeculativeToolExecution(ToolCallingManager.builder().build(),
+                Executors.newVirtualThreadPerTaskExecutor(), sideEffectToolNames, prompt);
+    }
+
+    private static List<String> responseData(AssistantMessage assistantMessage, SpeculativeToolExecution execution) {
+        ToolResponseMessage toolResponseMessage = (ToolResponseMessage) execution.executeToolCalls(assistantMessage)
+                .conversationHistory().getLast();
+        return toolResponseMessage.getResponses().stream().map(ToolResponseMessage.ToolResponse::responseData).toList();
+    }
+
+    @Test
+    void testSpeculatedResultsAreReusedInOrder() throws Exception {
+        Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+        CountDownLatch echoCalled = new CountDownLatch(1);
+        Function<EchoRequest, String> echo = request -> {
+            calls.computeIfAbsent(request.value(), value -> new AtomicInteger()).incrementAndGet();
+            echoCalled.countDown();
+            return request.value();
+        };
+        SpeculativeToolExecution execution = execution(prompt(tool("echo", echo), tool("write", echo)),
+                Set.of("write"));
+
+        execution.start(toolCall("call-1", "echo", "a"));
+        execution.start(toolCall("call-2", "write", "b"));
+        assertTrue(echoCalled.await(5, TimeUnit.SECONDS));
+        assertNull(calls.get("b"));
+
+        AssistantMessage assistantMessage = new AssistantMessage("", Map.of(), List.of(
+                toolCall("call-2", "write", "b"), toolCall("call-1", "echo", "a"), toolCall("call-3", "echo", "c")));
+        assertEquals(List.of("\"b\"", "\"a\"", "\"c\""), responseData(assistantMessage, execution));
+        // 每个ToolCall只执行一次
+        assertEquals(1, calls.get("a").get());
+        assertEquals(1, calls.get("b").get());
+        assertEquals(1, calls.get("c").get());
+    }
+
+    @Test
+    void testChangedToolCallIsExecutedAgain() {
+        SpeculativeToolExecution execution = execution(prompt(tool("echo", EchoRequest::value)), Set.of());
+
+        execution.start(toolCall("call-1", "echo", "a"));
+        AssistantMessage assistantMessage = new AssistantMessage("", Map.of(), List.of(
+                toolCall("call-1", "echo", "b")));
+
+        assertEquals(List.of("\"b\""), responseData(assistantMessage, execution));
+    }
+
+    @Test
+    void testCancelInterruptsSpeculatedToolCalls() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        SpeculativeToolExecution execution = execution(prompt(tool("slow", request -> {
+            calls.incrementAndGet();
+            started.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return request.value();
+        })), Set.of());
+
+        execution.start(toolCall("call-1", "slow", "a"));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        execution.cancel();
+
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        // 取消之后不再开始新的推测执行
+        execution.start(toolCall("call-2", "slow", "b"));
+        assertEquals(1, calls.get());
+    }
+}
@@ -0,0 +1,112 @@
+package com.x3bits.springaireactagent.core.tool;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingToolCallAssemblerTest {
+
+    private static AssistantMessage.ToolCall fragment(String id, String name, String arguments) {
+        return new AssistantMessage.ToolCall(id, "function", name, arguments);
+    }
+
+    private static AssistantMessage.ToolCall toolCall(String id, String name, String arguments) {
+        return new AssistantMessage.ToolCall(id, "function", name, arguments);
+    }
+
+    @Test
+    void testArgumentFragmentsAreAppended() {
+        List<AssistantMessage.ToolCall> completed = new ArrayList<>();
+        StreamingToolCallAssembler assembler = new StreamingToolCallAssembler(completed::add);
+
+        assembler.append(fragment("call-1", "add", ""));
+        assembler.append(fragment("", "", "{\"a\":"));
+        assembler.append(fragment(null, null, "1,\"b\":2"));
+        assertTrue(completed.isEmpty());
+        assembler.append(fragment(null, null, "}"));
+
+        // 参数的JSON对象完整后立即完成
+        assertEquals(List.of(toolCall("call-1", "add", "{\"a\":1,\"b\":2}")), completed);
+        assertEquals(completed, assembler.finish());
+        assertEquals(1, completed.size());
+    }
+
+    @Test
+    void testMultipleCallsAreCompletedOnceInOrder() {
+        List<AssistantMessage.ToolCall> completed = new ArrayList<>();
+        StreamingToolCallAssembler assembler = new StreamingToolCallAssembler(completed::add);
+
+        assembler.append(fragment("call-1", "search", "{\"query\":\"a}"));
+        assembler.append(fragment("", "", "b\"}"));
+        assembler.append(fragment("call-2", "search", "{\"query\":"));
+        // 已经出现过的id继续属于原来的ToolCall
+        assembler.append(fragment("call-2", "", "\"c\"}"));
+        assembler.append(fragment("call-3", "now", ""));
+
+        List<AssistantMessage.ToolCall> toolCalls = assembler.finish();
+        assertEquals(List.of(toolCall("call-1", "search", "{\"query\":\"a}b\"}"),
+                toolCall("call-2", "search", "{\"query\":\"c\"}"), toolCall("call-3", "now", "")), toolCalls);
+        assertEquals(toolCalls, completed);
+    }
+
+    @Test
+    void testRepeatedSnapshotsAreNotDuplicated() {
+        StreamingToolCallAssembler assembler = new StreamingToolCallAssembler();
+
+        assembler.append(fragment("call-1", "add", "{\"a\":1"));
+        assembler.append(fragment("call-1", "add", "{\"a\":1,\"b\":2}"));
+        // 完成之后再次返回完整的ToolCall
+        assembler.append(fragment("call-1", "add", "{\"a\":1,\"b\":2}"));
+
+        assertEquals(List.of(toolCall("call-1", "add", "{\"a\":1,\"b\":2}")), assembler.finish());
+    }
+
+    @Test
+    void testCompleteCallsWithoutIdAreKept() {
+        List<AssistantMessage.ToolCall> completed = new ArrayList<>();
+        StreamingToolCallAssembler assembler = new StreamingToolCallAssembler(completed::add);
+
+        // Ollama、Vertex Gemini等提供方以空id返回每个完整的ToolCall
+        assembler.append(fragment("", "search", "{\"query\":\"a\"}"));
+        assembler.append(fragment("", "search", "{\"query\":\"b\"}"));
+        assembler.append(fragment(null, "now", "{}"));
+
+        List<AssistantMessage.ToolCall> toolCalls = assembler.finish();
+        assertEquals(List.of(toolCall("", "search", "{\"query\":\"a\"}"), toolCall("", "search", "{\"query\":\"b\"}"),
+                toolCall(null, "now", "{}")), toolCalls);
+        assertEquals(toolCalls, completed);
+    }
+
+    @Test
+    void testArgumentsWithoutIdAndNameStartNewCallOnlyAfterCompletion() {
+        StreamingToolCallAssembler assembler = new StreamingToolCallAssembler();
+
+        assembler.append(fragment("", "add", "{\"a\":1}"));
+        // 已完成参数的快照不开始新的ToolCall
+        assembler.append(fragment("", "", "{\"a\":1}"));
+        // 以新的“{”开始的参数属于下一个ToolCall
+        assembler.append(fragment("", "", "{\"a\":2"));
+        assembler.append(fragment("", "", "}"));
+
+        assertEquals(List.of(toolCall("", "add", "{\"a\":1}"), toolCall("", null, "{\"a\":2}")),
+                assembler.finish());
+    }
+
+    @Test
+    void testResetReusesAssembler() {
+        StreamingToolCallAssembler assembler = new StreamingToolCallAssembler();
+        assembler.append(fragment("call-1", "add", "{\"a\":1}"));
+        assembler.append(fragment("call-2", "add", "{\"a\":2}"));
+        assertEquals(2, assembler.finish().size());
+        assertThrows(IllegalStateException.class, () -> assembler.append(fragment("call-3", "add", "{}")));
+
+        assembler.reset();
+        assembler.append(fragment("call-3", "add", "{\"a\":3}"));
+
+        assertEquals(List.of(toolCall("call-3", "add", "{\"a\":3}")), assembler.finish());
+    }
+}
@@ -18,7 +18,7 @@ import reactor.core.publisher.Flux;
 /**
  * 演示将对话内容持久化到MySQL
  * 环境准备：
- * 创建数据库,最好使用MySQL 8.0及以上。更低的版本有对话轮数过多时相比MySQL 8.0会有比较大的性能差距
+ * 创建数据库，需要MySQL 8.0及以上（读取消息链时使用了递归CTE）
  * 创建以下这张表：
  CREATE TABLE `message_branch` (
  `id` bigint NOT NULL AUTO_INCREMENT COMMENT '自增主键，用于排序',
@@ -28,7 +28,6 @@ import reactor.core.publisher.Flux;
  `message_type` varchar(20) NOT NULL COMMENT '消息类型：USER/ASSISTANT/SYSTEM/TOOL',
  `message_content` text NOT NULL COMMENT '消息内容JSON',
  `depth` int NOT NULL DEFAULT '0' COMMENT '消息在树中的深度',
- `ancestor_path` text COMMENT '祖先路径，用逗号分隔的ID列表',
  `created_at` timestamp NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间（用于运维工具）',
  `updated_at` timestamp NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间（用于运维工具）',
  PRIMARY KEY (`id`),
@@ -0,0 +1,226 @@
+package com.x3bits.springaireactagent.serializer.binary;
+
+import com.x3bits.springaireactagent.serializer.BinaryMessageSerializer;
+import com.x3bits.springaireactagent.serializer.MessageDeserializeJfrEvent;
+import com.x3bits.springaireactagent.serializer.MessageSerializeJfrEvent;
+import org.springframework.ai.chat.messages.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 紧凑的二进制消息序列化器
+ * <p>
+ * 保存的内容与JsonMessageSerializer相同（文本、ToolCall和工具结果），但不写入字段名和JSON标点。格式如下：
+ * <ul>
+ *     <li>第一个字节是格式版本，当前为{@link #VERSION}</li>
+ *     <li>USER、SYSTEM：文本</li>
+ *     <li>ASSISTANT：文本，ToolCall数量，每个ToolCall依次为id、type、name、arguments</li>
+ *     <li>TOOL：工具结果数量，每个工具结果依次为id、name、responseData</li>
+ * </ul>
+ * 数量是无符号varint；字符串是varint长度加1（0表示null）之后跟UTF-8字节。
+ * </p>
+ */
+public class CompactBinaryMessageSerializer implements BinaryMessageSerializer {
+
+    public static final byte VERSION = 1;
+
+    @Override
+    public byte[] serializeToBytes(Message message) {
+        MessageSerializeJfrEvent event = new MessageSerializeJfrEvent();
+        event.begin();
+        byte[] bytes = write(message);
+        event.commit(getClass(), message.getMessageType(), bytes.length);
+        return bytes;
+    }
+
+    @Override
+    public Message deserialize(MessageType messageType, ByteBuffer buffer) {
+        MessageDeserializeJfrEvent event = new MessageDeserializeJfrEvent();
+        event.begin();
+        int length = buffer.remaining();
+        Message message = read(messageType, buffer);
+        event.commit(getClass(), messageType, length);
+        return message;
+    }
+
+    private byte[] write(Message message) {
+        Writer writer = new Writer();
+        writer.writeByte(VERSION);
+        switch (message.getMessageType()) {
+            case USER, SYSTEM -> writer.writeString(message.getText());
+            case ASSISTANT -> {
+                AssistantMessage assistantMessage = (AssistantMessage) message;
+                writer.writeString(assistantMessage.getText());
+                List<AssistantMessage.ToolCall> toolCalls = assistantMessage.getToolCalls();
+                writer.writeVarint(toolCalls.size());
+                for (AssistantMessage.ToolCall toolCall : toolCalls) {
+                    writer.writeString(toolCall.id());
+                    writer.writeString(toolCall.type());
+                    writer.writeString(toolCall.name());
+                    writer.writeString(toolCall.arguments());
+                }
+            }
+            case TOOL -> {
+                List<ToolResponseMessage.ToolResponse> responses = ((ToolResponseMessage) message).getResponses();
+                writer.writeVarint(responses.size());
+                for (ToolResponseMessage.ToolResponse response : responses) {
+                    writer.writeString(response.id());
+                    writer.writeString(response.name());
+                    writer.writeString(response.responseData());
+                }
+            }
+            default -> throw new IllegalArgumentException("Unsupported message type: " + message.getMessageType());
+        }
+        return writer.toByteArray();
+    }
+
+    private Message read(MessageType messageType, ByteBuffer buffer) {
+        Reader reader = new Reader(buffer);
+        int version = reader.readByte();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported binary message format version: " + version);
+        }
+        Message message = switch (messageType) {
+            case USER -> UserMessage.builder().text(reader.readString()).build();
+            case SYSTEM -> new SystemMessage(reader.readString());
+            case ASSISTANT -> {
+                String content = reader.readString();
+                int count = reader.readCount();
+                List<AssistantMessage.ToolCall> toolCalls = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    toolCalls.add(new AssistantMessage.ToolCall(reader.readString(), reader.readString(),
+                            reader.readString(), reader.readString()));
+                }
+                yield new AssistantMessage(content, Map.of(), toolCalls);
+            }
+            case TOOL -> {
+                int count = reader.readCount();
+                List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    responses.add(new ToolResponseMessage.ToolResponse(reader.readString(), reader.readString(),
+                            reader.readString()));
+                }
+                yield new ToolResponseMessage(responses);
+            }
+            default -> throw new IllegalArgumentException("Unsupported message type: " + messageType);
+        };
+        if (buffer.hasRemaining()) {
+            throw new IllegalArgumentException("Unexpected " + buffer.remaining() + " trailing bytes");
+        }
+        return message;
+    }
+
+    /**
+     * 可扩容的字节数组
+     */
+    private static final class Writer {
+        private byte[] bytes = new byte[64];
+        private int position;
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            bytes[position++] = (byte) value;
+        }
+
+        void writeVarint(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7F) != 0) {
+                bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[position++] = (byte) value;
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(utf8.length + 1);
+            ensureCapacity(utf8.length);
+            System.arraycopy(utf8, 0, bytes, position, utf8.length);
+            position += utf8.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, position);
+        }
+
+        private void ensureCapacity(int additional) {
+            if (position + additional > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, position + additional));
+            }
+        }
+    }
+
+    /**
+     * 从ByteBuffer读取，数据不完整时抛出IllegalArgumentException
+     */
+    private static final class Reader {
+        private final ByteBuffer buffer;
+
+        Reader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        int readByte() {
+            requireRemaining(1);
+            return buffer.get();
+        }
+
+        int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        /**
+         * 读取元素数量，每个元素至少占一个字节，数量不会超过剩余字节数
+         */
+        int readCount() {
+            int count = readVarint();
+            if (count < 0 || count > buffer.remaining()) {
+                throw new IllegalArgumentException("Invalid element count: " + count);
+            }
+            return count;
+        }
+
+        String readString() {
+            int lengthPlusOne = readVarint();
+            if (lengthPlusOne == 0) {
+                return null;
+            }
+            int length = lengthPlusOne - 1;
+            requireRemaining(length);
+            String value;
+            if (buffer.hasArray()) {
+                value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                        StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length);
+            } else {
+                byte[] utf8 = new byte[length];
+                buffer.get(utf8);
+                value = new String(utf8, StandardCharsets.UTF_8);
+            }
+            return value;
+        }
+
+        private void requireRemaining(int length) {
+            if (length < 0 || buffer.remaining() < length) {
+                throw new IllegalArgumentException("Truncated binary message");
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.x3bits.springaireactagent.serializer.binary;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactBinaryMessageSerializerTest {
+
+    private final CompactBinaryMessageSerializer serializer = new CompactBinaryMessageSerializer();
+
+    private Message roundTrip(Message message) {
+        byte[] bytes = serializer.serializeToBytes(message);
+        assertEquals(CompactBinaryMessageSerializer.VERSION, bytes[0]);
+        return serializer.deserialize(message.getMessageType(), bytes);
+    }
+
+    @Test
+    void testUserMessage() {
+        assertEquals("你好", roundTrip(new UserMessage("你好")).getText());
+        assertEquals("", roundTrip(new UserMessage("")).getText());
+        // 超过127字节的字符串长度用多个字节的varint表示
+        String longText = "emoji😀和中文".repeat(100);
+        assertEquals(longText, roundTrip(new UserMessage(longText)).getText());
+    }
+
+    @Test
+    void testSystemMessage() {
+        Message message = roundTrip(new SystemMessage("你是一个助手"));
+
+        assertInstanceOf(SystemMessage.class, message);
+        assertEquals("你是一个助手", message.getText());
+    }
+
+    @Test
+    void testAssistantMessage() {
+        AssistantMessage message = (AssistantMessage) roundTrip(new AssistantMessage("结果是3"));
+
+        assertEquals("结果是3", message.getText());
+        assertFalse(message.hasToolCalls());
+    }
+
+    @Test
+    void testAssistantMessageWithToolCalls() {
+        List<AssistantMessage.ToolCall> toolCalls = List.of(
+                new AssistantMessage.ToolCall("call-1", "function", "add", "{\"a\":1,\"b\":2}"),
+                new AssistantMessage.ToolCall("call-2", "function", "save", ""),
+                new AssistantMessage.ToolCall(null, null, "query", null));
+
+        AssistantMessage message = (AssistantMessage) roundTrip(new AssistantMessage("", Map.of(), toolCalls));
+
+        assertEquals("", message.getText());
+        assertEquals(toolCalls, message.getToolCalls());
+    }
+
+    @Test
+    void testToolResponseMessage() {
+        List<ToolResponseMessage.ToolResponse> responses = List.of(
+                new ToolResponseMessage.ToolResponse("call-1", "add", "3"),
+                new ToolResponseMessage.ToolResponse("call-2", "save", ""),
+                new ToolResponseMessage.ToolResponse("call-3", "query", null));
+
+        ToolResponseMessage message = (ToolResponseMessage) roundTrip(new ToolResponseMessage(responses));
+
+        assertEquals(responses, message.getResponses());
+        assertEquals(List.of(), ((ToolResponseMessage) roundTrip(new ToolResponseMessage(List.of())))
+                .getResponses());
+    }
+
+    @Test
+    void testMessageMetadataIsNotSerialized() {
+        // 与JsonMessageSerializer一样只保存内容，消息的元数据由BranchMessageItem单独保存
+        AssistantMessage withMetadata = new AssistantMessage("结果是3", Map.of("finishReason", "STOP"));
+
+        byte[] bytes = serializer.serializeToBytes(withMetadata);
+
+        assertArrayEquals(serializer.serializeToBytes(new AssistantMessage("结果是3")), bytes);
+        AssistantMessage message = (AssistantMessage) serializer.deserialize(MessageType.ASSISTANT, bytes);
+        assertEquals("结果是3", message.getText());
+        assertFalse(message.getMetadata().containsKey("finishReason"));
+    }
+
+    @Test
+    void testReadFromBufferPositionToLimit() {
+        byte[] bytes = serializer.serializeToBytes(new UserMessage("你好"));
+        byte[] padded = new byte[bytes.length + 6];
+        System.arraycopy(bytes, 0, padded, 3, bytes.length);
+        ByteBuffer buffer = ByteBuffer.wrap(padded, 3, bytes.length);
+
+        assertEquals("你好", serializer.deserialize(MessageType.USER, buffer).getText());
+        assertEquals(3 + bytes.length, buffer.position());
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+        assertEquals("你好", serializer.deserialize(MessageType.USER, direct).getText());
+        assertFalse(direct.hasRemaining());
+    }
+
+    @Test
+    void testInvalidContentIsRejected() {
+        byte[] bytes = serializer.serializeToBytes(new AssistantMessage("", Map.of(), List.of(
+                new AssistantMessage.ToolCall("call-1", "function", "add", "{}"))));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> serializer.deserialize(MessageType.ASSISTANT, Arrays.copyOf(bytes, bytes.length - 1)));
+        assertThrows(IllegalArgumentException.class,
+                () -> serializer.deserialize(MessageType.ASSISTANT, Arrays.copyOf(bytes, bytes.length + 1)));
+        assertThrows(IllegalArgumentException.class,
+                () -> serializer.deserialize(MessageType.USER, new byte[0]));
+        assertThrows(IllegalArgumentException.class,
+                () -> serializer.deserialize(MessageType.USER, new byte[]{2, 0}));
+        // 元素数量超过剩余的字节数
+        assertThrows(IllegalArgumentException.class,
+                () -> serializer.deserialize(MessageType.TOOL, new byte[]{1, 100, 0}));
+    }
+}
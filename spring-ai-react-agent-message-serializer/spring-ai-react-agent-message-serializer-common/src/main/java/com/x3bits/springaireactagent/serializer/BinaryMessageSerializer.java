@@ -0,0 +1,30 @@
+package com.x3bits.springaireactagent.serializer;
+
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 把消息序列化成字节的序列化器，结果可以直接存储在BLOB、VARBINARY或BYTEA列中
+ * <p>
+ * 与{@link MessageSerializer}一样，消息类型不包含在序列化结果中，由调用方单独保存并在反序列化时传入。
+ * </p>
+ */
+public interface BinaryMessageSerializer {
+
+    byte[] serializeToBytes(Message message);
+
+    /**
+     * 从buffer的position读到limit，读取之后buffer的position移动到limit
+     */
+    Message deserialize(MessageType messageType, ByteBuffer buffer);
+
+    default ByteBuffer serializeToBuffer(Message message) {
+        return ByteBuffer.wrap(serializeToBytes(message));
+    }
+
+    default Message deserialize(MessageType messageType, byte[] bytes) {
+        return deserialize(messageType, ByteBuffer.wrap(bytes));
+    }
+}
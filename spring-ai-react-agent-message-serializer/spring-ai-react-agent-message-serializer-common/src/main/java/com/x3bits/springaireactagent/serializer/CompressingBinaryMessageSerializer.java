@@ -0,0 +1,85 @@
+package com.x3bits.springaireactagent.serializer;
+
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 压缩较长的二进制序列化结果的装饰器，适用于存储在BLOB、BYTEA列中的内容
+ * <p>
+ * 被装饰的序列化器的输出不短于minLength个字节时保存为压缩帧（格式见CompressionFrames），压缩后没有变短时保存原文。
+ * 读取时只有第一个字节最高位为1的内容才按压缩帧解析，CompactBinaryMessageSerializer的输出以版本号开头，
+ * 因此开启压缩之前写入的行仍然可以读取。
+ * </p>
+ */
+public class CompressingBinaryMessageSerializer implements BinaryMessageSerializer {
+
+    public static final int DEFAULT_MIN_LENGTH = 1024;
+
+    private final BinaryMessageSerializer delegate;
+
+    private final CompressionCodec codec;
+
+    private final int minLength;
+
+    /**
+     * 使用Deflate压缩不短于{@value #DEFAULT_MIN_LENGTH}个字节的内容
+     */
+    public CompressingBinaryMessageSerializer(BinaryMessageSerializer delegate) {
+        this(delegate, CompressionCodec.DEFLATE, DEFAULT_MIN_LENGTH);
+    }
+
+    /**
+     * @param codec     压缩算法，必须在classpath中可用
+     * @param minLength 序列化结果的字节数不小于该值时才压缩
+     */
+    public CompressingBinaryMessageSerializer(BinaryMessageSerializer delegate, CompressionCodec codec,
+            int minLength) {
+        if (delegate == null || codec == null) {
+            throw new IllegalArgumentException("delegate and codec cannot be null");
+        }
+        if (!codec.isAvailable()) {
+            throw new IllegalArgumentException("Compression codec " + codec + " is not on the classpath");
+        }
+        if (minLength < 0) {
+            throw new IllegalArgumentException("minLength cannot be negative");
+        }
+        this.delegate = delegate;
+        this.codec = codec;
+        this.minLength = minLength;
+    }
+
+    @Override
+    public byte[] serializeToBytes(Message message) {
+        byte[] bytes = delegate.serializeToBytes(message);
+        if (bytes.length >= minLength) {
+            byte[] frame = CompressionFrames.compressed(codec, bytes);
+            if (frame.length < bytes.length) {
+                return frame;
+            }
+        }
+        if (bytes.length > 0 && CompressionFrames.isFrame(bytes[0])) {
+            return CompressionFrames.uncompressed(bytes);
+        }
+        return bytes;
+    }
+
+    @Override
+    public Message deserialize(MessageType messageType, ByteBuffer buffer) {
+        if (!buffer.hasRemaining() || !CompressionFrames.isFrame(buffer.get(buffer.position()))) {
+            return delegate.deserialize(messageType, buffer);
+        }
+        byte[] original;
+        if (buffer.hasArray()) {
+            original = CompressionFrames.unwrap(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                    buffer.remaining());
+            buffer.position(buffer.limit());
+        } else {
+            byte[] frame = new byte[buffer.remaining()];
+            buffer.get(frame);
+            original = CompressionFrames.unwrap(frame, 0, frame.length);
+        }
+        return delegate.deserialize(messageType, ByteBuffer.wrap(original));
+    }
+}
@@ -0,0 +1,85 @@
+package com.x3bits.springaireactagent.serializer;
+
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 压缩较长的序列化结果的装饰器，适用于存储在TEXT列中的内容
+ * <p>
+ * 被装饰的序列化器的输出不短于minLength个字符时，把UTF-8字节压缩成压缩帧（格式见CompressionFrames），
+ * 再以{@value #PREFIX}加Base64的形式保存；压缩后没有变短时保存原文。读取时只有以{@value #PREFIX}开头的内容才解压，
+ * 其它内容原样交给被装饰的序列化器，因此开启压缩之前写入的行仍然可以读取，关闭压缩之后也能读取已经压缩的行。
+ * 被装饰的序列化器的输出本身以{@value #PREFIX}开头时（JSON不会），以未压缩的帧保存。
+ * </p>
+ */
+public class CompressingMessageSerializer implements MessageSerializer {
+
+    public static final int DEFAULT_MIN_LENGTH = 1024;
+
+    public static final char PREFIX = '~';
+
+    private final MessageSerializer delegate;
+
+    private final CompressionCodec codec;
+
+    private final int minLength;
+
+    /**
+     * 使用Deflate压缩不短于{@value #DEFAULT_MIN_LENGTH}个字符的内容
+     */
+    public CompressingMessageSerializer(MessageSerializer delegate) {
+        this(delegate, CompressionCodec.DEFLATE, DEFAULT_MIN_LENGTH);
+    }
+
+    /**
+     * @param codec     压缩算法，必须在classpath中可用
+     * @param minLength 序列化结果的字符数不小于该值时才压缩
+     */
+    public CompressingMessageSerializer(MessageSerializer delegate, CompressionCodec codec, int minLength) {
+        if (delegate == null || codec == null) {
+            throw new IllegalArgumentException("delegate and codec cannot be null");
+        }
+        if (!codec.isAvailable()) {
+            throw new IllegalArgumentException("Compression codec " + codec + " is not on the classpath");
+        }
+        if (minLength < 0) {
+            throw new IllegalArgumentException("minLength cannot be negative");
+        }
+        this.delegate = delegate;
+        this.codec = codec;
+        this.minLength = minLength;
+    }
+
+    @Override
+    public String serialize(Message message) {
+        String str = delegate.serialize(message);
+        if (str.length() >= minLength) {
+            byte[] frame = CompressionFrames.compressed(codec, str.getBytes(StandardCharsets.UTF_8));
+            String encoded = encode(frame);
+            if (encoded.length() < str.length()) {
+                return encoded;
+            }
+        }
+        if (!str.isEmpty() && str.charAt(0) == PREFIX) {
+            return encode(CompressionFrames.uncompressed(str.getBytes(StandardCharsets.UTF_8)));
+        }
+        return str;
+    }
+
+    @Override
+    public Message deserialize(MessageType messageType, String str) {
+        if (str == null || str.isEmpty() || str.charAt(0) != PREFIX) {
+            return delegate.deserialize(messageType, str);
+        }
+        byte[] frame = Base64.getDecoder().decode(str.substring(1));
+        byte[] original = CompressionFrames.unwrap(frame, 0, frame.length);
+        return delegate.deserialize(messageType, new String(original, StandardCharsets.UTF_8));
+    }
+
+    private static String encode(byte[] frame) {
+        return PREFIX + Base64.getEncoder().encodeToString(frame);
+    }
+}
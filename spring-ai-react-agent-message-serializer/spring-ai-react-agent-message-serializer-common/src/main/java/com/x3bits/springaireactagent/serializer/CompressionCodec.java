@@ -0,0 +1,226 @@
+package com.x3bits.springaireactagent.serializer;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 压缩消息内容使用的算法，{@link #id()}写在压缩结果的头部，读取时据此选择解压算法
+ * <p>
+ * Deflate使用JDK自带的实现，总是可用；LZ4和Zstd需要classpath中存在org.lz4:lz4-java和com.github.luben:zstd-jni，
+ * 可以用{@link #isAvailable()}检查。id一旦写入数据库就不能再修改。
+ * </p>
+ * <p>
+ * 解压前先检查头部中的原始长度不超过压缩数据长度乘以算法的最大压缩率，避免损坏或伪造的头部导致分配巨大的数组。
+ * </p>
+ */
+public enum CompressionCodec {
+
+    // Deflate的最大压缩率约为1032:1
+    DEFLATE(1, 1032) {
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        byte[] doCompress(byte[] data) {
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            try {
+                deflater.setInput(data);
+                deflater.finish();
+                byte[] buffer = new byte[Math.max(64, data.length / 2)];
+                int length = 0;
+                while (!deflater.finished()) {
+                    if (length == buffer.length) {
+                        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    }
+                    length += deflater.deflate(buffer, length, buffer.length - length);
+                }
+                return Arrays.copyOf(buffer, length);
+            } finally {
+                deflater.end();
+            }
+        }
+
+        @Override
+        byte[] doDecompress(byte[] src, int offset, int length, int originalLength) {
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(src, offset, length);
+                byte[] result = new byte[originalLength];
+                int read = 0;
+                while (read < originalLength && !inflater.finished()) {
+                    int n = inflater.inflate(result, read, originalLength - read);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    read += n;
+                }
+                if (read != originalLength) {
+                    throw new IllegalArgumentException("Corrupted deflate content");
+                }
+                return result;
+            } catch (DataFormatException e) {
+                throw new IllegalArgumentException("Corrupted deflate content", e);
+            } finally {
+                inflater.end();
+            }
+        }
+    },
+
+    // LZ4的最大压缩率约为255:1
+    LZ4(2, 255) {
+        @Override
+        public boolean isAvailable() {
+            return isClassPresent("net.jpountz.lz4.LZ4Factory");
+        }
+
+        @Override
+        byte[] doCompress(byte[] data) {
+            return Lz4Holder.compress(data);
+        }
+
+        @Override
+        byte[] doDecompress(byte[] src, int offset, int length, int originalLength) {
+            return Lz4Holder.decompress(src, offset, length, originalLength);
+        }
+    },
+
+    // Zstd的RLE块用4个字节表示128KB
+    ZSTD(3, 32768) {
+        @Override
+        public boolean isAvailable() {
+            return isClassPresent("com.github.luben.zstd.Zstd");
+        }
+
+        @Override
+        byte[] doCompress(byte[] data) {
+            return ZstdHolder.compress(data);
+        }
+
+        @Override
+        byte[] doDecompress(byte[] src, int offset, int length, int originalLength) {
+            return ZstdHolder.decompress(src, offset, length, originalLength);
+        }
+    };
+
+    // 很短的输入压缩后有固定的开销，允许原始长度在按压缩率计算的上限之外再多出这么多字节
+    private static final int MIN_ORIGINAL_LENGTH_LIMIT = 64;
+
+    private final byte id;
+
+    private final int maxCompressionRatio;
+
+    CompressionCodec(int id, int maxCompressionRatio) {
+        this.id = (byte) id;
+        this.maxCompressionRatio = maxCompressionRatio;
+    }
+
+    public byte id() {
+        return id;
+    }
+
+    /**
+     * 实现算法的类库是否在classpath中
+     */
+    public abstract boolean isAvailable();
+
+    public byte[] compress(byte[] data) {
+        requireAvailable();
+        return doCompress(data);
+    }
+
+    /**
+     * @param originalLength 压缩前的字节数
+     * @throws IllegalArgumentException 如果originalLength为负数或者超过该算法能从length个字节解压出的最大长度
+     */
+    public byte[] decompress(byte[] src, int offset, int length, int originalLength) {
+        requireAvailable();
+        if (originalLength < 0
+                || originalLength > (long) length * maxCompressionRatio + MIN_ORIGINAL_LENGTH_LIMIT) {
+            throw new IllegalArgumentException("Invalid original length " + originalLength + " for " + length
+                    + " bytes of " + name() + " content");
+        }
+        return doDecompress(src, offset, length, originalLength);
+    }
+
+    abstract byte[] doCompress(byte[] data);
+
+    abstract byte[] doDecompress(byte[] src, int offset, int length, int originalLength);
+
+    /**
+     * 根据头部的id查找压缩算法
+     */
+    public static CompressionCodec fromId(byte id) {
+        for (CompressionCodec codec : values()) {
+            if (codec.id == id) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException("Unknown compression codec id: " + id);
+    }
+
+    private void requireAvailable() {
+        if (!isAvailable()) {
+            throw new IllegalStateException("Compression codec " + name() + " is not on the classpath");
+        }
+    }
+
+    private static boolean isClassPresent(String className) {
+        try {
+            Class.forName(className, false, CompressionCodec.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * 只有使用LZ4时才加载，lz4-java不在classpath中时不影响其它算法
+     */
+    private static final class Lz4Holder {
+        private static final net.jpountz.lz4.LZ4Factory FACTORY = net.jpountz.lz4.LZ4Factory.fastestInstance();
+
+        static byte[] compress(byte[] data) {
+            return FACTORY.fastCompressor().compress(data);
+        }
+
+        static byte[] decompress(byte[] src, int offset, int length, int originalLength) {
+            byte[] result = new byte[originalLength];
+            try {
+                int read = FACTORY.safeDecompressor().decompress(src, offset, length, result, 0, originalLength);
+                if (read != originalLength) {
+                    throw new IllegalArgumentException("Corrupted LZ4 content");
+                }
+            } catch (net.jpountz.lz4.LZ4Exception e) {
+                throw new IllegalArgumentException("Corrupted LZ4 content", e);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 只有使用Zstd时才加载，zstd-jni不在classpath中时不影响其它算法
+     */
+    private static final class ZstdHolder {
+        static byte[] compress(byte[] data) {
+            return com.github.luben.zstd.Zstd.compress(data);
+        }
+
+        static byte[] decompress(byte[] src, int offset, int length, int originalLength) {
+            byte[] result = new byte[originalLength];
+            long read;
+            try {
+                read = com.github.luben.zstd.Zstd.decompressByteArray(result, 0, originalLength, src, offset, length);
+            } catch (com.github.luben.zstd.ZstdException e) {
+                throw new IllegalArgumentException("Corrupted Zstd content", e);
+            }
+            if (com.github.luben.zstd.Zstd.isError(read) || read != originalLength) {
+                throw new IllegalArgumentException("Corrupted Zstd content");
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.x3bits.springaireactagent.serializer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 压缩帧的格式：第一个字节是头部，最高位为1，低7位是{@link CompressionCodec#id()}（0表示未压缩），
+ * 之后是4字节大端序的原始长度，最后是压缩后的数据。
+ * <p>
+ * 第一个字节最高位为0的内容不是压缩帧，原样交给被装饰的序列化器，因此压缩之前写入的内容仍然可以读取。
+ * 被装饰的序列化器的输出本身以最高位为1的字节开头时，用未压缩的帧包装，避免被误认为压缩帧。
+ * </p>
+ */
+final class CompressionFrames {
+
+    private static final int FRAME_FLAG = 0x80;
+
+    private static final int UNCOMPRESSED = 0;
+
+    private static final int HEADER_LENGTH = 5;
+
+    private CompressionFrames() {
+    }
+
+    static boolean isFrame(byte first) {
+        return (first & FRAME_FLAG) != 0;
+    }
+
+    static byte[] compressed(CompressionCodec codec, byte[] data) {
+        return frame(codec.id(), data.length, codec.compress(data));
+    }
+
+    static byte[] uncompressed(byte[] data) {
+        return frame(UNCOMPRESSED, data.length, data);
+    }
+
+    /**
+     * 解析压缩帧，返回原始内容
+     */
+    static byte[] unwrap(byte[] frame, int offset, int length) {
+        if (length < HEADER_LENGTH || !isFrame(frame[offset])) {
+            throw new IllegalArgumentException("Invalid compression frame");
+        }
+        int codecId = frame[offset] & (FRAME_FLAG - 1);
+        int originalLength = ByteBuffer.wrap(frame, offset + 1, 4).getInt();
+        if (originalLength < 0) {
+            throw new IllegalArgumentException("Invalid compression frame");
+        }
+        int dataOffset = offset + HEADER_LENGTH;
+        int dataLength = length - HEADER_LENGTH;
+        if (codecId == UNCOMPRESSED) {
+            if (dataLength != originalLength) {
+                throw new IllegalArgumentException("Invalid compression frame");
+            }
+            byte[] result = new byte[originalLength];
+            System.arraycopy(frame, dataOffset, result, 0, originalLength);
+            return result;
+        }
+        return CompressionCodec.fromId((byte) codecId).decompress(frame, dataOffset, dataLength, originalLength);
+    }
+
+    private static byte[] frame(int codecId, int originalLength, byte[] data) {
+        return ByteBuffer.allocate(HEADER_LENGTH + data.length)
+                .put((byte) (FRAME_FLAG | codecId))
+                .putInt(originalLength)
+                .put(data)
+                .array();
+    }
+}
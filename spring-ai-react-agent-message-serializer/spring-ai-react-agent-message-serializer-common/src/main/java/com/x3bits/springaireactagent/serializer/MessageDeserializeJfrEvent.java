@@ -0,0 +1,46 @@
+package com.x3bits.springaireactagent.serializer;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.springframework.ai.chat.messages.MessageType;
+
+/**
+ * 从字符串或字节反序列化一条消息的JFR事件，由MessageSerializer和BinaryMessageSerializer的实现记录。默认关闭，需要时在录制中打开，例如
+ * {@code jcmd <pid> JFR.start +com.x3bits.springaireactagent.MessageDeserialize#enabled=true}
+ */
+@Name("com.x3bits.springaireactagent.MessageDeserialize")
+@Label("Message Deserialize")
+@Description("从字符串或字节反序列化一条消息")
+@Category({"Spring AI ReAct Agent", "Serializer"})
+@Enabled(false)
+@StackTrace(false)
+public final class MessageDeserializeJfrEvent extends Event {
+
+    @Label("Serializer")
+    String serializer;
+
+    @Label("Message Type")
+    String messageType;
+
+    @Label("Length")
+    @Description("被反序列化的字符串的字符数，二进制序列化器为字节数")
+    int length;
+
+    /**
+     * 事件开启时填写字段并提交
+     */
+    public void commit(Class<?> serializer, MessageType messageType, int length) {
+        if (!shouldCommit()) {
+            return;
+        }
+        this.serializer = serializer.getSimpleName();
+        this.messageType = messageType == null ? null : messageType.name();
+        this.length = length;
+        commit();
+    }
+}
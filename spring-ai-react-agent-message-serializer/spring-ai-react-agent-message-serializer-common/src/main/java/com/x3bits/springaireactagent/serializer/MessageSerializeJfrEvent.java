@@ -0,0 +1,46 @@
+package com.x3bits.springaireactagent.serializer;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.springframework.ai.chat.messages.MessageType;
+
+/**
+ * 把一条消息序列化成字符串或字节的JFR事件，由MessageSerializer和BinaryMessageSerializer的实现记录。默认关闭，需要时在录制中打开，例如
+ * {@code jcmd <pid> JFR.start +com.x3bits.springaireactagent.MessageSerialize#enabled=true}
+ */
+@Name("com.x3bits.springaireactagent.MessageSerialize")
+@Label("Message Serialize")
+@Description("把一条消息序列化成字符串或字节")
+@Category({"Spring AI ReAct Agent", "Serializer"})
+@Enabled(false)
+@StackTrace(false)
+public final class MessageSerializeJfrEvent extends Event {
+
+    @Label("Serializer")
+    String serializer;
+
+    @Label("Message Type")
+    String messageType;
+
+    @Label("Length")
+    @Description("序列化结果的字符数，二进制序列化器为字节数")
+    int length;
+
+    /**
+     * 事件开启时填写字段并提交
+     */
+    public void commit(Class<?> serializer, MessageType messageType, int length) {
+        if (!shouldCommit()) {
+            return;
+        }
+        this.serializer = serializer.getSimpleName();
+        this.messageType = messageType == null ? null : messageType.name();
+        this.length = length;
+        commit();
+    }
+}
@@ -0,0 +1,100 @@
+package com.x3bits.springaireactagent.serializer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressingMessageSerializerTest {
+
+    /**
+     * 把UserMessage的文本原样作为序列化结果
+     */
+    private static class TextSerializer implements MessageSerializer, BinaryMessageSerializer {
+        @Override
+        public String serialize(Message message) {
+            return message.getText();
+        }
+
+        @Override
+        public Message deserialize(MessageType messageType, String str) {
+            return new UserMessage(str);
+        }
+
+        @Override
+        public byte[] serializeToBytes(Message message) {
+            return message.getText().getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public Message deserialize(MessageType messageType, ByteBuffer buffer) {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return new UserMessage(new String(bytes, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static final String LONG_TEXT = "这是一条很长的消息。".repeat(200);
+
+    @ParameterizedTest
+    @EnumSource(CompressionCodec.class)
+    void testRoundTrip(CompressionCodec codec) {
+        CompressingMessageSerializer serializer = new CompressingMessageSerializer(new TextSerializer(), codec, 64);
+
+        String compressed = serializer.serialize(new UserMessage(LONG_TEXT));
+        assertEquals(CompressingMessageSerializer.PREFIX, compressed.charAt(0));
+        assertTrue(compressed.length() < LONG_TEXT.length());
+        assertEquals(LONG_TEXT, serializer.deserialize(MessageType.USER, compressed).getText());
+
+        // 短内容不压缩
+        assertEquals("short", serializer.serialize(new UserMessage("short")));
+        assertEquals("short", serializer.deserialize(MessageType.USER, "short").getText());
+    }
+
+    @ParameterizedTest
+    @EnumSource(CompressionCodec.class)
+    void testBinaryRoundTrip(CompressionCodec codec) {
+        CompressingBinaryMessageSerializer serializer = new CompressingBinaryMessageSerializer(new TextSerializer(),
+                codec, 64);
+
+        byte[] compressed = serializer.serializeToBytes(new UserMessage(LONG_TEXT));
+        assertTrue(compressed.length < LONG_TEXT.getBytes(StandardCharsets.UTF_8).length);
+        assertEquals(LONG_TEXT, serializer.deserialize(MessageType.USER, compressed).getText());
+    }
+
+    @Test
+    void testContentStartingWithPrefixIsKept() {
+        CompressingMessageSerializer serializer = new CompressingMessageSerializer(new TextSerializer());
+        String text = CompressingMessageSerializer.PREFIX + "不是压缩的内容";
+
+        String serialized = serializer.serialize(new UserMessage(text));
+
+        assertEquals(text, serializer.deserialize(MessageType.USER, serialized).getText());
+    }
+
+    @Test
+    void testBinaryContentLookingLikeFrameIsKept() {
+        CompressingBinaryMessageSerializer serializer = new CompressingBinaryMessageSerializer(new TextSerializer());
+        // 中文的UTF-8编码第一个字节最高位为1
+        String text = "不是压缩帧";
+
+        byte[] serialized = serializer.serializeToBytes(new UserMessage(text));
+
+        assertEquals(text, serializer.deserialize(MessageType.USER, serialized).getText());
+    }
+
+    @Test
+    void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new CompressingMessageSerializer(null));
+        assertThrows(IllegalArgumentException.class,
+                () -> new CompressingMessageSerializer(new TextSerializer(), CompressionCodec.DEFLATE, -1));
+        assertThrows(IllegalArgumentException.class, () -> new CompressingBinaryMessageSerializer(null));
+    }
+}
@@ -0,0 +1,82 @@
+package com.x3bits.springaireactagent.serializer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressionCodecTest {
+
+    private static byte[] text(int repeat) {
+        return "你好，这是一条会被压缩的消息。".repeat(repeat).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @ParameterizedTest
+    @EnumSource(CompressionCodec.class)
+    void testRoundTrip(CompressionCodec codec) {
+        assertTrue(codec.isAvailable());
+        for (byte[] data : new byte[][]{new byte[0], text(1), text(1000)}) {
+            byte[] compressed = codec.compress(data);
+            assertArrayEquals(data, codec.decompress(compressed, 0, compressed.length, data.length));
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(CompressionCodec.class)
+    void testHighlyCompressibleContentIsNotRejected(CompressionCodec codec) {
+        byte[] data = new byte[4 * 1024 * 1024];
+
+        byte[] compressed = codec.compress(data);
+
+        assertArrayEquals(data, codec.decompress(compressed, 0, compressed.length, data.length));
+    }
+
+    @ParameterizedTest
+    @EnumSource(CompressionCodec.class)
+    void testFrameRoundTrip(CompressionCodec codec) {
+        byte[] data = text(100);
+        byte[] frame = CompressionFrames.compressed(codec, data);
+
+        assertTrue(CompressionFrames.isFrame(frame[0]));
+        assertArrayEquals(data, CompressionFrames.unwrap(frame, 0, frame.length));
+    }
+
+    @ParameterizedTest
+    @EnumSource(CompressionCodec.class)
+    void testOriginalLengthAboveMaxRatioIsRejected(CompressionCodec codec) {
+        byte[] compressed = codec.compress(text(10));
+        byte[] frame = ByteBuffer.allocate(5 + compressed.length)
+                .put((byte) (0x80 | codec.id()))
+                .putInt(Integer.MAX_VALUE)
+                .put(compressed)
+                .array();
+
+        assertThrows(IllegalArgumentException.class, () -> CompressionFrames.unwrap(frame, 0, frame.length));
+        assertThrows(IllegalArgumentException.class,
+                () -> codec.decompress(compressed, 0, compressed.length, -1));
+    }
+
+    @Test
+    void testCorruptedContentIsRejected() {
+        byte[] data = text(100);
+        for (CompressionCodec codec : CompressionCodec.values()) {
+            byte[] compressed = codec.compress(data);
+            byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+            assertThrows(IllegalArgumentException.class,
+                    () -> codec.decompress(truncated, 0, truncated.length, data.length), codec.name());
+        }
+    }
+
+    @Test
+    void testFromId() {
+        for (CompressionCodec codec : CompressionCodec.values()) {
+            assertSame(codec, CompressionCodec.fromId(codec.id()));
+        }
+        assertThrows(IllegalArgumentException.class, () -> CompressionCodec.fromId((byte) 0x7f));
+    }
+}
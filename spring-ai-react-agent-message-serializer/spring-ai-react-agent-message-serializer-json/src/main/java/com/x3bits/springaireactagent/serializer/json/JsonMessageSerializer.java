@@ -2,6 +2,8 @@ package com.x3bits.springaireactagent.serializer.json;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.x3bits.springaireactagent.serializer.MessageDeserializeJfrEvent;
+import com.x3bits.springaireactagent.serializer.MessageSerializeJfrEvent;
 import com.x3bits.springaireactagent.serializer.MessageSerializer;
 import com.x3bits.springaireactagent.serializer.json.meta.AssistantMessageMeta;
 import com.x3bits.springaireactagent.serializer.json.meta.SystemMessageMeta;
@@ -23,6 +25,23 @@ public class JsonMessageSerializer implements MessageSerializer {
 
     @Override
     public String serialize(Message message) {
+        MessageSerializeJfrEvent event = new MessageSerializeJfrEvent();
+        event.begin();
+        String str = write(message);
+        event.commit(getClass(), message.getMessageType(), str.length());
+        return str;
+    }
+
+    @Override
+    public Message deserialize(MessageType messageType, String str) {
+        MessageDeserializeJfrEvent event = new MessageDeserializeJfrEvent();
+        event.begin();
+        Message message = read(messageType, str);
+        event.commit(getClass(), messageType, str == null ? 0 : str.length());
+        return message;
+    }
+
+    private String write(Message message) {
         try {
             return switch (message.getMessageType()) {
                 case USER -> objectMapper.writeValueAsString(
@@ -40,8 +59,7 @@ public class JsonMessageSerializer implements MessageSerializer {
         }
     }
 
-    @Override
-    public Message deserialize(MessageType messageType, String str) {
+    private Message read(MessageType messageType, String str) {
         try {
             return switch (messageType) {
                 case USER -> {
@@ -0,0 +1,251 @@
+package com.x3bits.springaireactagent.serializer.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.x3bits.springaireactagent.serializer.MessageDeserializeJfrEvent;
+import com.x3bits.springaireactagent.serializer.MessageSerializeJfrEvent;
+import com.x3bits.springaireactagent.serializer.MessageSerializer;
+import org.springframework.ai.chat.messages.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 直接使用JsonGenerator和JsonParser读写消息的JSON序列化器
+ * <p>
+ * 格式与{@link JsonMessageSerializer}完全相同，两者可以互相读取对方写入的内容，但不创建Meta对象和中间列表，
+ * JsonGenerator的输出缓冲区由JsonFactory复用。读取时字段顺序任意，忽略未知字段。
+ * </p>
+ */
+public class StreamingJsonMessageSerializer implements MessageSerializer {
+
+    private final JsonFactory jsonFactory;
+
+    public StreamingJsonMessageSerializer() {
+        this(new JsonFactory());
+    }
+
+    public StreamingJsonMessageSerializer(JsonFactory jsonFactory) {
+        if (jsonFactory == null) {
+            throw new IllegalArgumentException("jsonFactory cannot be null");
+        }
+        this.jsonFactory = jsonFactory;
+    }
+
+    @Override
+    public String serialize(Message message) {
+        MessageSerializeJfrEvent event = new MessageSerializeJfrEvent();
+        event.begin();
+        String str;
+        try {
+            str = write(message);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to serialize message: " + e.getMessage(), e);
+        }
+        event.commit(getClass(), message.getMessageType(), str.length());
+        return str;
+    }
+
+    @Override
+    public Message deserialize(MessageType messageType, String str) {
+        MessageDeserializeJfrEvent event = new MessageDeserializeJfrEvent();
+        event.begin();
+        Message message;
+        try {
+            message = read(messageType, str);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to deserialize message: " + e.getMessage(), e);
+        }
+        event.commit(getClass(), messageType, str == null ? 0 : str.length());
+        return message;
+    }
+
+    private String write(Message message) throws IOException {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = jsonFactory.createGenerator(writer)) {
+            generator.writeStartObject();
+            switch (message.getMessageType()) {
+                case USER -> generator.writeStringField("text", message.getText());
+                case SYSTEM -> generator.writeStringField("content", message.getText());
+                case ASSISTANT -> writeAssistantMessage(generator, (AssistantMessage) message);
+                case TOOL -> writeToolResponseMessage(generator, (ToolResponseMessage) message);
+                default -> throw new IllegalArgumentException("Unsupported message type: " + message.getMessageType());
+            }
+            generator.writeEndObject();
+        }
+        return writer.toString();
+    }
+
+    private static void writeAssistantMessage(JsonGenerator generator, AssistantMessage message) throws IOException {
+        generator.writeStringField("content", message.getText());
+        generator.writeFieldName("toolCalls");
+        // 与JsonMessageSerializer一致：没有ToolCall时写入null
+        if (!message.hasToolCalls()) {
+            generator.writeNull();
+            return;
+        }
+        generator.writeStartArray();
+        for (AssistantMessage.ToolCall toolCall : message.getToolCalls()) {
+            generator.writeStartObject();
+            generator.writeStringField("id", toolCall.id());
+            generator.writeStringField("type", toolCall.type());
+            generator.writeStringField("name", toolCall.name());
+            generator.writeStringField("arguments", toolCall.arguments());
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+    }
+
+    private static void writeToolResponseMessage(JsonGenerator generator, ToolResponseMessage message)
+            throws IOException {
+        generator.writeArrayFieldStart("responses");
+        for (ToolResponseMessage.ToolResponse response : message.getResponses()) {
+            generator.writeStartObject();
+            generator.writeStringField("id", response.id());
+            generator.writeStringField("name", response.name());
+            generator.writeStringField("responseData", response.responseData());
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+    }
+
+    private Message read(MessageType messageType, String str) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(str)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT, parser);
+            return switch (messageType) {
+                case USER -> UserMessage.builder().text(readSingleStringField(parser, "text")).build();
+                case SYSTEM -> new SystemMessage(readSingleStringField(parser, "content"));
+                case ASSISTANT -> readAssistantMessage(parser);
+                case TOOL -> readToolResponseMessage(parser);
+                default -> throw new IllegalArgumentException("Unsupported message type: " + messageType);
+            };
+        }
+    }
+
+    /**
+     * 读取当前对象中指定的字符串字段，读到对象结束为止
+     */
+    private static String readSingleStringField(JsonParser parser, String fieldName) throws IOException {
+        String value = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+            if (fieldName.equals(name)) {
+                value = stringValue(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return value;
+    }
+
+    private static AssistantMessage readAssistantMessage(JsonParser parser) throws IOException {
+        String content = null;
+        List<AssistantMessage.ToolCall> toolCalls = List.of();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if ("content".equals(name)) {
+                content = stringValue(parser);
+            } else if ("toolCalls".equals(name) && token == JsonToken.START_ARRAY) {
+                toolCalls = new ArrayList<>();
+                while (nextArrayElement(parser)) {
+                    toolCalls.add(readToolCall(parser));
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new AssistantMessage(content, Map.of(), toolCalls);
+    }
+
+    private static AssistantMessage.ToolCall readToolCall(JsonParser parser) throws IOException {
+        String id = null;
+        String type = null;
+        String name = null;
+        String arguments = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.currentName();
+            parser.nextToken();
+            switch (fieldName) {
+                case "id" -> id = stringValue(parser);
+                case "type" -> type = stringValue(parser);
+                case "name" -> name = stringValue(parser);
+                case "arguments" -> arguments = stringValue(parser);
+                default -> parser.skipChildren();
+            }
+        }
+        return new AssistantMessage.ToolCall(id, type, name, arguments);
+    }
+
+    private static ToolResponseMessage readToolResponseMessage(JsonParser parser) throws IOException {
+        List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if ("responses".equals(name) && token == JsonToken.START_ARRAY) {
+                while (nextArrayElement(parser)) {
+                    responses.add(readToolResponse(parser));
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new ToolResponseMessage(responses);
+    }
+
+    private static ToolResponseMessage.ToolResponse readToolResponse(JsonParser parser) throws IOException {
+        String id = null;
+        String name = null;
+        String responseData = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.currentName();
+            parser.nextToken();
+            switch (fieldName) {
+                case "id" -> id = stringValue(parser);
+                case "name" -> name = stringValue(parser);
+                case "responseData" -> responseData = stringValue(parser);
+                default -> parser.skipChildren();
+            }
+        }
+        return new ToolResponseMessage.ToolResponse(id, name, responseData);
+    }
+
+    /**
+     * 读取当前的字符串值，null和其它非字符串的值按Jackson的规则转换，对象和数组被跳过并返回null
+     */
+    private static String stringValue(JsonParser parser) throws IOException {
+        String value = parser.getValueAsString();
+        parser.skipChildren();
+        return value;
+    }
+
+    /**
+     * 移动到数组的下一个对象元素，跳过不是对象的元素，数组结束时返回false
+     */
+    private static boolean nextArrayElement(JsonParser parser) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == null) {
+                throw new JsonParseException(parser, "Unexpected end of input");
+            }
+            if (token == JsonToken.START_OBJECT) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    private static void expect(JsonToken actual, JsonToken expected, JsonParser parser) throws IOException {
+        if (actual != expected) {
+            throw new JsonParseException(parser, "Expected " + expected + " but was " + actual);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.x3bits.springaireactagent.serializer.json;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingJsonMessageSerializerTest {
+
+    private final JsonMessageSerializer jsonSerializer = new JsonMessageSerializer();
+
+    private final StreamingJsonMessageSerializer streamingSerializer = new StreamingJsonMessageSerializer();
+
+    /**
+     * 覆盖所有消息类型，包括需要转义的字符、空字符串和null字段
+     */
+    private static List<Message> messages() {
+        return List.of(
+                new UserMessage("你好"),
+                new UserMessage("引号\"、反斜杠\\、换行\n、制表符\t和emoji😀"),
+                new UserMessage(""),
+                new SystemMessage("你是一个助手"),
+                new AssistantMessage("结果是3"),
+                new AssistantMessage(""),
+                new AssistantMessage("", Map.of(), List.of(
+                        new AssistantMessage.ToolCall("call-1", "function", "add", "{\"a\":1,\"b\":2}"),
+                        new AssistantMessage.ToolCall("call-2", "function", "save", "{}"))),
+                new AssistantMessage("先计算", Map.of(), List.of(
+                        new AssistantMessage.ToolCall(null, "function", "add", null))),
+                new ToolResponseMessage(List.of(
+                        new ToolResponseMessage.ToolResponse("call-1", "add", "3"),
+                        new ToolResponseMessage.ToolResponse("call-2", "save", "{\"saved\":true}"))),
+                new ToolResponseMessage(List.of(new ToolResponseMessage.ToolResponse("call-3", "query", null))),
+                new ToolResponseMessage(List.of()));
+    }
+
+    private static void assertSameMessage(Message expected, Message actual) {
+        assertEquals(expected.getMessageType(), actual.getMessageType());
+        assertEquals(expected.getText(), actual.getText());
+        if (expected instanceof AssistantMessage assistantMessage) {
+            assertEquals(assistantMessage.getToolCalls(), ((AssistantMessage) actual).getToolCalls());
+        }
+        if (expected instanceof ToolResponseMessage toolResponseMessage) {
+            assertEquals(toolResponseMessage.getResponses(), ((ToolResponseMessage) actual).getResponses());
+        }
+    }
+
+    @Test
+    void testOutputIsSameAsJsonMessageSerializer() {
+        for (Message message : messages()) {
+            assertEquals(jsonSerializer.serialize(message), streamingSerializer.serialize(message),
+                    message.toString());
+        }
+    }
+
+    @Test
+    void testRoundTrip() {
+        for (Message message : messages()) {
+            String str = streamingSerializer.serialize(message);
+            assertSameMessage(message, streamingSerializer.deserialize(message.getMessageType(), str));
+        }
+    }
+
+    @Test
+    void testReadsJsonMessageSerializerOutput() {
+        for (Message message : messages()) {
+            String str = jsonSerializer.serialize(message);
+            Message expected = jsonSerializer.deserialize(message.getMessageType(), str);
+            Message actual = streamingSerializer.deserialize(message.getMessageType(), str);
+            assertSameMessage(message, actual);
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void testJsonMessageSerializerReadsOutput() {
+        for (Message message : messages()) {
+            String str = streamingSerializer.serialize(message);
+            assertSameMessage(message, jsonSerializer.deserialize(message.getMessageType(), str));
+        }
+    }
+
+    @Test
+    void testReadIgnoresFieldOrderAndUnknownFields() {
+        String str = "{\"extra\":{\"nested\":[1,2]},\"toolCalls\":[{\"arguments\":\"{}\",\"name\":\"add\","
+                + "\"unknown\":true,\"type\":\"function\",\"id\":\"call-1\"}],\"content\":\"结果\"}";
+
+        AssistantMessage message = (AssistantMessage) streamingSerializer.deserialize(MessageType.ASSISTANT, str);
+
+        assertEquals("结果", message.getText());
+        assertEquals(List.of(new AssistantMessage.ToolCall("call-1", "function", "add", "{}")),
+                message.getToolCalls());
+    }
+
+    @Test
+    void testInvalidJsonIsRejected() {
+        assertThrows(RuntimeException.class, () -> streamingSerializer.deserialize(MessageType.USER, "{\"text\":"));
+        assertThrows(IllegalArgumentException.class, () -> new StreamingJsonMessageSerializer(null));
+    }
+}
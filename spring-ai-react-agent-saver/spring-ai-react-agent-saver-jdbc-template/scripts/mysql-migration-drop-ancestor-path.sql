@@ -0,0 +1,16 @@
+-- 从使用ancestor_path列的旧版本表结构升级
+--
+-- 新版本只依赖previous_id和depth读取消息链，旧数据中这两列已经完整，无需回填数据。
+--
+-- 注意：不支持滚动升级，升级期间需要停止服务。
+-- 新版本写入的消息不再填充ancestor_path（该列为NULL），旧版本依赖ancestor_path读取消息链，
+-- 读到这些消息时会得到不完整的对话历史。因此新旧版本不能同时运行，请按以下步骤升级：
+--   1. 停止所有旧版本的应用实例
+--   2. 启动新版本的应用实例（ancestor_path列可以为NULL，新版本会忽略它，此时可以不删除该列）
+--   3. 确认不再需要回滚到旧版本后，执行下面的语句删除ancestor_path列，释放与对话长度成正比的存储空间
+-- 删除ancestor_path列之前仍然可以回滚到旧版本，但回滚前同样需要先停止所有新版本实例，
+-- 且新版本写入的消息在旧版本中无法正确读取。
+--
+-- 读取最近消息时使用递归CTE沿previous_id向上查找，需要MySQL 8.0及以上。
+
+ALTER TABLE `message_branch` DROP COLUMN `ancestor_path`;
@@ -6,7 +6,6 @@ CREATE TABLE `message_branch` (
   `message_type` varchar(20) NOT NULL COMMENT '消息类型：USER/ASSISTANT/SYSTEM/TOOL',
   `message_content` text NOT NULL COMMENT '消息内容JSON',
   `depth` int NOT NULL DEFAULT '0' COMMENT '消息在树中的深度',
-  `ancestor_path` text COMMENT '祖先路径，用逗号分隔的ID列表',
   `created_at` timestamp NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间（用于运维工具）',
   `updated_at` timestamp NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间（用于运维工具）',
   PRIMARY KEY (`id`),
@@ -0,0 +1,18 @@
+-- 使用BinaryMessageSerializer时的消息分支存储表（PostgreSQL），与postgresql-schema.sql的区别只有message_content列的类型
+CREATE TABLE message_branch (
+    id BIGSERIAL PRIMARY KEY,
+    message_id VARCHAR(64) NOT NULL UNIQUE,
+    thread_id VARCHAR(64) NOT NULL,
+    previous_id VARCHAR(64) NULL,
+    message_type VARCHAR(20) NOT NULL,
+    message_content BYTEA NOT NULL,
+    depth INT NOT NULL DEFAULT 0,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX idx_thread_id ON message_branch (thread_id);
+CREATE INDEX idx_previous_id ON message_branch (previous_id);
+CREATE INDEX idx_thread_depth ON message_branch (thread_id, depth);
+CREATE INDEX idx_depth ON message_branch (depth);
+CREATE INDEX idx_thread_id_order ON message_branch (thread_id, id);
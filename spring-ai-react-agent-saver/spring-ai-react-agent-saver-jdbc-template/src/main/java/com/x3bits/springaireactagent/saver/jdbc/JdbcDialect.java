@@ -0,0 +1,55 @@
+package com.x3bits.springaireactagent.saver.jdbc;
+
+import javax.sql.DataSource;
+
+/**
+ * 数据库方言，负责生成与具体数据库相关的SQL
+ */
+public interface JdbcDialect {
+
+    JdbcDialect MYSQL = new MySqlJdbcDialect();
+
+    JdbcDialect H2 = new StandardJdbcDialect();
+
+    JdbcDialect POSTGRESQL = new PostgreSqlJdbcDialect();
+
+    int DEFAULT_STREAMING_FETCH_SIZE = 500;
+
+    /**
+     * 生成在一条语句中读取消息链上最近N条消息的SQL，结果按从旧到新的顺序返回，
+     * 包含message_id、previous_id、message_type、message_content列
+     *
+     * @param fromLatestMessage 为true时从线程中最新的消息开始向上查找，参数依次为threadId、count；
+     *                          为false时从指定的消息开始向上查找，参数依次为messageId、threadId、count
+     * @return SQL语句
+     */
+    String latestMessagesSql(boolean fromLatestMessage);
+
+    /**
+     * 流式读取消息时设置给Statement的fetch size，驱动每次从数据库取回这么多行，而不是一次读取整个结果集
+     *
+     * @return fetch size
+     */
+    default int streamingFetchSize() {
+        return DEFAULT_STREAMING_FETCH_SIZE;
+    }
+
+    /**
+     * 流式读取是否需要在关闭自动提交的连接上执行。驱动在自动提交模式下忽略fetch size时返回true
+     *
+     * @return 是否需要关闭自动提交
+     */
+    default boolean requiresTransactionForStreaming() {
+        return false;
+    }
+
+    /**
+     * 根据数据库产品名称选择方言，无法识别（例如MariaDB）或无法获取元数据时记录警告并使用标准SQL
+     *
+     * @param dataSource 数据源
+     * @return 数据库方言
+     */
+    static JdbcDialect detect(DataSource dataSource) {
+        return JdbcDialects.detect(dataSource);
+    }
+}
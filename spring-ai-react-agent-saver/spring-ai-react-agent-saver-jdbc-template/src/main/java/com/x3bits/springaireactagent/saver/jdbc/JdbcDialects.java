@@ -0,0 +1,41 @@
+package com.x3bits.springaireactagent.saver.jdbc;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+
+import javax.sql.DataSource;
+import java.sql.DatabaseMetaData;
+
+/**
+ * {@link JdbcDialect#detect(DataSource)}的实现，接口中不能声明私有的Logger
+ */
+final class JdbcDialects {
+
+    private static final Log logger = LogFactory.getLog(JdbcDialect.class);
+
+    private JdbcDialects() {
+    }
+
+    static JdbcDialect detect(DataSource dataSource) {
+        String productName;
+        try {
+            productName = JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getDatabaseProductName);
+        } catch (MetaDataAccessException e) {
+            logger.warn("Failed to read database metadata, falling back to standard SQL dialect", e);
+            return JdbcDialect.H2;
+        }
+        if ("MySQL".equalsIgnoreCase(productName)) {
+            return JdbcDialect.MYSQL;
+        }
+        if ("PostgreSQL".equalsIgnoreCase(productName)) {
+            return JdbcDialect.POSTGRESQL;
+        }
+        if (!"H2".equalsIgnoreCase(productName)) {
+            logger.warn("Unknown database product '" + productName + "', falling back to standard SQL dialect; "
+                    + "pass a JdbcDialect explicitly if it does not support WITH RECURSIVE");
+        }
+        return JdbcDialect.H2;
+    }
+}
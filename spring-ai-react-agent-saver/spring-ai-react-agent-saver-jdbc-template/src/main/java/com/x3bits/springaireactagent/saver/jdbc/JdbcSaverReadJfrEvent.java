@@ -0,0 +1,46 @@
+package com.x3bits.springaireactagent.saver.jdbc;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JdbcTemplateBranchMessageSaver的一次读取的JFR事件，默认关闭
+ */
+@Name("com.x3bits.springaireactagent.JdbcSaverRead")
+@Label("JDBC Saver Read")
+@Description("JdbcTemplateBranchMessageSaver的一次读取")
+@Category({"Spring AI ReAct Agent", "Saver"})
+@Enabled(false)
+@StackTrace(false)
+final class JdbcSaverReadJfrEvent extends Event {
+
+    @Label("Method")
+    String method;
+
+    @Label("Thread Id")
+    String threadId;
+
+    @Label("Messages")
+    @Description("读取的消息数量")
+    int messages;
+
+    @Label("Content Length")
+    @Description("序列化后的消息内容的字符数，二进制内容为字节数")
+    long contentLength;
+
+    void commit(String method, String threadId, int messages, long contentLength) {
+        if (!shouldCommit()) {
+            return;
+        }
+        this.method = method;
+        this.threadId = threadId;
+        this.messages = messages;
+        this.contentLength = contentLength;
+        commit();
+    }
+}
@@ -2,32 +2,157 @@ package com.x3bits.springaireactagent.saver.jdbc;
 
 import com.x3bits.springaireactagent.core.memory.BranchMessageSaver;
 import com.x3bits.springaireactagent.core.message.BranchMessageItem;
+import com.x3bits.springaireactagent.core.message.BranchMessageNode;
+import com.x3bits.springaireactagent.serializer.BinaryMessageSerializer;
 import com.x3bits.springaireactagent.serializer.MessageSerializer;
 import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.dao.DataAccessException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * JDBC 实现的分支消息保存器
  * <p>
  * 使用关系数据库存储消息分支，支持高效的消息链查询。
- * 采用祖先路径存储方案来优化深度查询性能。
+ * 每条消息只记录前一个消息ID（邻接表）和深度，写入开销和存储空间与消息链的长度无关。
+ * 读取最近的N条消息时只执行一条SQL：使用递归CTE从起始消息沿previous_id向上查找，只访问这N条消息，
+ * 需要数据库支持WITH RECURSIVE（MySQL 8、H2、PostgreSQL），数据库之间的差异由{@link JdbcDialect}处理。
+ * </p>
+ * <p>
+ * 消息内容可以用{@link MessageSerializer}序列化成字符串存储在TEXT列中，也可以用{@link BinaryMessageSerializer}
+ * 序列化成字节存储在BLOB（MySQL）、BYTEA（PostgreSQL）或VARBINARY列中，表结构见scripts目录下的*-binary.sql。
+ * </p>
+ * <p>
+ * {@link #getAllMessages(String)}返回延迟反序列化的消息项，只在调用{@link BranchMessageItem#message()}时反序列化；
+ * 只需要消息树结构时使用{@link #getMessageNodes(String)}，不读取message_content列。
+ * 很长的线程可以用{@link #getMessagesAfter(String, String, int)}按自增主键分页读取，
+ * 或者用{@link #streamAllMessages(String)}按{@link JdbcDialect#streamingFetchSize()}分批从ResultSet流式读取。
+ * </p>
+ * <p>
+ * 从使用ancestor_path列的旧版本表结构升级请参考scripts/mysql-migration-drop-ancestor-path.sql。
  * </p>
  */
 public class JdbcTemplateBranchMessageSaver implements BranchMessageSaver {
 
+    private static final String INSERT_SQL =
+            "INSERT INTO message_branch (message_id, thread_id, previous_id, message_type, message_content, depth) "
+                    + "VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final String ALL_MESSAGES_SQL =
+            "SELECT message_id, thread_id, previous_id, message_type, message_content, depth "
+                    + "FROM message_branch WHERE thread_id = ? ORDER BY id ASC";
+
+    // 按自增主键分页，游标消息必须属于同一个线程，否则子查询为NULL，不返回任何行
+    private static final String MESSAGES_AFTER_SQL =
+            "SELECT message_id, previous_id, message_type, message_content FROM message_branch "
+                    + "WHERE thread_id = ? "
+                    + "AND id > (SELECT id FROM message_branch WHERE message_id = ? AND thread_id = ?) "
+                    + "ORDER BY id ASC LIMIT ?";
+
+    private static final String FIRST_MESSAGES_SQL =
+            "SELECT message_id, previous_id, message_type, message_content FROM message_branch "
+                    + "WHERE thread_id = ? ORDER BY id ASC LIMIT ?";
+
+
+    public static final int DEFAULT_NODE_CACHE_SIZE = 1024;
+
     private final JdbcTemplate jdbcTemplate;
+    // 两者只有一个不为null
     private final MessageSerializer messageSerializer;
+    private final BinaryMessageSerializer binaryMessageSerializer;
+    private final TransactionTemplate transactionTemplate;
+    private final JdbcDialect dialect;
+
+    // 最近写入的消息在树中的深度: messageId -> depth。消息写入后不会再修改，所以缓存无需失效
+    private final Map<String, Integer> nodeCache;
 
     public JdbcTemplateBranchMessageSaver(JdbcTemplate jdbcTemplate, MessageSerializer messageSerializer) {
+        this(jdbcTemplate, messageSerializer, DEFAULT_NODE_CACHE_SIZE);
+    }
+
+    /**
+     * @param nodeCacheSize 缓存最近写入消息的深度的数量，连续保存同一条消息链时可以省去查询前一个消息，
+     *                      为0时不缓存
+     */
+    public JdbcTemplateBranchMessageSaver(JdbcTemplate jdbcTemplate, MessageSerializer messageSerializer,
+            int nodeCacheSize) {
+        this(jdbcTemplate, messageSerializer, nodeCacheSize, JdbcDialect.detect(jdbcTemplate.getDataSource()));
+    }
+
+    /**
+     * @param nodeCacheSize 缓存最近写入消息的深度的数量，为0时不缓存
+     * @param dialect       数据库方言
+     */
+    public JdbcTemplateBranchMessageSaver(JdbcTemplate jdbcTemplate, MessageSerializer messageSerializer,
+            int nodeCacheSize, JdbcDialect dialect) {
+        this(jdbcTemplate, messageSerializer, null, nodeCacheSize, dialect);
+    }
+
+    /**
+     * 把消息序列化成字节保存，message_content列需要是二进制类型
+     */
+    public JdbcTemplateBranchMessageSaver(JdbcTemplate jdbcTemplate, BinaryMessageSerializer binaryMessageSerializer) {
+        this(jdbcTemplate, binaryMessageSerializer, DEFAULT_NODE_CACHE_SIZE,
+                JdbcDialect.detect(jdbcTemplate.getDataSource()));
+    }
+
+    /**
+     * 把消息序列化成字节保存，message_content列需要是二进制类型
+     *
+     * @param nodeCacheSize 缓存最近写入消息的深度的数量，为0时不缓存
+     * @param dialect       数据库方言
+     */
+    public JdbcTemplateBranchMessageSaver(JdbcTemplate jdbcTemplate, BinaryMessageSerializer binaryMessageSerializer,
+            int nodeCacheSize, JdbcDialect dialect) {
+        this(jdbcTemplate, null, requireBinarySerializer(binaryMessageSerializer), nodeCacheSize, dialect);
+    }
+
+    private JdbcTemplateBranchMessageSaver(JdbcTemplate jdbcTemplate, MessageSerializer messageSerializer,
+            BinaryMessageSerializer binaryMessageSerializer, int nodeCacheSize, JdbcDialect dialect) {
+        if (dialect == null) {
+            throw new IllegalArgumentException("dialect cannot be null");
+        }
+        if (nodeCacheSize < 0) {
+            throw new IllegalArgumentException("nodeCacheSize cannot be negative");
+        }
         this.jdbcTemplate = jdbcTemplate;
         this.messageSerializer = messageSerializer;
+        this.binaryMessageSerializer = binaryMessageSerializer;
+        this.dialect = dialect;
+        this.transactionTemplate = new TransactionTemplate(
+                new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+        this.nodeCache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > nodeCacheSize;
+            }
+        });
+    }
+
+    private static BinaryMessageSerializer requireBinarySerializer(BinaryMessageSerializer binaryMessageSerializer) {
+        if (binaryMessageSerializer == null) {
+            throw new IllegalArgumentException("binaryMessageSerializer cannot be null");
+        }
+        return binaryMessageSerializer;
     }
 
     @Override
@@ -36,46 +161,130 @@ public class JdbcTemplateBranchMessageSaver implements BranchMessageSaver {
             throw new IllegalArgumentException("threadId and branchMessageItem cannot be null");
         }
 
-        String messageId = branchMessageItem.id();
+        JdbcSaverWriteJfrEvent event = new JdbcSaverWriteJfrEvent();
+        event.begin();
         String previousId = branchMessageItem.previousId();
-        Message message = branchMessageItem.message();
+        Integer parentDepth = null;
+        if (previousId != null && !previousId.isEmpty()) {
+            parentDepth = findDepths(List.of(previousId)).get(previousId);
+        }
 
-        // 序列化消息内容
-        String messageContent = messageSerializer.serialize(message);
+        // 插入消息
+        int depth = childDepth(parentDepth);
+        Object[] args = toInsertArgs(threadId, branchMessageItem, depth);
+        jdbcTemplate.update(INSERT_SQL, args);
+        nodeCache.put(branchMessageItem.id(), depth);
+        event.commit("save", threadId, 1, contentLength(args));
+    }
 
-        // 计算深度和祖先路径
-        int depth = 0;
-        String ancestorPath = "";
+    /**
+     * 批量保存消息。批次内消息的深度在内存中计算，批次外的前一个消息通过一次查询获取，
+     * 然后在同一个事务中使用一次batchUpdate写入所有消息。
+     */
+    @Override
+    public void saveAll(String threadId, List<BranchMessageItem> branchMessageItems) {
+        if (threadId == null || branchMessageItems == null) {
+            throw new IllegalArgumentException("threadId and branchMessageItems cannot be null");
+        }
+        if (branchMessageItems.isEmpty()) {
+            return;
+        }
 
-        if (previousId != null && !previousId.isEmpty()) {
-            try {
-                Map<String, Object> parentInfo = jdbcTemplate.queryForMap(
-                        "SELECT depth, ancestor_path FROM message_branch WHERE message_id = ?",
-                        previousId);
-
-                depth = (Integer) parentInfo.get("depth") + 1;
-                String parentPath = (String) parentInfo.get("ancestor_path");
-
-                // 构建祖先路径
-                ancestorPath = parentPath != null && !parentPath.isEmpty()
-                        ? parentPath + "," + previousId
-                        : previousId;
-            } catch (EmptyResultDataAccessException e) {
-                // 如果父消息不存在，当作根消息处理
-                depth = 0;
-                ancestorPath = "";
+        JdbcSaverWriteJfrEvent event = new JdbcSaverWriteJfrEvent();
+        event.begin();
+        // 查询不在本批次中的前一个消息
+        Set<String> batchIds = new HashSet<>();
+        Set<String> externalParentIds = new LinkedHashSet<>();
+        for (BranchMessageItem branchMessageItem : branchMessageItems) {
+            if (branchMessageItem == null) {
+                throw new IllegalArgumentException("branchMessageItem cannot be null");
             }
+            String previousId = branchMessageItem.previousId();
+            if (previousId != null && !previousId.isEmpty() && !batchIds.contains(previousId)) {
+                externalParentIds.add(previousId);
+            }
+            batchIds.add(branchMessageItem.id());
         }
+        Map<String, Integer> depths = new HashMap<>(findDepths(externalParentIds));
 
-        // 插入消息
-        jdbcTemplate.update(
-                "INSERT INTO message_branch (message_id, thread_id, previous_id, message_type, message_content, depth, ancestor_path) "
-                        +
-                        "VALUES (?, ?, ?, ?, ?, ?, ?)",
-                messageId, threadId, previousId,
-                message.getMessageType().name(),
-                messageContent,
-                depth, ancestorPath);
+        List<Object[]> batchArgs = new ArrayList<>(branchMessageItems.size());
+        Map<String, Integer> batchDepths = new LinkedHashMap<>();
+        for (BranchMessageItem branchMessageItem : branchMessageItems) {
+            String previousId = branchMessageItem.previousId();
+            int depth = childDepth(previousId == null ? null : depths.get(previousId));
+            depths.put(branchMessageItem.id(), depth);
+            batchDepths.put(branchMessageItem.id(), depth);
+            batchArgs.add(toInsertArgs(threadId, branchMessageItem, depth));
+        }
+
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(INSERT_SQL, batchArgs));
+        nodeCache.putAll(batchDepths);
+        if (event.shouldCommit()) {
+            long contentLength = 0;
+            for (Object[] args : batchArgs) {
+                contentLength += contentLength(args);
+            }
+            event.commit("saveAll", threadId, batchArgs.size(), contentLength);
+        }
+    }
+
+    /**
+     * 消息内容的长度，字符串为字符数，二进制为字节数
+     */
+    private static long contentLength(Object[] insertArgs) {
+        Object content = insertArgs[4];
+        return content instanceof byte[] bytes ? bytes.length : ((String) content).length();
+    }
+
+    private Object[] toInsertArgs(String threadId, BranchMessageItem branchMessageItem, int depth) {
+        Message message = branchMessageItem.message();
+        // 序列化消息内容
+        Object messageContent = binaryMessageSerializer != null
+                ? binaryMessageSerializer.serializeToBytes(message)
+                : messageSerializer.serialize(message);
+        return new Object[] { branchMessageItem.id(), threadId, branchMessageItem.previousId(),
+                message.getMessageType().name(), messageContent, depth };
+    }
+
+    /**
+     * 查询消息在树中的深度，优先使用缓存，未命中的消息再查询数据库
+     */
+    private Map<String, Integer> findDepths(Collection<String> messageIds) {
+        if (messageIds.isEmpty()) {
+            return Map.of();
+        }
+        Map<String, Integer> result = new HashMap<>();
+        List<String> missedIds = new ArrayList<>();
+        for (String messageId : messageIds) {
+            Integer depth = nodeCache.get(messageId);
+            if (depth != null) {
+                result.put(messageId, depth);
+            } else {
+                missedIds.add(messageId);
+            }
+        }
+        if (missedIds.isEmpty()) {
+            return result;
+        }
+        String inClause = String.join(",", Collections.nCopies(missedIds.size(), "?"));
+        jdbcTemplate.query(
+                "SELECT message_id, depth FROM message_branch WHERE message_id IN (" + inClause + ")",
+                rs -> {
+                    String messageId = rs.getString("message_id");
+                    int depth = rs.getInt("depth");
+                    result.put(messageId, depth);
+                    nodeCache.put(messageId, depth);
+                },
+                missedIds.toArray());
+        return result;
+    }
+
+    /**
+     * 根据前一个消息的深度计算新消息的深度
+     */
+    private static int childDepth(Integer parentDepth) {
+        // 如果父消息不存在，当作根消息处理
+        return parentDepth == null ? 0 : parentDepth + 1;
     }
 
     @Override
@@ -84,13 +293,18 @@ public class JdbcTemplateBranchMessageSaver implements BranchMessageSaver {
             return null;
         }
 
+        JdbcSaverReadJfrEvent event = new JdbcSaverReadJfrEvent();
+        event.begin();
+        String messageId;
         try {
-            return jdbcTemplate.queryForObject(
+            messageId = jdbcTemplate.queryForObject(
                     "SELECT message_id FROM message_branch WHERE thread_id = ? ORDER BY id DESC LIMIT 1",
                     String.class, threadId);
         } catch (EmptyResultDataAccessException e) {
-            return null;
+            messageId = null;
         }
+        event.commit("getLatestMessageId", threadId, messageId == null ? 0 : 1, 0);
+        return messageId;
     }
 
     @Override
@@ -99,96 +313,206 @@ public class JdbcTemplateBranchMessageSaver implements BranchMessageSaver {
             return List.of();
         }
 
-        return jdbcTemplate.query(
-                "SELECT message_id, thread_id, previous_id, message_type, message_content, depth, ancestor_path " +
-                        "FROM message_branch WHERE thread_id = ? ORDER BY id ASC",
-                new BranchMessageItemRowMapper(),
-                threadId);
+        JdbcSaverReadJfrEvent event = new JdbcSaverReadJfrEvent();
+        event.begin();
+        BranchMessageItemRowMapper rowMapper = new BranchMessageItemRowMapper(true);
+        List<BranchMessageItem> items = jdbcTemplate.query(ALL_MESSAGES_SQL, rowMapper, threadId);
+        event.commit("getAllMessages", threadId, items.size(), rowMapper.contentLength);
+        return items;
     }
 
     @Override
-    public List<Message> getLatestMessages(String threadId, int count, String lastMessageId) {
-        if (threadId == null || count <= 0) {
+    public List<BranchMessageItem> getMessagesAfter(String threadId, String afterMessageId, int limit) {
+        if (threadId == null || limit <= 0) {
             return List.of();
         }
 
-        // 如果没有指定 lastMessageId，使用最新消息
-        String startMessageId = lastMessageId;
-        if (startMessageId == null) {
-            startMessageId = getLatestMessageId(threadId);
-        }
+        JdbcSaverReadJfrEvent event = new JdbcSaverReadJfrEvent();
+        event.begin();
+        BranchMessageItemRowMapper rowMapper = new BranchMessageItemRowMapper(true);
+        List<BranchMessageItem> items = afterMessageId == null
+                ? jdbcTemplate.query(FIRST_MESSAGES_SQL, rowMapper, threadId, limit)
+                : jdbcTemplate.query(MESSAGES_AFTER_SQL, rowMapper, threadId, afterMessageId, threadId, limit);
+        event.commit("getMessagesAfter", threadId, items.size(), rowMapper.contentLength);
+        return items;
+    }
 
-        if (startMessageId == null) {
-            return List.of();
+    /**
+     * 从ResultSet逐行映射消息，返回的流持有数据库连接，必须关闭。读取事件在流关闭时提交
+     * <p>
+     * 方言要求{@link JdbcDialect#requiresTransactionForStreaming()}且连接处于自动提交模式时，
+     * 在关闭自动提交的连接上执行查询，流关闭时结束该只读事务并恢复自动提交，然后释放连接。
+     * </p>
+     */
+    @Override
+    public Stream<BranchMessageItem> streamAllMessages(String threadId) {
+        if (threadId == null) {
+            return Stream.empty();
         }
 
-        // 获取起始消息的祖先路径
-        String ancestorPath;
+        JdbcSaverReadJfrEvent event = new JdbcSaverReadJfrEvent();
+        event.begin();
+        BranchMessageItemRowMapper rowMapper = new BranchMessageItemRowMapper(true);
+        DataSource dataSource = jdbcTemplate.getDataSource();
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        StreamResources resources = new StreamResources(connection, dataSource);
         try {
-            ancestorPath = jdbcTemplate.queryForObject(
-                    "SELECT ancestor_path FROM message_branch WHERE message_id = ? AND thread_id = ?",
-                    String.class, startMessageId, threadId);
-        } catch (EmptyResultDataAccessException e) {
-            return List.of();
+            if (dialect.requiresTransactionForStreaming() && connection.getAutoCommit()) {
+                connection.setAutoCommit(false);
+                resources.restoreAutoCommit = true;
+            }
+            resources.statement = connection.prepareStatement(ALL_MESSAGES_SQL);
+            resources.statement.setFetchSize(dialect.streamingFetchSize());
+            resources.statement.setString(1, threadId);
+            resources.resultSet = resources.statement.executeQuery();
+        } catch (SQLException | RuntimeException e) {
+            resources.close();
+            throw e instanceof SQLException sqlException
+                    ? translate("streamAllMessages", sqlException)
+                    : (RuntimeException) e;
         }
+        ResultSet resultSet = resources.resultSet;
+        Spliterator<BranchMessageItem> spliterator = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            private int rowNum;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super BranchMessageItem> action) {
+                try {
+                    if (!resultSet.next()) {
+                        return false;
+                    }
+                    action.accept(rowMapper.mapRow(resultSet, rowNum++));
+                    return true;
+                } catch (SQLException e) {
+                    throw translate("streamAllMessages", e);
+                }
+            }
+        };
+        return StreamSupport.stream(spliterator, false)
+                .onClose(() -> {
+                    resources.close();
+                    event.commit("streamAllMessages", threadId, rowMapper.rowCount, rowMapper.contentLength);
+                });
+    }
 
-        // 解析路径并获取需要的消息ID
-        List<String> messageIds = parseAncestorPath(ancestorPath, startMessageId, count);
+    private DataAccessException translate(String task, SQLException e) {
+        DataAccessException translated = jdbcTemplate.getExceptionTranslator().translate(task, ALL_MESSAGES_SQL, e);
+        return translated != null ? translated : new UncategorizedSQLException(task, ALL_MESSAGES_SQL, e);
+    }
 
-        if (messageIds.isEmpty()) {
+    @Override
+    public List<BranchMessageNode> getMessageNodes(String threadId) {
+        if (threadId == null) {
             return List.of();
         }
 
-        // 批量查询所有相关消息
-        String inClause = String.join(",", Collections.nCopies(messageIds.size(), "?"));
-        List<BranchMessageItem> messages = jdbcTemplate.query(
-                "SELECT message_id, thread_id, previous_id, message_type, message_content, depth, ancestor_path " +
-                        "FROM message_branch WHERE message_id IN (" + inClause + ") ORDER BY depth ASC",
-                new BranchMessageItemRowMapper(),
-                messageIds.toArray());
+        JdbcSaverReadJfrEvent event = new JdbcSaverReadJfrEvent();
+        event.begin();
+        List<BranchMessageNode> nodes = jdbcTemplate.query(
+                "SELECT message_id, previous_id, message_type FROM message_branch WHERE thread_id = ? ORDER BY id ASC",
+                (rs, rowNum) -> new BranchMessageNode(rs.getString("message_id"), rs.getString("previous_id"),
+                        MessageType.valueOf(rs.getString("message_type"))),
+                threadId);
+        event.commit("getMessageNodes", threadId, nodes.size(), 0);
+        return nodes;
+    }
 
-        return messages.stream()
+    @Override
+    public List<Message> getLatestMessages(String threadId, int count, String lastMessageId) {
+        return getLatestMessageItems(threadId, count, lastMessageId).stream()
                 .map(BranchMessageItem::message)
                 .collect(Collectors.toList());
     }
 
-    /**
-     * 解析祖先路径，获取最近的N个祖先ID
-     */
-    private List<String> parseAncestorPath(String ancestorPath, String currentId, int count) {
-        List<String> result = new ArrayList<>();
-        result.add(currentId);
-
-        if (ancestorPath != null && !ancestorPath.isEmpty()) {
-            String[] ancestors = ancestorPath.split(",");
-            // 从最近的祖先开始取
-            int startIndex = Math.max(0, ancestors.length - count + 1);
-            for (int i = startIndex; i < ancestors.length; i++) {
-                result.add(ancestors[i]);
-            }
+    @Override
+    public List<BranchMessageItem> getLatestMessageItems(String threadId, int count, String lastMessageId) {
+        if (threadId == null || count <= 0) {
+            return List.of();
         }
 
-        return result;
+        JdbcSaverReadJfrEvent event = new JdbcSaverReadJfrEvent();
+        event.begin();
+        BranchMessageItemRowMapper rowMapper = new BranchMessageItemRowMapper(false);
+        // 在一条SQL中定位起始消息并沿消息链向上查找，如果没有指定 lastMessageId，从最新消息开始
+        List<BranchMessageItem> items = lastMessageId == null
+                ? jdbcTemplate.query(dialect.latestMessagesSql(true), rowMapper, threadId, count)
+                : jdbcTemplate.query(dialect.latestMessagesSql(false), rowMapper, lastMessageId, threadId, count);
+        event.commit("getLatestMessageItems", threadId, items.size(), rowMapper.contentLength);
+        return items;
     }
 
     /**
      * 用于将数据库行映射为 BranchMessageItem 的 RowMapper
      */
+    /**
+     * 流式读取持有的数据库资源，按打开的相反顺序释放
+     */
+    private static final class StreamResources {
+        private final Connection connection;
+        private final DataSource dataSource;
+        private PreparedStatement statement;
+        private ResultSet resultSet;
+        // 为true时连接的自动提交是为流式读取关闭的，释放前需要结束事务并恢复
+        private boolean restoreAutoCommit;
+
+        StreamResources(Connection connection, DataSource dataSource) {
+            this.connection = connection;
+            this.dataSource = dataSource;
+        }
+
+        void close() {
+            JdbcUtils.closeResultSet(resultSet);
+            JdbcUtils.closeStatement(statement);
+            try {
+                if (restoreAutoCommit) {
+                    // 只读取了数据，回滚即可结束事务
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                throw new UncategorizedSQLException("streamAllMessages", ALL_MESSAGES_SQL, e);
+            } finally {
+                DataSourceUtils.releaseConnection(connection, dataSource);
+            }
+        }
+    }
+
     private class BranchMessageItemRowMapper implements RowMapper<BranchMessageItem> {
+        // 为true时只读取消息内容，第一次调用message()时才反序列化
+        private final boolean lazy;
+        // 已映射的行数和消息内容的长度之和，字符串为字符数，二进制为字节数
+        private int rowCount;
+        private long contentLength;
+
+        BranchMessageItemRowMapper(boolean lazy) {
+            this.lazy = lazy;
+        }
+
         @Override
         public BranchMessageItem mapRow(ResultSet rs, int rowNum) throws SQLException {
+            rowCount++;
             String messageId = rs.getString("message_id");
             String previousId = rs.getString("previous_id");
-            String messageType = rs.getString("message_type");
-            String messageContent = rs.getString("message_content");
+            MessageType messageType = MessageType.valueOf(rs.getString("message_type"));
 
             // 反序列化消息
-            Message message = messageSerializer.deserialize(
-                    org.springframework.ai.chat.messages.MessageType.valueOf(messageType),
-                    messageContent);
+            Supplier<Message> loader;
+            if (binaryMessageSerializer != null) {
+                byte[] messageContent = rs.getBytes("message_content");
+                contentLength += messageContent == null ? 0 : messageContent.length;
+                loader = () -> binaryMessageSerializer.deserialize(messageType, messageContent);
+            } else {
+                String messageContent = rs.getString("message_content");
+                contentLength += messageContent == null ? 0 : messageContent.length();
+                loader = () -> messageSerializer.deserialize(messageType, messageContent);
+            }
 
             // 忽略 metadata 字段，使用空 Map
-            return new BranchMessageItem(message, messageId, previousId, Map.of());
+            if (lazy) {
+                return BranchMessageItem.lazy(messageType, loader, messageId, previousId, Map.of());
+            }
+            return new BranchMessageItem(loader.get(), messageId, previousId, Map.of());
         }
     }
 }
\ No newline at end of file
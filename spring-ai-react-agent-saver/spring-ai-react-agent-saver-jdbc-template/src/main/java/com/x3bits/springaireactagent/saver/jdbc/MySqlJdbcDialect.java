@@ -0,0 +1,25 @@
+package com.x3bits.springaireactagent.saver.jdbc;
+
+/**
+ * MySQL 8的数据库方言
+ * <p>
+ * MySQL默认限制递归CTE最多迭代1000次（cte_max_recursion_depth），
+ * 查询本身已经按count限制了迭代次数，所以通过SET_VAR提示在语句级别解除该限制，无需修改服务器配置。
+ * </p>
+ * <p>
+ * MySQL Connector/J默认把整个结果集读入内存，只有fetch size为Integer.MIN_VALUE时才逐行流式读取
+ * （连接参数useCursorFetch=true时才使用普通的fetch size），所以流式读取时使用Integer.MIN_VALUE。
+ * </p>
+ */
+public class MySqlJdbcDialect extends StandardJdbcDialect {
+
+    @Override
+    protected String selectHint() {
+        return "/*+ SET_VAR(cte_max_recursion_depth = 4294967295) */ ";
+    }
+
+    @Override
+    public int streamingFetchSize() {
+        return Integer.MIN_VALUE;
+    }
+}
@@ -0,0 +1,16 @@
+package com.x3bits.springaireactagent.saver.jdbc;
+
+/**
+ * PostgreSQL的数据库方言
+ * <p>
+ * PostgreSQL驱动只在关闭自动提交时（即在事务中）才使用游标按fetch size分批读取，
+ * 自动提交模式下忽略fetch size，把整个结果集读入内存，所以流式读取需要关闭自动提交。
+ * </p>
+ */
+public class PostgreSqlJdbcDialect extends StandardJdbcDialect {
+
+    @Override
+    public boolean requiresTransactionForStreaming() {
+        return true;
+    }
+}
@@ -0,0 +1,32 @@
+package com.x3bits.springaireactagent.saver.jdbc;
+
+/**
+ * 使用标准SQL递归CTE的数据库方言，适用于H2、PostgreSQL等数据库
+ */
+public class StandardJdbcDialect implements JdbcDialect {
+
+    @Override
+    public String latestMessagesSql(boolean fromLatestMessage) {
+        // 起始消息：指定的消息，或者线程中最新的消息
+        String anchor = fromLatestMessage
+                ? "SELECT message_id, previous_id, 1 FROM message_branch "
+                        + "WHERE id = (SELECT MAX(id) FROM message_branch WHERE thread_id = ?)"
+                : "SELECT message_id, previous_id, 1 FROM message_branch WHERE message_id = ? AND thread_id = ?";
+        // 从起始消息沿previous_id向上最多查找count条消息
+        return "WITH RECURSIVE branch (message_id, previous_id, distance) AS ("
+                + anchor
+                + " UNION ALL "
+                + "SELECT m.message_id, m.previous_id, b.distance + 1 FROM message_branch m "
+                + "JOIN branch b ON m.message_id = b.previous_id WHERE b.distance < ?) "
+                + "SELECT " + selectHint() + "m.message_id, m.previous_id, m.message_type, m.message_content "
+                + "FROM branch b JOIN message_branch m ON m.message_id = b.message_id "
+                + "ORDER BY b.distance DESC";
+    }
+
+    /**
+     * 添加在最外层SELECT关键字之后的优化器提示，需要以空格结尾
+     */
+    protected String selectHint() {
+        return "";
+    }
+}
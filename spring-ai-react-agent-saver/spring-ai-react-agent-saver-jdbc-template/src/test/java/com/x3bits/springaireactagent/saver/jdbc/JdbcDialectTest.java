@@ -0,0 +1,74 @@
+package com.x3bits.springaireactagent.saver.jdbc;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class JdbcDialectTest {
+
+    private static final String MYSQL_HINT = "/*+ SET_VAR(cte_max_recursion_depth = 4294967295) */";
+
+    private static DataSource dataSource(String productName) throws SQLException {
+        DatabaseMetaData metaData = mock(DatabaseMetaData.class);
+        when(metaData.getDatabaseProductName()).thenReturn(productName);
+        Connection connection = mock(Connection.class);
+        when(connection.getMetaData()).thenReturn(metaData);
+        DataSource dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        return dataSource;
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void testMySqlHintIsPlacedAfterOutermostSelect(boolean fromLatestMessage) {
+        String sql = JdbcDialect.MYSQL.latestMessagesSql(fromLatestMessage);
+
+        // 提示只能出现在最外层的SELECT关键字之后，MySQL会忽略其它位置的SET_VAR
+        assertEquals(1, sql.split("/\\*\\+", -1).length - 1);
+        assertTrue(sql.contains(") SELECT " + MYSQL_HINT + " m.message_id, m.previous_id, m.message_type, "
+                + "m.message_content FROM branch b"), sql);
+        assertTrue(sql.startsWith("WITH RECURSIVE branch (message_id, previous_id, distance) AS (SELECT "), sql);
+        assertEquals(JdbcDialect.H2.latestMessagesSql(fromLatestMessage), sql.replace(MYSQL_HINT + " ", ""));
+    }
+
+    @Test
+    void testStandardSqlHasNoHint() {
+        assertFalse(JdbcDialect.H2.latestMessagesSql(true).contains("/*+"));
+        assertFalse(JdbcDialect.POSTGRESQL.latestMessagesSql(false).contains("/*+"));
+    }
+
+    @Test
+    void testStreamingFetchSize() {
+        // Connector/J只在fetch size为Integer.MIN_VALUE时逐行流式读取
+        assertEquals(Integer.MIN_VALUE, JdbcDialect.MYSQL.streamingFetchSize());
+        assertEquals(JdbcDialect.DEFAULT_STREAMING_FETCH_SIZE, JdbcDialect.H2.streamingFetchSize());
+        assertEquals(JdbcDialect.DEFAULT_STREAMING_FETCH_SIZE, JdbcDialect.POSTGRESQL.streamingFetchSize());
+    }
+
+    @Test
+    void testDetect() throws SQLException {
+        assertSame(JdbcDialect.MYSQL, JdbcDialect.detect(dataSource("MySQL")));
+        assertSame(JdbcDialect.POSTGRESQL, JdbcDialect.detect(dataSource("PostgreSQL")));
+        assertSame(JdbcDialect.H2, JdbcDialect.detect(dataSource("H2")));
+    }
+
+    @Test
+    void testDetectFallsBackToStandardSql() throws SQLException {
+        // 无法识别的数据库
+        assertSame(JdbcDialect.H2, JdbcDialect.detect(dataSource("MariaDB")));
+
+        // 无法获取元数据
+        DataSource failing = mock(DataSource.class);
+        when(failing.getConnection()).thenThrow(new SQLException("connection refused"));
+        assertSame(JdbcDialect.H2, JdbcDialect.detect(failing));
+    }
+}
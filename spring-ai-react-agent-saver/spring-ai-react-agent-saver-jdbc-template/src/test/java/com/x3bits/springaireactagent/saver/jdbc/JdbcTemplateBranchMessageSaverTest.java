@@ -1,20 +1,46 @@
 package com.x3bits.springaireactagent.saver.jdbc;
 
 import com.x3bits.springaireactagent.core.message.BranchMessageItem;
+import com.x3bits.springaireactagent.core.message.BranchMessageNode;
+import com.x3bits.springaireactagent.serializer.BinaryMessageSerializer;
+import com.x3bits.springaireactagent.serializer.CompressingMessageSerializer;
+import com.x3bits.springaireactagent.serializer.CompressionCodec;
 import com.x3bits.springaireactagent.serializer.MessageSerializer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.MessageType;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
 
 import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -23,11 +49,12 @@ class JdbcTemplateBranchMessageSaverTest {
     private JdbcTemplate jdbcTemplate;
     private MessageSerializer messageSerializer;
     private JdbcTemplateBranchMessageSaver saver;
+    private DataSource dataSource;
 
     @BeforeEach
     void setUp() {
         // 创建内存数据库
-        DataSource dataSource = new EmbeddedDatabaseBuilder()
+        dataSource = new EmbeddedDatabaseBuilder()
                 .setType(EmbeddedDatabaseType.H2)
                 .addScript("classpath:schema.sql")
                 .build();
@@ -96,6 +123,199 @@ class JdbcTemplateBranchMessageSaverTest {
         assertEquals("Second message", messages.get(1).message().getText());
     }
 
+    @Test
+    void testGetAllMessagesDeserializesLazily() {
+        AtomicInteger deserializeCount = new AtomicInteger();
+        JdbcTemplateBranchMessageSaver countingSaver = new JdbcTemplateBranchMessageSaver(jdbcTemplate,
+                new MessageSerializer() {
+                    @Override
+                    public String serialize(Message message) {
+                        return messageSerializer.serialize(message);
+                    }
+
+                    @Override
+                    public Message deserialize(MessageType messageType, String str) {
+                        deserializeCount.incrementAndGet();
+                        return messageSerializer.deserialize(messageType, str);
+                    }
+                });
+        String threadId = "test-thread-" + UUID.randomUUID();
+        countingSaver.save(threadId, new BranchMessageItem(new UserMessage("question"), "lazy-msg-1", null, Map.of()));
+        countingSaver.save(threadId, new BranchMessageItem(new AssistantMessage("answer"), "lazy-msg-2", "lazy-msg-1",
+                Map.of()));
+
+        List<BranchMessageItem> items = countingSaver.getAllMessages(threadId);
+        assertEquals(List.of(MessageType.USER, MessageType.ASSISTANT),
+                items.stream().map(BranchMessageItem::messageType).toList());
+        assertEquals(0, deserializeCount.get());
+        assertFalse(items.get(1).isMessageLoaded());
+
+        assertEquals("answer", items.get(1).message().getText());
+        assertEquals("answer", items.get(1).message().getText());
+        assertEquals(1, deserializeCount.get());
+
+        // 最近的消息用于调用模型，仍然立即反序列化
+        countingSaver.getLatestMessageItems(threadId, 2, null);
+        assertEquals(3, deserializeCount.get());
+    }
+
+    @Test
+    void testGetMessageNodes() {
+        String threadId = "test-thread-" + UUID.randomUUID();
+        saver.save(threadId, new BranchMessageItem(new UserMessage("question"), "node-msg-1", null, Map.of()));
+        saver.save(threadId, new BranchMessageItem(new AssistantMessage("answer 1"), "node-msg-2", "node-msg-1", Map.of()));
+        saver.save(threadId, new BranchMessageItem(new AssistantMessage("answer 2"), "node-msg-3", "node-msg-1", Map.of()));
+
+        assertEquals(List.of(
+                        new BranchMessageNode("node-msg-1", null, MessageType.USER),
+                        new BranchMessageNode("node-msg-2", "node-msg-1", MessageType.ASSISTANT),
+                        new BranchMessageNode("node-msg-3", "node-msg-1", MessageType.ASSISTANT)),
+                saver.getMessageNodes(threadId));
+        assertTrue(saver.getMessageNodes(null).isEmpty());
+        assertTrue(saver.getMessageNodes("missing-thread").isEmpty());
+    }
+
+    @Test
+    void testGetMessagesAfter() {
+        String threadId = "test-thread-" + UUID.randomUUID();
+        String otherThreadId = "test-thread-" + UUID.randomUUID();
+        String previousId = null;
+        for (int i = 1; i <= 5; i++) {
+            saver.save(threadId, new BranchMessageItem(new UserMessage("Message " + i), "page-msg-" + i, previousId,
+                    Map.of()));
+            previousId = "page-msg-" + i;
+            // 另一个线程的消息穿插在中间，分页不受影响
+            saver.save(otherThreadId, new BranchMessageItem(new UserMessage("Other " + i), "page-other-" + i,
+                    i == 1 ? null : "page-other-" + (i - 1), Map.of()));
+        }
+
+        List<BranchMessageItem> firstPage = saver.getMessagesAfter(threadId, null, 2);
+        assertEquals(List.of("page-msg-1", "page-msg-2"), firstPage.stream().map(BranchMessageItem::id).toList());
+        assertEquals("Message 2", firstPage.get(1).message().getText());
+        assertEquals(List.of("page-msg-3", "page-msg-4"),
+                saver.getMessagesAfter(threadId, "page-msg-2", 2).stream().map(BranchMessageItem::id).toList());
+        assertEquals(List.of("page-msg-5"),
+                saver.getMessagesAfter(threadId, "page-msg-4", 2).stream().map(BranchMessageItem::id).toList());
+        assertTrue(saver.getMessagesAfter(threadId, "page-msg-5", 2).isEmpty());
+
+        // 游标属于其它线程或不存在时返回空列表
+        assertTrue(saver.getMessagesAfter(threadId, "page-other-1", 2).isEmpty());
+        assertTrue(saver.getMessagesAfter(threadId, "missing", 2).isEmpty());
+        assertTrue(saver.getMessagesAfter(threadId, null, 0).isEmpty());
+        assertTrue(saver.getMessagesAfter(null, null, 2).isEmpty());
+    }
+
+    @Test
+    void testStreamAllMessages() throws Exception {
+        String threadId = "test-thread-" + UUID.randomUUID();
+        saver.saveAll(threadId, List.of(
+                new BranchMessageItem(new UserMessage("question"), "stream-msg-1", null, Map.of()),
+                new BranchMessageItem(new AssistantMessage("answer"), "stream-msg-2", "stream-msg-1", Map.of()),
+                new BranchMessageItem(new UserMessage("again"), "stream-msg-3", "stream-msg-2", Map.of())));
+
+        try (Recording recording = new Recording()) {
+            recording.enable(JdbcSaverReadJfrEvent.class);
+            recording.start();
+            try (Stream<BranchMessageItem> stream = saver.streamAllMessages(threadId)) {
+                assertEquals(List.of("question", "answer", "again"),
+                        stream.map(item -> item.message().getText()).toList());
+            }
+            // 提前关闭的流同样释放连接
+            try (Stream<BranchMessageItem> stream = saver.streamAllMessages(threadId)) {
+                assertEquals("stream-msg-1", stream.findFirst().orElseThrow().id());
+            }
+            recording.stop();
+
+            Path file = Files.createTempFile("jdbc-saver-stream", ".jfr");
+            try {
+                recording.dump(file);
+                List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                        .filter(e -> "streamAllMessages".equals(e.getString("method")))
+                        .toList();
+                assertEquals(2, events.size());
+                assertEquals(3, events.get(0).getInt("messages"));
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+        assertEquals(0, saver.streamAllMessages(null).count());
+        assertEquals(0, saver.streamAllMessages("missing-thread").count());
+    }
+
+    @Test
+    void testStreamAllMessagesTurnsOffAutoCommitWhenDialectRequiresTransaction() {
+        String threadId = "test-thread-" + UUID.randomUUID();
+        saver.saveAll(threadId, List.of(
+                new BranchMessageItem(new UserMessage("question"), "tx-stream-msg-1", null, Map.of()),
+                new BranchMessageItem(new AssistantMessage("answer"), "tx-stream-msg-2", "tx-stream-msg-1",
+                        Map.of())));
+        // 记录执行查询时连接的自动提交状态和Statement的fetch size
+        List<Boolean> autoCommitOnExecute = new ArrayList<>();
+        List<Integer> fetchSizes = new ArrayList<>();
+        List<Boolean> autoCommitOnRelease = new ArrayList<>();
+        DataSource recordingDataSource = new DelegatingDataSource(dataSource) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                Connection connection = super.getConnection();
+                return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                        new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                            if (method.getName().equals("close")) {
+                                autoCommitOnRelease.add(connection.getAutoCommit());
+                            }
+                            Object result = invoke(method, connection, args);
+                            if (result instanceof PreparedStatement statement) {
+                                return recordingStatement(statement, connection, autoCommitOnExecute, fetchSizes);
+                            }
+                            return result;
+                        });
+            }
+        };
+        JdbcDialect dialect = new StandardJdbcDialect() {
+            @Override
+            public int streamingFetchSize() {
+                return 7;
+            }
+
+            @Override
+            public boolean requiresTransactionForStreaming() {
+                return true;
+            }
+        };
+        JdbcTemplateBranchMessageSaver transactionalSaver = new JdbcTemplateBranchMessageSaver(
+                new JdbcTemplate(recordingDataSource), messageSerializer, 0, dialect);
+
+        try (Stream<BranchMessageItem> stream = transactionalSaver.streamAllMessages(threadId)) {
+            assertEquals(List.of("tx-stream-msg-1", "tx-stream-msg-2"), stream.map(BranchMessageItem::id).toList());
+        }
+
+        assertEquals(List.of(false), autoCommitOnExecute);
+        assertEquals(List.of(7), fetchSizes);
+        // 流关闭时恢复自动提交后再释放连接
+        assertEquals(List.of(true), autoCommitOnRelease);
+        assertTrue(JdbcDialect.POSTGRESQL.requiresTransactionForStreaming());
+        assertFalse(JdbcDialect.MYSQL.requiresTransactionForStreaming());
+    }
+
+    private static Object invoke(Method method, Object target, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    private static PreparedStatement recordingStatement(PreparedStatement statement, Connection connection,
+            List<Boolean> autoCommitOnExecute, List<Integer> fetchSizes) {
+        return (PreparedStatement) Proxy.newProxyInstance(JdbcTemplateBranchMessageSaverTest.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("executeQuery")) {
+                        autoCommitOnExecute.add(connection.getAutoCommit());
+                        fetchSizes.add(statement.getFetchSize());
+                    }
+                    return invoke(method, statement, args);
+                });
+    }
+
     @Test
     void testGetLatestMessages() {
         String threadId = "test-thread-" + UUID.randomUUID().toString();
@@ -123,6 +343,177 @@ class JdbcTemplateBranchMessageSaverTest {
         assertEquals("Third message", latestMessages.get(1).getText());
     }
 
+    @Test
+    void testSaveAll() {
+        String threadId = "test-thread-" + UUID.randomUUID().toString();
+        String messageId1 = UUID.randomUUID().toString();
+        String messageId2 = UUID.randomUUID().toString();
+        String messageId3 = UUID.randomUUID().toString();
+
+        // 第一条消息单独保存，后两条消息批量保存，批次中的第一条以库中的消息作为前一个消息
+        saver.save(threadId, new BranchMessageItem(new UserMessage("First message"), messageId1, null, Map.of()));
+        saver.saveAll(threadId, List.of(
+                new BranchMessageItem(new UserMessage("Second message"), messageId2, messageId1, Map.of()),
+                new BranchMessageItem(new UserMessage("Third message"), messageId3, messageId2, Map.of())));
+
+        assertEquals(messageId3, saver.getLatestMessageId(threadId));
+        assertEquals(3, saver.getAllMessages(threadId).size());
+
+        assertEquals(2, jdbcTemplate.queryForObject(
+                "SELECT depth FROM message_branch WHERE message_id = ?", Integer.class, messageId3));
+
+        List<Message> latestMessages = saver.getLatestMessages(threadId, 10, null);
+        assertEquals(3, latestMessages.size());
+        assertEquals("First message", latestMessages.get(0).getText());
+        assertEquals("Third message", latestMessages.get(2).getText());
+    }
+
+    @Test
+    void testSaveAllIsAtomic() {
+        String threadId = "test-thread-" + UUID.randomUUID().toString();
+        String messageId = UUID.randomUUID().toString();
+
+        // 批次中第二条消息的ID重复，整个批次都不应写入
+        assertThrows(Exception.class, () -> saver.saveAll(threadId, List.of(
+                new BranchMessageItem(new UserMessage("First message"), messageId, null, Map.of()),
+                new BranchMessageItem(new UserMessage("Duplicated message"), messageId, null, Map.of()))));
+
+        assertTrue(saver.getAllMessages(threadId).isEmpty());
+    }
+
+    @Test
+    void testParentLookupUsesNodeCache() {
+        // 统计查询前一个消息位置的SQL次数
+        AtomicInteger parentQueries = new AtomicInteger();
+        JdbcTemplate countingJdbcTemplate = new JdbcTemplate(dataSource) {
+            @Override
+            public void query(String sql, RowCallbackHandler rch, Object... args) {
+                if (sql.startsWith("SELECT message_id, depth")) {
+                    parentQueries.incrementAndGet();
+                }
+                super.query(sql, rch, args);
+            }
+        };
+        JdbcTemplateBranchMessageSaver cachedSaver = new JdbcTemplateBranchMessageSaver(countingJdbcTemplate,
+                messageSerializer);
+        String threadId = "test-thread-" + UUID.randomUUID().toString();
+        String messageId1 = UUID.randomUUID().toString();
+        String messageId2 = UUID.randomUUID().toString();
+        String messageId3 = UUID.randomUUID().toString();
+
+        cachedSaver.save(threadId, new BranchMessageItem(new UserMessage("First message"), messageId1, null, Map.of()));
+        cachedSaver.save(threadId,
+                new BranchMessageItem(new UserMessage("Second message"), messageId2, messageId1, Map.of()));
+        cachedSaver.save(threadId,
+                new BranchMessageItem(new UserMessage("Third message"), messageId3, messageId2, Map.of()));
+
+        // 前一个消息都是刚写入的，不需要查询数据库
+        assertEquals(0, parentQueries.get());
+        assertEquals(2, jdbcTemplate.queryForObject(
+                "SELECT depth FROM message_branch WHERE message_id = ?", Integer.class, messageId3));
+
+        // 缓存未命中时回退到数据库查询
+        String messageId4 = UUID.randomUUID().toString();
+        saver.save(threadId, new BranchMessageItem(new UserMessage("Fourth message"), messageId4, messageId3, Map.of()));
+        assertEquals(List.of("Second message", "Third message", "Fourth message"),
+                saver.getLatestMessages(threadId, 3, null).stream().map(Message::getText).toList());
+    }
+
+    @Test
+    void testGetLatestMessagesOfLongBranch() {
+        String threadId = "test-thread-" + UUID.randomUUID().toString();
+
+        // 主干上有200条消息，从第100条消息分出另一个分支
+        String previousId = null;
+        String forkId = null;
+        for (int i = 0; i < 200; i++) {
+            String messageId = "main-" + i + "-" + UUID.randomUUID();
+            saver.save(threadId, new BranchMessageItem(new UserMessage("main " + i), messageId, previousId, Map.of()));
+            previousId = messageId;
+            if (i == 99) {
+                forkId = messageId;
+            }
+        }
+        String branchId = "branch-" + UUID.randomUUID();
+        saver.save(threadId, new BranchMessageItem(new UserMessage("branch"), branchId, forkId, Map.of()));
+
+        assertEquals(List.of("main 197", "main 198", "main 199"),
+                saver.getLatestMessages(threadId, 3, previousId).stream().map(Message::getText).toList());
+        assertEquals(List.of("main 98", "main 99", "branch"),
+                saver.getLatestMessages(threadId, 3, null).stream().map(Message::getText).toList());
+        assertEquals(101, saver.getLatestMessages(threadId, Integer.MAX_VALUE, branchId).size());
+        assertEquals("main 0", saver.getLatestMessages(threadId, Integer.MAX_VALUE, branchId).get(0).getText());
+
+        // 不属于该线程的消息ID
+        assertTrue(saver.getLatestMessages("other-thread", 3, branchId).isEmpty());
+    }
+
+    @Test
+    void testGetLatestMessagesInOneQuery() {
+        // 统计读取消息时执行的SQL次数
+        AtomicInteger queries = new AtomicInteger();
+        JdbcTemplate countingJdbcTemplate = new JdbcTemplate(dataSource) {
+            @Override
+            public <T> List<T> query(String sql, RowMapper<T> rowMapper, Object... args) {
+                queries.incrementAndGet();
+                return super.query(sql, rowMapper, args);
+            }
+
+            @Override
+            public <T> T queryForObject(String sql, Class<T> requiredType, Object... args) {
+                queries.incrementAndGet();
+                return super.queryForObject(sql, requiredType, args);
+            }
+        };
+        JdbcTemplateBranchMessageSaver countingSaver = new JdbcTemplateBranchMessageSaver(countingJdbcTemplate,
+                messageSerializer);
+        String threadId = "test-thread-" + UUID.randomUUID().toString();
+        String messageId1 = UUID.randomUUID().toString();
+        String messageId2 = UUID.randomUUID().toString();
+        saver.save(threadId, new BranchMessageItem(new UserMessage("First message"), messageId1, null, Map.of()));
+        saver.save(threadId, new BranchMessageItem(new UserMessage("Second message"), messageId2, messageId1, Map.of()));
+
+        assertEquals(List.of("First message", "Second message"),
+                countingSaver.getLatestMessages(threadId, 10, null).stream().map(Message::getText).toList());
+        assertEquals(1, queries.get());
+        assertEquals(List.of("First message"),
+                countingSaver.getLatestMessages(threadId, 10, messageId1).stream().map(Message::getText).toList());
+        assertEquals(2, queries.get());
+    }
+
+    @ParameterizedTest
+    @CsvSource({ "MySQL, MYSQL, schema.sql", "PostgreSQL, POSTGRESQL, schema-postgresql.sql",
+            "Regular, H2, schema.sql" })
+    void testDialects(String compatibilityMode, String dialectName, String schema) throws Exception {
+        // 使用H2的兼容模式模拟各个数据库
+        DataSource compatibleDataSource = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .setName("dialect-" + UUID.randomUUID() + ";MODE=" + compatibilityMode)
+                .addScript("classpath:" + schema)
+                .build();
+        JdbcDialect dialect = (JdbcDialect) JdbcDialect.class.getField(dialectName).get(null);
+        JdbcTemplateBranchMessageSaver dialectSaver = new JdbcTemplateBranchMessageSaver(
+                new JdbcTemplate(compatibleDataSource), messageSerializer,
+                JdbcTemplateBranchMessageSaver.DEFAULT_NODE_CACHE_SIZE, dialect);
+        String threadId = "test-thread-" + UUID.randomUUID().toString();
+        String previousId = null;
+        for (int i = 0; i < 5; i++) {
+            String messageId = UUID.randomUUID().toString();
+            dialectSaver.save(threadId, new BranchMessageItem(new UserMessage("message " + i), messageId, previousId,
+                    Map.of()));
+            previousId = messageId;
+        }
+
+        assertEquals(List.of("message 2", "message 3", "message 4"),
+                dialectSaver.getLatestMessages(threadId, 3, null).stream().map(Message::getText).toList());
+        assertEquals(5, dialectSaver.getLatestMessages(threadId, 10, previousId).size());
+    }
+
+    @Test
+    void testDetectDialect() {
+        assertSame(JdbcDialect.H2, JdbcDialect.detect(dataSource));
+    }
+
     @Test
     void testEmptyResults() {
         String threadId = "non-existent-thread-" + UUID.randomUUID().toString();
@@ -133,6 +524,104 @@ class JdbcTemplateBranchMessageSaverTest {
         assertTrue(saver.getLatestMessages(threadId, 10, null).isEmpty());
     }
 
+    @Test
+    void testReadAndWriteRecordJfrEvents() throws Exception {
+        String threadId = "test-thread-" + UUID.randomUUID();
+        List<RecordedEvent> recordedEvents;
+        try (Recording recording = new Recording()) {
+            recording.enable(JdbcSaverReadJfrEvent.class);
+            recording.enable(JdbcSaverWriteJfrEvent.class);
+            recording.start();
+            saver.save(threadId, new BranchMessageItem(new UserMessage("hello"), "msg-1", null, Map.of()));
+            saver.saveAll(threadId, List.of(
+                    new BranchMessageItem(new UserMessage("a"), "msg-2", "msg-1", Map.of()),
+                    new BranchMessageItem(new UserMessage("bc"), "msg-3", "msg-2", Map.of())));
+            saver.getAllMessages(threadId);
+            recording.stop();
+            Path file = Files.createTempFile("jdbc-saver", ".jfr");
+            try {
+                recording.dump(file);
+                recordedEvents = RecordingFile.readAllEvents(file);
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        List<String> methods = recordedEvents.stream().map(event -> event.getString("method")).toList();
+        assertEquals(List.of("save", "saveAll", "getAllMessages"), methods);
+        assertEquals(5, recordedEvents.get(0).getLong("contentLength"));
+        assertEquals(2, recordedEvents.get(1).getInt("messages"));
+        assertEquals(3, recordedEvents.get(1).getLong("contentLength"));
+        assertEquals(3, recordedEvents.get(2).getInt("messages"));
+        assertEquals(8, recordedEvents.get(2).getLong("contentLength"));
+    }
+
+    @Test
+    void testBinarySerializerStoresBytes() {
+        DataSource binaryDataSource = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("classpath:schema-binary.sql")
+                .build();
+        // 把文本倒序存储的二进制序列化器，读出时能看出确实经过了它
+        BinaryMessageSerializer binarySerializer = new BinaryMessageSerializer() {
+            @Override
+            public byte[] serializeToBytes(Message message) {
+                return new StringBuilder(message.getText()).reverse().toString().getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public Message deserialize(MessageType messageType, ByteBuffer buffer) {
+                return messageSerializer.deserialize(messageType,
+                        new StringBuilder(StandardCharsets.UTF_8.decode(buffer)).reverse().toString());
+            }
+        };
+        JdbcTemplate binaryJdbcTemplate = new JdbcTemplate(binaryDataSource);
+        JdbcTemplateBranchMessageSaver binarySaver = new JdbcTemplateBranchMessageSaver(binaryJdbcTemplate,
+                binarySerializer);
+        String threadId = "test-thread-" + UUID.randomUUID();
+
+        binarySaver.save(threadId, new BranchMessageItem(new UserMessage("你好"), "msg-1", null, Map.of()));
+        binarySaver.saveAll(threadId, List.of(
+                new BranchMessageItem(new AssistantMessage("hello"), "msg-2", "msg-1", Map.of())));
+
+        assertArrayEquals("好你".getBytes(StandardCharsets.UTF_8), binaryJdbcTemplate.queryForObject(
+                "SELECT message_content FROM message_branch WHERE message_id = 'msg-1'", byte[].class));
+        assertEquals(List.of("你好", "hello"),
+                binarySaver.getAllMessages(threadId).stream().map(item -> item.message().getText()).toList());
+        assertEquals(List.of("hello"),
+                binarySaver.getLatestMessages(threadId, 1, null).stream().map(Message::getText).toList());
+        assertThrows(IllegalArgumentException.class,
+                () -> new JdbcTemplateBranchMessageSaver(binaryJdbcTemplate, (BinaryMessageSerializer) null));
+    }
+
+    @Test
+    void testCompressedContentIsReadableWithExistingRows() {
+        String threadId = "test-thread-" + UUID.randomUUID();
+        // 开启压缩之前写入的行
+        saver.save(threadId, new BranchMessageItem(new UserMessage("old row"), "msg-old", null, Map.of()));
+
+        JdbcTemplateBranchMessageSaver compressingSaver = new JdbcTemplateBranchMessageSaver(jdbcTemplate,
+                new CompressingMessageSerializer(messageSerializer, CompressionCodec.DEFLATE, 64));
+        String toolOutput = "<html><body>搜索结果</body></html>".repeat(200);
+        compressingSaver.save(threadId, new BranchMessageItem(new AssistantMessage(toolOutput), "msg-large",
+                "msg-old", Map.of()));
+        compressingSaver.save(threadId, new BranchMessageItem(new UserMessage("short"), "msg-short", "msg-large",
+                Map.of()));
+        // 以压缩标记开头的短内容被包装，不会被误认为压缩内容
+        compressingSaver.save(threadId, new BranchMessageItem(new UserMessage("~tilde"), "msg-tilde", "msg-short",
+                Map.of()));
+
+        String stored = jdbcTemplate.queryForObject(
+                "SELECT message_content FROM message_branch WHERE message_id = 'msg-large'", String.class);
+        assertTrue(stored.startsWith("~"));
+        assertTrue(stored.length() < toolOutput.length() / 10);
+        assertEquals("short", jdbcTemplate.queryForObject(
+                "SELECT message_content FROM message_branch WHERE message_id = 'msg-short'", String.class));
+        assertEquals(List.of("old row", toolOutput, "short", "~tilde"),
+                compressingSaver.getAllMessages(threadId).stream().map(item -> item.message().getText()).toList());
+    }
+
     @Test
     void testNullParameters() {
         // 测试空参数
@@ -7,7 +7,6 @@ CREATE TABLE IF NOT EXISTS message_branch (
     message_type VARCHAR(20) NOT NULL,
     message_content TEXT NOT NULL,
     depth INT NOT NULL DEFAULT 0,
-    ancestor_path TEXT NULL,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
 );
@@ -0,0 +1,155 @@
+package com.x3bits.springaireactagent.starter.metrics;
+
+import com.x3bits.springaireactagent.core.memory.BranchMessageSaver;
+import com.x3bits.springaireactagent.core.memory.CachingBranchMessageSaver;
+import com.x3bits.springaireactagent.core.message.BranchMessageItem;
+import com.x3bits.springaireactagent.core.message.BranchMessageNode;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 记录Micrometer指标的BranchMessageSaver装饰器
+ * <p>
+ * 每个方法的耗时记录在react.agent.saver计时器中，implementation标签为被装饰的实现类名，method标签为方法名
+ * </p>
+ * <p>
+ * 被装饰的是{@link CachingBranchMessageSaver}时，同时注册缓存的指标：
+ * <ul>
+ *     <li>react.agent.saver.cache.gets：缓存命中和未命中的次数，result标签为hit或miss</li>
+ *     <li>react.agent.saver.cache.evictions：被淘汰的线程缓存数量</li>
+ *     <li>react.agent.saver.cache.size：缓存消息的估算总字节数</li>
+ * </ul>
+ * </p>
+ */
+public class MeteredBranchMessageSaver implements BranchMessageSaver {
+
+    private final BranchMessageSaver delegate;
+
+    private final Timer saveTimer;
+
+    private final Timer saveAllTimer;
+
+    private final Timer getLatestMessageIdTimer;
+
+    private final Timer getAllMessagesTimer;
+    private final Timer getMessageNodesTimer;
+    private final Timer getMessagesAfterTimer;
+
+    private final Timer getLatestMessagesTimer;
+
+    private final Timer getLatestMessageItemsTimer;
+
+    private final Timer flushTimer;
+
+    public MeteredBranchMessageSaver(BranchMessageSaver delegate, MeterRegistry registry) {
+        if (delegate == null || registry == null) {
+            throw new IllegalArgumentException("delegate and registry cannot be null");
+        }
+        this.delegate = delegate;
+        String implementation = delegate.getClass().getSimpleName();
+        this.saveTimer = timer(registry, implementation, "save");
+        this.saveAllTimer = timer(registry, implementation, "saveAll");
+        this.getLatestMessageIdTimer = timer(registry, implementation, "getLatestMessageId");
+        this.getAllMessagesTimer = timer(registry, implementation, "getAllMessages");
+        this.getMessageNodesTimer = timer(registry, implementation, "getMessageNodes");
+        this.getMessagesAfterTimer = timer(registry, implementation, "getMessagesAfter");
+        this.getLatestMessagesTimer = timer(registry, implementation, "getLatestMessages");
+        this.getLatestMessageItemsTimer = timer(registry, implementation, "getLatestMessageItems");
+        this.flushTimer = timer(registry, implementation, "flush");
+        if (delegate instanceof CachingBranchMessageSaver cachingSaver) {
+            bindCacheMetrics(registry, implementation, cachingSaver);
+        }
+    }
+
+    private static void bindCacheMetrics(MeterRegistry registry, String implementation,
+            CachingBranchMessageSaver cachingSaver) {
+        FunctionCounter.builder("react.agent.saver.cache.gets", cachingSaver, CachingBranchMessageSaver::getHitCount)
+                .description("缓存命中和未命中的次数")
+                .tag("implementation", implementation)
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("react.agent.saver.cache.gets", cachingSaver, CachingBranchMessageSaver::getMissCount)
+                .description("缓存命中和未命中的次数")
+                .tag("implementation", implementation)
+                .tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("react.agent.saver.cache.evictions", cachingSaver,
+                        CachingBranchMessageSaver::getEvictionCount)
+                .description("被淘汰的线程缓存数量")
+                .tag("implementation", implementation)
+                .register(registry);
+        Gauge.builder("react.agent.saver.cache.size", cachingSaver, CachingBranchMessageSaver::getEstimatedBytes)
+                .description("缓存消息的估算总字节数")
+                .tag("implementation", implementation)
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    @Override
+    public void save(String threadId, BranchMessageItem branchMessageItem) {
+        saveTimer.record(() -> delegate.save(threadId, branchMessageItem));
+    }
+
+    @Override
+    public void saveAll(String threadId, List<BranchMessageItem> branchMessageItems) {
+        saveAllTimer.record(() -> delegate.saveAll(threadId, branchMessageItems));
+    }
+
+    @Override
+    public String getLatestMessageId(String threadId) {
+        return getLatestMessageIdTimer.record(() -> delegate.getLatestMessageId(threadId));
+    }
+
+    @Override
+    public List<BranchMessageItem> getAllMessages(String threadId) {
+        return getAllMessagesTimer.record(() -> delegate.getAllMessages(threadId));
+    }
+
+    @Override
+    public List<BranchMessageNode> getMessageNodes(String threadId) {
+        return getMessageNodesTimer.record(() -> delegate.getMessageNodes(threadId));
+    }
+
+    @Override
+    public List<BranchMessageItem> getMessagesAfter(String threadId, String afterMessageId, int limit) {
+        return getMessagesAfterTimer.record(() -> delegate.getMessagesAfter(threadId, afterMessageId, limit));
+    }
+
+    /**
+     * 流在返回之后才被消费，读取的耗时无法在这里计时，直接委托
+     */
+    @Override
+    public Stream<BranchMessageItem> streamAllMessages(String threadId) {
+        return delegate.streamAllMessages(threadId);
+    }
+
+    @Override
+    public List<Message> getLatestMessages(String id, int count, String lastMessageId) {
+        return getLatestMessagesTimer.record(() -> delegate.getLatestMessages(id, count, lastMessageId));
+    }
+
+    @Override
+    public List<BranchMessageItem> getLatestMessageItems(String threadId, int count, String lastMessageId) {
+        return getLatestMessageItemsTimer.record(() -> delegate.getLatestMessageItems(threadId, count, lastMessageId));
+    }
+
+    @Override
+    public void flush(String threadId) {
+        flushTimer.record(() -> delegate.flush(threadId));
+    }
+
+    private static Timer timer(MeterRegistry registry, String implementation, String method) {
+        return Timer.builder("react.agent.saver")
+                .description("BranchMessageSaver方法的耗时")
+                .tag("implementation", implementation)
+                .tag("method", method)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+}
@@ -0,0 +1,196 @@
+package com.x3bits.springaireactagent.starter.metrics;
+
+import com.x3bits.springaireactagent.core.ReActAgent;
+import com.x3bits.springaireactagent.core.ReActAgentListener;
+import com.x3bits.springaireactagent.core.RunAgentOptions;
+import com.x3bits.springaireactagent.core.event.ReActAgentEvent;
+import com.x3bits.springaireactagent.core.message.BranchMessageItem;
+import com.x3bits.springaireactagent.core.message.BranchMessageNode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 记录Micrometer指标的ReActAgent装饰器
+ * <p>
+ * 每次运行通过Reactor Context向被装饰的Agent传入{@link ReActAgentListener}，根据监听器的回调记录以下指标，
+ * 所有指标都带有agent标签：
+ * <ul>
+ *     <li>react.agent.run：一次运行的耗时，outcome标签为success、error或cancelled</li>
+ *     <li>react.agent.run.iterations：一次运行的迭代次数</li>
+ *     <li>react.agent.runs.active：正在进行的运行数量</li>
+ *     <li>react.agent.model.latency、react.agent.model.ttft：大模型调用的耗时和首个token的耗时</li>
+ *     <li>react.agent.model.tokens：大模型的token用量，type标签为prompt或completion</li>
+ *     <li>react.agent.tool.latency：工具调用的耗时，tool标签为工具名称</li>
+ * </ul>
+ * 记录指标不需要打开统计事件，返回的事件与被装饰的Agent相同。
+ * 被装饰的Agent不支持监听器时（不是ReActAgent.builder创建的Agent），只记录运行相关的指标。
+ * </p>
+ */
+public class MeteredReActAgent implements ReActAgent {
+
+    private final ReActAgent delegate;
+
+    private final MeterRegistry registry;
+
+    private final String agentName;
+
+    private final AtomicInteger activeRuns = new AtomicInteger();
+
+    private final Timer modelLatency;
+
+    private final Timer timeToFirstToken;
+
+    private final Counter promptTokens;
+
+    private final Counter completionTokens;
+
+    private final DistributionSummary iterations;
+
+    private final Map<String, Timer> runTimers = new ConcurrentHashMap<>();
+
+    private final Map<String, Timer> toolTimers = new ConcurrentHashMap<>();
+
+    public MeteredReActAgent(ReActAgent delegate, MeterRegistry registry, String agentName) {
+        if (delegate == null || registry == null || agentName == null) {
+            throw new IllegalArgumentException("delegate, registry and agentName cannot be null");
+        }
+        this.delegate = delegate;
+        this.registry = registry;
+        this.agentName = agentName;
+        Gauge.builder("react.agent.runs.active", activeRuns, AtomicInteger::get)
+                .description("正在进行的运行数量")
+                .tag("agent", agentName)
+                .register(registry);
+        this.modelLatency = Timer.builder("react.agent.model.latency")
+                .description("大模型调用的耗时")
+                .tag("agent", agentName)
+                .publishPercentileHistogram()
+                .register(registry);
+        this.timeToFirstToken = Timer.builder("react.agent.model.ttft")
+                .description("流式大模型调用首个token的耗时")
+                .tag("agent", agentName)
+                .publishPercentileHistogram()
+                .register(registry);
+        this.promptTokens = tokenCounter("prompt");
+        this.completionTokens = tokenCounter("completion");
+        this.iterations = DistributionSummary.builder("react.agent.run.iterations")
+                .description("一次运行的迭代次数")
+                .tag("agent", agentName)
+                .register(registry);
+    }
+
+    @Override
+    public Flux<ReActAgentEvent> run(RunAgentOptions options) {
+        return Flux.defer(() -> {
+            long startNanos = System.nanoTime();
+            RunListener listener = new RunListener();
+            activeRuns.incrementAndGet();
+            return delegate.run(options)
+                    .doFinally(signalType -> {
+                        activeRuns.decrementAndGet();
+                        iterations.record(listener.iterationCount.get());
+                        runTimer(outcome(signalType)).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+                    })
+                    .contextWrite(context -> context.put(ReActAgentListener.CONTEXT_KEY, listener));
+        });
+    }
+
+    @Override
+    public List<BranchMessageItem> getBranchMessages(String threadId) {
+        return delegate.getBranchMessages(threadId);
+    }
+
+    @Override
+    public List<BranchMessageNode> getBranchMessageNodes(String threadId) {
+        return delegate.getBranchMessageNodes(threadId);
+    }
+
+    @Override
+    public List<BranchMessageItem> getBranchMessagesAfter(String threadId, String afterMessageId, int limit) {
+        return delegate.getBranchMessagesAfter(threadId, afterMessageId, limit);
+    }
+
+    @Override
+    public Flux<BranchMessageItem> streamBranchMessages(String threadId) {
+        return delegate.streamBranchMessages(threadId);
+    }
+
+    /**
+     * 单次运行的监听器，记录迭代次数以及大模型调用和工具调用的指标
+     */
+    private final class RunListener implements ReActAgentListener {
+
+        private final AtomicInteger iterationCount = new AtomicInteger();
+
+        @Override
+        public void onIterationStart(RunAgentOptions options, int iteration) {
+            iterationCount.incrementAndGet();
+        }
+
+        @Override
+        public void onModelCallEnd(RunAgentOptions options, int iteration, String model, Integer promptTokens,
+                Integer completionTokens, long timeToFirstTokenNanos, long latencyNanos) {
+            modelLatency.record(latencyNanos, TimeUnit.NANOSECONDS);
+            if (timeToFirstTokenNanos >= 0) {
+                timeToFirstToken.record(timeToFirstTokenNanos, TimeUnit.NANOSECONDS);
+            }
+            if (promptTokens != null) {
+                MeteredReActAgent.this.promptTokens.increment(promptTokens);
+            }
+            if (completionTokens != null) {
+                MeteredReActAgent.this.completionTokens.increment(completionTokens);
+            }
+        }
+
+        @Override
+        public void onToolCallEnd(RunAgentOptions options, int iteration, String toolName, long latencyNanos) {
+            toolTimer(toolName).record(latencyNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Counter tokenCounter(String type) {
+        return Counter.builder("react.agent.model.tokens")
+                .description("大模型的token用量")
+                .tag("agent", agentName)
+                .tag("type", type)
+                .register(registry);
+    }
+
+    private Timer runTimer(String outcome) {
+        return runTimers.computeIfAbsent(outcome, key -> Timer.builder("react.agent.run")
+                .description("一次运行的耗时")
+                .tag("agent", agentName)
+                .tag("outcome", key)
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+
+    private Timer toolTimer(String toolName) {
+        return toolTimers.computeIfAbsent(toolName == null ? "unknown" : toolName,
+                key -> Timer.builder("react.agent.tool.latency")
+                        .description("工具调用的耗时")
+                        .tag("agent", agentName)
+                        .tag("tool", key)
+                        .publishPercentileHistogram()
+                        .register(registry));
+    }
+
+    private static String outcome(SignalType signalType) {
+        return switch (signalType) {
+            case ON_ERROR -> "error";
+            case CANCEL -> "cancelled";
+            default -> "success";
+        };
+    }
+}
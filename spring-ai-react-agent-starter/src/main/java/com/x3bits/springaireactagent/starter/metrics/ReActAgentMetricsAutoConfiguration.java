@@ -0,0 +1,36 @@
+package com.x3bits.springaireactagent.starter.metrics;
+
+import com.x3bits.springaireactagent.core.ReActAgent;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+
+/**
+ * Spring AI ReAct Agent 指标自动配置类
+ *
+ * classpath中存在Micrometer时，为ReActAgent和BranchMessageSaver记录运行指标。
+ * 设置spring.ai.react-agent.metrics.enabled=false可以关闭
+ */
+@AutoConfiguration
+@ConditionalOnClass({
+        ReActAgent.class,
+        MeterRegistry.class
+})
+@ConditionalOnProperty(prefix = "spring.ai.react-agent.metrics", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class ReActAgentMetricsAutoConfiguration {
+
+    /**
+     * 自动配置指标BeanPostProcessor
+     *
+     * @param meterRegistryProvider MeterRegistry，不存在时不记录指标
+     * @return ReActAgentMetricsPostProcessor实例
+     */
+    @Bean
+    public static ReActAgentMetricsPostProcessor reActAgentMetricsPostProcessor(
+            ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        return new ReActAgentMetricsPostProcessor(meterRegistryProvider);
+    }
+}
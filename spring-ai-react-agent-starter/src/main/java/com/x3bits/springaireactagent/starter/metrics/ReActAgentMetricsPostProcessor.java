@@ -0,0 +1,127 @@
+package com.x3bits.springaireactagent.starter.metrics;
+
+import com.x3bits.springaireactagent.core.ReActAgent;
+import com.x3bits.springaireactagent.core.memory.BranchMessageSaver;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.framework.Advised;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 为容器中的ReActAgent和BranchMessageSaver记录指标
+ * <p>
+ * 用基于类的代理替换Bean，代理是Bean原类型的子类，按具体类型注入（例如JdbcTemplateBranchMessageSaver）
+ * 和调用具体类型的方法（例如CachingBranchMessageSaver.invalidate）都不受影响。
+ * 只有ReActAgent和BranchMessageSaver接口中的方法经过{@link MeteredReActAgent}或{@link MeteredBranchMessageSaver}记录指标，
+ * 其它方法直接调用原Bean。
+ * </p>
+ * <p>
+ * 类型不是public的Bean（例如ReActAgent.builder创建的Agent）在包外无法按具体类型注入，无法生成子类代理时使用接口代理；
+ * public的final类或者只有private构造方法的类既不能生成子类代理，也不能改变类型，不记录指标。
+ * 容器中没有MeterRegistry时不包装，运行时没有额外开销。
+ * </p>
+ */
+public class ReActAgentMetricsPostProcessor implements BeanPostProcessor {
+
+    private final ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+    public ReActAgentMetricsPostProcessor(ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this.meterRegistryProvider = meterRegistryProvider;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof MeteredReActAgent || bean instanceof MeteredBranchMessageSaver || isMetered(bean)) {
+            return bean;
+        }
+        if (!(bean instanceof ReActAgent) && !(bean instanceof BranchMessageSaver)) {
+            return bean;
+        }
+        Class<?> beanClass = bean.getClass();
+        boolean proxyTargetClass = canSubclass(beanClass);
+        if (!proxyTargetClass && Modifier.isPublic(beanClass.getModifiers())) {
+            return bean;
+        }
+        MeterRegistry registry = meterRegistryProvider.getIfUnique();
+        if (registry == null) {
+            return bean;
+        }
+        MetricsInterceptor interceptor = bean instanceof ReActAgent agent
+                ? new MetricsInterceptor(ReActAgent.class, new MeteredReActAgent(agent, registry, beanName))
+                : new MetricsInterceptor(BranchMessageSaver.class,
+                        new MeteredBranchMessageSaver((BranchMessageSaver) bean, registry));
+        ProxyFactory proxyFactory = new ProxyFactory(bean);
+        proxyFactory.setProxyTargetClass(proxyTargetClass);
+        proxyFactory.addAdvice(interceptor);
+        return proxyFactory.getProxy(beanClass.getClassLoader());
+    }
+
+    private static boolean canSubclass(Class<?> beanClass) {
+        if (Modifier.isFinal(beanClass.getModifiers())) {
+            return false;
+        }
+        for (Constructor<?> constructor : beanClass.getDeclaredConstructors()) {
+            if (!Modifier.isPrivate(constructor.getModifiers())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isMetered(Object bean) {
+        if (!(bean instanceof Advised advised)) {
+            return false;
+        }
+        for (Advisor advisor : advised.getAdvisors()) {
+            if (advisor.getAdvice() instanceof MetricsInterceptor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 把接口中的方法转发给记录指标的装饰器，装饰器再调用原Bean
+     */
+    private static final class MetricsInterceptor implements MethodInterceptor {
+
+        private final Class<?> meteredInterface;
+        private final Object metered;
+        // 被调用的方法 -> 接口中的同名方法，不属于接口时为empty
+        private final Map<Method, Optional<Method>> interfaceMethods = new ConcurrentHashMap<>();
+
+        MetricsInterceptor(Class<?> meteredInterface, Object metered) {
+            this.meteredInterface = meteredInterface;
+            this.metered = metered;
+        }
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            Optional<Method> interfaceMethod = interfaceMethods.computeIfAbsent(invocation.getMethod(),
+                    method -> Optional.ofNullable(ReflectionUtils.findMethod(meteredInterface, method.getName(),
+                                    method.getParameterTypes()))
+                            .filter(m -> !Modifier.isStatic(m.getModifiers())));
+            if (interfaceMethod.isEmpty()) {
+                return invocation.proceed();
+            }
+            try {
+                return interfaceMethod.get().invoke(metered, invocation.getArguments());
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.x3bits.springaireactagent.starter.metrics;
+
+import com.x3bits.springaireactagent.core.memory.BranchMessageSaver;
+import com.x3bits.springaireactagent.core.memory.CachingBranchMessageSaver;
+import com.x3bits.springaireactagent.core.memory.MemoryBranchMessageSaver;
+import com.x3bits.springaireactagent.core.message.BranchMessageItem;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MeteredBranchMessageSaverTest {
+
+    @Test
+    void testSaverOperationsAreTimedByImplementationAndMethod() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        BranchMessageSaver saver = new MeteredBranchMessageSaver(new MemoryBranchMessageSaver(), registry);
+
+        saver.save("thread-1", new BranchMessageItem(new UserMessage("hello"), "message-1", null, Map.of()));
+        assertEquals("message-1", saver.getLatestMessageId("thread-1"));
+        assertEquals(1, saver.getAllMessages("thread-1").size());
+
+        assertEquals(1, timerCount(registry, "save"));
+        assertEquals(1, timerCount(registry, "getLatestMessageId"));
+        assertEquals(1, timerCount(registry, "getAllMessages"));
+        assertEquals(0, timerCount(registry, "flush"));
+    }
+
+    @Test
+    void testPostProcessorWrapsOnlyWhenRegistryIsPresent() {
+        DefaultListableBeanFactory withoutRegistry = new DefaultListableBeanFactory();
+        MemoryBranchMessageSaver saver = new MemoryBranchMessageSaver();
+        Object unwrapped = new ReActAgentMetricsPostProcessor(withoutRegistry.getBeanProvider(MeterRegistry.class))
+                .postProcessAfterInitialization(saver, "saver");
+        assertSame(saver, unwrapped);
+
+        DefaultListableBeanFactory withRegistry = new DefaultListableBeanFactory();
+        withRegistry.registerSingleton("meterRegistry", new SimpleMeterRegistry());
+        ReActAgentMetricsPostProcessor postProcessor =
+                new ReActAgentMetricsPostProcessor(withRegistry.getBeanProvider(MeterRegistry.class));
+        Object wrapped = postProcessor.postProcessAfterInitialization(saver, "saver");
+        // 代理保留原类型，可以按具体类型注入
+        MemoryBranchMessageSaver proxy = assertInstanceOf(MemoryBranchMessageSaver.class, wrapped);
+        assertNotSame(saver, proxy);
+        proxy.save("thread-1", new BranchMessageItem(new UserMessage("hello"), "message-1", null, Map.of()));
+        assertEquals(1, proxy.getAllMessages("thread-1").size());
+        // 不属于接口的方法直接调用原Bean
+        assertEquals(1, proxy.getMessageCount("thread-1"));
+        assertEquals(1, saver.getMessageCount("thread-1"));
+        MeterRegistry registry = withRegistry.getBean(MeterRegistry.class);
+        assertEquals(1, timerCount(registry, "save"));
+        assertEquals(1, timerCount(registry, "getAllMessages"));
+        // 已经包装过的Bean不再重复包装
+        assertSame(wrapped, postProcessor.postProcessAfterInitialization(wrapped, "saver"));
+        assertEquals("not a saver", postProcessor.postProcessAfterInitialization("not a saver", "other"));
+    }
+
+    @Test
+    void testCachingSaverMetricsAreRegisteredByPostProcessor() {
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        beanFactory.registerSingleton("meterRegistry", registry);
+        CachingBranchMessageSaver saver = new CachingBranchMessageSaver(new MemoryBranchMessageSaver());
+        CachingBranchMessageSaver proxy = (CachingBranchMessageSaver) new ReActAgentMetricsPostProcessor(
+                beanFactory.getBeanProvider(MeterRegistry.class)).postProcessAfterInitialization(saver, "saver");
+
+        proxy.save("thread-1", new BranchMessageItem(new UserMessage("hello"), "message-1", null, Map.of()));
+        proxy.getLatestMessageItems("thread-1", 10, null);
+        proxy.getLatestMessageItems("thread-1", 10, null);
+
+        assertTrue(saver.getHitCount() + saver.getMissCount() > 0);
+        assertEquals(saver.getHitCount(), cacheGets(registry, "hit"));
+        assertEquals(saver.getMissCount(), cacheGets(registry, "miss"));
+        assertEquals(0.0, registry.get("react.agent.saver.cache.evictions").functionCounter().count());
+        assertEquals((double) saver.getEstimatedBytes(), registry.get("react.agent.saver.cache.size").gauge().value());
+        proxy.invalidateAll();
+        assertEquals(0.0, registry.get("react.agent.saver.cache.size").gauge().value());
+    }
+
+    @Test
+    void testCacheMetricsAreNotRegisteredForOtherSavers() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        new MeteredBranchMessageSaver(new MemoryBranchMessageSaver(), registry);
+
+        assertNull(registry.find("react.agent.saver.cache.gets").functionCounter());
+    }
+
+    private static double cacheGets(MeterRegistry registry, String result) {
+        return registry.get("react.agent.saver.cache.gets")
+                .tag("implementation", "CachingBranchMessageSaver")
+                .tag("result", result)
+                .functionCounter()
+                .count();
+    }
+
+    private static long timerCount(MeterRegistry registry, String method) {
+        return registry.get("react.agent.saver")
+                .tag("implementation", "MemoryBranchMessageSaver")
+                .tag("method", method)
+                .timer()
+                .count();
+    }
+}
@@ -0,0 +1,176 @@
+package com.x3bits.springaireactagent.starter.metrics;
+
+import com.x3bits.springaireactagent.core.ReActAgent;
+import com.x3bits.springaireactagent.core.ReActAgentListener;
+import com.x3bits.springaireactagent.core.RunAgentOptions;
+import com.x3bits.springaireactagent.core.event.IterationEndEvent;
+import com.x3bits.springaireactagent.core.event.IterationStartEvent;
+import com.x3bits.springaireactagent.core.event.LlmMessageEvent;
+import com.x3bits.springaireactagent.core.event.ReActAgentEvent;
+import com.x3bits.springaireactagent.core.message.BranchMessageItem;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MeteredReActAgentTest {
+
+    /**
+     * 发送固定事件的Agent，回调Reactor Context中的监听器，统计事件只在打开时发送
+     */
+    private static class StubReActAgent implements ReActAgent {
+        private final AtomicBoolean telemetryEnabled = new AtomicBoolean();
+        private final AtomicReference<RunAgentOptions> lastOptions = new AtomicReference<>();
+
+        @Override
+        public Flux<ReActAgentEvent> run(RunAgentOptions options) {
+            return Flux.deferContextual(contextView -> {
+                telemetryEnabled.set(options.isEnableTelemetryEvents());
+                lastOptions.set(options);
+                ReActAgentListener listener = contextView.getOrDefault(ReActAgentListener.CONTEXT_KEY, null);
+                if (listener != null) {
+                    listener.onIterationStart(options, 1);
+                    listener.onModelCallEnd(options, 1, "stub", 10, 5, TimeUnit.MILLISECONDS.toNanos(20),
+                            TimeUnit.MILLISECONDS.toNanos(100));
+                    listener.onToolCallEnd(options, 1, "search", TimeUnit.MILLISECONDS.toNanos(30));
+                    listener.onIterationStart(options, 2);
+                    listener.onModelCallEnd(options, 2, "stub", null, null, -1, TimeUnit.MILLISECONDS.toNanos(50));
+                }
+                LlmMessageEvent message = new LlmMessageEvent(new AssistantMessage("done"), "message-1");
+                if (!options.isEnableTelemetryEvents()) {
+                    return Flux.just(message);
+                }
+                return Flux.just(
+                        new IterationStartEvent(1),
+                        new IterationEndEvent(1, Duration.ofMillis(150)),
+                        new IterationStartEvent(2),
+                        message,
+                        new IterationEndEvent(2, Duration.ofMillis(10)));
+            });
+        }
+
+        @Override
+        public List<BranchMessageItem> getBranchMessages(String threadId) {
+            return List.of();
+        }
+    }
+
+    @Test
+    void testRunRecordsMetricsWithoutTelemetryEvents() {
+        StubReActAgent delegate = new StubReActAgent();
+        MeterRegistry registry = new SimpleMeterRegistry();
+        MeteredReActAgent agent = new MeteredReActAgent(delegate, registry, "agent");
+
+        List<ReActAgentEvent> events = agent.run(RunAgentOptions.builder().newUserMessage("hi").build())
+                .collectList().block();
+
+        // 记录指标不需要打开被装饰Agent的统计事件
+        assertFalse(delegate.telemetryEnabled.get());
+        assertEquals(1, events.size());
+        assertInstanceOf(LlmMessageEvent.class, events.getFirst());
+
+        assertEquals(1, registry.get("react.agent.run").tag("outcome", "success").timer().count());
+        assertEquals(2.0, registry.get("react.agent.run.iterations").summary().totalAmount());
+        assertEquals(150.0, registry.get("react.agent.model.latency").timer().totalTime(TimeUnit.MILLISECONDS));
+        assertEquals(1, registry.get("react.agent.model.ttft").timer().count());
+        assertEquals(20.0, registry.get("react.agent.model.ttft").timer().totalTime(TimeUnit.MILLISECONDS));
+        assertEquals(10.0, registry.get("react.agent.model.tokens").tag("type", "prompt").counter().count());
+        assertEquals(5.0, registry.get("react.agent.model.tokens").tag("type", "completion").counter().count());
+        assertEquals(30.0, registry.get("react.agent.tool.latency").tag("tool", "search").timer()
+                .totalTime(TimeUnit.MILLISECONDS));
+        assertEquals(0.0, registry.get("react.agent.runs.active").gauge().value());
+    }
+
+    @Test
+    void testTelemetryEventsArePassedThroughWhenEnabled() {
+        StubReActAgent delegate = new StubReActAgent();
+        MeterRegistry registry = new SimpleMeterRegistry();
+        MeteredReActAgent agent = new MeteredReActAgent(delegate, registry, "agent");
+
+        List<ReActAgentEvent> events = agent.run(RunAgentOptions.builder()
+                        .newUserMessage("hi")
+                        .enableTelemetryEvents(true)
+                        .build())
+                .collectList().block();
+
+        assertTrue(delegate.telemetryEnabled.get());
+        assertEquals(5, events.size());
+        assertEquals(2.0, registry.get("react.agent.run.iterations").summary().totalAmount());
+    }
+
+    @Test
+    void testOtherOptionsArePassedToDelegate() {
+        StubReActAgent delegate = new StubReActAgent();
+        MeteredReActAgent agent = new MeteredReActAgent(delegate, new SimpleMeterRegistry(), "agent");
+
+        agent.run(RunAgentOptions.builder()
+                        .threadId("thread-1")
+                        .previousMessageId("message-0")
+                        .newUserMessage("hi")
+                        .enableStream(true)
+                        .maxIterations(3)
+                        .context(Map.of("key", "value"))
+                        .messageHistoryWindowSize(10)
+                        .messageHistoryTokenBudget(1000)
+                        .build())
+                .collectList().block();
+
+        RunAgentOptions options = delegate.lastOptions.get();
+        assertFalse(options.isEnableTelemetryEvents());
+        assertEquals("thread-1", options.getThreadId());
+        assertEquals("message-0", options.getPreviousMessageId());
+        assertEquals("hi", options.getNewMessages().getFirst().getText());
+        assertTrue(options.isEnableStream());
+        assertEquals(3, options.getMaxIterations());
+        assertEquals(Map.of("key", "value"), options.getContext());
+        assertEquals(10, options.getMessageHistoryWindowSize());
+        assertEquals(1000, options.getMessageHistoryTokenBudget());
+    }
+
+    @Test
+    void testActiveRunsGaugeAndErrorOutcome() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        ReActAgent failing = new StubReActAgent() {
+            @Override
+            public Flux<ReActAgentEvent> run(RunAgentOptions options) {
+                return Flux.error(new IllegalStateException("boom"));
+            }
+        };
+        MeteredReActAgent agent = new MeteredReActAgent(failing, registry, "agent");
+        Flux<ReActAgentEvent> run = agent.run(RunAgentOptions.builder().newUserMessage("hi").build());
+
+        // 订阅之前不计入正在进行的运行
+        assertEquals(0.0, registry.get("react.agent.runs.active").gauge().value());
+        assertThrows(IllegalStateException.class, run::blockLast);
+
+        assertEquals(1, registry.get("react.agent.run").tag("outcome", "error").timer().count());
+        assertEquals(0.0, registry.get("react.agent.runs.active").gauge().value());
+    }
+
+    @Test
+    void testPostProcessorProxiesAgentWithoutPublicType() {
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        MeterRegistry registry = new SimpleMeterRegistry();
+        beanFactory.registerSingleton("meterRegistry", registry);
+        StubReActAgent agent = new StubReActAgent();
+        Object proxy = new ReActAgentMetricsPostProcessor(beanFactory.getBeanProvider(MeterRegistry.class))
+                .postProcessAfterInitialization(agent, "agent");
+
+        // 类型不是public的Agent使用接口代理
+        ReActAgent metered = assertInstanceOf(ReActAgent.class, proxy);
+        assertNotSame(agent, metered);
+        metered.run(RunAgentOptions.builder().newUserMessage("hi").build()).collectList().block();
+        assertEquals(1, registry.get("react.agent.run").tag("agent", "agent").timer().count());
+    }
+}
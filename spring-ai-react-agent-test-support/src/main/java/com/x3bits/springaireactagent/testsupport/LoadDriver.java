@@ -0,0 +1,237 @@
+package com.x3bits.springaireactagent.testsupport;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.x3bits.springaireactagent.core.ReActAgent;
+import com.x3bits.springaireactagent.core.RunAgentOptions;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
+
+/**
+ * 并发执行大量运行并统计吞吐量、耗时分位数和内存分配速率的压力测试驱动
+ * <p>
+ * 每个运行是一个Publisher，从订阅开始到结束的时长就是这次运行的耗时。运行可以是{@link ReActAgent#run(RunAgentOptions)}，
+ * 也可以是对{@code /springAiReactAgent/api/chat/stream}的HTTP请求，见{@link #agentRuns(ReActAgent, IntFunction)}和
+ * {@link #chatStream(HttpClient, URI, String)}。配合{@link ScriptedChatModel}使用时，测得的是Agent、保存器和Web层自身的开销。
+ * </p>
+ * <p>
+ * 内存分配速率统计的是测试期间整个JVM分配的堆内存，包括驱动自身和同时运行的其它代码，应当在没有其它负载的JVM中运行。
+ * </p>
+ */
+public final class LoadDriver {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final int runs;
+
+    private final int concurrency;
+
+    private final int warmupRuns;
+
+    private final Duration timeout;
+
+    private LoadDriver(Builder builder) {
+        this.runs = builder.runs;
+        this.concurrency = builder.concurrency;
+        this.warmupRuns = builder.warmupRuns;
+        this.timeout = builder.timeout;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 执行预热运行，之后执行并统计正式运行
+     *
+     * @param task 根据运行序号创建一次运行，预热运行的序号为负数
+     * @return 正式运行的统计结果
+     */
+    public LoadReport run(IntFunction<? extends Publisher<?>> task) {
+        if (task == null) {
+            throw new IllegalArgumentException("task cannot be null");
+        }
+        if (warmupRuns > 0) {
+            execute(task, -warmupRuns, warmupRuns);
+        }
+        return execute(task, 0, runs);
+    }
+
+    /**
+     * 每次运行向agent发送一条新的用户消息
+     *
+     * @param options 根据运行序号创建运行选项，通常每个运行使用不同的线程id
+     */
+    public static IntFunction<Publisher<?>> agentRuns(ReActAgent agent, IntFunction<RunAgentOptions> options) {
+        if (agent == null || options == null) {
+            throw new IllegalArgumentException("agent and options cannot be null");
+        }
+        return i -> agent.run(options.apply(i));
+    }
+
+    /**
+     * 每次运行请求一次{@code POST /springAiReactAgent/api/chat/stream}并读完整个SSE响应，
+     * 线程id为load-加上运行序号
+     *
+     * @param baseUri       应用的根地址，可以包含context path，例如http://localhost:8080/app
+     * @param agentBeanName ReActAgent的Bean名称，为null时使用默认的Agent
+     */
+    public static IntFunction<Publisher<?>> chatStream(HttpClient client, URI baseUri, String agentBeanName) {
+        if (client == null || baseUri == null) {
+            throw new IllegalArgumentException("client and baseUri cannot be null");
+        }
+        String base = baseUri.toString();
+        URI uri = URI.create((base.endsWith("/") ? base.substring(0, base.length() - 1) : base)
+                + "/springAiReactAgent/api/chat/stream");
+        return i -> Mono.defer(() -> {
+                    HttpRequest request = HttpRequest.newBuilder(uri)
+                            .header("Content-Type", "application/json")
+                            .header("Accept", "text/event-stream")
+                            .POST(HttpRequest.BodyPublishers.ofString(chatRequest("load-" + i, agentBeanName)))
+                            .build();
+                    return Mono.fromFuture(() -> client.sendAsync(request, HttpResponse.BodyHandlers.discarding()));
+                })
+                .handle((response, sink) -> {
+                    if (response.statusCode() / 100 != 2) {
+                        sink.error(new IllegalStateException("Unexpected HTTP status " + response.statusCode()));
+                    } else {
+                        sink.next(response.statusCode());
+                    }
+                });
+    }
+
+    private static String chatRequest(String threadId, String agentBeanName) {
+        Map<String, String> body = new LinkedHashMap<>();
+        body.put("threadId", threadId);
+        body.put("userMessage", "你好");
+        body.put("agentBeanName", agentBeanName);
+        try {
+            return OBJECT_MAPPER.writeValueAsString(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private LoadReport execute(IntFunction<? extends Publisher<?>> task, int firstIndex, int count) {
+        long[] latencies = new long[count];
+        AtomicInteger failures = new AtomicInteger();
+        AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        Flux.range(0, count)
+                .flatMap(i -> Mono.defer(() -> {
+                            long runStart = System.nanoTime();
+                            return Flux.from(task.apply(firstIndex + i))
+                                    .then(Mono.fromSupplier(() -> System.nanoTime() - runStart));
+                        })
+                        .timeout(timeout)
+                        .doOnNext(latency -> latencies[i] = latency)
+                        .onErrorResume(e -> {
+                            latencies[i] = -1;
+                            failures.incrementAndGet();
+                            firstFailure.compareAndSet(null, e);
+                            return Mono.empty();
+                        }), concurrency)
+                .blockLast();
+        Duration duration = Duration.ofNanos(System.nanoTime() - start);
+        long allocatedAfter = allocatedBytes();
+
+        long[] succeeded = Arrays.stream(latencies).filter(latency -> latency >= 0).sorted().toArray();
+        return new LoadReport(count, failures.get(), concurrency, duration,
+                percentile(succeeded, 0.50), percentile(succeeded, 0.99), percentile(succeeded, 1.0),
+                allocatedBefore < 0 || allocatedAfter < 0 ? -1 : allocatedAfter - allocatedBefore,
+                firstFailure.get());
+    }
+
+    /**
+     * 最近秩法计算分位数，sorted为升序
+     */
+    static Duration percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return Duration.ZERO;
+        }
+        int rank = (int) Math.ceil(quantile * sorted.length);
+        return Duration.ofNanos(sorted[Math.max(rank, 1) - 1]);
+    }
+
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threadMXBean
+                && threadMXBean.isThreadAllocatedMemorySupported()
+                && threadMXBean.isThreadAllocatedMemoryEnabled()) {
+            return threadMXBean.getTotalThreadAllocatedBytes();
+        }
+        return -1;
+    }
+
+    public static class Builder {
+        private int runs = 1000;
+        private int concurrency = 100;
+        private int warmupRuns = 0;
+        private Duration timeout = Duration.ofMinutes(1);
+
+        private Builder() {
+        }
+
+        /**
+         * 正式运行的次数，默认为1000
+         */
+        public Builder runs(int runs) {
+            if (runs <= 0) {
+                throw new IllegalArgumentException("runs must be positive");
+            }
+            this.runs = runs;
+            return this;
+        }
+
+        /**
+         * 同时进行的最大运行数量，默认为100
+         */
+        public Builder concurrency(int concurrency) {
+            if (concurrency <= 0) {
+                throw new IllegalArgumentException("concurrency must be positive");
+            }
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        /**
+         * 正式运行之前的预热运行次数，预热运行不计入结果，默认为0
+         */
+        public Builder warmupRuns(int warmupRuns) {
+            if (warmupRuns < 0) {
+                throw new IllegalArgumentException("warmupRuns must not be negative");
+            }
+            this.warmupRuns = warmupRuns;
+            return this;
+        }
+
+        /**
+         * 单次运行的超时时间，超时的运行计为失败，默认为1分钟
+         */
+        public Builder timeout(Duration timeout) {
+            if (timeout == null || timeout.isNegative() || timeout.isZero()) {
+                throw new IllegalArgumentException("timeout must be positive");
+            }
+            this.timeout = timeout;
+            return this;
+        }
+
+        public LoadDriver build() {
+            return new LoadDriver(this);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.x3bits.springaireactagent.testsupport;
+
+import java.time.Duration;
+
+/**
+ * 一次压力测试的结果
+ *
+ * @param runs           完成的运行次数，包括失败的运行
+ * @param failures       失败的运行次数
+ * @param concurrency    同时进行的最大运行数量
+ * @param duration       从第一个运行开始到最后一个运行结束的时长
+ * @param p50            成功运行耗时的中位数
+ * @param p99            成功运行耗时的99分位数
+ * @param max            成功运行耗时的最大值
+ * @param allocatedBytes 测试期间整个JVM分配的堆内存字节数，JVM不支持统计时为-1
+ * @param firstFailure   第一个失败运行的异常，没有失败时为null
+ */
+public record LoadReport(int runs, int failures, int concurrency, Duration duration, Duration p50, Duration p99,
+        Duration max, long allocatedBytes, Throwable firstFailure) {
+
+    /**
+     * 每秒完成的成功运行数量
+     */
+    public double throughput() {
+        return perSecond(runs - failures);
+    }
+
+    /**
+     * 每秒分配的堆内存字节数，JVM不支持统计时为-1
+     */
+    public double allocationRate() {
+        return allocatedBytes < 0 ? -1 : perSecond(allocatedBytes);
+    }
+
+    private double perSecond(double value) {
+        long nanos = duration.toNanos();
+        return nanos == 0 ? 0 : value * 1_000_000_000d / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("runs=%d, failures=%d, concurrency=%d, duration=%dms, throughput=%.1f/s, "
+                        + "p50=%.2fms, p99=%.2fms, max=%.2fms, allocationRate=%s",
+                runs, failures, concurrency, duration.toMillis(), throughput(),
+                millis(p50), millis(p99), millis(max),
+                allocatedBytes < 0 ? "n/a" : String.format("%.1fMB/s", allocationRate() / (1024 * 1024)));
+    }
+
+    private static double millis(Duration duration) {
+        return duration.toNanos() / 1_000_000d;
+    }
+}
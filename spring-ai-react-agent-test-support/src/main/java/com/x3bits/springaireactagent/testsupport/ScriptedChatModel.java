@@ -0,0 +1,164 @@
+package com.x3bits.springaireactagent.testsupport;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按脚本返回回答的ChatModel，用于不依赖真实大模型的测试、基准测试和压力测试
+ * <p>
+ * 脚本是一组依次返回的{@link ScriptedResponse}。每次调用返回哪个回答只取决于Prompt本身：
+ * 最后一条用户消息之后已经有几条助手消息，就返回脚本中的第几个回答（从0开始）。
+ * 因此同一个模型可以同时服务任意多个并发运行，每个运行看到的回答序列都相同；
+ * 一次运行中的每轮迭代依次得到下一个回答，例如先返回ToolCall、再返回最终答案。
+ * 调用次数超出脚本长度时抛出IllegalStateException。
+ * </p>
+ * <p>
+ * 流式调用按{@link ScriptedResponse}中的延迟在{@link Builder#scheduler(Scheduler)}上发送片段，不占用调用方线程；
+ * 非流式调用在调用方线程上等待相同的总时长。
+ * </p>
+ */
+public final class ScriptedChatModel implements ChatModel {
+
+    private final List<ScriptedResponse> script;
+
+    private final Scheduler scheduler;
+
+    private final AtomicLong callCount = new AtomicLong();
+
+    private ScriptedChatModel(Builder builder) {
+        if (builder.script.isEmpty()) {
+            throw new IllegalArgumentException("script cannot be empty");
+        }
+        this.script = List.copyOf(builder.script);
+        this.scheduler = builder.scheduler;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        ScriptedResponse response = next(prompt);
+        Duration latency = response.totalLatency();
+        if (!latency.isZero()) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for scripted response", e);
+            }
+        }
+        return response.toChatResponse();
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.defer(() -> {
+            ScriptedResponse response = next(prompt);
+            List<ChatResponse> chunks = response.getChunks();
+            return Flux.range(0, chunks.size())
+                    .concatMap(i -> delayed(chunks.get(i),
+                            i == 0 ? response.getTimeToFirstToken() : response.getInterChunkDelay()));
+        });
+    }
+
+    /**
+     * 已经处理的调用次数，包括流式调用和非流式调用
+     */
+    public long getCallCount() {
+        return callCount.get();
+    }
+
+    private Mono<ChatResponse> delayed(ChatResponse chunk, Duration delay) {
+        Mono<ChatResponse> mono = Mono.just(chunk);
+        return delay.isZero() ? mono : mono.delayElement(delay, scheduler);
+    }
+
+    private ScriptedResponse next(Prompt prompt) {
+        callCount.incrementAndGet();
+        int step = stepOf(prompt.getInstructions());
+        if (step >= script.size()) {
+            throw new IllegalStateException("Script has " + script.size()
+                    + " responses, but the prompt asks for response " + (step + 1));
+        }
+        return script.get(step);
+    }
+
+    private static int stepOf(List<Message> messages) {
+        int step = 0;
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            MessageType type = messages.get(i).getMessageType();
+            if (type == MessageType.USER) {
+                break;
+            }
+            if (type == MessageType.ASSISTANT) {
+                step++;
+            }
+        }
+        return step;
+    }
+
+    public static class Builder {
+        private final List<ScriptedResponse> script = new ArrayList<>();
+        private Scheduler scheduler = Schedulers.parallel();
+
+        private Builder() {
+        }
+
+        public Builder then(ScriptedResponse response) {
+            if (response == null) {
+                throw new IllegalArgumentException("response cannot be null");
+            }
+            script.add(response);
+            return this;
+        }
+
+        public Builder thenText(String text) {
+            return then(ScriptedResponse.text(text));
+        }
+
+        /**
+         * 依次回放记录下来的消息中的助手消息，其它类型的消息被忽略
+         */
+        public Builder replay(List<? extends Message> messages) {
+            if (messages == null) {
+                throw new IllegalArgumentException("messages cannot be null");
+            }
+            for (Message message : messages) {
+                if (message instanceof AssistantMessage assistantMessage) {
+                    then(ScriptedResponse.of(assistantMessage));
+                }
+            }
+            return this;
+        }
+
+        /**
+         * 流式调用中延迟发送片段使用的Scheduler，默认为{@link Schedulers#parallel()}
+         */
+        public Builder scheduler(Scheduler scheduler) {
+            if (scheduler == null) {
+                throw new IllegalArgumentException("scheduler cannot be null");
+            }
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        public ScriptedChatModel build() {
+            return new ScriptedChatModel(this);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.x3bits.springaireactagent.testsupport;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatGenerationMetadata;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link ScriptedChatModel}的一次大模型回答：文本、ToolCall、token用量以及流式返回时的分片方式和延迟
+ * <p>
+ * 流式返回时依次发送文本片段、ToolCall片段（先发送带id和name的片段，之后的片段只包含参数的一部分），
+ * 最后发送一个带token用量和结束原因的空片段。第一个片段在{@link Builder#timeToFirstToken(Duration)}之后发送，
+ * 之后每个片段间隔{@link Builder#interChunkDelay(Duration)}。非流式调用等待相同的总时长后一次返回完整回答。
+ * </p>
+ */
+public final class ScriptedResponse {
+
+    static final String MODEL = "scripted";
+
+    private final String text;
+
+    private final List<AssistantMessage.ToolCall> toolCalls;
+
+    private final int promptTokens;
+
+    private final int completionTokens;
+
+    private final int chunkSize;
+
+    private final Duration timeToFirstToken;
+
+    private final Duration interChunkDelay;
+
+    private final List<ChatResponse> chunks;
+
+    private ScriptedResponse(Builder builder) {
+        this.text = builder.text;
+        this.toolCalls = List.copyOf(builder.toolCalls);
+        this.promptTokens = builder.promptTokens;
+        this.completionTokens = builder.completionTokens;
+        this.chunkSize = builder.chunkSize;
+        this.timeToFirstToken = builder.timeToFirstToken;
+        this.interChunkDelay = builder.interChunkDelay;
+        this.chunks = createChunks();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 回放一条记录下来的助手消息，保留文本和ToolCall
+     */
+    public static ScriptedResponse of(AssistantMessage message) {
+        if (message == null) {
+            throw new IllegalArgumentException("message cannot be null");
+        }
+        return builder()
+                .text(message.getText())
+                .toolCalls(message.getToolCalls())
+                .build();
+    }
+
+    public static ScriptedResponse text(String text) {
+        return builder().text(text).build();
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public List<AssistantMessage.ToolCall> getToolCalls() {
+        return toolCalls;
+    }
+
+    public Duration getTimeToFirstToken() {
+        return timeToFirstToken;
+    }
+
+    public Duration getInterChunkDelay() {
+        return interChunkDelay;
+    }
+
+    /**
+     * 流式返回时的全部片段，最后一个片段带有token用量和结束原因
+     */
+    public List<ChatResponse> getChunks() {
+        return chunks;
+    }
+
+    /**
+     * 非流式调用返回的完整回答
+     */
+    ChatResponse toChatResponse() {
+        return chatResponse(text, toolCalls, true);
+    }
+
+    /**
+     * 流式返回全部片段所需的总时长，非流式调用等待同样的时长
+     */
+    Duration totalLatency() {
+        return timeToFirstToken.plus(interChunkDelay.multipliedBy(chunks.size() - 1L));
+    }
+
+    private List<ChatResponse> createChunks() {
+        List<ChatResponse> result = new ArrayList<>();
+        for (String part : split(text)) {
+            result.add(chatResponse(part, List.of(), false));
+        }
+        for (AssistantMessage.ToolCall toolCall : toolCalls) {
+            AssistantMessage.ToolCall head = new AssistantMessage.ToolCall(toolCall.id(), toolCall.type(),
+                    toolCall.name(), "");
+            result.add(chatResponse("", List.of(head), false));
+            for (String part : split(toolCall.arguments())) {
+                result.add(chatResponse("", List.of(new AssistantMessage.ToolCall("", toolCall.type(), "", part)),
+                        false));
+            }
+        }
+        result.add(chatResponse("", List.of(), true));
+        return List.copyOf(result);
+    }
+
+    /**
+     * 按码点切分，不会把代理对拆到两个片段中
+     */
+    private List<String> split(String value) {
+        if (value == null || value.isEmpty()) {
+            return List.of();
+        }
+        List<String> parts = new ArrayList<>();
+        int start = 0;
+        while (start < value.length()) {
+            int remaining = value.codePointCount(start, value.length());
+            int end = value.offsetByCodePoints(start, Math.min(chunkSize, remaining));
+            parts.add(value.substring(start, end));
+            start = end;
+        }
+        return parts;
+    }
+
+    private ChatResponse chatResponse(String content, List<AssistantMessage.ToolCall> calls, boolean last) {
+        ChatGenerationMetadata generationMetadata = last
+                ? ChatGenerationMetadata.builder().finishReason(toolCalls.isEmpty() ? "STOP" : "TOOL_CALLS").build()
+                : ChatGenerationMetadata.NULL;
+        ChatResponseMetadata.Builder metadata = ChatResponseMetadata.builder().model(MODEL);
+        if (last) {
+            metadata.usage(new DefaultUsage(promptTokens, completionTokens));
+        }
+        return ChatResponse.builder()
+                .generations(List.of(new Generation(new AssistantMessage(content, Map.of(), calls), generationMetadata)))
+                .metadata(metadata.build())
+                .build();
+    }
+
+    public static class Builder {
+        private String text = "";
+        private final List<AssistantMessage.ToolCall> toolCalls = new ArrayList<>();
+        private int promptTokens;
+        private int completionTokens;
+        private int chunkSize = 8;
+        private Duration timeToFirstToken = Duration.ZERO;
+        private Duration interChunkDelay = Duration.ZERO;
+
+        private Builder() {
+        }
+
+        public Builder text(String text) {
+            this.text = text != null ? text : "";
+            return this;
+        }
+
+        public Builder toolCall(String id, String name, String arguments) {
+            if (id == null || id.isEmpty()) {
+                throw new IllegalArgumentException("id cannot be empty");
+            }
+            if (name == null || name.isEmpty()) {
+                throw new IllegalArgumentException("name cannot be empty");
+            }
+            this.toolCalls.add(new AssistantMessage.ToolCall(id, "function", name, arguments != null ? arguments : ""));
+            return this;
+        }
+
+        public Builder toolCalls(List<AssistantMessage.ToolCall> toolCalls) {
+            if (toolCalls != null) {
+                toolCalls.forEach(toolCall -> toolCall(toolCall.id(), toolCall.name(), toolCall.arguments()));
+            }
+            return this;
+        }
+
+        public Builder usage(int promptTokens, int completionTokens) {
+            if (promptTokens < 0 || completionTokens < 0) {
+                throw new IllegalArgumentException("token counts must not be negative");
+            }
+            this.promptTokens = promptTokens;
+            this.completionTokens = completionTokens;
+            return this;
+        }
+
+        /**
+         * 流式返回时每个文本片段和参数片段包含的最大码点数量，默认为8
+         */
+        public Builder chunkSize(int chunkSize) {
+            if (chunkSize <= 0) {
+                throw new IllegalArgumentException("chunkSize must be positive");
+            }
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        public Builder timeToFirstToken(Duration timeToFirstToken) {
+            this.timeToFirstToken = requireNonNegative(timeToFirstToken, "timeToFirstToken");
+            return this;
+        }
+
+        public Builder interChunkDelay(Duration interChunkDelay) {
+            this.interChunkDelay = requireNonNegative(interChunkDelay, "interChunkDelay");
+            return this;
+        }
+
+        public ScriptedResponse build() {
+            return new ScriptedResponse(this);
+        }
+
+        private static Duration requireNonNegative(Duration duration, String name) {
+            if (duration == null || duration.isNegative()) {
+                throw new IllegalArgumentException(name + " must not be null or negative");
+            }
+            return duration;
+        }
+    }
+}
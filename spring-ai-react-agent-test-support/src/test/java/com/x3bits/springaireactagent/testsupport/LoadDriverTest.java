@@ -0,0 +1,134 @@
+package com.x3bits.springaireactagent.testsupport;
+
+import com.sun.net.httpserver.HttpServer;
+import com.x3bits.springaireactagent.core.ReActAgent;
+import com.x3bits.springaireactagent.core.RunAgentOptions;
+import com.x3bits.springaireactagent.core.memory.MemoryBranchMessageSaver;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import reactor.core.publisher.Mono;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadDriverTest {
+
+    @Test
+    void testConcurrentAgentRunsAreMeasured() {
+        ScriptedChatModel model = ScriptedChatModel.builder()
+                .then(ScriptedResponse.builder()
+                        .text("这是一个固定回答")
+                        .chunkSize(2)
+                        .timeToFirstToken(Duration.ofMillis(20))
+                        .interChunkDelay(Duration.ofMillis(1))
+                        .build())
+                .build();
+        ReActAgent agent = ReActAgent.builder(ChatClient.builder(model).build())
+                .messageSaver(new MemoryBranchMessageSaver())
+                .build();
+
+        LoadReport report = LoadDriver.builder()
+                .runs(200)
+                .concurrency(50)
+                .warmupRuns(10)
+                .build()
+                .run(LoadDriver.agentRuns(agent, i -> RunAgentOptions.builder()
+                        .threadId("load-" + i)
+                        .newUserMessage("你好")
+                        .enableStream(true)
+                        .build()));
+
+        assertEquals(200, report.runs());
+        assertEquals(0, report.failures(), () -> String.valueOf(report.firstFailure()));
+        assertEquals(210, model.getCallCount());
+        assertTrue(report.p50().compareTo(Duration.ofMillis(20)) >= 0);
+        assertTrue(report.p99().compareTo(report.p50()) >= 0);
+        assertTrue(report.max().compareTo(report.p99()) >= 0);
+        assertTrue(report.throughput() > 0);
+    }
+
+    @Test
+    void testFailuresAndTimeoutsAreCounted() {
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        LoadReport report = LoadDriver.builder()
+                .runs(20)
+                .concurrency(4)
+                .timeout(Duration.ofMillis(200))
+                .build()
+                .run(i -> {
+                    if (i % 10 == 0) {
+                        return Mono.error(new IllegalStateException("boom"));
+                    }
+                    if (i == 5) {
+                        return Mono.never();
+                    }
+                    return Mono.delay(Duration.ofMillis(5))
+                            .doOnSubscribe(s -> maxActive.accumulateAndGet(active.incrementAndGet(), Math::max))
+                            .doFinally(s -> active.decrementAndGet());
+                });
+
+        assertEquals(3, report.failures());
+        assertInstanceOf(IllegalStateException.class, report.firstFailure());
+        assertTrue(maxActive.get() <= 4);
+    }
+
+    @Test
+    void testPercentileUsesNearestRank() {
+        long[] sorted = new long[100];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = i + 1;
+        }
+        assertEquals(Duration.ofNanos(50), LoadDriver.percentile(sorted, 0.50));
+        assertEquals(Duration.ofNanos(99), LoadDriver.percentile(sorted, 0.99));
+        assertEquals(Duration.ofNanos(100), LoadDriver.percentile(sorted, 1.0));
+        assertEquals(Duration.ZERO, LoadDriver.percentile(new long[0], 0.99));
+    }
+
+    @Test
+    void testChatStreamPostsChatRequests() throws Exception {
+        List<String> bodies = new CopyOnWriteArrayList<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/springAiReactAgent/api/chat/stream", exchange -> {
+            bodies.add(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            byte[] response = "data:{\"type\":\"llmMessage\"}\n\n".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        server.start();
+        try (HttpClient client = HttpClient.newHttpClient()) {
+            URI baseUri = URI.create("http://127.0.0.1:" + server.getAddress().getPort());
+            LoadReport report = LoadDriver.builder()
+                    .runs(20)
+                    .concurrency(5)
+                    .build()
+                    .run(LoadDriver.chatStream(client, baseUri, "agent"));
+
+            assertEquals(0, report.failures(), () -> String.valueOf(report.firstFailure()));
+            assertEquals(20, bodies.size());
+            assertTrue(bodies.contains("{\"threadId\":\"load-7\",\"userMessage\":\"你好\",\"agentBeanName\":\"agent\"}"));
+
+            LoadReport notFound = LoadDriver.builder()
+                    .runs(2)
+                    .concurrency(1)
+                    .build()
+                    .run(LoadDriver.chatStream(client, baseUri.resolve("/missing"), null));
+            assertEquals(20, bodies.size());
+            assertEquals(2, notFound.failures());
+        } finally {
+            server.stop(0);
+        }
+    }
+}
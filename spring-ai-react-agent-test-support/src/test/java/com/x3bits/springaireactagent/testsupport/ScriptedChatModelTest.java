@@ -0,0 +1,154 @@
+package com.x3bits.springaireactagent.testsupport;
+
+import com.x3bits.springaireactagent.core.ReActAgent;
+import com.x3bits.springaireactagent.core.RunAgentOptions;
+import com.x3bits.springaireactagent.core.event.LlmMessageEvent;
+import com.x3bits.springaireactagent.core.event.ReActAgentEvent;
+import com.x3bits.springaireactagent.core.event.UsageEvent;
+import com.x3bits.springaireactagent.core.memory.MemoryBranchMessageSaver;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tool.function.FunctionToolCallback;
+import reactor.test.StepVerifier;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScriptedChatModelTest {
+
+    record AddRequest(int a, int b) {
+    }
+
+    @Test
+    void testResponseIsChosenByAssistantMessagesAfterLastUserMessage() {
+        ScriptedChatModel model = ScriptedChatModel.builder()
+                .thenText("first")
+                .thenText("second")
+                .build();
+
+        assertEquals("first", model.call(new Prompt(List.of(new UserMessage("hi")))).getResult().getOutput().getText());
+        Prompt secondStep = new Prompt(List.of(
+                new UserMessage("hi"),
+                new AssistantMessage("first")));
+        assertEquals("second", model.call(secondStep).getResult().getOutput().getText());
+        // 新的用户消息重新从脚本开头开始
+        Prompt nextTurn = new Prompt(List.of(
+                new UserMessage("hi"),
+                new AssistantMessage("first"),
+                new UserMessage("again")));
+        assertEquals("first", model.call(nextTurn).getResult().getOutput().getText());
+
+        Prompt exhausted = new Prompt(List.of(
+                new UserMessage("hi"),
+                new AssistantMessage("first"),
+                new AssistantMessage("second")));
+        assertThrows(IllegalStateException.class, () -> model.call(exhausted));
+        assertEquals(4, model.getCallCount());
+    }
+
+    @Test
+    void testStreamSplitsTextAndToolCallsAndAppliesDelays() {
+        VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+        ScriptedResponse response = ScriptedResponse.builder()
+                .text("你好世界")
+                .toolCall("call-1", "add", "{\"a\":1,\"b\":2}")
+                .usage(10, 5)
+                .chunkSize(2)
+                .timeToFirstToken(Duration.ofMillis(100))
+                .interChunkDelay(Duration.ofMillis(10))
+                .build();
+        ScriptedChatModel model = ScriptedChatModel.builder().then(response).scheduler(scheduler).build();
+
+        // 2个文本片段、1个ToolCall头、7个参数片段和1个结束片段
+        assertEquals(11, response.getChunks().size());
+        StepVerifier.withVirtualTime(() -> model.stream(new Prompt(List.of(new UserMessage("hi")))), () -> scheduler,
+                        Long.MAX_VALUE)
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(99))
+                .thenAwait(Duration.ofMillis(1))
+                .assertNext(chunk -> assertEquals("你好", chunk.getResult().getOutput().getText()))
+                .expectNoEvent(Duration.ofMillis(9))
+                .thenAwait(Duration.ofMillis(1))
+                .assertNext(chunk -> assertEquals("世界", chunk.getResult().getOutput().getText()))
+                .thenAwait(Duration.ofMillis(10))
+                .assertNext(chunk -> {
+                    AssistantMessage.ToolCall head = chunk.getResult().getOutput().getToolCalls().getFirst();
+                    assertEquals("call-1", head.id());
+                    assertEquals("add", head.name());
+                })
+                .thenAwait(Duration.ofMillis(80))
+                .expectNextCount(7)
+                .assertNext(last -> {
+                    assertEquals("TOOL_CALLS", last.getResult().getMetadata().getFinishReason());
+                    assertEquals(10, last.getMetadata().getUsage().getPromptTokens());
+                    assertEquals(5, last.getMetadata().getUsage().getCompletionTokens());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void testAgentRunReplaysToolCallAndFinalAnswer() {
+        ScriptedChatModel model = ScriptedChatModel.builder()
+                .then(ScriptedResponse.builder().toolCall("call-1", "add", "{\"a\":1,\"b\":2}").chunkSize(3).build())
+                .thenText("结果是3")
+                .build();
+        ChatClient chatClient = ChatClient.builder(model)
+                .defaultToolCallbacks(FunctionToolCallback.builder("add", (AddRequest request) -> request.a() + request.b())
+                        .description("两数相加")
+                        .inputType(AddRequest.class)
+                        .build())
+                .build();
+        ReActAgent agent = ReActAgent.builder(chatClient).messageSaver(new MemoryBranchMessageSaver()).build();
+
+        for (boolean stream : new boolean[]{false, true}) {
+            List<ReActAgentEvent> events = agent.run(RunAgentOptions.builder()
+                            .threadId("thread-" + stream)
+                            .newUserMessage("1加2等于几")
+                            .enableStream(stream)
+                            .enableTelemetryEvents(true)
+                            .build())
+                    .collectList().block();
+
+            List<AssistantMessage> messages = events.stream()
+                    .filter(LlmMessageEvent.class::isInstance)
+                    .map(event -> ((LlmMessageEvent) event).message())
+                    .filter(AssistantMessage.class::isInstance)
+                    .map(AssistantMessage.class::cast)
+                    .toList();
+            assertEquals("{\"a\":1,\"b\":2}", messages.getFirst().getToolCalls().getFirst().arguments());
+            assertEquals("结果是3", messages.getLast().getText());
+            assertEquals(2, events.stream().filter(UsageEvent.class::isInstance).count());
+        }
+        assertEquals(4, model.getCallCount());
+    }
+
+    @Test
+    void testReplayUsesRecordedAssistantMessages() {
+        ToolResponseMessage toolResponse = new ToolResponseMessage(
+                List.of(new ToolResponseMessage.ToolResponse("call-1", "add", "3")));
+        ScriptedChatModel model = ScriptedChatModel.builder()
+                .replay(List.of(
+                        new UserMessage("1加2等于几"),
+                        new AssistantMessage("", Map.of(),
+                                List.of(new AssistantMessage.ToolCall("call-1", "function", "add", "{}"))),
+                        toolResponse,
+                        new AssistantMessage("结果是3")))
+                .build();
+
+        ChatResponse response = model.call(new Prompt(List.of(
+                new UserMessage("1加2等于几"),
+                new AssistantMessage("", Map.of(),
+                        List.of(new AssistantMessage.ToolCall("call-1", "function", "add", "{}"))),
+                toolResponse)));
+        assertEquals("结果是3", response.getResult().getOutput().getText());
+    }
+}
@@ -16,8 +16,11 @@ import org.springframework.ai.chat.messages.ToolResponseMessage;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 
 import java.util.ArrayList;
@@ -26,16 +29,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 
 @RestController
 @RequestMapping("/springAiReactAgent/api")
 public class ChatController {
 
-    private final ApplicationContext applicationContext;
+    static final int MAX_PAGE_SIZE = 1000;
 
-    private final Executor executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ApplicationContext applicationContext;
 
     private final ObjectMapper objectMapper = new ObjectMapper();
 
@@ -122,9 +123,54 @@ public class ChatController {
         ReActAgent reActAgent = getReActAgent(agentBeanName);
 
         List<BranchMessageItem> branchMessages = reActAgent.getBranchMessages(threadId);
-        return branchMessages.stream().map(
-                item -> new ThreadItem(item.id(), item.previousId(), parseMessageType(item),
-                        parseContent(item)))
+        return branchMessages.stream().map(this::toThreadItem).toList();
+    }
+
+    /**
+     * 分页获取线程中的消息，把上一页返回的nextCursor作为after参数获取下一页，nextCursor为null时已经读到最后
+     */
+    @GetMapping("/thread/items/{threadId}/page")
+    public ThreadItemsPage listThreadItemsPage(@PathVariable("threadId") String threadId,
+                                               @RequestParam(value = "after", required = false) String after,
+                                               @RequestParam(value = "limit", defaultValue = "100") int limit,
+                                               @RequestParam(value = "agentBeanName", required = false) String agentBeanName) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        ReActAgent reActAgent = getReActAgent(agentBeanName);
+
+        List<ThreadItem> items = reActAgent.getBranchMessagesAfter(threadId, after, limit).stream()
+                .map(this::toThreadItem)
+                .toList();
+        String nextCursor = items.size() < limit ? null : items.get(items.size() - 1).checkpointId();
+        return new ThreadItemsPage(items, nextCursor);
+    }
+
+    /**
+     * 以NDJSON逐条返回线程中的所有消息，服务端不需要把整个线程放在内存中
+     */
+    @GetMapping(value = "/thread/items/{threadId}/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<ThreadItem> streamThreadItems(@PathVariable("threadId") String threadId,
+                                              @RequestParam(value = "agentBeanName", required = false) String agentBeanName) {
+        ReActAgent reActAgent = getReActAgent(agentBeanName);
+
+        return reActAgent.streamBranchMessages(threadId).map(this::toThreadItem);
+    }
+
+    private ThreadItem toThreadItem(BranchMessageItem item) {
+        return new ThreadItem(item.id(), item.previousId(), parseMessageType(item.messageType()), parseContent(item));
+    }
+
+    /**
+     * 只返回消息树的结构，不读取消息内容，用于在长线程中展示分支
+     */
+    @GetMapping("/thread/structure/{threadId}")
+    public List<ThreadNode> listThreadStructure(@PathVariable("threadId") String threadId,
+                                               @RequestParam(value = "agentBeanName", required = false) String agentBeanName) {
+        ReActAgent reActAgent = getReActAgent(agentBeanName);
+
+        return reActAgent.getBranchMessageNodes(threadId).stream()
+                .map(node -> new ThreadNode(node.id(), node.previousId(), parseMessageType(node.messageType())))
                 .toList();
     }
 
@@ -199,9 +245,8 @@ public class ChatController {
         return content;
     }
 
-    private static String parseMessageType(BranchMessageItem item) {
-        return item.message() != null && MessageType.USER.equals(item.message().getMessageType()) ? "user"
-                : "assistant";
+    private static String parseMessageType(MessageType messageType) {
+        return MessageType.USER.equals(messageType) ? "user" : "assistant";
     }
 
     public record ThreadItem(
@@ -211,25 +256,34 @@ public class ChatController {
             List<Map<String, Object>> content) {
     }
 
+    public record ThreadItemsPage(
+            List<ThreadItem> items,
+            String nextCursor) {
+    }
+
+    public record ThreadNode(
+            String checkpointId,
+            String previousCheckpointId,
+            String type) {
+    }
+
+    /**
+     * 把ReActAgent事件转换为SSE事件。客户端断开连接时取消订阅会沿着事件流传递给ReActAgent，停止模型调用和工具调用。
+     */
     private Flux<ServerSentEvent<SseResponse>> convertEventToSse(Flux<ReActAgentEvent> events) {
-        return Flux.create(sink -> executor.execute(() -> {
-            events.doOnNext(event -> {
-                try {
-                    if (event instanceof LlmMessageEvent llmEvent) {
-                        handleLlmMessageEvent(llmEvent, sink);
-                    } else if (event instanceof AssistantTextPartEvent textPartEvent) {
-                        handleAssistantTextPartEvent(textPartEvent, sink);
-                    }
-                } catch (Exception e) {
-                    sink.error(e);
-                }
-            }).blockLast();
-            sink.complete();
-        }));
+        return events.concatMapIterable(event -> {
+            List<ServerSentEvent<SseResponse>> sseEvents = new ArrayList<>();
+            if (event instanceof LlmMessageEvent llmEvent) {
+                handleLlmMessageEvent(llmEvent, sseEvents);
+            } else if (event instanceof AssistantTextPartEvent textPartEvent) {
+                handleAssistantTextPartEvent(textPartEvent, sseEvents);
+            }
+            return sseEvents;
+        });
     }
 
     private void handleLlmMessageEvent(LlmMessageEvent llmEvent,
-            reactor.core.publisher.FluxSink<ServerSentEvent<SseResponse>> sink) {
+            List<ServerSentEvent<SseResponse>> sseEvents) {
 
         org.springframework.ai.chat.messages.Message message = llmEvent.message();
         String id = llmEvent.id();
@@ -240,7 +294,7 @@ public class ChatController {
             ServerSentEvent<SseResponse> event = ServerSentEvent.<SseResponse>builder()
                     .data(response)
                     .build();
-            sink.next(event);
+            sseEvents.add(event);
 
         } else if (message instanceof AssistantMessage assistantMessage) {
             // 助手开始事件
@@ -248,7 +302,7 @@ public class ChatController {
             ServerSentEvent<SseResponse> startEvent = ServerSentEvent.<SseResponse>builder()
                     .data(startResponse)
                     .build();
-            sink.next(startEvent);
+            sseEvents.add(startEvent);
 
             // 处理工具调用
             if (assistantMessage.hasToolCalls()) {
@@ -268,7 +322,7 @@ public class ChatController {
                     ServerSentEvent<SseResponse> toolCallEvent = ServerSentEvent.<SseResponse>builder()
                             .data(toolCallResponse)
                             .build();
-                    sink.next(toolCallEvent);
+                    sseEvents.add(toolCallEvent);
                 }
             }
 
@@ -280,7 +334,7 @@ public class ChatController {
                 ServerSentEvent<SseResponse> textEvent = ServerSentEvent.<SseResponse>builder()
                         .data(textResponse)
                         .build();
-                sink.next(textEvent);
+                sseEvents.add(textEvent);
             }
 
         } else if (message instanceof ToolResponseMessage toolResponseMessage) {
@@ -293,18 +347,18 @@ public class ChatController {
                 ServerSentEvent<SseResponse> toolResultEvent = ServerSentEvent.<SseResponse>builder()
                         .data(toolResultResponse)
                         .build();
-                sink.next(toolResultEvent);
+                sseEvents.add(toolResultEvent);
             }
         }
     }
 
     private void handleAssistantTextPartEvent(AssistantTextPartEvent textPartEvent,
-            reactor.core.publisher.FluxSink<ServerSentEvent<SseResponse>> sink) {
+            List<ServerSentEvent<SseResponse>> sseEvents) {
 
         SseResponse partialTextResponse = SseResponse.assistantPartialText(textPartEvent.text());
         ServerSentEvent<SseResponse> partialTextEvent = ServerSentEvent.<SseResponse>builder()
                 .data(partialTextResponse)
                 .build();
-        sink.next(partialTextEvent);
+        sseEvents.add(partialTextEvent);
     }
 }
\ No newline at end of file
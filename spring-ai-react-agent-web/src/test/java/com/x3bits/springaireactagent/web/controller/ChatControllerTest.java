@@ -0,0 +1,119 @@
+package com.x3bits.springaireactagent.web.controller;
+
+import com.x3bits.springaireactagent.core.ReActAgent;
+import com.x3bits.springaireactagent.core.event.AssistantTextPartEvent;
+import com.x3bits.springaireactagent.core.event.LlmMessageEvent;
+import com.x3bits.springaireactagent.core.event.ReActAgentEvent;
+import com.x3bits.springaireactagent.core.message.BranchMessageItem;
+import com.x3bits.springaireactagent.web.dto.ChatRequest;
+import com.x3bits.springaireactagent.web.dto.SseResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * ChatController单元测试
+ */
+public class ChatControllerTest {
+
+    @Test
+    void testClientDisconnectCancelsAgentRun() {
+        // Agent发送两个事件后一直不结束，直到被取消
+        AtomicBoolean cancelled = new AtomicBoolean();
+        ReActAgent agent = mock(ReActAgent.class);
+        when(agent.run(any())).thenReturn(Flux.concat(
+                Flux.<ReActAgentEvent>just(new LlmMessageEvent(new UserMessage("你好"), "msg1"), new AssistantTextPartEvent("你")),
+                Flux.never())
+                .doOnCancel(() -> cancelled.set(true)));
+        ApplicationContext applicationContext = mock(ApplicationContext.class);
+        when(applicationContext.getBeansOfType(ReActAgent.class)).thenReturn(Map.of("reActAgent", agent));
+        ChatController controller = new ChatController(applicationContext);
+
+        List<ServerSentEvent<SseResponse>> events = controller
+                .streamChat(new ChatRequest("thread1", "你好", null, null))
+                .take(2)
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        // 客户端断开（取消订阅）后，取消信号传递给了Agent
+        assertNotNull(events);
+        assertEquals(2, events.size());
+        assertTrue(cancelled.get());
+    }
+
+    @Test
+    void testListThreadItemsPage() {
+        ReActAgent agent = mock(ReActAgent.class);
+        when(agent.getBranchMessagesAfter("thread1", null, 2)).thenReturn(List.of(
+                new BranchMessageItem(new UserMessage("你好"), "msg1", null, Map.of()),
+                new BranchMessageItem(new AssistantMessage("你好！"), "msg2", "msg1", Map.of())));
+        when(agent.getBranchMessagesAfter("thread1", "msg2", 2)).thenReturn(List.of(
+                new BranchMessageItem(new UserMessage("再见"), "msg3", "msg2", Map.of())));
+        ApplicationContext applicationContext = mock(ApplicationContext.class);
+        when(applicationContext.getBeansOfType(ReActAgent.class)).thenReturn(Map.of("reActAgent", agent));
+        ChatController controller = new ChatController(applicationContext);
+
+        ChatController.ThreadItemsPage firstPage = controller.listThreadItemsPage("thread1", null, 2, null);
+        assertEquals(List.of("msg1", "msg2"),
+                firstPage.items().stream().map(ChatController.ThreadItem::checkpointId).toList());
+        assertEquals(List.of("user", "assistant"),
+                firstPage.items().stream().map(ChatController.ThreadItem::type).toList());
+        assertEquals("msg2", firstPage.nextCursor());
+
+        // 不满一页说明已经读到最后
+        ChatController.ThreadItemsPage lastPage = controller.listThreadItemsPage("thread1", "msg2", 2, null);
+        assertEquals(1, lastPage.items().size());
+        assertNull(lastPage.nextCursor());
+    }
+
+    @Test
+    void testListThreadItemsPageRejectsInvalidLimit() {
+        ReActAgent agent = mock(ReActAgent.class);
+        ApplicationContext applicationContext = mock(ApplicationContext.class);
+        when(applicationContext.getBeansOfType(ReActAgent.class)).thenReturn(Map.of("reActAgent", agent));
+        ChatController controller = new ChatController(applicationContext);
+
+        // limit超出范围是客户端错误，返回400而不是500
+        ResponseStatusException zero = assertThrows(ResponseStatusException.class,
+                () -> controller.listThreadItemsPage("thread1", null, 0, null));
+        assertEquals(HttpStatus.BAD_REQUEST, zero.getStatusCode());
+        ResponseStatusException tooLarge = assertThrows(ResponseStatusException.class,
+                () -> controller.listThreadItemsPage("thread1", null, ChatController.MAX_PAGE_SIZE + 1, null));
+        assertEquals(HttpStatus.BAD_REQUEST, tooLarge.getStatusCode());
+        verifyNoInteractions(agent);
+    }
+
+    @Test
+    void testStreamThreadItems() {
+        ReActAgent agent = mock(ReActAgent.class);
+        when(agent.streamBranchMessages("thread1")).thenReturn(Flux.just(
+                new BranchMessageItem(new UserMessage("你好"), "msg1", null, Map.of()),
+                new BranchMessageItem(new AssistantMessage("你好！"), "msg2", "msg1", Map.of())));
+        ApplicationContext applicationContext = mock(ApplicationContext.class);
+        when(applicationContext.getBeansOfType(ReActAgent.class)).thenReturn(Map.of("reActAgent", agent));
+        ChatController controller = new ChatController(applicationContext);
+
+        List<ChatController.ThreadItem> items = controller.streamThreadItems("thread1", null)
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertNotNull(items);
+        assertEquals(List.of("msg1", "msg2"), items.stream().map(ChatController.ThreadItem::checkpointId).toList());
+    }
+}